@@ -0,0 +1,124 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import free.util.BenchmarkCorpus;
+
+
+/**
+ * The games used by the chess core benchmarks, replayed from
+ * <code>games.txt</code>: every position reached in them, along with the move
+ * made in it, in both Warren-Smith and parsed form.
+ */
+
+final class GameCorpus{
+
+
+
+  /**
+   * The position before each ply of each game, the games following each
+   * other.
+   */
+
+  public final Position [] positions;
+
+
+
+  /**
+   * The move made in each position, in Warren-Smith format.
+   */
+
+  public final String [] smithMoves;
+
+
+
+  /**
+   * The move made in each position.
+   */
+
+  public final Move [] moves;
+
+
+
+  /**
+   * Whether each position is the initial position of a game.
+   */
+
+  public final boolean [] isGameStart;
+
+
+
+  /**
+   * Loads and replays the games.
+   */
+
+  public GameCorpus() throws IOException{
+    String [] games = BenchmarkCorpus.loadEntries(GameCorpus.class, "games.txt");
+
+    List positionsList = new ArrayList();
+    List smithMovesList = new ArrayList();
+    List movesList = new ArrayList();
+    List gameStarts = new ArrayList();
+    for (int i = 0; i < games.length; i++){
+      Position position = new Position(Chess.getInstance());
+      gameStarts.add(new Integer(positionsList.size()));
+
+      StringTokenizer tokenizer = new StringTokenizer(games[i], " ");
+      while (tokenizer.hasMoreTokens()){
+        String smithMove = tokenizer.nextToken();
+        Move move = Move.parseWarrenSmith(smithMove, position, smithMove);
+
+        positionsList.add(new Position(position));
+        smithMovesList.add(smithMove);
+        movesList.add(move);
+
+        position.makeMove(move);
+      }
+    }
+
+    positions = (Position [])positionsList.toArray(new Position[positionsList.size()]);
+    smithMoves = (String [])smithMovesList.toArray(new String[smithMovesList.size()]);
+    moves = (Move [])movesList.toArray(new Move[movesList.size()]);
+    isGameStart = new boolean[positions.length];
+    for (int i = 0; i < gameStarts.size(); i++)
+      isGameStart[((Integer)gameStarts.get(i)).intValue()] = true;
+  }
+
+
+
+  /**
+   * Returns the amount of positions (and moves) in the corpus.
+   */
+
+  public int size(){
+    return positions.length;
+  }
+
+
+
+}
@@ -0,0 +1,168 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Measures generating the target squares of the pieces of a position, as done
+ * when the user picks up a piece, and parsing the moves the server sends in
+ * Warren-Smith format, over the positions of a few real games.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoveGenerationBenchmark{
+
+
+
+  /**
+   * The games.
+   */
+
+  private GameCorpus games;
+
+
+
+  /**
+   * The squares of the pieces of the player to move, in each position of the
+   * games.
+   */
+
+  private Square [][] moverSquares;
+
+
+
+  /**
+   * The index of the next position to use, shared by all the benchmarks.
+   */
+
+  private int index = 0;
+
+
+
+  /**
+   * Loads the games and finds the pieces of the player to move in each
+   * position.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    games = new GameCorpus();
+
+    moverSquares = new Square[games.size()][];
+    for (int i = 0; i < games.size(); i++){
+      Position position = games.positions[i];
+      List squares = new ArrayList();
+      for (int file = 0; file < 8; file++)
+        for (int rank = 0; rank < 8; rank++){
+          Piece piece = position.getPieceAt(file, rank);
+          if ((piece != null) && (piece.getPlayer() == position.getCurrentPlayer()))
+            squares.add(Square.getInstance(file, rank));
+        }
+      moverSquares[i] = (Square [])squares.toArray(new Square[squares.size()]);
+    }
+  }
+
+
+
+  /**
+   * Advances to the next position, cycling through the games.
+   */
+
+  private int nextIndex(){
+    if (++index >= games.size())
+      index = 0;
+    return index;
+  }
+
+
+
+  /**
+   * Computes the target squares of all the pieces of the player to move in
+   * the next position.
+   */
+
+  @Benchmark
+  public int targetSquares(){
+    int i = nextIndex();
+    Position position = games.positions[i];
+    WildVariant variant = position.getVariant();
+    Square [] squares = moverSquares[i];
+
+    int count = 0;
+    for (int j = 0; j < squares.length; j++)
+      count += variant.getTargetSquares(position, squares[j]).size();
+
+    return count;
+  }
+
+
+
+  /**
+   * Computes the target squares of all the pieces of the player to move in
+   * the next position, as square sets.
+   */
+
+  @Benchmark
+  public int targetSquareMask(){
+    int i = nextIndex();
+    Position position = games.positions[i];
+    WildVariant variant = position.getVariant();
+    Square [] squares = moverSquares[i];
+
+    int count = 0;
+    for (int j = 0; j < squares.length; j++)
+      count += SquareSet.size(variant.getTargetSquareMask(position, squares[j]));
+
+    return count;
+  }
+
+
+
+  /**
+   * Parses the move made in the next position.
+   */
+
+  @Benchmark
+  public Move parseWarrenSmith(){
+    int i = nextIndex();
+    return Move.parseWarrenSmith(games.smithMoves[i], games.positions[i], games.smithMoves[i]);
+  }
+
+
+
+}
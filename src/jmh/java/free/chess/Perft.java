@@ -0,0 +1,396 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import free.chess.variants.BothSidesCastlingVariant;
+import free.chess.variants.NoCastlingVariant;
+import free.chess.variants.atomic.Atomic;
+import free.chess.variants.fischerrandom.FischerRandom;
+import free.chess.variants.giveaway.Giveaway;
+import free.chess.variants.shatranj.Shatranj;
+import free.chess.variants.shuffleboth.ShuffleBoth;
+import free.chess.variants.suicide.Suicide;
+import free.util.BenchmarkCorpus;
+
+
+/**
+ * Counts the leaf nodes of the tree of legal moves of a position, to a given
+ * depth (a "perft"), as generated by
+ * {@link ChesslikeGenericVariant#getLegalMoves(Position)} and walked with
+ * {@link Position#makeMove(Move)} and {@link Position#unmakeMove()}. The count
+ * can also be split at the root among the threads of a
+ * <code>ForkJoinPool</code>.
+ * <p>Running this class checks the counts for the reference positions in
+ * <code>perft.txt</code> against the published ones, and those for the
+ * positions in <code>perft-regression.txt</code> against ones previously
+ * recorded from this implementation, and reports the speed of
+ * the move generation, in nodes per second, single-threaded and with the
+ * root split. The optional arguments are the maximum depth to check to and
+ * the amount of threads to split the root among.
+ */
+
+public class Perft{
+
+
+
+  /**
+   * The variants the reference positions may be in.
+   */
+
+  private static final WildVariant [] VARIANTS = new WildVariant[]{
+    Chess.getInstance(),
+    FischerRandom.getInstance(),
+    ShuffleBoth.getInstance(),
+    Atomic.getInstance(),
+    Suicide.getInstance(),
+    Giveaway.getInstance(),
+    Shatranj.getInstance(),
+    new NoCastlingVariant(Chess.INITIAL_POSITION_FEN, "No castling"),
+    new BothSidesCastlingVariant(Chess.INITIAL_POSITION_FEN, "Both sides castling")
+  };
+
+
+
+  /**
+   * Returns the amount of leaf nodes of the tree of legal moves of the
+   * specified position, to the specified depth. The position is walked through
+   * the tree and left as it was.
+   */
+
+  public static long perft(Position pos, int depth){
+    ChesslikeGenericVariant variant = (ChesslikeGenericVariant)pos.getVariant();
+    List moves = variant.getLegalMoves(pos);
+    if (depth == 1)
+      return moves.size();
+
+    long count = 0;
+    for (int i = 0; i < moves.size(); i++){
+      pos.makeMove((Move)moves.get(i));
+      count += perft(pos, depth - 1);
+      pos.unmakeMove();
+    }
+
+    return count;
+  }
+
+
+
+  /**
+   * Same as {@link #perft(Position, int)}, but counts the subtree of each
+   * legal move of the specified position in a separate task of the specified
+   * pool, on its own copy of the position.
+   */
+
+  public static long perft(Position pos, int depth, ForkJoinPool pool){
+    ChesslikeGenericVariant variant = (ChesslikeGenericVariant)pos.getVariant();
+    List moves = variant.getLegalMoves(pos);
+    if (depth == 1)
+      return moves.size();
+
+    final List tasks = new ArrayList(moves.size());
+    for (int i = 0; i < moves.size(); i++)
+      tasks.add(new SubtreeTask(pos, (Move)moves.get(i), depth - 1));
+
+    return pool.invoke(new RecursiveTask<Long>(){
+      @Override
+      protected Long compute(){
+        invokeAll(tasks);
+        long count = 0;
+        for (int i = 0; i < tasks.size(); i++)
+          count += ((SubtreeTask)tasks.get(i)).join().longValue();
+        return Long.valueOf(count);
+      }
+    }).longValue();
+  }
+
+
+
+  /**
+   * Returns the variant with the specified name, out of {@link #VARIANTS}.
+   */
+
+  private static WildVariant getVariant(String name){
+    for (int i = 0; i < VARIANTS.length; i++)
+      if (VARIANTS[i].getName().equals(name))
+        return VARIANTS[i];
+
+    throw new IllegalArgumentException("Unknown variant: " + name);
+  }
+
+
+
+  /**
+   * Loads the reference positions from <code>perft.txt</code>, followed by the
+   * regression positions from <code>perft-regression.txt</code>.
+   */
+
+  static Entry [] loadEntries() throws IOException{
+    Entry [] verifiedEntries = loadEntries("perft.txt", false);
+    Entry [] regressionEntries = loadEntries("perft-regression.txt", true);
+    Entry [] entries = new Entry[verifiedEntries.length + regressionEntries.length];
+    System.arraycopy(verifiedEntries, 0, entries, 0, verifiedEntries.length);
+    System.arraycopy(regressionEntries, 0, entries, verifiedEntries.length, regressionEntries.length);
+    return entries;
+  }
+
+
+
+  /**
+   * Loads the positions from the specified resource, marking them as
+   * regression positions if so specified.
+   */
+
+  private static Entry [] loadEntries(String resourceName, boolean isRegression) throws IOException{
+    String [] lines = BenchmarkCorpus.loadEntries(Perft.class, resourceName);
+    Entry [] entries = new Entry[lines.length];
+    for (int i = 0; i < lines.length; i++){
+      StringTokenizer fields = new StringTokenizer(lines[i], "|");
+      if (fields.countTokens() != 3)
+        throw new IOException("Bad perft entry: " + lines[i]);
+
+      WildVariant variant = getVariant(fields.nextToken().trim());
+      String fen = fields.nextToken().trim();
+      StringTokenizer countTokens = new StringTokenizer(fields.nextToken(), " ");
+      long [] counts = new long[countTokens.countTokens()];
+      for (int j = 0; j < counts.length; j++)
+        counts[j] = Long.parseLong(countTokens.nextToken());
+
+      entries[i] = new Entry(variant, fen, counts, isRegression);
+    }
+
+    return entries;
+  }
+
+
+
+  /**
+   * Returns the specified amount of nodes counted in the specified time, in
+   * nanoseconds, as nodes per second.
+   */
+
+  private static long getNodesPerSecond(long nodes, long time){
+    return time == 0 ? 0 : (long)(nodes * 1000000000.0 / time);
+  }
+
+
+
+  /**
+   * Checks the node counts of the reference positions, up to the depth
+   * specified by the first optional argument (4 by default), counting each
+   * both single-threaded and split among the amount of threads specified by
+   * the second optional argument (the amount of processors by default). Wrong
+   * counts of reference positions and changed counts of regression positions
+   * are reported separately. Exits with a non-zero status if there are any.
+   */
+
+  public static void main(String [] args) throws IOException{
+    int maxDepth = args.length < 1 ? 4 : Integer.parseInt(args[0]);
+    int threadCount = args.length < 2 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(args[1]);
+    ForkJoinPool pool = new ForkJoinPool(threadCount);
+
+    Entry [] entries = loadEntries();
+    int failures = 0;
+    int regressions = 0;
+    long totalNodes = 0;
+    long totalTime = 0;
+    long totalParallelTime = 0;
+    for (int i = 0; i < entries.length; i++){
+      Entry entry = entries[i];
+      Position pos = entry.createPosition();
+      System.out.println(entry.variant.getName() + " " + entry.fen + (entry.isRegression ? " (regression)" : ""));
+      for (int depth = 1; (depth <= entry.counts.length) && (depth <= maxDepth); depth++){
+        long startTime = System.nanoTime();
+        long count = perft(pos, depth);
+        long time = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        long parallelCount = perft(pos, depth, pool);
+        long parallelTime = System.nanoTime() - startTime;
+
+        long expected = entry.counts[depth - 1];
+        boolean isCorrect = (count == expected) && (parallelCount == expected);
+        if (!isCorrect){
+          if (entry.isRegression)
+            regressions++;
+          else
+            failures++;
+        }
+        totalNodes += count;
+        totalTime += time;
+        totalParallelTime += parallelTime;
+
+        String status = isCorrect ? "OK      " : (entry.isRegression ? "CHANGED " : "WRONG   ");
+        System.out.println("  " + status + "depth " + depth + ": " + count +
+          (count == parallelCount ? "" : " (split: " + parallelCount + ")") +
+          (isCorrect ? "" : " (expected " + expected + ")") +
+          ", " + getNodesPerSecond(count, time) + " nodes/s, " +
+          getNodesPerSecond(parallelCount, parallelTime) + " nodes/s split among " + threadCount + " threads");
+      }
+    }
+
+    System.out.println("Total: " + totalNodes + " nodes, " + getNodesPerSecond(totalNodes, totalTime) +
+      " nodes/s, " + getNodesPerSecond(totalNodes, totalParallelTime) + " nodes/s split");
+    System.out.println(failures == 0 ? "All published counts are correct" : failures + " wrong counts");
+    System.out.println(regressions == 0 ? "All regression counts are unchanged" : regressions + " changed regression counts");
+    pool.shutdown();
+    if ((failures != 0) || (regressions != 0))
+      System.exit(1);
+  }
+
+
+
+  /**
+   * Counts the subtree of a single move, on a copy of the position.
+   */
+
+  private static class SubtreeTask extends RecursiveTask<Long>{
+
+
+
+    /**
+     * The position after the move.
+     */
+
+    private final Position pos;
+
+
+
+    /**
+     * The depth of the subtree.
+     */
+
+    private final int depth;
+
+
+
+    /**
+     * Creates a new <code>SubtreeTask</code> for the subtree of the specified
+     * move in the specified position, to the specified depth. The position is
+     * copied, so it may be modified once this constructor returns.
+     */
+
+    public SubtreeTask(Position pos, Move move, int depth){
+      this.pos = new Position(pos);
+      this.pos.makeMove(move);
+      this.depth = depth;
+    }
+
+
+
+    /**
+     * Counts the subtree.
+     */
+
+    @Override
+    protected Long compute(){
+      return Long.valueOf(perft(pos, depth));
+    }
+
+
+
+  }
+
+
+
+  /**
+   * A reference position along with its known node counts.
+   */
+
+  static class Entry{
+
+
+
+    /**
+     * The variant of the position.
+     */
+
+    public final WildVariant variant;
+
+
+
+    /**
+     * The position, in FEN.
+     */
+
+    public final String fen;
+
+
+
+    /**
+     * The node count at each depth, starting with 1.
+     */
+
+    public final long [] counts;
+
+
+
+    /**
+     * Whether the counts were recorded from this implementation, rather than
+     * published.
+     */
+
+    public final boolean isRegression;
+
+
+
+    /**
+     * Creates a new <code>Entry</code>.
+     */
+
+    public Entry(WildVariant variant, String fen, long [] counts, boolean isRegression){
+      this.variant = variant;
+      this.fen = fen;
+      this.counts = counts;
+      this.isRegression = isRegression;
+    }
+
+
+
+    /**
+     * Creates a new <code>Position</code> set to this reference position.
+     */
+
+    public Position createPosition(){
+      Position pos = new Position(variant);
+      try{
+        pos.setFEN(fen);
+      } catch (PositionFormatException e){
+          throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+      return pos;
+    }
+
+
+
+  }
+
+
+
+}
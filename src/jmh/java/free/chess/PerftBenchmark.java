@@ -0,0 +1,141 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * Measures a {@link Perft} of the first reference position of each variant,
+ * single-threaded and with the root split among the threads of a
+ * <code>ForkJoinPool</code>. Together with the node counts, this gives the
+ * speed of the legal move generation and of making and unmaking moves.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PerftBenchmark{
+
+
+
+  /**
+   * The name of the variant whose first reference position we count.
+   */
+
+  @Param({"Chess", "Fischer random", "Shuffle both", "No castling", "Both sides castling",
+    "Atomic", "Suicide", "Giveaway", "Shatranj"})
+  public String variant;
+
+
+
+  /**
+   * The depth to count to.
+   */
+
+  @Param({"4"})
+  public int depth;
+
+
+
+  /**
+   * The position we count.
+   */
+
+  private Position position;
+
+
+
+  /**
+   * The pool we split the root among.
+   */
+
+  private ForkJoinPool pool;
+
+
+
+  /**
+   * Finds the reference position and creates the pool.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    Perft.Entry [] entries = Perft.loadEntries();
+    for (int i = 0; (i < entries.length) && (position == null); i++)
+      if (entries[i].variant.getName().equals(variant))
+        position = entries[i].createPosition();
+
+    if (position == null)
+      throw new IllegalArgumentException("No reference position for " + variant);
+
+    pool = new ForkJoinPool();
+  }
+
+
+
+  /**
+   * Shuts the pool down.
+   */
+
+  @TearDown
+  public void tearDown(){
+    pool.shutdown();
+  }
+
+
+
+  /**
+   * Counts the nodes in the calling thread.
+   */
+
+  @Benchmark
+  public long singleThreaded(){
+    return Perft.perft(position, depth);
+  }
+
+
+
+  /**
+   * Counts the nodes with the root split among the threads of the pool.
+   */
+
+  @Benchmark
+  public long forkJoin(){
+    return Perft.perft(position, depth, pool);
+  }
+
+
+
+}
@@ -0,0 +1,214 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import free.jin.board.icc.BlitzinVectorPiecePainter;
+
+
+/**
+ * Measures painting the pieces of a full board - the starting position, with
+ * the black pieces shaded - with the various piece painters.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PiecePainterBenchmark{
+
+
+
+  /**
+   * The size of a square, in pixels.
+   */
+
+  @Param({"40", "64", "100"})
+  public int squareSize;
+
+
+
+  /**
+   * The image piece painter, with the "alpha" piece set.
+   */
+
+  private PiecePainter imagePainter;
+
+
+
+  /**
+   * The eboard vector piece painter.
+   */
+
+  private PiecePainter eboardPainter;
+
+
+
+  /**
+   * The blitzin vector piece painter.
+   */
+
+  private PiecePainter blitzinPainter;
+
+
+
+  /**
+   * The position whose pieces we paint.
+   */
+
+  private Position position;
+
+
+
+  /**
+   * The image we paint into.
+   */
+
+  private BufferedImage image;
+
+
+
+  /**
+   * The graphics of the image.
+   */
+
+  private Graphics graphics;
+
+
+
+  /**
+   * The rectangle we reuse for the squares.
+   */
+
+  private final Rectangle squareRect = new Rectangle();
+
+
+
+  /**
+   * Loads the piece sets and creates the image to paint into.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    URL pieceSetURL = PiecePainterBenchmark.class.getResource("/pieces/alpha.zip");
+    ImagePiecePainter imagePiecePainter = new ImagePiecePainter();
+    imagePiecePainter.load(new URL("jar:" + pieceSetURL + "!/"));
+    imagePainter = imagePiecePainter;
+    eboardPainter = new EboardVectorPiecePainter();
+    blitzinPainter = new BlitzinVectorPiecePainter();
+
+    position = new Position(Chess.getInstance());
+    position.setLexigraphic(Chess.INITIAL_POSITION_LEXIGRAPHIC);
+
+    image = new BufferedImage(8 * squareSize, 8 * squareSize, BufferedImage.TYPE_INT_RGB);
+    graphics = image.createGraphics();
+
+    // Load the images and draw the vector pieces at our size
+    paintPieces(imagePainter);
+    paintPieces(eboardPainter);
+    paintPieces(blitzinPainter);
+  }
+
+
+
+  /**
+   * Disposes of the graphics.
+   */
+
+  @TearDown
+  public void tearDown(){
+    graphics.dispose();
+  }
+
+
+
+  /**
+   * Paints all the pieces of the position with the specified painter.
+   */
+
+  private void paintPieces(PiecePainter painter){
+    for (int file = 0; file < 8; file++)
+      for (int rank = 0; rank < 8; rank++){
+        Piece piece = position.getPieceAt(file, rank);
+        if (piece == null)
+          continue;
+
+        squareRect.setBounds(file * squareSize, (7 - rank) * squareSize, squareSize, squareSize);
+        painter.paintPiece(piece, graphics, null, squareRect, piece.isBlack());
+      }
+  }
+
+
+
+  /**
+   * Paints the pieces with the image piece painter.
+   */
+
+  @Benchmark
+  public BufferedImage imagePieces(){
+    paintPieces(imagePainter);
+    return image;
+  }
+
+
+
+  /**
+   * Paints the pieces with the eboard vector piece painter.
+   */
+
+  @Benchmark
+  public BufferedImage eboardVectorPieces(){
+    paintPieces(eboardPainter);
+    return image;
+  }
+
+
+
+  /**
+   * Paints the pieces with the blitzin vector piece painter.
+   */
+
+  @Benchmark
+  public BufferedImage blitzinVectorPieces(){
+    paintPieces(blitzinPainter);
+    return image;
+  }
+
+
+
+}
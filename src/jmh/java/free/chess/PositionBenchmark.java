@@ -0,0 +1,202 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import free.util.BenchmarkCorpus;
+
+
+/**
+ * Measures the basic operations on a {@link Position} - making (and
+ * unmaking) a move, copying, comparing, hashing and setting and getting the FEN - over the
+ * positions of a few real games.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PositionBenchmark{
+
+
+
+  /**
+   * The games.
+   */
+
+  private GameCorpus games;
+
+
+
+  /**
+   * Copies of the positions of the games, so that comparing a position to
+   * its copy doesn't take the identity shortcut.
+   */
+
+  private Position [] copies;
+
+
+
+  /**
+   * The positions of the games, in FEN.
+   */
+
+  private String [] fens;
+
+
+
+  /**
+   * The position the benchmarks modify.
+   */
+
+  private Position scratch;
+
+
+
+  /**
+   * The index of the next position (or move, or FEN) to use, shared by all
+   * the benchmarks.
+   */
+
+  private int index = 0;
+
+
+
+  /**
+   * Loads the games and the FENs.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    games = new GameCorpus();
+    copies = new Position[games.size()];
+    for (int i = 0; i < copies.length; i++)
+      copies[i] = new Position(games.positions[i]);
+    fens = BenchmarkCorpus.loadEntries(PositionBenchmark.class, "positions.fen");
+    scratch = new Position(Chess.getInstance());
+  }
+
+
+
+  /**
+   * Advances to the next index, cycling through the specified amount of
+   * items.
+   */
+
+  private int nextIndex(int count){
+    if (++index >= count)
+      index = 0;
+    return index;
+  }
+
+
+
+  /**
+   * Makes the next move of the games. When a new game starts, the position
+   * is first reset to its initial position, which is included in the
+   * measurement once per game.
+   */
+
+  @Benchmark
+  public Position makeMove(){
+    int i = nextIndex(games.size());
+    if (games.isGameStart[i])
+      scratch.copyFrom(games.positions[i]);
+    scratch.makeMove(games.moves[i]);
+    return scratch;
+  }
+
+
+
+  /**
+   * Makes the next move of the games and unmakes it right away.
+   */
+
+  @Benchmark
+  public Position makeAndUnmakeMove(){
+    int i = nextIndex(games.size());
+    Position position = copies[i];
+    position.makeMove(games.moves[i]);
+    position.unmakeMove();
+    return position;
+  }
+
+
+
+  /**
+   * Copies the next position of the games.
+   */
+
+  @Benchmark
+  public Position copyFrom(){
+    scratch.copyFrom(games.positions[nextIndex(games.size())]);
+    return scratch;
+  }
+
+
+
+  /**
+   * Compares the next position of the games to its copy.
+   */
+
+  @Benchmark
+  public boolean positionEquals(){
+    int i = nextIndex(games.size());
+    return games.positions[i].equals(copies[i]);
+  }
+
+
+
+  /**
+   * Computes the hash code of the next position of the games.
+   */
+
+  @Benchmark
+  public int positionHashCode(){
+    return games.positions[nextIndex(games.size())].hashCode();
+  }
+
+
+
+  /**
+   * Sets the position from the next FEN and gets the FEN back.
+   */
+
+  @Benchmark
+  public String setAndGetFEN(){
+    scratch.setFEN(fens[nextIndex(fens.length)]);
+    return scratch.getFEN();
+  }
+
+
+
+}
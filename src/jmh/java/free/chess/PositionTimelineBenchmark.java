@@ -0,0 +1,170 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Compares getting an arbitrary position of a game from a
+ * {@link PositionTimeline} against replaying the game from its initial
+ * position, as browsing the move list used to.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PositionTimelineBenchmark{
+
+
+
+  /**
+   * The step by which we go through the positions of the games, so that
+   * consecutive positions come from different parts of the games.
+   */
+
+  private static final int STRIDE = 37;
+
+
+
+  /**
+   * The games.
+   */
+
+  private GameCorpus games;
+
+
+
+  /**
+   * The timeline of the game each position belongs to.
+   */
+
+  private PositionTimeline [] timelines;
+
+
+
+  /**
+   * The index of the initial position of the game each position belongs to.
+   */
+
+  private int [] gameStarts;
+
+
+
+  /**
+   * The position the benchmarks modify.
+   */
+
+  private Position scratch;
+
+
+
+  /**
+   * The index of the next position to get.
+   */
+
+  private int index = 0;
+
+
+
+  /**
+   * Loads the games and builds their timelines.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    games = new GameCorpus();
+    timelines = new PositionTimeline[games.size()];
+    gameStarts = new int[games.size()];
+
+    PositionTimeline timeline = null;
+    int gameStart = 0;
+    for (int i = 0; i < games.size(); i++){
+      if (games.isGameStart[i]){
+        timeline = new PositionTimeline(games.positions[i]);
+        gameStart = i;
+      }
+      timelines[i] = timeline;
+      gameStarts[i] = gameStart;
+    }
+
+    for (int i = 0; i < games.size(); i++)
+      if ((i + 1 == games.size()) || games.isGameStart[i + 1])
+        for (int j = gameStarts[i]; j <= i; j++)
+          timelines[i].addMove(games.moves[j]);
+
+    scratch = new Position(Chess.getInstance());
+  }
+
+
+
+  /**
+   * Advances to the next index.
+   */
+
+  private int nextIndex(){
+    index = (index + STRIDE) % games.size();
+    return index;
+  }
+
+
+
+  /**
+   * Gets the next position from the timeline of its game.
+   */
+
+  @Benchmark
+  public Position timeline(){
+    int i = nextIndex();
+    timelines[i].getPosition(i - gameStarts[i], scratch);
+    return scratch;
+  }
+
+
+
+  /**
+   * Gets the next position by replaying its game from the initial position.
+   */
+
+  @Benchmark
+  public Position replay(){
+    int i = nextIndex();
+    int gameStart = gameStarts[i];
+    scratch.copyFrom(games.positions[gameStart]);
+    for (int j = gameStart; j < i; j++)
+      scratch.makeMove(games.moves[j]);
+    return scratch;
+  }
+
+
+
+}
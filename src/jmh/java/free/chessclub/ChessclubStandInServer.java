@@ -0,0 +1,543 @@
+/**
+ * The chessclub.com connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002-2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chessclub.com connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chessclub.com connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chessclub.com connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.chessclub;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.BitSet;
+import java.util.Iterator;
+
+import free.chessclub.level2.Datagram;
+import free.util.AbstractStandInServer;
+
+
+/**
+ * A small, local stand-in for a chessclub.com server, used to benchmark
+ * clients without a network. It speaks enough of the protocol to log a client
+ * in - the <code>level1=</code> and <code>level2settings=</code> lines,
+ * DG_WHO_AM_I and the rating category and wild keys - and to honour
+ * <code>set-2</code> (answered with DG_SET2, or DG_DUMMY_RESPONSE if nothing
+ * changed), wrapping command responses in level1 packets tagged the way the
+ * client asked. It then generates datagram load at configurable rates:
+ * <ul>
+ *   <li>A number of games, moving at a given rate - the first is examined by
+ *       the client (DG_MY_GAME_STARTED), the rest are observed
+ *       (DG_STARTED_OBSERVING). Each game starts with DG_POSITION_BEGIN and
+ *       each move is sent as DG_SEND_MOVES, with the fields selected by
+ *       DG_MOVE_ALGEBRAIC, DG_MOVE_SMITH, DG_MOVE_TIME, DG_MOVE_CLOCK and
+ *       DG_IS_VARIATION, followed by a DG_MSEC for each side.
+ *   <li>Channel tells (DG_CHANNEL_TELL).
+ *   <li>Seeks being posted and removed (DG_SEEK and DG_SEEK_REMOVED).
+ *   <li>Game lists (DG_GAMELIST_BEGIN followed by DG_GAMELIST_ITEMs), which
+ *       are also sent in response to the <code>search</code>,
+ *       <code>history</code>, <code>liblist</code> and <code>stored</code>
+ *       commands.
+ * </ul>
+ * Only the datagrams the client turned on are sent.
+ * <p>Run with no arguments for usage information.
+ */
+
+public class ChessclubStandInServer extends AbstractStandInServer{
+
+
+
+  /**
+   * The line terminator used by the server.
+   */
+
+  private static final String EOL = "\r\n";
+
+
+
+  /**
+   * The prompt.
+   */
+
+  private static final String PROMPT = "aics% ";
+
+
+
+  /**
+   * The standard delimiter, used to delimit both level1 packets and level2
+   * datagrams.
+   */
+
+  private static final char DELIM = '\u0019';
+
+
+
+  /**
+   * The amount of items in each game list.
+   */
+
+  private static final int GAME_LIST_SIZE = 20;
+
+
+
+  /**
+   * The initial time of the games, in minutes.
+   */
+
+  private static final int INITIAL_TIME = 3;
+
+
+
+  /**
+   * The rating categories we report in DG_RATING_TYPE_KEY, indexed by their
+   * keys.
+   */
+
+  private static final String [] RATING_CATEGORIES = {"Wild", "Bullet", "Blitz", "Standard"};
+
+
+
+  /**
+   * The amount of game lists sent per second.
+   */
+
+  private final double gameListsPerSecond;
+
+
+
+  /**
+   * Creates a new <code>ChessclubStandInServer</code> with the specified
+   * port and load parameters. The server isn't started until
+   * {@link #start()} is called.
+   *
+   * @param port The port to listen on; 0 to pick any free port.
+   * @param gameCount The amount of games sent to each client.
+   * @param movesPerSecond The amount of moves made per second in each game.
+   * @param chatLinesPerSecond The amount of channel tells sent per second.
+   * @param seeksPerSecond The amount of seeks posted (and as many removed) per
+   * second.
+   * @param gameListsPerSecond The amount of unsolicited game lists sent per
+   * second.
+   */
+
+  public ChessclubStandInServer(int port, int gameCount, double movesPerSecond, double chatLinesPerSecond,
+      double seeksPerSecond, double gameListsPerSecond){
+    super("chessclub.com", EOL, INITIAL_TIME * 60 * 1000, port, gameCount, movesPerSecond, chatLinesPerSecond,
+      seeksPerSecond);
+
+    if (gameListsPerSecond < 0)
+      throw new IllegalArgumentException("Rates may not be negative");
+
+    this.gameListsPerSecond = gameListsPerSecond;
+  }
+
+
+
+  /**
+   * Creates a <code>ChessclubSession</code> for the specified client.
+   */
+
+  @Override
+  protected Session createSession(Socket socket) throws IOException{
+    return new ChessclubSession(socket);
+  }
+
+
+
+  /**
+   * A single client's session, encoding the load in the ICC protocol. The
+   * messages counted as sent are the datagrams.
+   */
+
+  private class ChessclubSession extends Session{
+
+
+
+    /**
+     * The client's level1 setting.
+     */
+
+    private int level1 = 0;
+
+
+
+    /**
+     * The datagrams the client turned on.
+     */
+
+    private final BitSet level2Settings = new BitSet();
+
+
+
+    /**
+     * Whether the prompt is on.
+     */
+
+    private boolean isPromptOn = true;
+
+
+
+    /**
+     * The amount of game lists due to be sent.
+     */
+
+    private double pendingGameLists = 0;
+
+
+
+    /**
+     * Creates a new <code>ChessclubSession</code> with the specified client
+     * socket.
+     */
+
+    public ChessclubSession(Socket socket) throws IOException{
+      super(socket);
+    }
+
+
+
+    /**
+     * Handles a line received before the client logged in.
+     */
+
+    @Override
+    protected void handleLoginLine(String line){
+      if (line.startsWith("level1="))
+        level1 = Integer.parseInt(line.substring("level1=".length()));
+      else if (line.startsWith("level2settings=")){
+        String bits = line.substring("level2settings=".length());
+        for (int i = 0; i < bits.length(); i++)
+          if (bits.charAt(i) == '1')
+            level2Settings.set(i);
+      }
+      else if (line.length() != 0){
+        String name = line.split(" ")[0]; // Drop the password, if any
+        handle = name.equalsIgnoreCase("guest") ? "guest" + (1000 + random.nextInt(9000)) : name;
+
+        outBuf.append(EOL); // Terminate the login prompt
+        addDatagram(Datagram.DG_WHO_AM_I, handle + " {}");
+        for (int i = 0; i < RATING_CATEGORIES.length; i++)
+          addDatagram(Datagram.DG_RATING_TYPE_KEY, i + " " + RATING_CATEGORIES[i]);
+        addDatagram(Datagram.DG_WILD_KEY, "0 {w0}");
+        addLine("**** Starting ICC session as " + handle + " ****");
+        addPrompt();
+
+        startLoad();
+      }
+    }
+
+
+
+    /**
+     * Handles a command sent by the client after login, wrapping the response
+     * in a level1 packet if the client asked for them.
+     */
+
+    @Override
+    protected void handleCommand(String command){
+      String tag = null;
+      if (command.startsWith("`")){
+        int tagEnd = command.indexOf('`', 1);
+        if (tagEnd != -1){
+          tag = command.substring(1, tagEnd);
+          command = command.substring(tagEnd + 1);
+        }
+      }
+
+      if (command.startsWith("multi "))
+        command = command.substring("multi ".length());
+
+      if (command.length() == 0)
+        return;
+
+      String [] words = command.split(" +");
+      String name = words[0];
+
+      if (name.equals("quit")){
+        addLine("Logging you out.");
+        flush();
+        close();
+        return;
+      }
+
+      if (level1 != 0)
+        outBuf.append(DELIM).append('[').append("0 ").append(handle).append(tag == null ? "" : " " + tag).append(EOL);
+      int responseStart = outBuf.length();
+
+      if (name.equals("set-2") && (words.length == 3)){
+        int dg = Integer.parseInt(words[1]);
+        boolean state = words[2].equals("1");
+        if (state != level2Settings.get(dg)){
+          if (state)
+            level2Settings.set(dg);
+          else
+            level2Settings.clear(dg);
+          addDatagram(Datagram.DG_SET2, dg + " " + (state ? "1" : "0"));
+
+          if (state && (dg == Datagram.DG_SEEK)){
+            for (Iterator i = seeks.iterator(); i.hasNext();)
+              seekPosted(((Integer)i.next()).intValue());
+          }
+        }
+      }
+      else if (command.equals("set-quietly prompt 0") || command.equals("set prompt 0"))
+        isPromptOn = false;
+      else if (name.equals("search") || name.equals("history") || name.equals("liblist") || name.equals("stored"))
+        addGameList(name, words.length > 1 ? words[1] : handle);
+      else if (name.equals("unobserve") && (words.length == 2)){
+        for (Iterator i = games.iterator(); i.hasNext();){
+          GameState game = (GameState)i.next();
+          if (String.valueOf(game.number).equals(words[1])){
+            i.remove();
+            addDatagram(Datagram.DG_MY_RELATION_TO_GAME, game.number + " " +
+              ChessclubConstants.DOING_NOTHING_PLAYER_STATE);
+          }
+        }
+      }
+      else if (!(name.startsWith("set") || name.equals("observe") || name.equals("tell") ||
+          name.equals("unseek") || name.equals("+") || name.equals("-")))
+        addLine("Unknown command: " + name);
+
+      if ((outBuf.length() == responseStart) && (level1 != 0))
+        addDatagram(Datagram.DG_DUMMY_RESPONSE, null);
+
+      if (level1 != 0)
+        outBuf.append(DELIM).append(']');
+
+      addPrompt();
+    }
+
+
+
+    /**
+     * Fills the seek pool, so that seeks are removed as well as posted right
+     * from the start.
+     */
+
+    @Override
+    protected void loadStarted(){
+      for (int i = 0; i < SEEK_POOL_SIZE; i++)
+        postSeek();
+    }
+
+
+
+    /**
+     * Sends the game lists due in this tick.
+     */
+
+    @Override
+    protected void loadTick(){
+      pendingGameLists += gameListsPerSecond * TICK_TIME / 1000;
+      for (; pendingGameLists >= 1; pendingGameLists--)
+        addGameList("search", "");
+    }
+
+
+
+    /**
+     * Adds DG_MY_GAME_STARTED, for the very first game, which is examined by
+     * the client, or DG_STARTED_OBSERVING for the rest, followed by
+     * DG_POSITION_BEGIN.
+     */
+
+    @Override
+    protected void gameStarted(GameState game){
+      boolean isExamined = game.number == 1;
+      addDatagram(isExamined ? Datagram.DG_MY_GAME_STARTED : Datagram.DG_STARTED_OBSERVING,
+        game.number + " " + game.white + " " + game.black + " 0 Blitz 1 " + INITIAL_TIME + " 0 " + INITIAL_TIME +
+        " 0 " + (isExamined ? "0" : "1") + " {} " + game.whiteRating + " " + game.blackRating + " " +
+        (1000000 + game.number) + " {} {} 0 0 0 {}");
+      addDatagram(Datagram.DG_POSITION_BEGIN, game.number + " {} 0");
+    }
+
+
+
+    /**
+     * Adds DG_SEND_MOVES for the move just made in the specified game,
+     * followed by a DG_MSEC for each side.
+     */
+
+    @Override
+    protected void moveMade(GameState game, int moveTime){
+      boolean isWhiteMove = (game.ply % 2) == 1;
+      int moveIndex = (game.ply - 1) % 4;
+
+      StringBuffer fields = new StringBuffer().append(game.number);
+      if (isOn(Datagram.DG_MOVE_ALGEBRAIC))
+        fields.append(' ').append(MOVES_SAN[moveIndex]);
+      if (isOn(Datagram.DG_MOVE_SMITH))
+        fields.append(' ').append(MOVES_SMITH[moveIndex]);
+      if (isOn(Datagram.DG_MOVE_TIME))
+        fields.append(' ').append(moveTime / 1000);
+      if (isOn(Datagram.DG_MOVE_CLOCK))
+        fields.append(' ').append((isWhiteMove ? game.whiteTime : game.blackTime) / 1000);
+      if (isOn(Datagram.DG_IS_VARIATION))
+        fields.append(" 0");
+      addDatagram(Datagram.DG_SEND_MOVES, fields.toString());
+
+      addDatagram(Datagram.DG_MSEC, game.number + " W " + game.whiteTime + " " + (isWhiteMove ? "0" : "1"));
+      addDatagram(Datagram.DG_MSEC, game.number + " B " + game.blackTime + " " + (isWhiteMove ? "1" : "0"));
+    }
+
+
+
+    /**
+     * Adds DG_MY_GAME_RESULT and DG_MY_RELATION_TO_GAME for the specified
+     * game.
+     */
+
+    @Override
+    protected void gameEnded(GameState game){
+      addDatagram(Datagram.DG_MY_GAME_RESULT, game.number + " 0 Rep 1/2-1/2 {Game drawn by repetition}");
+      addDatagram(Datagram.DG_MY_RELATION_TO_GAME, game.number + " " +
+        ChessclubConstants.DOING_NOTHING_PLAYER_STATE);
+    }
+
+
+
+    /**
+     * Adds DG_CHANNEL_TELL.
+     */
+
+    @Override
+    protected void addChannelTell(String teller, int channel, String message){
+      addDatagram(Datagram.DG_CHANNEL_TELL, channel + " " + teller + " {} {" + message + "} 1");
+    }
+
+
+
+    /**
+     * Adds the DG_SEEK datagram for the seek with the specified index.
+     */
+
+    @Override
+    protected void seekPosted(int index){
+      int time = 1 + (index % 15);
+      int ratingType = time < 3 ? 1 : time < 15 ? 2 : 3;
+      addDatagram(Datagram.DG_SEEK, index + " " + HANDLES[index % HANDLES.length] + " {} " +
+        (1000 + (index * 37) % 1500) + " 1 0 " + RATING_CATEGORIES[ratingType] + " " + time + " " + (index % 3) +
+        " " + ((index % 2) == 0 ? "1" : "0") + " -1 0 9999 1 0 {}");
+    }
+
+
+
+    /**
+     * Adds the DG_SEEK_REMOVED datagram for the seek with the specified index.
+     */
+
+    @Override
+    protected void seekRemoved(int index){
+      addDatagram(Datagram.DG_SEEK_REMOVED, index + " 2");
+    }
+
+
+
+    /**
+     * Adds a game list, in response to the specified command with the
+     * specified argument.
+     */
+
+    private void addGameList(String command, String arg){
+      addDatagram(Datagram.DG_GAMELIST_BEGIN, command + " {" + arg + "} " + GAME_LIST_SIZE + " 0 " +
+        (GAME_LIST_SIZE - 1) + " {}");
+      for (int i = 0; i < GAME_LIST_SIZE; i++){
+        String white = i % 2 == 0 ? arg : HANDLES[random.nextInt(HANDLES.length)];
+        String black = i % 2 == 0 ? HANDLES[random.nextInt(HANDLES.length)] : arg;
+        if (white.length() == 0)
+          white = HANDLES[i % HANDLES.length];
+        if (black.length() == 0)
+          black = HANDLES[(i + 1) % HANDLES.length];
+
+        addDatagram(Datagram.DG_GAMELIST_ITEM, i + " " + (2000000 + random.nextInt(1000000)) +
+          " {ICC 3 0} 2026.01." + (10 + i) + " 12:" + (10 + i) + ":00 " + white + " " +
+          (1000 + random.nextInt(1500)) + " " + black + " " + (1000 + random.nextInt(1500)) + " 1 2 0 " +
+          INITIAL_TIME + " 0 " + INITIAL_TIME + " 0 A04 1 1 0 {} 0");
+      }
+    }
+
+
+
+    /**
+     * Returns whether the client turned on the specified datagram.
+     */
+
+    private boolean isOn(int dg){
+      return level2Settings.get(dg);
+    }
+
+
+
+    /**
+     * Adds the datagram with the specified id and (already formatted) fields to
+     * the output buffer, if the client turned it on, counting it as sent.
+     */
+
+    private void addDatagram(int id, String fields){
+      if (!isOn(id))
+        return;
+
+      outBuf.append(DELIM).append('(').append(id);
+      if (fields != null)
+        outBuf.append(' ').append(fields);
+      outBuf.append(DELIM).append(')');
+      messageAdded();
+    }
+
+
+
+    /**
+     * Adds the prompt to the output buffer, if it's on.
+     */
+
+    private void addPrompt(){
+      if (isPromptOn)
+        outBuf.append(PROMPT);
+    }
+
+
+
+  }
+
+
+
+  /**
+   * The main method. Starts a server with the load parameters specified on
+   * the command line and runs until killed, periodically printing how many
+   * datagrams were sent.
+   */
+
+  public static void main(String [] args) throws Exception{
+    double [] options = {5000, 10, 1, 5, 1, 0};
+    try{
+      parseOptions(args, new String[]{"-port", "-games", "-moves", "-chat", "-seeks", "-lists"}, options);
+    } catch (RuntimeException e){
+        System.err.println("Usage: java free.chessclub.ChessclubStandInServer [-port <port>] [-games <count>]");
+        System.err.println("         [-moves <moves per second per game>] [-chat <tells per second>]");
+        System.err.println("         [-seeks <seeks per second>] [-lists <game lists per second>]");
+        System.exit(1);
+      }
+
+    ChessclubStandInServer server = new ChessclubStandInServer((int)options[0], (int)options[1], options[2],
+      options[3], options[4], options[5]);
+    run(server, (int)options[1] + " games at " + options[2] + " moves/s, " + options[3] + " tells/s, " +
+      options[4] + " seeks/s, " + options[5] + " game lists/s", "datagrams");
+  }
+
+
+
+}
@@ -0,0 +1,126 @@
+/**
+ * The chessclub.com connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chessclub.com connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chessclub.com connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chessclub.com connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.chessclub.level2;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import free.util.BenchmarkCorpus;
+import free.util.FormatException;
+
+
+/**
+ * Measures parsing the level2 datagrams of a recorded session, both on its own
+ * and followed by reading all the fields, the way the connection's handlers
+ * do.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DatagramBenchmark{
+
+
+
+  /**
+   * The datagrams of the recorded session, as the bytes between the
+   * delimiters.
+   */
+
+  private byte [][] datagrams;
+
+
+
+  /**
+   * The index of the next datagram to parse, shared by all the benchmarks.
+   */
+
+  private int index = 0;
+
+
+
+  /**
+   * Loads the recorded session.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    String [] entries = BenchmarkCorpus.loadEntries(DatagramBenchmark.class, "icc-datagrams.txt");
+    datagrams = new byte[entries.length][];
+    for (int i = 0; i < entries.length; i++)
+      datagrams[i] = entries[i].getBytes("ISO-8859-1");
+  }
+
+
+
+  /**
+   * Returns the next datagram, cycling through them.
+   */
+
+  private byte [] nextDatagram(){
+    if (++index >= datagrams.length)
+      index = 0;
+    return datagrams[index];
+  }
+
+
+
+  /**
+   * Parses a single datagram.
+   */
+
+  @Benchmark
+  public Datagram parse() throws FormatException{
+    byte [] datagram = nextDatagram();
+    return Datagram.parseDatagram(datagram, 0, datagram.length);
+  }
+
+
+
+  /**
+   * Parses a single datagram and reads all its fields as strings.
+   */
+
+  @Benchmark
+  public int parseAndReadFields() throws FormatException{
+    byte [] datagram = nextDatagram();
+    Datagram dg = Datagram.parseDatagram(datagram, 0, datagram.length);
+
+    int length = 0;
+    for (int i = 0; i < dg.getFieldCount(); i++)
+      length += dg.getString(i).length();
+
+    return length;
+  }
+
+
+
+}
@@ -0,0 +1,454 @@
+/**
+ * The freechess.org connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the freechess.org connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.freechess;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Iterator;
+
+import free.util.AbstractStandInServer;
+
+
+/**
+ * A small, local stand-in for a freechess.org server, used to benchmark and
+ * soak-test clients without a network. It speaks enough of the protocol to
+ * log a client in (including the ivar handshake on the login line) and then
+ * generates synthetic load at configurable rates: a number of observed games
+ * moving at a given rate (sent as style12 boards, or delta boards if the
+ * client sets the compressmove ivar), channel tells, and seeks being posted
+ * and removed (sent as <code>&lt;s&gt;</code> and <code>&lt;sr&gt;</code>
+ * lines if the client sets the seekinfo ivar).
+ * <p>Run with no arguments for usage information.
+ */
+
+public class FreechessStandInServer extends AbstractStandInServer{
+
+
+
+  /**
+   * The line terminator used by the server.
+   */
+
+  private static final String EOL = "\n\r";
+
+
+
+  /**
+   * The prompt.
+   */
+
+  private static final String PROMPT = "fics% ";
+
+
+
+  /**
+   * The initial time of the games, in seconds.
+   */
+
+  private static final int INITIAL_TIME = 180;
+
+
+
+  /**
+   * The boards of the knight shuffle, in style12 format, before each move.
+   */
+
+  private static final String [] BOARDS = {
+    "rnbqkbnr pppppppp -------- -------- -------- -------- PPPPPPPP RNBQKBNR",
+    "rnbqkbnr pppppppp -------- -------- -------- -----N-- PPPPPPPP RNBQKB-R",
+    "rnbqkb-r pppppppp -----n-- -------- -------- -----N-- PPPPPPPP RNBQKB-R",
+    "rnbqkb-r pppppppp -----n-- -------- -------- -------- PPPPPPPP RNBQKBNR"
+  };
+
+
+
+  /**
+   * The moves of the knight shuffle, in verbose format; each takes the board
+   * with the same index to the next one.
+   */
+
+  private static final String [] MOVES_VERBOSE = {"N/g1-f3", "N/g8-f6", "N/f3-g1", "N/f6-g8"};
+
+
+
+  /**
+   * Creates a new <code>FreechessStandInServer</code> with the specified
+   * port and load parameters. The server isn't started until
+   * {@link #start()} is called.
+   *
+   * @param port The port to listen on; 0 to pick any free port.
+   * @param gameCount The amount of games each client observes.
+   * @param movesPerSecond The amount of moves made per second in each game.
+   * @param chatLinesPerSecond The amount of channel tells sent per second.
+   * @param seeksPerSecond The amount of seeks posted (and as many removed) per
+   * second.
+   */
+
+  public FreechessStandInServer(int port, int gameCount, double movesPerSecond, double chatLinesPerSecond,
+      double seeksPerSecond){
+    super("freechess.org", EOL, INITIAL_TIME * 1000, port, gameCount, movesPerSecond, chatLinesPerSecond,
+      seeksPerSecond);
+  }
+
+
+
+  /**
+   * Creates a <code>FreechessSession</code> for the specified client.
+   */
+
+  @Override
+  protected Session createSession(Socket socket) throws IOException{
+    return new FreechessSession(socket);
+  }
+
+
+
+  /**
+   * A single client's session, encoding the load in the FICS protocol. The
+   * messages counted as sent are the lines.
+   */
+
+  private class FreechessSession extends Session{
+
+
+
+    /**
+     * Whether the client set the compressmove ivar.
+     */
+
+    private boolean isCompressMove = false;
+
+
+
+    /**
+     * Whether the client set the seekinfo ivar.
+     */
+
+    private boolean isSeekInfo = false;
+
+
+
+    /**
+     * Whether the client set the gameinfo ivar.
+     */
+
+    private boolean isGameInfo = false;
+
+
+
+    /**
+     * Creates a new <code>FreechessSession</code> with the specified client
+     * socket.
+     */
+
+    public FreechessSession(Socket socket) throws IOException{
+      super(socket);
+    }
+
+
+
+    /**
+     * Handles a line received before the client logged in.
+     */
+
+    @Override
+    protected void handleLoginLine(String line){
+      if (line.startsWith("%b")){
+        String bits = line.substring(2);
+        isCompressMove = isBitSet(bits, Ivar.COMPRESSMOVE.getIndex());
+        isGameInfo = isBitSet(bits, Ivar.GAMEINFO.getIndex());
+        isSeekInfo = isBitSet(bits, Ivar.SEEKINFO.getIndex());
+        outBuf.append(EOL); // Terminate the login prompt
+        addLine("#Ivars set.");
+      }
+      else if (line.length() != 0){
+        handle = line.equalsIgnoreCase("guest") ? "Guest" + (char)('A' + random.nextInt(26)) +
+          (char)('A' + random.nextInt(26)) + (char)('A' + random.nextInt(26)) +
+          (char)('A' + random.nextInt(26)) : line;
+
+        addLine("");
+        addLine("**** Starting FICS session as " + handle + (handle.startsWith("Guest") ? "(U)" : "") + " ****");
+        addLine("");
+        outBuf.append(PROMPT);
+
+        startLoad();
+      }
+    }
+
+
+
+    /**
+     * Returns whether the bit with the specified index is set in the
+     * specified ivar bit string.
+     */
+
+    private boolean isBitSet(String bits, int index){
+      return (index < bits.length()) && (bits.charAt(index) == '1');
+    }
+
+
+
+    /**
+     * Handles a command sent by the client after login.
+     */
+
+    @Override
+    protected void handleCommand(String command){
+      // Aliasing and unidling prefixes
+      if (command.startsWith("$$"))
+        command = command.substring(2);
+      else if (command.startsWith("$"))
+        command = command.substring(1);
+
+      if (command.length() == 0)
+        return;
+
+      String [] words = command.split(" +");
+      String name = words[0];
+
+      if (name.equals("iset") && (words.length == 3)){
+        boolean state = words[2].equals("1");
+        if (words[1].equals(Ivar.COMPRESSMOVE.getName()))
+          isCompressMove = state;
+        else if (words[1].equals(Ivar.GAMEINFO.getName()))
+          isGameInfo = state;
+        else if (words[1].equals(Ivar.SEEKINFO.getName()))
+          isSeekInfo = state;
+        addLine(words[1] + " " + (state ? "" : "un") + "set.");
+
+        if (isSeekInfo && words[1].equals(Ivar.SEEKINFO.getName())){
+          addLine("<sc>");
+          for (Iterator i = seeks.iterator(); i.hasNext();)
+            addSeekLine(((Integer)i.next()).intValue());
+        }
+      }
+      else if (command.equals("set ptime 0"))
+        addLine("Your prompt will now not show the time.");
+      else if (name.equals("set") || name.equals("iset") || name.startsWith("+") || name.startsWith("-") ||
+          name.equals("observe") || name.equals("unseek") || name.equals("tell") || name.equals("xtell"))
+        ; // Accepted silently
+      else if (name.equals("unobserve") && (words.length == 2)){
+        for (Iterator i = games.iterator(); i.hasNext();){
+          GameState game = (GameState)i.next();
+          if (String.valueOf(game.number).equals(words[1])){
+            i.remove();
+            addLine("Removing game " + game.number + " from observation list.");
+          }
+        }
+      }
+      else if (name.equals("quit")){
+        addLine("Logging you out.");
+        flush();
+        close();
+        return;
+      }
+      else
+        addLine(name + ": Command not found.");
+
+      outBuf.append(PROMPT);
+    }
+
+
+
+    /**
+     * Adds the gameinfo line, if the client asked for it, and the initial
+     * style12 board of the specified game.
+     */
+
+    @Override
+    protected void gameStarted(GameState game){
+      if (isGameInfo)
+        addLine("<g1> " + game.number + " p=0 t=blitz r=1 u=1,1 it=" + INITIAL_TIME + ",0 i=" + INITIAL_TIME +
+          ",0 pt=0 rt=" + game.whiteRating + "E," + game.blackRating + " ts=1,0");
+      addStyle12Line(game, 0);
+    }
+
+
+
+    /**
+     * Adds a delta board, if the client set compressmove, or a style12 board
+     * otherwise, for the move just made in the specified game.
+     */
+
+    @Override
+    protected void moveMade(GameState game, int moveTime){
+      if (isCompressMove){
+        int moveIndex = (game.ply - 1) % 4;
+        addLine("<d1> " + game.number + " " + game.ply + " " + MOVES_SAN[moveIndex] + " " + MOVES_SMITH[moveIndex] +
+          " " + moveTime + " " + ((game.ply % 2) == 1 ? game.whiteTime : game.blackTime));
+      }
+      else
+        addStyle12Line(game, moveTime);
+    }
+
+
+
+    /**
+     * Adds the game end line of the specified game.
+     */
+
+    @Override
+    protected void gameEnded(GameState game){
+      addLine("{Game " + game.number + " (" + game.white + " vs. " + game.black +
+        ") Game drawn by repetition} 1/2-1/2");
+    }
+
+
+
+    /**
+     * Adds a channel tell line.
+     */
+
+    @Override
+    protected void addChannelTell(String teller, int channel, String message){
+      addLine(teller + "(" + channel + "): " + message);
+    }
+
+
+
+    /**
+     * Adds the seekinfo line of the specified seek, if the client set the
+     * seekinfo ivar.
+     */
+
+    @Override
+    protected void seekPosted(int index){
+      if (isSeekInfo)
+        addSeekLine(index);
+    }
+
+
+
+    /**
+     * Adds the seek removal line of the specified seek, if the client set the
+     * seekinfo ivar.
+     */
+
+    @Override
+    protected void seekRemoved(int index){
+      if (isSeekInfo)
+        addLine("<sr> " + index);
+    }
+
+
+
+    /**
+     * Adds the prompt after the tick's lines, if there are any.
+     */
+
+    @Override
+    protected void loadTick(){
+      if (outBuf.length() != 0)
+        outBuf.append(PROMPT);
+    }
+
+
+
+    /**
+     * Adds a style12 line for the current state of the specified game, whose
+     * last move took the specified amount of time.
+     */
+
+    private void addStyle12Line(GameState game, int moveTime){
+      int boardIndex = game.ply % 4;
+      boolean isWhiteToMove = (game.ply % 2) == 0;
+      String moveVerbose = game.ply == 0 ? "none" : MOVES_VERBOSE[(game.ply - 1) % 4];
+      String moveSAN = game.ply == 0 ? "none" : MOVES_SAN[(game.ply - 1) % 4];
+
+      addLine("<12> " + BOARDS[boardIndex] + " " + (isWhiteToMove ? "W" : "B") + " -1 1 1 1 1 " + game.ply +
+        " " + game.number + " " + game.white + " " + game.black + " 0 " + (INITIAL_TIME / 60) + " 0 39 39 " +
+        game.whiteTime + " " + game.blackTime + " " + (game.ply / 2 + 1) + " " + moveVerbose + " " +
+        formatMoveTime(moveTime) + " " + moveSAN + " 0 " + (game.ply == 0 ? "0" : "1") + " 0");
+    }
+
+
+
+    /**
+     * Formats the specified move time, in milliseconds, the way style12 wants
+     * it: <code>(m:ss.mmm)</code>.
+     */
+
+    private String formatMoveTime(int moveTime){
+      int seconds = (moveTime / 1000) % 60;
+      int millis = moveTime % 1000;
+      return "(" + (moveTime / 60000) + ":" + (seconds < 10 ? "0" : "") + seconds + "." +
+        (millis < 100 ? (millis < 10 ? "00" : "0") : "") + millis + ")";
+    }
+
+
+
+    /**
+     * Adds the seekinfo line for the seek with the specified index.
+     */
+
+    private void addSeekLine(int index){
+      int time = 1 + (index % 15);
+      addLine("<s> " + index + " w=" + HANDLES[index % HANDLES.length] + " ti=00 rt=" + (1000 + (index * 37) % 1500) +
+        "E t=" + time + " i=" + (index % 3) + " r=" + ((index % 2) == 0 ? "r" : "u") + " tp=" +
+        (time < 3 ? "lightning" : time < 15 ? "blitz" : "standard") + " c=? rr=0-9999 a=t f=f");
+    }
+
+
+
+    /**
+     * Adds the specified line to the output buffer, counting it as sent.
+     */
+
+    @Override
+    protected void addLine(String line){
+      super.addLine(line);
+      messageAdded();
+    }
+
+
+
+  }
+
+
+
+  /**
+   * The main method. Starts a server with the load parameters specified on
+   * the command line and runs until killed, periodically printing how many
+   * lines were sent.
+   */
+
+  public static void main(String [] args) throws Exception{
+    double [] options = {5000, 10, 1, 5, 1};
+    try{
+      parseOptions(args, new String[]{"-port", "-games", "-moves", "-chat", "-seeks"}, options);
+    } catch (RuntimeException e){
+        System.err.println("Usage: java free.freechess.FreechessStandInServer [-port <port>] [-games <count>]");
+        System.err.println("         [-moves <moves per second per game>] [-chat <lines per second>]");
+        System.err.println("         [-seeks <seeks per second>]");
+        System.exit(1);
+      }
+
+    FreechessStandInServer server = new FreechessStandInServer((int)options[0], (int)options[1], options[2],
+      options[3], options[4]);
+    run(server, (int)options[1] + " games at " + options[2] + " moves/s, " + options[3] + " chat lines/s, " +
+      options[4] + " seeks/s", "lines");
+  }
+
+
+
+}
@@ -0,0 +1,131 @@
+/**
+ * The freechess.org connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the freechess.org connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.freechess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Compares the throughput of {@link FreechessConnection#handleMessage(Object)}
+ * when it classifies lines via its dispatch tables against trying every
+ * handler on every line, over a recorded session of observed games, seeks and
+ * chat.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HandleMessageBenchmark{
+
+
+
+  /**
+   * The connection whose <code>handleXXX</code> methods we run. It is never
+   * connected.
+   */
+
+  private FreechessConnection conn;
+
+
+
+  /**
+   * The lines of the recorded session.
+   */
+
+  private String [] lines;
+
+
+
+  /**
+   * Loads the recorded session.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    conn = new FreechessConnection("guest", null, null);
+    lines = loadLines("fics-session.txt");
+  }
+
+
+
+  /**
+   * Handles all the lines, classifying each by its leading characters first.
+   */
+
+  @Benchmark
+  public void dispatchTable(){
+    for (int i = 0; i < lines.length; i++){
+      String line = lines[i];
+      conn.handleLine(line, FreechessConnection.getCandidateHandlers(line));
+    }
+  }
+
+
+
+  /**
+   * Handles all the lines by trying every handler on each, in order.
+   */
+
+  @Benchmark
+  public void sequentialChain(){
+    for (int i = 0; i < lines.length; i++)
+      conn.handleLine(lines[i], FreechessConnection.ALL_HANDLERS);
+  }
+
+
+
+  /**
+   * Loads the lines of the specified resource, relative to this class.
+   */
+
+  static String [] loadLines(String resourceName) throws IOException{
+    BufferedReader in = new BufferedReader(new InputStreamReader(
+      HandleMessageBenchmark.class.getResourceAsStream(resourceName), "ISO-8859-1"));
+    try{
+      List lines = new ArrayList();
+      String line;
+      while ((line = in.readLine()) != null)
+        lines.add(line);
+
+      return (String [])lines.toArray(new String[lines.size()]);
+    } finally{
+        in.close();
+      }
+  }
+
+
+
+}
@@ -0,0 +1,158 @@
+/**
+ * The freechess.org connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the freechess.org connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.freechess;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Measures parsing the style12, gameinfo and seekinfo lines of a recorded
+ * session into their record objects. Run with <code>-prof gc</code> to see the
+ * amount of memory allocated per parsed line.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProtocolRecordBenchmark{
+
+
+
+  /**
+   * The style12 lines of the recorded session.
+   */
+
+  private String [] style12Lines;
+
+
+
+  /**
+   * The gameinfo lines of the recorded session.
+   */
+
+  private String [] gameInfoLines;
+
+
+
+  /**
+   * The seekinfo lines of the recorded session.
+   */
+
+  private String [] seekInfoLines;
+
+
+
+  /**
+   * The index of the next line to parse, shared by all the benchmarks.
+   */
+
+  private int index = 0;
+
+
+
+  /**
+   * Loads the recorded session and picks out the lines of each kind.
+   */
+
+  @Setup
+  public void setUp() throws IOException{
+    String [] lines = HandleMessageBenchmark.loadLines("fics-session.txt");
+    style12Lines = selectLines(lines, "<12> ");
+    gameInfoLines = selectLines(lines, "<g1> ");
+    seekInfoLines = selectLines(lines, "<s> ");
+  }
+
+
+
+  /**
+   * Returns the lines starting with the specified prefix.
+   */
+
+  private static String [] selectLines(String [] lines, String prefix){
+    List selected = new ArrayList();
+    for (int i = 0; i < lines.length; i++)
+      if (lines[i].startsWith(prefix))
+        selected.add(lines[i]);
+
+    return (String [])selected.toArray(new String[selected.size()]);
+  }
+
+
+
+  /**
+   * Returns the next line of the specified lines, cycling through them.
+   */
+
+  private String nextLine(String [] lines){
+    if (++index >= lines.length)
+      index = 0;
+    return lines[index];
+  }
+
+
+
+  /**
+   * Parses a single style12 line, as received for every move.
+   */
+
+  @Benchmark
+  public Style12Struct style12(){
+    return Style12Struct.parseStyle12Line(nextLine(style12Lines));
+  }
+
+
+
+  /**
+   * Parses a single gameinfo line.
+   */
+
+  @Benchmark
+  public GameInfoStruct gameInfo(){
+    return GameInfoStruct.parseGameInfoLine(nextLine(gameInfoLines));
+  }
+
+
+
+  /**
+   * Parses a single seekinfo line.
+   */
+
+  @Benchmark
+  public SeekInfoStruct seekInfo(){
+    return SeekInfoStruct.parseSeekInfoLine(nextLine(seekInfoLines));
+  }
+
+
+
+}
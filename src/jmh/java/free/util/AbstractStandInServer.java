@@ -0,0 +1,971 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * The scaffolding shared by the local chess server stand-ins used to
+ * benchmark and soak-test clients without a network. This class accepts
+ * clients, runs a reader thread per client and, once the client logs in, a
+ * load thread which ticks every {@link #TICK_TIME} milliseconds, making moves
+ * in the synthetic games, sending channel tells and posting seeks at the
+ * configured rates and then sending everything the tick produced in one
+ * write. A tick that starts late, because the previous write blocked, is
+ * counted as a late tick.
+ * <p>The synthetic games are simple knight shuffles - legal, but not exactly
+ * interesting. Each game ends, as a draw, after {@link #GAME_LENGTH} plies and
+ * is replaced by a new one. All the synthetic content is drawn from a random
+ * number generator with a fixed seed, so every session generates the same
+ * load - only its timing varies.
+ * <p>Subclasses implement the actual protocol, by providing a
+ * {@link Session} subclass which encodes the logins, commands, games, tells
+ * and seeks.
+ */
+
+public abstract class AbstractStandInServer{
+
+
+
+  /**
+   * The seed of the random number generator of each session.
+   */
+
+  private static final long RANDOM_SEED = 20021;
+
+
+
+  /**
+   * The time between two load generation ticks, in milliseconds.
+   */
+
+  protected static final int TICK_TIME = 10;
+
+
+
+  /**
+   * The amount of plies after which a game ends.
+   */
+
+  protected static final int GAME_LENGTH = 200;
+
+
+
+  /**
+   * The amount of seeks kept posted at any time.
+   */
+
+  protected static final int SEEK_POOL_SIZE = 50;
+
+
+
+  /**
+   * The handles used for the synthetic players.
+   */
+
+  protected static final String [] HANDLES = {"Knightmare", "PawnStar", "Bishopric", "Tempo", "Fianchetto",
+    "Blunderbuss", "Gambiteer", "Zugzwang", "Outpost", "Castler", "Rookie", "Endgamer"};
+
+
+
+  /**
+   * The chat messages used for channel tells.
+   */
+
+  private static final String [] MESSAGES = {"hi all", "gg", "anyone up for a 5 0?",
+    "that was a nice combination", "what a blunder", "is the server lagging for anyone else?",
+    "Qb3 is strong", "thanks for the game", "!"};
+
+
+
+  /**
+   * The moves of the knight shuffle, in SAN.
+   */
+
+  protected static final String [] MOVES_SAN = {"Nf3", "Nf6", "Ng1", "Ng8"};
+
+
+
+  /**
+   * The moves of the knight shuffle, in Smith-Warren format.
+   */
+
+  protected static final String [] MOVES_SMITH = {"g1f3", "g8f6", "f3g1", "f6g8"};
+
+
+
+  /**
+   * The name of the server we stand in for, used in the welcome message.
+   */
+
+  private final String serverName;
+
+
+
+  /**
+   * The line terminator used by the server.
+   */
+
+  private final String eol;
+
+
+
+  /**
+   * The initial time of the games, in milliseconds.
+   */
+
+  private final int initialTime;
+
+
+
+  /**
+   * The port we listen on; 0 to pick any free port.
+   */
+
+  private final int requestedPort;
+
+
+
+  /**
+   * The amount of games sent to each client.
+   */
+
+  private final int gameCount;
+
+
+
+  /**
+   * The amount of moves made per second in each game.
+   */
+
+  private final double movesPerSecond;
+
+
+
+  /**
+   * The amount of channel tells sent per second.
+   */
+
+  private final double chatLinesPerSecond;
+
+
+
+  /**
+   * The amount of seeks posted (and removed) per second.
+   */
+
+  private final double seeksPerSecond;
+
+
+
+  /**
+   * The server socket; <code>null</code> when not running.
+   */
+
+  private ServerSocket serverSocket = null;
+
+
+
+  /**
+   * The sessions of the currently connected clients.
+   */
+
+  private final List sessions = new ArrayList();
+
+
+
+  /**
+   * Creates a new <code>AbstractStandInServer</code> with the specified
+   * protocol details, port and load parameters. The server isn't started
+   * until {@link #start()} is called.
+   *
+   * @param serverName The name of the server we stand in for.
+   * @param eol The line terminator used by the server.
+   * @param initialTime The initial time of the games, in milliseconds.
+   * @param port The port to listen on; 0 to pick any free port.
+   * @param gameCount The amount of games sent to each client.
+   * @param movesPerSecond The amount of moves made per second in each game.
+   * @param chatLinesPerSecond The amount of channel tells sent per second.
+   * @param seeksPerSecond The amount of seeks posted (and as many removed) per
+   * second.
+   */
+
+  protected AbstractStandInServer(String serverName, String eol, int initialTime, int port, int gameCount,
+      double movesPerSecond, double chatLinesPerSecond, double seeksPerSecond){
+    if ((port < 0) || (port > 65535))
+      throw new IllegalArgumentException("Bad port: " + port);
+    if (gameCount < 0)
+      throw new IllegalArgumentException("gameCount may not be negative: " + gameCount);
+    if ((movesPerSecond < 0) || (chatLinesPerSecond < 0) || (seeksPerSecond < 0))
+      throw new IllegalArgumentException("Rates may not be negative");
+
+    this.serverName = serverName;
+    this.eol = eol;
+    this.initialTime = initialTime;
+    this.requestedPort = port;
+    this.gameCount = gameCount;
+    this.movesPerSecond = movesPerSecond;
+    this.chatLinesPerSecond = chatLinesPerSecond;
+    this.seeksPerSecond = seeksPerSecond;
+  }
+
+
+
+  /**
+   * Creates the session of a newly connected client.
+   */
+
+  protected abstract Session createSession(Socket socket) throws IOException;
+
+
+
+  /**
+   * Starts listening for clients.
+   */
+
+  public synchronized void start() throws IOException{
+    if (serverSocket != null)
+      throw new IllegalStateException("Already started");
+
+    serverSocket = new ServerSocket(requestedPort);
+
+    final ServerSocket socket = serverSocket;
+    Thread acceptThread = new Thread("StandInServerAcceptThread"){
+      @Override
+      public void run(){
+        try{
+          while (true){
+            Session session = createSession(socket.accept());
+            synchronized(AbstractStandInServer.this){
+              sessions.add(session);
+            }
+            session.start();
+          }
+        } catch (IOException e){
+            // The server socket was closed
+          }
+      }
+    };
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+
+
+  /**
+   * Returns the port we're listening on.
+   */
+
+  public synchronized int getPort(){
+    if (serverSocket == null)
+      throw new IllegalStateException("Not started");
+
+    return serverSocket.getLocalPort();
+  }
+
+
+
+  /**
+   * Stops listening and disconnects all the clients.
+   */
+
+  public synchronized void close() throws IOException{
+    if (serverSocket == null)
+      return;
+
+    serverSocket.close();
+    serverSocket = null;
+
+    Session [] sessionsArr = (Session [])sessions.toArray(new Session[sessions.size()]);
+    for (int i = 0; i < sessionsArr.length; i++)
+      sessionsArr[i].close();
+  }
+
+
+
+  /**
+   * Returns the total amount of messages (lines or datagrams, depending on
+   * the protocol) sent to all the clients so far.
+   */
+
+  public synchronized long getSentMessageCount(){
+    long count = 0;
+    for (Iterator i = sessions.iterator(); i.hasNext();)
+      count += ((Session)i.next()).getSentMessageCount();
+
+    return count;
+  }
+
+
+
+  /**
+   * Returns the total amount of load generation ticks, over all the clients,
+   * which started late because sending the previous tick's messages blocked -
+   * in other words, how often a client wasn't reading fast enough.
+   */
+
+  public synchronized long getLateTickCount(){
+    long count = 0;
+    for (Iterator i = sessions.iterator(); i.hasNext();)
+      count += ((Session)i.next()).getLateTickCount();
+
+    return count;
+  }
+
+
+
+  /**
+   * Removes the specified session from the list of sessions.
+   */
+
+  private synchronized void sessionClosed(Session session){
+    sessions.remove(session);
+  }
+
+
+
+  /**
+   * A single client's session. Subclasses encode the protocol; the methods
+   * they implement are all called with the lock of the session held.
+   */
+
+  protected abstract class Session{
+
+
+
+    /**
+     * The client's socket.
+     */
+
+    private final Socket socket;
+
+
+
+    /**
+     * The stream we write into.
+     */
+
+    private final OutputStream out;
+
+
+
+    /**
+     * The random number generator for this session.
+     */
+
+    protected final Random random = new Random(RANDOM_SEED);
+
+
+
+    /**
+     * The data waiting to be sent, as a single string.
+     */
+
+    protected final StringBuffer outBuf = new StringBuffer();
+
+
+
+    /**
+     * The client's handle; <code>null</code> until logged in.
+     */
+
+    protected String handle = null;
+
+
+
+    /**
+     * The games sent to the client.
+     */
+
+    protected final List games = new ArrayList();
+
+
+
+    /**
+     * The number of the next game to be started.
+     */
+
+    private int nextGameNumber = 1;
+
+
+
+    /**
+     * The indices of the posted seeks, oldest first.
+     */
+
+    protected final LinkedList seeks = new LinkedList();
+
+
+
+    /**
+     * The index of the next seek to be posted.
+     */
+
+    private int nextSeekIndex = 1;
+
+
+
+    /**
+     * The amount of messages sent so far.
+     */
+
+    private long sentMessageCount = 0;
+
+
+
+    /**
+     * The amount of ticks which started late.
+     */
+
+    private long lateTickCount = 0;
+
+
+
+    /**
+     * Whether the session has been closed.
+     */
+
+    private volatile boolean isClosed = false;
+
+
+
+    /**
+     * Creates a new <code>Session</code> with the specified client socket.
+     */
+
+    protected Session(Socket socket) throws IOException{
+      this.socket = socket;
+      this.out = socket.getOutputStream();
+      socket.setTcpNoDelay(true);
+    }
+
+
+
+    /**
+     * Handles a line received before the client logged in. Once the client
+     * logs in, this method should set {@link #handle} and call
+     * {@link #startLoad()}.
+     */
+
+    protected abstract void handleLoginLine(String line);
+
+
+
+    /**
+     * Handles a command sent by the client after login.
+     */
+
+    protected abstract void handleCommand(String command);
+
+
+
+    /**
+     * Adds the messages announcing the specified, newly started, game.
+     */
+
+    protected abstract void gameStarted(GameState game);
+
+
+
+    /**
+     * Adds the messages announcing the move just made in the specified game,
+     * which took the specified amount of time, in milliseconds.
+     */
+
+    protected abstract void moveMade(GameState game, int moveTime);
+
+
+
+    /**
+     * Adds the messages announcing the end of the specified game.
+     */
+
+    protected abstract void gameEnded(GameState game);
+
+
+
+    /**
+     * Adds a channel tell by the specified player in the specified channel.
+     */
+
+    protected abstract void addChannelTell(String teller, int channel, String message);
+
+
+
+    /**
+     * Adds the messages announcing the seek with the specified index.
+     */
+
+    protected abstract void seekPosted(int index);
+
+
+
+    /**
+     * Adds the messages announcing the removal of the seek with the specified
+     * index.
+     */
+
+    protected abstract void seekRemoved(int index);
+
+
+
+    /**
+     * Called once the initial games have been started, before the first
+     * tick. The default implementation does nothing.
+     */
+
+    protected void loadStarted(){
+
+    }
+
+
+
+    /**
+     * Called at the end of each tick, right before its messages are sent, to
+     * add any additional load. The default implementation does nothing.
+     */
+
+    protected void loadTick(){
+
+    }
+
+
+
+    /**
+     * Starts the session's threads.
+     */
+
+    public void start(){
+      Thread readerThread = new Thread("StandInServerReaderThread"){
+        @Override
+        public void run(){
+          try{
+            readerLoop();
+          } catch (IOException e){}
+            finally{
+              close();
+            }
+        }
+      };
+      readerThread.setDaemon(true);
+      readerThread.start();
+    }
+
+
+
+    /**
+     * Starts generating the load; called once the client logs in.
+     */
+
+    protected void startLoad(){
+      Thread loadThread = new Thread("StandInServerLoadThread"){
+        @Override
+        public void run(){
+          try{
+            loadLoop();
+          } finally{
+              close();
+            }
+        }
+      };
+      loadThread.setDaemon(true);
+      loadThread.start();
+    }
+
+
+
+    /**
+     * Closes the session.
+     */
+
+    public void close(){
+      if (isClosed)
+        return;
+      isClosed = true;
+
+      try{
+        socket.close();
+      } catch (IOException e){}
+
+      sessionClosed(this);
+    }
+
+
+
+    /**
+     * Returns the amount of messages sent so far.
+     */
+
+    public synchronized long getSentMessageCount(){
+      return sentMessageCount;
+    }
+
+
+
+    /**
+     * Returns the amount of ticks which started late.
+     */
+
+    public synchronized long getLateTickCount(){
+      return lateTickCount;
+    }
+
+
+
+    /**
+     * Reads and handles the lines sent by the client.
+     */
+
+    private void readerLoop() throws IOException{
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+
+      synchronized(this){
+        addLine("Welcome to the " + serverName + " stand-in server.");
+        addLine("");
+        outBuf.append("login: ");
+        flush();
+      }
+
+      String line;
+      while ((line = in.readLine()) != null){
+        line = line.trim();
+        synchronized(this){
+          if (handle == null)
+            handleLoginLine(line);
+          else
+            handleCommand(line);
+          flush();
+        }
+      }
+    }
+
+
+
+    /**
+     * Generates the load, one tick at a time, until the session is closed.
+     */
+
+    private void loadLoop(){
+      synchronized(this){
+        for (int i = 0; i < gameCount; i++)
+          startGame();
+        loadStarted();
+        flush();
+      }
+
+      double pendingMoves = 0;
+      double pendingChatLines = 0;
+      double pendingSeeks = 0;
+      int nextGame = 0;
+      long tickTime = System.currentTimeMillis();
+
+      while (!isClosed){
+        tickTime += TICK_TIME;
+        long sleepTime = tickTime - System.currentTimeMillis();
+        if (sleepTime > 0){
+          try{
+            Thread.sleep(sleepTime);
+          } catch (InterruptedException e){
+              return;
+            }
+        }
+
+        synchronized(this){
+          if (sleepTime <= 0)
+            lateTickCount++;
+
+          pendingMoves += gameCount * movesPerSecond * TICK_TIME / 1000;
+          pendingChatLines += chatLinesPerSecond * TICK_TIME / 1000;
+          pendingSeeks += seeksPerSecond * TICK_TIME / 1000;
+
+          for (; (pendingMoves >= 1) && !games.isEmpty(); pendingMoves--)
+            makeMove((GameState)games.get(nextGame++ % games.size()));
+          for (; pendingChatLines >= 1; pendingChatLines--)
+            addChannelTell(HANDLES[random.nextInt(HANDLES.length)], 1 + random.nextInt(100),
+              MESSAGES[random.nextInt(MESSAGES.length)]);
+          for (; pendingSeeks >= 1; pendingSeeks--)
+            postSeek();
+
+          if (games.isEmpty())
+            pendingMoves = 0;
+
+          loadTick();
+          flush();
+        }
+      }
+    }
+
+
+
+    /**
+     * Starts a new game and adds it to the list of games.
+     */
+
+    protected void startGame(){
+      GameState game = new GameState(nextGameNumber++, HANDLES[random.nextInt(HANDLES.length)],
+        HANDLES[random.nextInt(HANDLES.length)], 1000 + random.nextInt(1500), 1000 + random.nextInt(1500),
+        initialTime);
+      games.add(game);
+      gameStarted(game);
+    }
+
+
+
+    /**
+     * Makes the next move in the specified game, ending it (and starting a new
+     * one instead) if it's long enough.
+     */
+
+    private void makeMove(GameState game){
+      int moveTime = 500 + random.nextInt(3000);
+      if ((game.ply % 2) == 0)
+        game.whiteTime = Math.max(0, game.whiteTime - moveTime);
+      else
+        game.blackTime = Math.max(0, game.blackTime - moveTime);
+      game.ply++;
+
+      moveMade(game, moveTime);
+
+      if (game.ply >= GAME_LENGTH){
+        games.remove(game);
+        gameEnded(game);
+        startGame();
+      }
+    }
+
+
+
+    /**
+     * Posts a new seek, removing the oldest one if there are too many.
+     */
+
+    protected void postSeek(){
+      if (seeks.size() >= SEEK_POOL_SIZE)
+        seekRemoved(((Integer)seeks.removeFirst()).intValue());
+
+      int index = nextSeekIndex++;
+      seeks.addLast(new Integer(index));
+      seekPosted(index);
+    }
+
+
+
+    /**
+     * Adds the specified line to the output buffer.
+     */
+
+    protected void addLine(String line){
+      outBuf.append(line).append(eol);
+    }
+
+
+
+    /**
+     * Counts a message as sent; called by subclasses for each message they
+     * add to the output buffer.
+     */
+
+    protected void messageAdded(){
+      sentMessageCount++;
+    }
+
+
+
+    /**
+     * Sends the contents of the output buffer. This blocks if the client isn't
+     * reading fast enough.
+     */
+
+    protected void flush(){
+      if (outBuf.length() == 0)
+        return;
+
+      try{
+        out.write(outBuf.toString().getBytes("ISO-8859-1"));
+        out.flush();
+      } catch (IOException e){
+          close();
+        }
+      outBuf.setLength(0);
+    }
+
+
+
+  }
+
+
+
+  /**
+   * The state of a single synthetic game.
+   */
+
+  protected static class GameState{
+
+
+
+    /**
+     * The game number.
+     */
+
+    public final int number;
+
+
+
+    /**
+     * The white player's handle.
+     */
+
+    public final String white;
+
+
+
+    /**
+     * The black player's handle.
+     */
+
+    public final String black;
+
+
+
+    /**
+     * The white player's rating.
+     */
+
+    public final int whiteRating;
+
+
+
+    /**
+     * The black player's rating.
+     */
+
+    public final int blackRating;
+
+
+
+    /**
+     * The amount of plies played.
+     */
+
+    public int ply = 0;
+
+
+
+    /**
+     * White's remaining time, in milliseconds.
+     */
+
+    public int whiteTime;
+
+
+
+    /**
+     * Black's remaining time, in milliseconds.
+     */
+
+    public int blackTime;
+
+
+
+    /**
+     * Creates a new <code>GameState</code> with the specified initial time,
+     * in milliseconds.
+     */
+
+    public GameState(int number, String white, String black, int whiteRating, int blackRating, int initialTime){
+      this.number = number;
+      this.white = white;
+      this.black = black;
+      this.whiteRating = whiteRating;
+      this.blackRating = blackRating;
+      this.whiteTime = initialTime;
+      this.blackTime = initialTime;
+    }
+
+
+
+  }
+
+
+
+  /**
+   * Parses the command line options of a stand-in server's main method. The
+   * options come in <code>-name value</code> pairs; the value of each option
+   * is stored in the element of <code>optionValues</code> with the same index
+   * as its name in <code>optionNames</code>, which holds the default values
+   * on entry.
+   *
+   * @throws IllegalArgumentException if an unknown option is specified.
+   * @throws RuntimeException if the options are otherwise malformed.
+   */
+
+  protected static void parseOptions(String [] args, String [] optionNames, double [] optionValues){
+    for (int i = 0; i < args.length; i += 2){
+      String option = args[i];
+      String value = args[i + 1];
+
+      int index = optionNames.length - 1;
+      while ((index >= 0) && !optionNames[index].equals(option))
+        index--;
+      if (index < 0)
+        throw new IllegalArgumentException(option);
+
+      optionValues[index] = Double.parseDouble(value);
+    }
+  }
+
+
+
+  /**
+   * Starts the specified server and runs until killed, periodically printing
+   * how many messages, of the specified kind, were sent.
+   */
+
+  protected static void run(AbstractStandInServer server, String description, String messageKind)
+      throws IOException, InterruptedException{
+    server.start();
+    System.out.println("Listening on port " + server.getPort() + ": " + description);
+
+    long lastMessageCount = 0;
+    while (true){
+      Thread.sleep(5000);
+      long messageCount = server.getSentMessageCount();
+      System.out.println((messageCount - lastMessageCount) / 5 + " " + messageKind + "/s, " +
+        server.getLateTickCount() + " late ticks");
+      lastMessageCount = messageCount;
+    }
+  }
+
+
+
+}
@@ -0,0 +1,68 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Loads the input corpora of the benchmarks. A corpus is a text resource,
+ * encoded in ISO-8859-1, with one entry per line; empty lines and lines
+ * starting with <code>'#'</code> are ignored.
+ */
+
+public class BenchmarkCorpus{
+
+
+
+  /**
+   * Returns the entries of the corpus with the specified resource name,
+   * relative to the specified class.
+   */
+
+  public static String [] loadEntries(Class owner, String resourceName) throws IOException{
+    InputStream resource = owner.getResourceAsStream(resourceName);
+    if (resource == null)
+      throw new IOException("Missing corpus: " + resourceName);
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(resource, "ISO-8859-1"));
+    try{
+      List entries = new ArrayList();
+      String line;
+      while ((line = in.readLine()) != null)
+        if ((line.length() != 0) && !line.startsWith("#"))
+          entries.add(line);
+
+      return (String [])entries.toArray(new String[entries.size()]);
+    } finally{
+        in.close();
+      }
+  }
+
+
+
+}
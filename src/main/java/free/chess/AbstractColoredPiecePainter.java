@@ -158,7 +158,10 @@ public abstract class AbstractColoredPiecePainter implements ColoredPiecePainter
     if (color == null)
       throw new IllegalArgumentException("Null color");
     
-    whiteColor = color;
+    if (!color.equals(whiteColor)){
+      whiteColor = color;
+      colorsChanged();
+    }
   }
 
 
@@ -185,7 +188,10 @@ public abstract class AbstractColoredPiecePainter implements ColoredPiecePainter
     if (color == null)
       throw new IllegalArgumentException("Null color");
     
-    blackColor = color;
+    if (!color.equals(blackColor)){
+      blackColor = color;
+      colorsChanged();
+    }
   }
 
 
@@ -212,7 +218,10 @@ public abstract class AbstractColoredPiecePainter implements ColoredPiecePainter
     if (color == null)
       throw new IllegalArgumentException("Null color");
     
-    whiteOutline = color;
+    if (!color.equals(whiteOutline)){
+      whiteOutline = color;
+      colorsChanged();
+    }
   }
 
 
@@ -239,7 +248,22 @@ public abstract class AbstractColoredPiecePainter implements ColoredPiecePainter
     if (color == null)
       throw new IllegalArgumentException("Null color");
     
-    blackOutline = color;
+    if (!color.equals(blackOutline)){
+      blackOutline = color;
+      colorsChanged();
+    }
+  }
+  
+  
+  
+  /**
+   * Invoked when one of the piece or outline colors changes. The default
+   * implementation does nothing; painters which cache rendered pieces should
+   * override this method to discard them.
+   */
+  
+  protected void colorsChanged(){
+    
   }
   
   
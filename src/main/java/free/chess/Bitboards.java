@@ -0,0 +1,328 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+
+/**
+ * Utilities for working with bitboards - <code>long</code>s where each bit
+ * stands for a square of the board, bit <code>i</code> standing for the square
+ * whose {@link Square#getIndex() index} is <code>i</code> (a1 is bit 0, h1 is
+ * bit 7 and h8 is bit 63). Provides precomputed attack masks for the standard
+ * chess pieces, from which both {@link Position} and the
+ * {@link ChesslikeGenericVariant} family compute occupancy and attack
+ * information without walking the board square by square.
+ */
+
+public final class Bitboards{
+  
+  
+  
+  /**
+   * The squares, by index.
+   */
+  
+  private static final Square [] SQUARES = new Square[64];
+  
+  
+  
+  /**
+   * The file and rank offsets of the eight ray directions, in the order N, NE,
+   * E, NW, S, SW, W, SE. The first four point towards higher square indices,
+   * the rest towards lower ones. Even directions are orthogonal, odd ones are
+   * diagonal.
+   */
+  
+  private static final int [][] DIRECTIONS = new int[][]{
+    new int[]{0, 1}, new int[]{1, 1}, new int[]{1, 0}, new int[]{-1, 1},
+    new int[]{0, -1}, new int[]{-1, -1}, new int[]{-1, 0}, new int[]{1, -1}
+  };
+  
+  
+  
+  /**
+   * The rays, by direction and square index - the squares reached by moving
+   * from the square in the direction until the edge of the board, not
+   * including the square itself.
+   */
+  
+  private static final long [][] RAYS = new long[8][64];
+  
+  
+  
+  /**
+   * The squares attacked by a knight, by square index.
+   */
+  
+  private static final long [] KNIGHT_ATTACKS = new long[64];
+  
+  
+  
+  /**
+   * The squares attacked by a king, by square index.
+   */
+  
+  private static final long [] KING_ATTACKS = new long[64];
+  
+  
+  
+  /**
+   * The squares attacked by a white pawn, by square index.
+   */
+  
+  private static final long [] WHITE_PAWN_ATTACKS = new long[64];
+  
+  
+  
+  /**
+   * The squares attacked by a black pawn, by square index.
+   */
+  
+  private static final long [] BLACK_PAWN_ATTACKS = new long[64];
+  
+  
+  
+  /**
+   * The squares strictly between two squares lying on a common rank, file or
+   * diagonal, by the indices of the two squares; 0 for squares which don't.
+   */
+  
+  private static final long [][] BETWEEN = new long[64][64];
+  
+  
+  
+  /**
+   * The full line (rank, file or diagonal, from edge to edge) through two
+   * squares lying on a common one, by the indices of the two squares; 0 for
+   * squares which don't, or are the same square.
+   */
+  
+  private static final long [][] LINES = new long[64][64];
+  
+  
+  
+  static{
+    int [][] knightOffsets = new int[][]{
+      new int[]{1, 2}, new int[]{2, 1}, new int[]{2, -1}, new int[]{1, -2},
+      new int[]{-1, -2}, new int[]{-2, -1}, new int[]{-2, 1}, new int[]{-1, 2}
+    };
+    
+    for (int index = 0; index < 64; index++){
+      int file = index & 7;
+      int rank = index >> 3;
+      SQUARES[index] = Square.getInstance(file, rank);
+      
+      for (int dir = 0; dir < 8; dir++){
+        int fileOffset = DIRECTIONS[dir][0];
+        int rankOffset = DIRECTIONS[dir][1];
+        KING_ATTACKS[index] |= mask(file + fileOffset, rank + rankOffset);
+        for (int f = file + fileOffset, r = rank + rankOffset; Square.isValid(f, r); f += fileOffset, r += rankOffset)
+          RAYS[dir][index] |= mask(f, r);
+        
+        KNIGHT_ATTACKS[index] |= mask(file + knightOffsets[dir][0], rank + knightOffsets[dir][1]);
+      }
+      
+      WHITE_PAWN_ATTACKS[index] = mask(file - 1, rank + 1) | mask(file + 1, rank + 1);
+      BLACK_PAWN_ATTACKS[index] = mask(file - 1, rank - 1) | mask(file + 1, rank - 1);
+    }
+    
+    for (int index = 0; index < 64; index++){
+      for (int dir = 0; dir < 8; dir++){
+        long ray = RAYS[dir][index];
+        long line = ray | RAYS[(dir + 4) & 7][index] | (1L << index);
+        for (long targets = ray; targets != 0; targets &= targets - 1){
+          int target = Long.numberOfTrailingZeros(targets);
+          BETWEEN[index][target] = ray & ~RAYS[dir][target] & ~(1L << target);
+          LINES[index][target] = line;
+        }
+      }
+    }
+  }
+  
+  
+  
+  /**
+   * No instances.
+   */
+  
+  private Bitboards(){
+    
+  }
+  
+  
+  
+  /**
+   * Returns the bitboard of the square with the specified file and rank, or 0
+   * if they don't specify a valid square.
+   */
+  
+  public static long mask(int file, int rank){
+    return Square.isValid(file, rank) ? 1L << ((rank << 3) | file) : 0;
+  }
+  
+  
+  
+  /**
+   * Returns the bitboard of the specified square.
+   */
+  
+  public static long mask(Square square){
+    return 1L << square.getIndex();
+  }
+  
+  
+  
+  /**
+   * Returns the square with the specified index.
+   */
+  
+  public static Square squareAt(int index){
+    return SQUARES[index];
+  }
+  
+  
+  
+  /**
+   * Returns the index into per-color bitboard arrays of the specified piece
+   * color - 0 for {@link Piece#WHITE} and 1 for {@link Piece#BLACK}.
+   */
+  
+  public static int colorIndex(int color){
+    return color == Piece.WHITE ? 0 : 1;
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked by a knight standing on the square with the
+   * specified index.
+   */
+  
+  public static long getKnightAttacks(int index){
+    return KNIGHT_ATTACKS[index];
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked by a king standing on the square with the
+   * specified index.
+   */
+  
+  public static long getKingAttacks(int index){
+    return KING_ATTACKS[index];
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked (diagonally, not the squares it moves to) by
+   * a pawn of the specified color standing on the square with the specified
+   * index.
+   */
+  
+  public static long getPawnAttacks(int color, int index){
+    return color == Piece.WHITE ? WHITE_PAWN_ATTACKS[index] : BLACK_PAWN_ATTACKS[index];
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked by a bishop standing on the square with the
+   * specified index, given the specified occupied squares. The squares of the
+   * first pieces in the way are included.
+   */
+  
+  public static long getBishopAttacks(int index, long occupied){
+    return rayAttacks(1, index, occupied) | rayAttacks(3, index, occupied) |
+      rayAttacks(5, index, occupied) | rayAttacks(7, index, occupied);
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked by a rook standing on the square with the
+   * specified index, given the specified occupied squares. The squares of the
+   * first pieces in the way are included.
+   */
+  
+  public static long getRookAttacks(int index, long occupied){
+    return rayAttacks(0, index, occupied) | rayAttacks(2, index, occupied) |
+      rayAttacks(4, index, occupied) | rayAttacks(6, index, occupied);
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked by a queen standing on the square with the
+   * specified index, given the specified occupied squares.
+   */
+  
+  public static long getQueenAttacks(int index, long occupied){
+    return getBishopAttacks(index, occupied) | getRookAttacks(index, occupied);
+  }
+  
+  
+  
+  /**
+   * Returns the squares strictly between the squares with the specified
+   * indices, if they lie on a common rank, file or diagonal; 0 otherwise.
+   */
+  
+  public static long getBetween(int index1, int index2){
+    return BETWEEN[index1][index2];
+  }
+  
+  
+  
+  /**
+   * Returns the whole rank, file or diagonal on which the squares with the
+   * specified indices lie, from edge to edge; 0 if they don't lie on a common
+   * one.
+   */
+  
+  public static long getLine(int index1, int index2){
+    return LINES[index1][index2];
+  }
+  
+  
+  
+  /**
+   * Returns the squares attacked along the ray in the specified direction from
+   * the square with the specified index, up to and including the first
+   * occupied square.
+   */
+  
+  private static long rayAttacks(int direction, int index, long occupied){
+    long ray = RAYS[direction][index];
+    long blockers = ray & occupied;
+    if (blockers == 0)
+      return ray;
+    
+    // Rays in the first four directions go towards higher indices, so the nearest blocker is the lowest bit
+    int blocker = direction < 4 ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers);
+    return ray & ~RAYS[direction][blocker];
+  }
+  
+  
+  
+}
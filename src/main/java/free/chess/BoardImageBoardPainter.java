@@ -34,12 +34,15 @@ import java.util.Set;
 
 import free.util.IOUtilities;
 import free.util.ImageUtilities;
+import free.util.ScaledImageCache;
 
 
 
 /**
  * A <code>BoardPainter</code> which paints the entire board using a single,
- * scaled image.
+ * scaled image. The scaled versions of the image are kept in the shared
+ * {@link ScaledImageCache}, so boards of different sizes sharing the painter
+ * don't evict each other's image.
  */
 
 public class BoardImageBoardPainter implements ResourceBoardPainter{
@@ -73,14 +76,6 @@ public class BoardImageBoardPainter implements ResourceBoardPainter{
   
   
   
-  /**
-   * The board image, scaled according to the last request to paint a board.
-   */
-  
-  private Image scaledBoardImage = null;
-  
-  
-  
   /**
    * When <code>BoardImageBoardPainter</code> is used as a
    * <code>ResourceBoardPainter</code>, this specified the URL of the board's
@@ -117,6 +112,7 @@ public class BoardImageBoardPainter implements ResourceBoardPainter{
    */
 
   public BoardImageBoardPainter(Image boardImage){
+    ImageUtilities.preload(boardImage);
     this.boardImage = boardImage;
   }
   
@@ -178,14 +174,14 @@ public class BoardImageBoardPainter implements ResourceBoardPainter{
   
   
   /**
-   * If the board image is already loaded, prepares the scaled version for the
-   * specified board size and returns <code>true</code>. Otherwise, starts
-   * loading it. If asynchronous loading is enabled, the loading is done in a
-   * background thread, otherwise, waits until the loading is done.
+   * If the board image is already loaded, returns <code>true</code>.
+   * Otherwise, starts loading it. If asynchronous loading is enabled, the
+   * loading is done in a background thread, otherwise, waits until the loading
+   * is done.
    * Returns whether the image is ready. 
    */
   
-  protected synchronized boolean prepareBoardImage(int width, int height, Component target){
+  protected synchronized boolean prepareBoardImage(Component target){
     if (boardImage == null){
       if (imageDataReceiver != null){ // Already being loaded
         imageDataReceiver.addComponentToRepaint(target);
@@ -200,33 +196,11 @@ public class BoardImageBoardPainter implements ResourceBoardPainter{
       else{
         imageDataReceiver = new ImageDataReceiver(null);
         IOUtilities.loadSynchronously(new URL[]{boardImageUrl}, null, imageDataReceiver, true);
-        if (boardImage == null)
-          return false;
-        
-        scaleBoardImage(width, height);
-        return true;
+        return boardImage != null;
       }
     }
-    else{
-      scaleBoardImage(width, height);
+    else
       return true;
-    }
-  }
-  
-  
-  
-  /**
-   * Scales the board image to the specified size.
-   */
-
-  private void scaleBoardImage(int width, int height){
-    if ((scaledBoardImage != null) &&
-        (scaledBoardImage.getWidth(null) == width) &&
-        (scaledBoardImage.getHeight(null) == height))
-      return;
-    
-    scaledBoardImage = boardImage.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-    ImageUtilities.preload(scaledBoardImage);
   }
   
   
@@ -238,8 +212,11 @@ public class BoardImageBoardPainter implements ResourceBoardPainter{
 
   @Override
   public void paintBoard(Graphics g, Component component, int x, int y, int width, int height){
-    if (prepareBoardImage(width, height, component))
-      g.drawImage(scaledBoardImage, x, y, component);
+    if (prepareBoardImage(component)){
+      Image scaledBoardImage =
+        ScaledImageCache.getInstance().getScaledImage(boardImage, width, height, component);
+      g.drawImage(scaledBoardImage, x, y, width, height, component);
+    }
     else
       whileLoadingDelegate.paintBoard(g, component, x, y, width, height);
   }
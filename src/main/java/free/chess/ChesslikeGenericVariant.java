@@ -21,9 +21,8 @@
 
 package free.chess;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 
@@ -43,6 +42,12 @@ import java.util.List;
  * {@link #createMove(Position, Square, Square, Piece, String)} method as it
  * already calls the forementioned methods when determining the properties of
  * the created ChessMove.
+ *
+ * <P>The target squares of knights, kings and sliding pieces are computed from
+ * the bitboards of the position and the precomputed attack masks of
+ * {@link Bitboards}. Subclasses may query the same information via
+ * {@link Position#getOccupancy(Player)}, {@link Position#getPieceMask(Piece)}
+ * and {@link #getAttackersMask(Position, Square, Player)}.
  */
 
 
@@ -601,6 +606,10 @@ public class ChesslikeGenericVariant implements WildVariant{
    * Unlike the {@link #makeMove(Move, Position, Position.Modifier)}
    * method, this method does not enforce the wild variant of the position
    * by calling {@link #checkPosition(Position)}.
+   * <P>The castling rights lost by the move, as determined by
+   * {@link #getCastlingRightsLost(Position, ChessMove)}, are removed from the
+   * position, and the en passant file is set to the file of the double pawn
+   * push, if the move is one.
    */
   
   public void makeChessMove(ChessMove cmove, Position pos, Position.Modifier modifier){
@@ -612,6 +621,7 @@ public class ChesslikeGenericVariant implements WildVariant{
     Square startingSquare = cmove.getStartingSquare();
     Square endingSquare = cmove.getEndingSquare();
     ChessPiece movingPiece = (ChessPiece)pos.getPieceAt(startingSquare);
+    int lostCastlingRights = getCastlingRightsLost(pos, cmove);
     
     modifier.setPieceAt(null, startingSquare);
     if (cmove.isPromotion())
@@ -634,11 +644,54 @@ public class ChesslikeGenericVariant implements WildVariant{
       modifier.setPieceAt(rook, rookEndingSquare);
     }
     
+    modifier.setCastlingRights(pos.getCastlingRights() & ~lostCastlingRights);
+    modifier.setEnPassantFile(cmove.getDoublePawnPushFile());
     modifier.setCurrentPlayer(cmove.getPlayer().getOpponent());
   }
   
   
   
+  /**
+   * Returns the castling rights (a combination of the
+   * <code>Position.XXX_CASTLING</code> constants) lost by making the specified
+   * move in the specified position, which is the position before the move is
+   * made. The default implementation assumes the rooks start in the corners -
+   * a king move loses both rights of its side, and a move from or to a corner
+   * loses the right of castling with the rook in that corner.
+   */
+  
+  protected int getCastlingRightsLost(Position pos, ChessMove cmove){
+    int lostRights = getCornerCastlingRight(cmove.getStartingSquare()) |
+      getCornerCastlingRight(cmove.getEndingSquare());
+    
+    ChessPiece movingPiece = (ChessPiece)pos.getPieceAt(cmove.getStartingSquare());
+    if ((movingPiece != null) && movingPiece.isKing())
+      lostRights |= movingPiece.isWhite() ?
+        (Position.WHITE_KINGSIDE_CASTLING | Position.WHITE_QUEENSIDE_CASTLING) :
+        (Position.BLACK_KINGSIDE_CASTLING | Position.BLACK_QUEENSIDE_CASTLING);
+    
+    return lostRights;
+  }
+  
+  
+  
+  /**
+   * Returns the castling right of castling with a rook starting on the
+   * specified square, if it's a corner of the board; 0 otherwise.
+   */
+  
+  protected static int getCornerCastlingRight(Square square){
+    switch (square.getIndex()){
+      case 0: return Position.WHITE_QUEENSIDE_CASTLING;
+      case 7: return Position.WHITE_KINGSIDE_CASTLING;
+      case 56: return Position.BLACK_QUEENSIDE_CASTLING;
+      case 63: return Position.BLACK_KINGSIDE_CASTLING;
+      default: return 0;
+    }
+  }
+  
+  
+  
   /**
    * Returns what is described by the {@link #parseChessPiece(String)} method.
    *
@@ -712,230 +765,823 @@ public class ChesslikeGenericVariant implements WildVariant{
   
   @Override
   public Collection getTargetSquares(Position pos, Square square){
+    return SquareSet.toList(getTargetSquareMask(pos, square));
+  }
+  
+  
+  
+  /**
+   * {@inheritDoc} If this variant has the legality of regular chess (see
+   * {@link #hasChessLegality()}) and the piece belongs to the player to move,
+   * these are exactly its legal target squares; otherwise they are those
+   * returned by {@link #getChessTargetSquareMask(Position, Square)}.
+   */
+  
+  @Override
+  public long getTargetSquareMask(Position pos, Square square){
     checkPosition(pos);
     
-    return getChessTargetSquares(pos, square);
+    Piece piece = pos.getPieceAt(square);
+    if (hasChessLegality() && (piece != null) && (piece.getPlayer() == pos.getCurrentPlayer()))
+      return getLegalTargetMask(pos, square);
+    
+    return getChessTargetSquareMask(pos, square);
   }
   
   
   
   /**
-   * Same as {@link #getTargetSquares(Position, Square)}, but does not check
-   * that the wild variant of the specified position is <code>this</code>
-   * variant. This method is here for the benefit of <code>WildVariant</code>s
-   * which don't subclass this class, but have the same target squares as normal
-   * chess. The method isn't static because it uses instance methods such as
+   * Returns the squares returned by
+   * {@link #getChessTargetSquareMask(Position, Square)}, as a list.
+   */
+  
+  public Collection getChessTargetSquares(Position pos, Square square){
+    return SquareSet.toList(getChessTargetSquareMask(pos, square));
+  }
+  
+  
+  
+  /**
+   * Returns the squares to which the piece at the specified square may move by
+   * the movement rules of its kind, regardless of whether the move leaves the
+   * king attacked, as a {@link SquareSet}. Does not check that the wild variant
+   * of the specified position is <code>this</code> variant. This method is here
+   * for the benefit of <code>WildVariant</code>s which don't subclass this
+   * class, but have the same target squares as normal chess. The method isn't
+   * static because it uses instance methods such as
    * {@link #isEnPassant(Position, Square, Square, ChessPiece)}, which may be
    * overridden, but it may be used via {@link Chess#getInstance()} from a 
    * non-subclass variant.
    */
   
-  public Collection getChessTargetSquares(Position pos, Square square){
+  public long getChessTargetSquareMask(Position pos, Square square){
     ChessPiece piece = (ChessPiece)pos.getPieceAt(square);
     if (piece == null)
-      return Collections.EMPTY_SET;
+      return SquareSet.EMPTY;
     
     if (piece.isKing())
-      return getKingTargetSquares(pos, square);
+      return getKingTargetSquareMask(pos, square);
     else if (piece.isQueen())
-      return getQueenTargetSquares(pos, square);
+      return getQueenTargetSquareMask(pos, square);
     else if (piece.isRook())
-      return getRookTargetSquares(pos, square);
+      return getRookTargetSquareMask(pos, square);
     else if (piece.isBishop())
-      return getBishopTargetSquares(pos, square);
+      return getBishopTargetSquareMask(pos, square);
     else if (piece.isKnight())
-      return getKnightTargetSquares(pos, square);
+      return getKnightTargetSquareMask(pos, square);
     else if (piece.isPawn())
-      return getPawnTargetSquares(pos, square);
+      return getPawnTargetSquareMask(pos, square);
     else
       throw new IllegalStateException("Unknown piece: " + piece);
   }
+
   
   
   
   /**
-   * Returns the target squares for a piece which jumps to its destination 
-   * (king and knight).
+   * Returns whether moves in this variant are legal exactly when they are by
+   * the rules of regular chess - the piece may make the move, it doesn't leave
+   * the king of the mover attacked and, if it's castling, the king isn't in
+   * check and doesn't pass through or land on an attacked square. If so,
+   * {@link #getTargetSquares(Position, Square)} returns only the legal target
+   * squares of the pieces of the player to move and
+   * {@link #isLegal(Position, Move)} is exact. The default implementation
+   * returns <code>true</code>; variants with other rules (different pieces, no
+   * royal king and so on) must override it to return <code>false</code>.
    */
   
-  public static Collection getJumpingTargetSquares(Position pos, Square square, int [][] offsets){
-    List targetSquares = new LinkedList();
+  protected boolean hasChessLegality(){
+    return true;
+  }
+  
+  
+  
+  /**
+   * Returns <code>false</code> if the specified move is known to be illegal in
+   * the specified position and <code>true</code> otherwise. If the variant has
+   * the legality of regular chess (see {@link #hasChessLegality()}), the check
+   * is exact. Otherwise, only moves by the wrong player and moves to squares
+   * which aren't among the target squares of the piece are rejected.
+   */
+  
+  public boolean isLegal(Position pos, Move move){
+    checkPosition(pos);
     
-    int file = square.getFile();
-    int rank = square.getRank();
-    int color = pos.getPieceAt(square).getColor();
+    if (!(move instanceof ChessMove))
+      return false;
     
-    // Things get quite complicated when the moved piece does not belong to the
-    // player whose turn it currently is. In such a case, we simply allow all
-    // moves by the piece that would be possible on an empty board.
-    boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
+    ChessMove cmove = (ChessMove)move;
+    Square startingSquare = cmove.getStartingSquare();
+    Square endingSquare = cmove.getEndingSquare();
+    Piece piece = pos.getPieceAt(startingSquare);
+    Player player = pos.getCurrentPlayer();
+    if ((piece == null) || (piece.getPlayer() != player) || (cmove.getPlayer() != player))
+      return false;
+    
+    if (!hasChessLegality())
+      return SquareSet.contains(getTargetSquareMask(pos, startingSquare), endingSquare);
+    
+    if ((getLegalTargetMask(pos, startingSquare) & Bitboards.mask(endingSquare)) == 0)
+      return false;
+    
+    Piece [] promotionTargets = getPromotionTargets(pos, startingSquare, endingSquare);
+    if (promotionTargets == null)
+      return cmove.getPromotionTarget() == null;
+    
+    for (int i = 0; i < promotionTargets.length; i++)
+      if (promotionTargets[i] == cmove.getPromotionTarget())
+        return true;
+    
+    return false;
+  }
+  
+  
+  
+  /**
+   * Returns a bitboard of the squares to which the piece standing on the
+   * specified square may legally move, including the target squares of
+   * castling, if it's a king. The piece must belong to the player to move, and
+   * the variant must have the legality of regular chess (see
+   * {@link #hasChessLegality()}). If the player to move doesn't have exactly
+   * one king, the safety of the king is ignored.
+   */
+  
+  public long getLegalTargetMask(Position pos, Square square){
+    checkPosition(pos);
+    
+    if (!hasChessLegality())
+      throw new IllegalStateException(getName() + " doesn't have the legality of regular chess");
+    
+    Piece piece = pos.getPieceAt(square);
+    Player player = pos.getCurrentPlayer();
+    if ((piece == null) || (piece.getPlayer() != player))
+      throw new IllegalArgumentException("No piece of the player to move on " + square);
+    
+    int kingIndex = getKingIndex(pos, player);
+    long checkers = kingIndex == -1 ? 0 :
+      getAttackersMask(pos, kingIndex, -player.getPieceColor(), pos.getOccupancy());
+    long pinned = kingIndex == -1 ? 0 : getPinnedMask(pos, kingIndex, player);
+    
+    return getLegalTargetMask(pos, square.getIndex(), kingIndex, checkers, pinned);
+  }
+  
+  
+  
+  /**
+   * Returns a list of all the legal moves of the player to move in the
+   * specified position, created by
+   * {@link #createChessMove(Position, Square, Square, Piece, String)}, with a
+   * separate move for each promotion target. In variants without the legality
+   * of regular chess (see {@link #hasChessLegality()}), the moves are those
+   * returned by {@link #getPseudoLegalMoves(Position)}, filtered by the rules
+   * of the variant via {@link #filterLegalMoves(Position, List)}.
+   */
+  
+  public List getLegalMoves(Position pos){
+    checkPosition(pos);
+    
+    if (!hasChessLegality())
+      return filterLegalMoves(pos, getPseudoLegalMoves(pos));
+    
+    Player player = pos.getCurrentPlayer();
+    int kingIndex = getKingIndex(pos, player);
+    long checkers = kingIndex == -1 ? 0 :
+      getAttackersMask(pos, kingIndex, -player.getPieceColor(), pos.getOccupancy());
+    long pinned = kingIndex == -1 ? 0 : getPinnedMask(pos, kingIndex, player);
+    
+    List moves = new ArrayList();
+    for (long pieces = pos.getOccupancy(player); pieces != 0; pieces &= pieces - 1){
+      int index = Long.numberOfTrailingZeros(pieces);
+      Square startingSquare = Bitboards.squareAt(index);
+      long targets = getLegalTargetMask(pos, index, kingIndex, checkers, pinned);
+      for (; targets != 0; targets &= targets - 1){
+        Square endingSquare = Bitboards.squareAt(Long.numberOfTrailingZeros(targets));
+        Piece [] promotionTargets = getPromotionTargets(pos, startingSquare, endingSquare);
+        if (promotionTargets == null)
+          moves.add(createChessMove(pos, startingSquare, endingSquare, null, null));
+        else{
+          for (int i = 0; i < promotionTargets.length; i++)
+            moves.add(createChessMove(pos, startingSquare, endingSquare, promotionTargets[i], null));
+        }
+      }
+    }
+    
+    return moves;
+  }
+  
+  
+  
+  /**
+   * Returns a list of the moves the pieces of the player to move in the
+   * specified position can make by their movement rules, as given by
+   * {@link #getChessTargetSquareMask(Position, Square)}, with a separate move for
+   * each promotion target. Castling moves are included only if the player
+   * still has the castling right of the rook, and en passant captures only of
+   * a pawn that has just made a double push, but whether a move leaves the
+   * king attacked is not checked. The moves are created by
+   * {@link #createMove(Position, Square, Square, Piece, String)}.
+   */
+  
+  protected List getPseudoLegalMoves(Position pos){
+    Player player = pos.getCurrentPlayer();
+    List moves = new ArrayList();
+    for (long pieces = pos.getOccupancy(player); pieces != 0; pieces &= pieces - 1){
+      Square startingSquare = Bitboards.squareAt(Long.numberOfTrailingZeros(pieces));
+      long targets = getChessTargetSquareMask(pos, startingSquare);
+      for (; targets != 0; targets &= targets - 1){
+        Square endingSquare = Bitboards.squareAt(Long.numberOfTrailingZeros(targets));
+        Piece [] promotionTargets = getPromotionTargets(pos, startingSquare, endingSquare);
+        if (promotionTargets == null){
+          ChessMove move = (ChessMove)createMove(pos, startingSquare, endingSquare, null, null);
+          if (isPossible(pos, move))
+            moves.add(move);
+        }
+        else{
+          for (int i = 0; i < promotionTargets.length; i++)
+            moves.add(createMove(pos, startingSquare, endingSquare, promotionTargets[i], null));
+        }
+      }
+    }
+    
+    return moves;
+  }
+  
+  
+  
+  /**
+   * Returns whether the specified castling or en passant move, returned by
+   * {@link #getChessTargetSquareMask(Position, Square)}, is actually possible in
+   * the specified position - the target squares only take the placement of the
+   * pieces into account. Other moves are always possible.
+   */
+  
+  private boolean isPossible(Position pos, ChessMove move){
+    if (move.isEnPassant())
+      return move.getEndingSquare().getFile() == pos.getEnPassantFile();
+    
+    if (move.isCastling()){
+      Square rookSquare = getCastlingRookSquare(pos, move.getStartingSquare(), move.getEndingSquare(),
+        move.isShortCastling());
+      return (rookSquare != null) && ((pos.getCastlingRights() & getCastlingRight(pos, rookSquare)) != 0);
+    }
+    
+    return true;
+  }
+  
+  
+  
+  /**
+   * Returns those of the specified moves, returned by
+   * {@link #getPseudoLegalMoves(Position)} for the specified position, which
+   * are legal by the rules of the variant. This is only used by variants
+   * without the legality of regular chess (see {@link #hasChessLegality()}).
+   * The default implementation returns the specified list unchanged.
+   */
+  
+  protected List filterLegalMoves(Position pos, List moves){
+    return moves;
+  }
+  
+  
+  
+  /**
+   * Returns the square on which the player to move in the specified position
+   * may capture en passant, as a bitboard, or 0 if the last move wasn't a
+   * double pawn push.
+   */
+  
+  protected static long getEnPassantTargetMask(Position pos){
+    int file = pos.getEnPassantFile();
+    if (file == -1)
+      return 0;
+    
+    return Bitboards.mask(file, pos.getCurrentPlayer().isWhite() ? 5 : 2);
+  }
+  
+  
+  
+  /**
+   * Returns whether any of the pieces of the player to move in the specified
+   * position can capture, moving as regular chess pieces (including capturing
+   * en passant). This is much cheaper than generating the moves and looking
+   * for a capture among them.
+   */
+  
+  protected static boolean hasChessCapture(Position pos){
+    Player player = pos.getCurrentPlayer();
+    int color = player.getPieceColor();
+    long occupied = pos.getOccupancy();
+    long enemies = pos.getOccupancy(player.getOpponent());
+    long pawns = pos.getPieceMask(color, ChessPiece.PAWN);
+    
+    long enPassantTarget = getEnPassantTargetMask(pos);
+    if ((enPassantTarget != 0) &&
+        ((Bitboards.getPawnAttacks(-color, Long.numberOfTrailingZeros(enPassantTarget)) & pawns) != 0))
+      return true;
+    
+    long queens = pos.getPieceMask(color, ChessPiece.QUEEN);
+    long attacks = 0;
+    for (; pawns != 0; pawns &= pawns - 1)
+      attacks |= Bitboards.getPawnAttacks(color, Long.numberOfTrailingZeros(pawns));
+    for (long knights = pos.getPieceMask(color, ChessPiece.KNIGHT); knights != 0; knights &= knights - 1)
+      attacks |= Bitboards.getKnightAttacks(Long.numberOfTrailingZeros(knights));
+    for (long kings = pos.getPieceMask(color, ChessPiece.KING); kings != 0; kings &= kings - 1)
+      attacks |= Bitboards.getKingAttacks(Long.numberOfTrailingZeros(kings));
+    for (long sliders = pos.getPieceMask(color, ChessPiece.BISHOP) | queens; sliders != 0; sliders &= sliders - 1)
+      attacks |= Bitboards.getBishopAttacks(Long.numberOfTrailingZeros(sliders), occupied);
+    for (long sliders = pos.getPieceMask(color, ChessPiece.ROOK) | queens; sliders != 0; sliders &= sliders - 1)
+      attacks |= Bitboards.getRookAttacks(Long.numberOfTrailingZeros(sliders), occupied);
+    
+    return (attacks & enemies) != 0;
+  }
+  
+  
+  
+  /**
+   * Restricts the specified target squares of the piece on the specified
+   * square to those on which it captures, for variants where capturing is
+   * compulsory: if the piece belongs to the player to move and that player
+   * can capture (see {@link #hasChessCapture(Position)}), only the squares of
+   * the opponent's pieces (and the en passant square, for a pawn) are kept.
+   * Otherwise, the targets are returned unchanged.
+   */
+  
+  protected static long getForcedCaptureTargetMask(Position pos, Square square, long targets){
+    ChessPiece piece = (ChessPiece)pos.getPieceAt(square);
+    Player player = pos.getCurrentPlayer();
+    if ((piece == null) || (piece.getPlayer() != player) || !hasChessCapture(pos))
+      return targets;
+    
+    long capturable = pos.getOccupancy(player.getOpponent());
+    if (piece.isPawn())
+      capturable |= getEnPassantTargetMask(pos);
+    
+    return targets & capturable;
+  }
+  
+  
+  
+  /**
+   * Returns the index of the square of the king of the specified player, or
+   * -1 if the player doesn't have exactly one king.
+   */
+  
+  private static int getKingIndex(Position pos, Player player){
+    long kings = pos.getPieceMask(player.getPieceColor(), ChessPiece.KING);
+    return Long.bitCount(kings) == 1 ? Long.numberOfTrailingZeros(kings) : -1;
+  }
+  
+  
+  
+  /**
+   * Returns a bitboard of the pieces of the specified player which are pinned
+   * to their king, standing on the square with the specified index - the
+   * pieces which are the only piece between the king and an enemy queen, rook
+   * or bishop attacking along that line.
+   */
+  
+  private static long getPinnedMask(Position pos, int kingIndex, Player player){
+    int enemyColor = -player.getPieceColor();
+    long occupied = pos.getOccupancy();
+    long own = pos.getOccupancy(player);
+    long queens = pos.getPieceMask(enemyColor, ChessPiece.QUEEN);
+    long snipers = 
+      (Bitboards.getRookAttacks(kingIndex, 0) & (pos.getPieceMask(enemyColor, ChessPiece.ROOK) | queens)) |
+      (Bitboards.getBishopAttacks(kingIndex, 0) & (pos.getPieceMask(enemyColor, ChessPiece.BISHOP) | queens));
+    
+    long pinned = 0;
+    for (; snipers != 0; snipers &= snipers - 1){
+      long blockers = Bitboards.getBetween(kingIndex, Long.numberOfTrailingZeros(snipers)) & occupied;
+      if ((blockers != 0) && ((blockers & (blockers - 1)) == 0) && ((blockers & own) != 0))
+        pinned |= blockers;
+    }
     
-    for (int i = 0; i < offsets.length; i++){
-      int [] offset = offsets[i];
-      Square targetSquare = Square.getInstanceNonStrict(file + offset[0], rank + offset[1]);
-      if (targetSquare == null)
+    return pinned;
+  }
+  
+  
+  
+  /**
+   * Returns a bitboard of the squares to which the piece standing on the square
+   * with the specified index, which belongs to the player to move, may legally
+   * move, given the index of the square of the king of that player (-1 if
+   * there's no single king), the pieces giving it check and the pinned pieces.
+   */
+  
+  private long getLegalTargetMask(Position pos, int index, int kingIndex, long checkers, long pinned){
+    Square square = Bitboards.squareAt(index);
+    ChessPiece piece = (ChessPiece)pos.getPieceAt(square);
+    Player player = piece.getPlayer();
+    int color = piece.getColor();
+    long own = pos.getOccupancy(player);
+    long occupied = pos.getOccupancy();
+    
+    if (piece.isKing()){
+      long targets = Bitboards.getKingAttacks(index) & ~own;
+      if (kingIndex == -1)
+        return targets;
+      
+      long occupiedWithoutKing = occupied & ~(1L << index);
+      long legalTargets = 0;
+      for (; targets != 0; targets &= targets - 1){
+        int target = Long.numberOfTrailingZeros(targets);
+        if (getAttackersMask(pos, target, -color, occupiedWithoutKing) == 0)
+          legalTargets |= 1L << target;
+      }
+      
+      if (checkers == 0)
+        legalTargets |= getLegalCastlingMask(pos, square, occupied);
+      
+      return legalTargets;
+    }
+    
+    // In double check only the king may move
+    if ((checkers & (checkers - 1)) != 0)
+      return 0;
+    
+    long targets;
+    if (piece.isPawn())
+      targets = getPawnTargetMask(index, color, occupied, occupied & ~own);
+    else if (piece.isKnight())
+      targets = Bitboards.getKnightAttacks(index);
+    else if (piece.isBishop())
+      targets = Bitboards.getBishopAttacks(index, occupied);
+    else if (piece.isRook())
+      targets = Bitboards.getRookAttacks(index, occupied);
+    else if (piece.isQueen())
+      targets = Bitboards.getQueenAttacks(index, occupied);
+    else
+      throw new IllegalStateException("Unknown piece: " + piece);
+    targets &= ~own;
+    
+    if (kingIndex != -1){
+      // A check must be answered by capturing the checker or blocking the check
+      if (checkers != 0)
+        targets &= checkers | Bitboards.getBetween(kingIndex, Long.numberOfTrailingZeros(checkers));
+      
+      // A pinned piece may only move along the line of the pin
+      if ((pinned & (1L << index)) != 0)
+        targets &= Bitboards.getLine(kingIndex, index);
+    }
+    
+    if (piece.isPawn()){
+      int enPassantTarget = getEnPassantTarget(pos, index, color);
+      if ((enPassantTarget != -1) && 
+          ((kingIndex == -1) || isEnPassantSafe(pos, index, enPassantTarget, kingIndex, color)))
+        targets |= 1L << enPassantTarget;
+    }
+    
+    return targets;
+  }
+  
+  
+  
+  /**
+   * Returns a bitboard of the squares a pawn of the specified color, standing
+   * on the square with the specified index, may push to or capture on, given
+   * the specified occupied squares and enemy pieces. En passant is not
+   * included.
+   */
+  
+  private static long getPawnTargetMask(int index, int color, long occupied, long enemies){
+    int forward = color == Piece.WHITE ? 8 : -8;
+    int initialRank = color == Piece.WHITE ? 1 : 6;
+    long targets = 0;
+    
+    int target = index + forward;
+    if ((target >= 0) && (target < 64) && ((occupied & (1L << target)) == 0)){
+      targets |= 1L << target;
+      
+      target += forward;
+      if (((index >> 3) == initialRank) && ((occupied & (1L << target)) == 0))
+        targets |= 1L << target;
+    }
+    
+    return targets | (Bitboards.getPawnAttacks(color, index) & enemies);
+  }
+  
+  
+  
+  /**
+   * Returns the index of the square to which the pawn of the specified color,
+   * standing on the square with the specified index, may capture en passant,
+   * according to the en passant file of the position; -1 if none.
+   */
+  
+  private static int getEnPassantTarget(Position pos, int index, int color){
+    int enPassantFile = pos.getEnPassantFile();
+    if (enPassantFile == -1)
+      return -1;
+    
+    int file = index & 7;
+    int rank = index >> 3;
+    if ((rank != (color == Piece.WHITE ? 4 : 3)) || (Math.abs(file - enPassantFile) != 1))
+      return -1;
+    
+    ChessPiece enemyPawn = color == Piece.WHITE ? ChessPiece.BLACK_PAWN : ChessPiece.WHITE_PAWN;
+    if (pos.getPieceAt(enPassantFile, rank) != enemyPawn)
+      return -1;
+    
+    return ((rank + (color == Piece.WHITE ? 1 : -1)) << 3) | enPassantFile;
+  }
+  
+  
+  
+  /**
+   * Returns whether capturing en passant from the square with the first
+   * specified index to the one with the second leaves the king of the mover,
+   * on the square with the third index, unattacked. Both pawns leave their
+   * rank, so this is checked on the board after the capture rather than via
+   * the pins and the checkers.
+   */
+  
+  private static boolean isEnPassantSafe(Position pos, int index, int target, int kingIndex, int color){
+    long capturedPawn = 1L << ((index & ~7) | (target & 7));
+    long occupied = (pos.getOccupancy() & ~(1L << index) & ~capturedPawn) | (1L << target);
+    return (getAttackersMask(pos, kingIndex, -color, occupied) & ~capturedPawn) == 0;
+  }
+  
+  
+  
+  /**
+   * Returns a bitboard of the target squares of the legal castling moves of the
+   * king standing on the specified square, which is not in check. Castling is
+   * legal if the variant recognizes the move as castling (see
+   * {@link #isShortCastling(Position, Square, Square, ChessPiece)} and
+   * {@link #isLongCastling(Position, Square, Square, ChessPiece)}), the player
+   * still has the castling right of the rook it's done with, all the squares
+   * the king and the rook pass through or land on are empty (save for the two
+   * of them) and none of the squares the king passes through or lands on are
+   * attacked.
+   */
+  
+  private long getLegalCastlingMask(Position pos, Square kingSquare, long occupied){
+    Player player = pos.getPieceAt(kingSquare).getPlayer();
+    int enemyColor = -player.getPieceColor();
+    int kingIndex = kingSquare.getIndex();
+    int castlingRights = pos.getCastlingRights();
+    
+    long targets = 0;
+    for (int file = 0; file < 8; file++){
+      Square target = Square.getInstance(file, kingSquare.getRank());
+      boolean isShortCastling = isShortCastling(pos, kingSquare, target, null);
+      if (!isShortCastling && !isLongCastling(pos, kingSquare, target, null))
+        continue;
+      
+      Square rookSquare = getCastlingRookSquare(pos, kingSquare, target, isShortCastling);
+      if (rookSquare == null)
+        continue;
+      
+      Piece rook = pos.getPieceAt(rookSquare);
+      if ((rook == null) || !((ChessPiece)rook).isRook() || (rook.getPlayer() != player))
         continue;
       
-      Piece piece = pos.getPieceAt(targetSquare);
-      if ((piece == null) || (piece.getColor() != color) || !isMyTurn)
-        targetSquares.add(targetSquare);
+      int castlingRight = getCastlingRight(pos, rookSquare);
+      if ((castlingRights & castlingRight) == 0)
+        continue;
+      
+      int targetIndex = target.getIndex();
+      int rookIndex = rookSquare.getIndex();
+      int rookTargetIndex = targetIndex + (rookIndex > kingIndex ? -1 : 1);
+      long kingPath = Bitboards.getBetween(kingIndex, targetIndex) | (1L << kingIndex) | (1L << targetIndex);
+      long rookPath = Bitboards.getBetween(rookIndex, rookTargetIndex) | (1L << rookIndex) | (1L << rookTargetIndex);
+      long castlingPieces = (1L << kingIndex) | (1L << rookIndex);
+      if (((kingPath | rookPath) & occupied & ~castlingPieces) != 0)
+        continue;
+      
+      long occupiedAfter = occupied & ~castlingPieces;
+      boolean isSafe = true;
+      for (long path = kingPath; isSafe && (path != 0); path &= path - 1)
+        isSafe = getAttackersMask(pos, Long.numberOfTrailingZeros(path), enemyColor, occupiedAfter) == 0;
+      
+      if (isSafe)
+        targets |= 1L << targetIndex;
     }
     
-    return targetSquares;
+    return targets;
   }
   
   
   
   /**
-   * Returns the target squares for a piece which slides to its destination
-   * (queen, rook, bishop).
+   * Returns the square of the rook the king standing on the specified square
+   * castles with when castling to the specified target square, or
+   * <code>null</code> if there is no such rook. The default implementation
+   * assumes the rooks start in the corners, and returns the corner on the side
+   * of the target square; it must agree with the way
+   * {@link #makeMove(Move, Position, Position.Modifier)} moves the rook.
    */
   
-  public static Collection getSlidingTargetSquares(Position pos, Square square, int [][] directions){
-    List targetSquares = new LinkedList();
+  protected Square getCastlingRookSquare(Position pos, Square kingSquare, Square kingTarget, boolean isShortCastling){
+    return Square.getInstance(kingTarget.getFile() > kingSquare.getFile() ? 7 : 0, kingSquare.getRank());
+  }
+  
+  
+  
+  /**
+   * Returns the castling right (one of the <code>Position.XXX_CASTLING</code>
+   * constants) needed to castle with the rook standing on the specified square,
+   * or 0 if castling with it is never allowed. The default implementation
+   * returns the right of castling with the rook in that corner, consistently
+   * with {@link #getCastlingRightsLost(Position, ChessMove)}.
+   */
+  
+  protected int getCastlingRight(Position pos, Square rookSquare){
+    return getCornerCastlingRight(rookSquare);
+  }
+  
+  
+  
+  /**
+   * Returns the squares returned by
+   * {@link #getJumpingTargetSquareMask(Position, Square, int[][])}, as a list.
+   */
+  
+  public static Collection getJumpingTargetSquares(Position pos, Square square, int [][] offsets){
+    return SquareSet.toList(getJumpingTargetSquareMask(pos, square, offsets));
+  }
+  
+  
+  
+  /**
+   * Returns the target squares for a piece which jumps to its destination 
+   * (king and knight), by the specified file and rank offsets.
+   */
+  
+  public static long getJumpingTargetSquareMask(Position pos, Square square, int [][] offsets){
+    int file = square.getFile();
+    int rank = square.getRank();
+    
+    long targets = 0;
+    for (int i = 0; i < offsets.length; i++)
+      targets |= Bitboards.mask(file + offsets[i][0], rank + offsets[i][1]);
     
+    return withoutOwnPieces(pos, square, targets);
+  }
+  
+  
+  
+  /**
+   * Returns the squares returned by
+   * {@link #getSlidingTargetSquareMask(Position, Square, int[][])}, as a list.
+   */
+  
+  public static Collection getSlidingTargetSquares(Position pos, Square square, int [][] directions){
+    return SquareSet.toList(getSlidingTargetSquareMask(pos, square, directions));
+  }
+  
+  
+  
+  /**
+   * Returns the target squares for a piece which slides to its destination
+   * (queen, rook, bishop), in the specified file and rank directions.
+   */
+  
+  public static long getSlidingTargetSquareMask(Position pos, Square square, int [][] directions){
     int file = square.getFile();
     int rank = square.getRank();
-    int color = pos.getPieceAt(square).getColor();
-
-    // Things get quite complicated when the moved piece does not belong to the
-    // player whose turn it currently is. In such a case, we simply allow all
-    // moves by the piece that would be possible on an empty board.
-    boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
-
+    long blockers = getBlockers(pos, square);
+    
+    long targets = 0;
     for (int i = 0; i < directions.length; i++){
-      int [] direction = directions[i];
-      int fileDirection = direction[0];
-      int rankDirection = direction[1];
+      int fileDirection = directions[i][0];
+      int rankDirection = directions[i][1];
       
-      Square targetSquare = Square.getInstanceNonStrict(file + fileDirection, rank + rankDirection);
-      while (targetSquare != null){
-        Piece piece = pos.getPieceAt(targetSquare);
-        if ((piece == null) || (piece.getColor() != color) || !isMyTurn)
-          targetSquares.add(targetSquare);
-        
-        if ((piece != null) && isMyTurn)
+      long target = Bitboards.mask(file + fileDirection, rank + rankDirection);
+      for (int distance = 2; target != 0; distance++){
+        targets |= target;
+        if ((target & blockers) != 0)
           break;
         
-        targetSquare = Square.getInstanceNonStrict(
-            targetSquare.getFile() + fileDirection, targetSquare.getRank() + rankDirection);
+        target = Bitboards.mask(file + distance*fileDirection, rank + distance*rankDirection);
       }
     }
     
-    return targetSquares;
+    return withoutOwnPieces(pos, square, targets);
   }
   
   
   
   /**
-   * King move offsets.
+   * Returns the target squares for a piece standing on the specified square
+   * which attacks the specified squares. Things get quite complicated when the
+   * moved piece does not belong to the player whose turn it currently is. In
+   * such a case, we simply allow all the attacked squares; otherwise those
+   * occupied by the player's own pieces are excluded.
    */
   
-  private static final int[][] KING_OFFSETS = new int[][]{
-    new int[]{-1, -1}, new int[]{0, -1}, new int[]{1, -1},
-    new int[]{-1, 0},                    new int[]{1, 0},
-    new int[]{-1, 1},  new int[]{0, 1},  new int[]{1, 1}
-  };
+  protected static long withoutOwnPieces(Position pos, Square square, long attacks){
+    Player player = pos.getPieceAt(square).getPlayer();
+    if (pos.getCurrentPlayer() == player)
+      attacks &= ~pos.getOccupancy(player);
+    
+    return attacks;
+  }
   
   
   
   /**
-   * Returns target squares for a king.
+   * Returns the occupied squares which block the moves of the piece standing
+   * on the specified square - all of them if it's the turn of the piece's
+   * player and none otherwise (see
+   * {@link #withoutOwnPieces(Position, Square, long)}).
    */
   
-  protected Collection getKingTargetSquares(Position pos, Square square){
-    Collection targetSquares = getJumpingTargetSquares(pos, square, KING_OFFSETS);
-    
-    // Attempt castling.
-    for (int file = 0; file < 8; file++){
-      Square targetSquare = Square.getInstance(file, square.getRank());
-      if (isShortCastling(pos, square, targetSquare, null) || 
-          isLongCastling(pos, square, targetSquare, null))
-        targetSquares.add(targetSquare);
-    }
-    
-    return targetSquares;
+  private static long getBlockers(Position pos, Square square){
+    return pos.getCurrentPlayer() == pos.getPieceAt(square).getPlayer() ? pos.getOccupancy() : 0;
   }
   
   
   
   /**
-   * Queen move directions.
+   * Returns a bitboard of the pieces of the specified player which attack the
+   * specified square, by the rules of normal chess. The square itself may be
+   * occupied or empty.
    */
   
-  private static final int[][] QUEEN_DIRECTIONS = new int[][]{
-    new int[]{-1, -1}, new int[]{0, -1}, new int[]{1, -1},
-    new int[]{-1, 0},                    new int[]{1, 0},
-    new int[]{-1, 1},  new int[]{0, 1},  new int[]{1, 1}
-  };
+  public long getAttackersMask(Position pos, Square square, Player player){
+    return getAttackersMask(pos, square.getIndex(), player.getPieceColor(), pos.getOccupancy());
+  }
   
   
   
   /**
-   * Returns target squares for a queen.
+   * Returns a bitboard of the pieces of the specified color which attack the
+   * square with the specified index, by the rules of normal chess, were the
+   * specified squares the occupied ones. The pieces themselves are taken from
+   * the position.
    */
   
-  protected Collection getQueenTargetSquares(Position pos, Square square){
-    return getSlidingTargetSquares(pos, square, QUEEN_DIRECTIONS);
+  private static long getAttackersMask(Position pos, int index, int color, long occupied){
+    long queens = pos.getPieceMask(color, ChessPiece.QUEEN);
+    
+    return (Bitboards.getKnightAttacks(index) & pos.getPieceMask(color, ChessPiece.KNIGHT)) |
+      (Bitboards.getKingAttacks(index) & pos.getPieceMask(color, ChessPiece.KING)) |
+      (Bitboards.getPawnAttacks(-color, index) & pos.getPieceMask(color, ChessPiece.PAWN)) |
+      (Bitboards.getBishopAttacks(index, occupied) & (pos.getPieceMask(color, ChessPiece.BISHOP) | queens)) |
+      (Bitboards.getRookAttacks(index, occupied) & (pos.getPieceMask(color, ChessPiece.ROOK) | queens));
   }
   
   
   
   /**
-   * Rook move directions.
+   * Returns whether the specified square is attacked by any of the pieces of
+   * the specified player.
    */
   
-  private static final int[][] ROOK_DIRECTIONS = new int[][]{
-                       new int[]{0, -1}, 
-    new int[]{-1, 0},                    new int[]{1, 0},
-                       new int[]{0, 1}
-  };
+  public boolean isAttacked(Position pos, Square square, Player player){
+    return getAttackersMask(pos, square, player) != 0;
+  }
   
   
   
   /**
-   * Returns target squares for a rook.
+   * Returns target squares for a king.
    */
   
-  protected Collection getRookTargetSquares(Position pos, Square square){
-    return getSlidingTargetSquares(pos, square, ROOK_DIRECTIONS);
+  protected long getKingTargetSquareMask(Position pos, Square square){
+    long targets = withoutOwnPieces(pos, square, Bitboards.getKingAttacks(square.getIndex()));
+    
+    // Attempt castling.
+    for (int file = 0; file < 8; file++){
+      Square targetSquare = Square.getInstance(file, square.getRank());
+      if (isShortCastling(pos, square, targetSquare, null) || 
+          isLongCastling(pos, square, targetSquare, null))
+        targets |= Bitboards.mask(targetSquare);
+    }
+    
+    return targets;
   }
   
   
   
   /**
-   * Bishop move directions.
+   * Returns target squares for a queen.
    */
   
-  private static final int[][] BISHOP_DIRECTIONS = new int[][]{
-    new int[]{-1, -1},                   new int[]{1, -1},
-    
-    new int[]{-1, 1},                    new int[]{1, 1}
-  };
+  protected long getQueenTargetSquareMask(Position pos, Square square){
+    return withoutOwnPieces(pos, square, Bitboards.getQueenAttacks(square.getIndex(), getBlockers(pos, square)));
+  }
   
   
   
   /**
-   * Returns target squares for a bishop.
+   * Returns target squares for a rook.
    */
   
-  protected Collection getBishopTargetSquares(Position pos, Square square){
-    return getSlidingTargetSquares(pos, square, BISHOP_DIRECTIONS);
+  protected long getRookTargetSquareMask(Position pos, Square square){
+    return withoutOwnPieces(pos, square, Bitboards.getRookAttacks(square.getIndex(), getBlockers(pos, square)));
   }
   
   
   
   /**
-   * Knight move offsets.
+   * Returns target squares for a bishop.
    */
   
-  private static final int[][] KNIGHT_OFFSETS = new int[][]{
-                       new int[]{-1, -2},                 new int[]{1, -2},
-    new int[]{-2, -1},                                                      new int[]{2, -1},
-    
-    new int[]{-2, 1},                                                       new int[]{2, 1},
-                       new int[]{-1, 2},                  new int[]{1, 2},
-  };
+  protected long getBishopTargetSquareMask(Position pos, Square square){
+    return withoutOwnPieces(pos, square, Bitboards.getBishopAttacks(square.getIndex(), getBlockers(pos, square)));
+  }
   
   
   
@@ -943,8 +1589,8 @@ public class ChesslikeGenericVariant implements WildVariant{
    * Returns target squares for a knight.
    */
   
-  protected Collection getKnightTargetSquares(Position pos, Square square){
-    return getJumpingTargetSquares(pos, square, KNIGHT_OFFSETS);
+  protected long getKnightTargetSquareMask(Position pos, Square square){
+    return withoutOwnPieces(pos, square, Bitboards.getKnightAttacks(square.getIndex()));
   }
   
   
@@ -953,9 +1599,7 @@ public class ChesslikeGenericVariant implements WildVariant{
    * Returns target squares for a pawn.
    */
   
-  protected Collection getPawnTargetSquares(Position pos, Square square){
-    List targetSquares = new LinkedList();
-    
+  protected long getPawnTargetSquareMask(Position pos, Square square){
     int file = square.getFile();
     int rank = square.getRank();
     int color = pos.getPieceAt(square).getColor();
@@ -964,41 +1608,43 @@ public class ChesslikeGenericVariant implements WildVariant{
     // player whose turn it currently is. In such a case, we simply allow all
     // moves by the piece that would be possible on an empty board.
     boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
+    long occupied = isMyTurn ? pos.getOccupancy() : 0;
     
     int rankMoveDirection = color == Piece.WHITE ? 1 : -1;
     boolean isInitialRank = (rank == (7 + rankMoveDirection) % 7);
     boolean isEnPassantRank = (rank == (7 + 4*rankMoveDirection) % 7); 
     
-    Square targetSquare;
+    long targets = 0;
     
     // Move forward
-    targetSquare = Square.getInstanceNonStrict(file, rank + rankMoveDirection);
-    if (((targetSquare != null) && (pos.getPieceAt(targetSquare) == null)) || !isMyTurn){
-      targetSquares.add(targetSquare);
+    long target = Bitboards.mask(file, rank + rankMoveDirection);
+    if ((target & occupied) == 0){
+      targets |= target;
       
       // Double pawn push
       if (isInitialRank){
-        targetSquare = Square.getInstance(file, rank + 2*rankMoveDirection);
-        if ((pos.getPieceAt(targetSquare) == null) || !isMyTurn)
-          targetSquares.add(targetSquare);
+        target = Bitboards.mask(file, rank + 2*rankMoveDirection);
+        if ((target & occupied) == 0)
+          targets |= target;
       }
     }
     
     // Capture or en-passant
-    int [] fileMoveDirections = new int[]{-1, 1};
-    for (int i = 0; i < fileMoveDirections.length; i++){
-      int fileMoveDirection = fileMoveDirections[i];
-      targetSquare = Square.getInstanceNonStrict(file + fileMoveDirection, rank + rankMoveDirection);
-      if (targetSquare != null){
-        Piece targetPiece = pos.getPieceAt(targetSquare);
-        if (((targetPiece != null) && (targetPiece.getColor() != color)) || !isMyTurn)
-          targetSquares.add(targetSquare);
-        else if (isEnPassantRank && isEnPassant(pos, square, targetSquare, null))
-          targetSquares.add(targetSquare);
+    long attacks = Bitboards.getPawnAttacks(color, square.getIndex());
+    if (!isMyTurn)
+      targets |= attacks;
+    else{
+      targets |= attacks & occupied & ~pos.getOccupancy(pos.getCurrentPlayer());
+      if (isEnPassantRank){
+        for (long squares = attacks & ~occupied; squares != 0; squares &= squares - 1){
+          Square targetSquare = Bitboards.squareAt(Long.numberOfTrailingZeros(squares));
+          if (isEnPassant(pos, square, targetSquare, null))
+            targets |= Bitboards.mask(targetSquare);
+        }
       }
     }
     
-    return targetSquares; 
+    return targets; 
   }
   
   
@@ -21,14 +21,14 @@
 
 package free.chess;
 
+import java.awt.AlphaComposite;
 import java.awt.Component;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
-import java.awt.image.FilteredImageSource;
-import java.awt.image.ImageFilter;
-import java.awt.image.RGBImageFilter;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
@@ -45,6 +45,9 @@ import free.util.TextUtilities;
 
 /**
  * An implementation of <code>PiecePainter</code> which paints images.
+ * The images of each size are decoded once and drawn, along with their
+ * shaded versions, into a single sprite atlas compatible with the screen, so
+ * painting a piece is a single blit from the atlas.
  */
 
 public final class ImagePiecePainter implements ResourcePiecePainter{
@@ -56,14 +59,6 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
    */
   
   private static final PiecePainter whileLoadingDelegate = new DefaultPiecePainter();
-  
-  
-  
-  /**
-   * The ImageFilter we use to create shaded images.
-   */
-
-  private static final ImageFilter SHADING_FILTER = new ShadingFilter();
 
 
 
@@ -78,19 +73,22 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
   
   /**
    * An array whose indices specify the size of the images and whose values
-   * are maps mapping <code>Piece</code>s to either <code>Image</code>s or
-   * <code>URL</code>s, if the image isn't loaded yet.
+   * are maps mapping <code>Piece</code>s to the <code>URL</code>s of their
+   * images. <code>null</code> if the painter was created with the images
+   * themselves.
    */
 
-  private Map [] pieceImages;
+  private Map [] pieceImageURLs;
 
 
 
   /**
-   * Same as pieceImages only for shaded images.
+   * An array whose indices specify the size of the images and whose values
+   * are the <code>PieceAtlas</code>es of the images of that size, once they
+   * are loaded.
    */
 
-  private Map [] shadedPieceImages;
+  private PieceAtlas [] atlases;
   
   
   
@@ -138,29 +136,25 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     if (maxSize == 0)
       throw new IllegalArgumentException("No sizes in the hashtable");
 
-    this.pieceImages = new Map[maxSize + 1];
-    this.shadedPieceImages = new Map[maxSize + 1];
+    this.atlases = new PieceAtlas[maxSize + 1];
 
     // Fill the array
     sizes = pieceImages.keySet().iterator();
     while (sizes.hasNext()){
       Integer size = (Integer)sizes.next();
-      int sizeInt = size.intValue();
 
       Map images = (Map)pieceImages.get(size);
-      int imagesCount = images.size();
-      this.pieceImages[sizeInt] = new HashMap(imagesCount);
-      this.shadedPieceImages[sizeInt] = new HashMap(imagesCount);
-
-      Iterator pieces = images.keySet().iterator();
-      while (pieces.hasNext()){
-        Object key = pieces.next();
-        Image image = (Image)images.get(key);
-        Image shadedImage = shadeImage(image);
-
-        this.pieceImages[sizeInt].put(key, image);
-        this.shadedPieceImages[sizeInt].put(key, shadedImage);
+      Piece [] pieces = new Piece[images.size()];
+      Image [] pieceImagesArr = new Image[pieces.length];
+      Iterator entries = images.entrySet().iterator();
+      for (int i = 0; i < pieces.length; i++){
+        Map.Entry entry = (Map.Entry)entries.next();
+        pieces[i] = (Piece)entry.getKey();
+        pieceImagesArr[i] = (Image)entry.getValue();
       }
+
+      ImageUtilities.preload(pieceImagesArr, null);
+      this.atlases[size.intValue()] = new PieceAtlas(pieces, pieceImagesArr, null);
     }
   }
   
@@ -179,11 +173,20 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
   
   
   /**
-   * Creates a shaded version of the specified image.
+   * Returns the shaded version of the specified ARGB pixel.
    */
   
-  private static Image shadeImage(Image image){
-    return Toolkit.getDefaultToolkit().createImage(new FilteredImageSource(image.getSource(), SHADING_FILTER));
+  private static int shadeRGB(int rgb){
+    int alpha = (rgb >> 24) & 0xff;
+    int r = (rgb >> 16) & 0xff;
+    int g = (rgb >> 8) & 0xff;
+    int b = rgb & 0xff;
+
+    r = (r + 128*2)/3;
+    g = (g + 128*2)/3;
+    b = (b + 128*2)/3;
+
+    return (alpha << 24) | (r << 16) | (g << 8) | b;
   }
   
   
@@ -224,7 +227,7 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
    
   @Override
   public void load(URL baseUrl) throws IOException{
-    if (pieceImages != null)
+    if (atlases != null)
       throw new IllegalStateException("This ImagePiecePainter has already been loaded");
     
     URL defURL = new URL(baseUrl, "definition");
@@ -235,8 +238,8 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     String ext = def.getProperty("ext", "gif");
     int [] sizes = TextUtilities.parseIntList(def.getProperty("size.list"), " ");
     
-    this.pieceImages = new HashMap[sizes[sizes.length - 1] + 1];
-    this.shadedPieceImages = new HashMap[sizes[sizes.length - 1] + 1];
+    this.pieceImageURLs = new HashMap[sizes[sizes.length - 1] + 1];
+    this.atlases = new PieceAtlas[sizes[sizes.length - 1] + 1];
     
     Piece [] pieces = new Piece[]{
         ChessPiece.WHITE_KING, ChessPiece.BLACK_KING,
@@ -252,22 +255,27 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     for (int i = 0; i < sizes.length; i++){
       int size = sizes[i];
       
-      Map normal = new HashMap(15);
-      Map shaded = new HashMap(15);
-
-      for (int j = 0; j < pieces.length; j++){
-        URL imageUrl = new URL(baseUrl, size + "/" + pieceNames[j] + "." + ext);
-        normal.put(pieces[j], imageUrl);
-        shaded.put(pieces[j], imageUrl);
-      }
+      Map urls = new HashMap(15);
+      for (int j = 0; j < pieces.length; j++)
+        urls.put(pieces[j], new URL(baseUrl, size + "/" + pieceNames[j] + "." + ext));
 
-      this.pieceImages[size] = normal;
-      this.shadedPieceImages[size] = shaded;
+      this.pieceImageURLs[size] = urls;
     }
   }
   
   
   
+  /**
+   * Returns whether images of the specified size are available, whether or
+   * not they are loaded yet.
+   */
+  
+  private boolean isSizeAvailable(int size){
+    return (atlases[size] != null) || ((pieceImageURLs != null) && (pieceImageURLs[size] != null));
+  }
+  
+  
+  
   /**
    * Returns the size of provided images which is the best fit for the
    * specified square size.
@@ -277,18 +285,18 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     if (squareSize <= 0)
       throw new IllegalArgumentException("Image size must be positive");
 
-    if (squareSize >= pieceImages.length)
-      return pieceImages.length - 1;
+    if (squareSize >= atlases.length)
+      return atlases.length - 1;
 
-    if (pieceImages[squareSize] != null)
+    if (isSizeAvailable(squareSize))
       return squareSize;
 
     for (int i = squareSize; i > 0; i--)
-      if (pieceImages[i] != null)
+      if (isSizeAvailable(i))
         return i;
 
-    for (int i = squareSize+1; i < pieceImages.length; i++)
-      if (pieceImages[i] != null)
+    for (int i = squareSize+1; i < atlases.length; i++)
+      if (isSizeAvailable(i))
         return i;
 
     throw new Error("This can't happen");
@@ -297,17 +305,17 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
   
   
   /**
-   * If already loaded, returns the piece images at the specified size.
-   * Otherwise, starts loading them (if async loading is enabled, in a
+   * If already loaded, returns the atlas of the piece images at the specified
+   * size. Otherwise, starts loading them (if async loading is enabled, in a
    * background thread, in the meanwhile, returning <code>null</code>),
    * and once done, repaints the specified component.
    */
   
-  protected synchronized Map loadPieces(int squareSize, boolean shaded, Component target){
+  protected synchronized PieceAtlas loadPieces(int squareSize, Component target){
     int imageSize = bestFitImageSize(squareSize);
-    Map images = (shaded ? shadedPieceImages : pieceImages)[imageSize];
-    if (images.values().iterator().next() instanceof Image) // Already loaded
-      return images;
+    PieceAtlas atlas = atlases[imageSize];
+    if (atlas != null) // Already loaded
+      return atlas;
     else{
       ImageDataReceiver receiver = (ImageDataReceiver)imageDataReceivers.get(new Integer(imageSize));
       if (receiver != null){ // We're already loading the images
@@ -315,7 +323,7 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
         return null;
       }
       
-      Set entrySet = images.entrySet();
+      Set entrySet = pieceImageURLs[imageSize].entrySet();
       Piece [] pieces = new Piece[entrySet.size()];
       URL [] urls = new URL[entrySet.size()];
       Iterator entries = entrySet.iterator();
@@ -325,9 +333,7 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
         urls[i] = (URL)entry.getValue();
       }
       
-      Map normalImages = pieceImages[imageSize];
-      Map shadedImages = shadedPieceImages[imageSize];
-      receiver = new ImageDataReceiver(asyncImageLoad ? target : null, imageSize, normalImages, shadedImages);
+      receiver = new ImageDataReceiver(target, asyncImageLoad ? target : null, imageSize);
       imageDataReceivers.put(new Integer(imageSize), receiver);
       
       if (asyncImageLoad){
@@ -336,7 +342,7 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
       }
       else{
         IOUtilities.loadSynchronously(urls, pieces, receiver, true);
-        return shaded ? shadedImages : normalImages;
+        return atlases[imageSize];
       }
     }
   }
@@ -360,68 +366,160 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
 
     int size = width > height ? height : width;
     
-    Map pieces = loadPieces(size, shaded, component);
-    if (pieces == null){
+    PieceAtlas atlas = loadPieces(size, component);
+    if (atlas == null){
       whileLoadingDelegate.paintPiece(piece, g, component, rect, shaded);
       return;
     }
     
-    Image pieceImage = (Image)pieces.get(piece);
-    int pieceWidth = pieceImage.getWidth(null);
-    int pieceHeight = pieceImage.getHeight(null);
-    
-    g.drawImage(pieceImage, x + (width - pieceWidth)/2, y + (height - pieceHeight)/2, component);
-  }
-
-
-
-
-  /**
-   * The <code>ImageFilter</code> we use to create shaded piece images.
-   */
-
-  private static class ShadingFilter extends RGBImageFilter{
-
-    @Override
-    public int filterRGB(int x, int y, int rgb){
-      int alpha = (rgb >> 24) & 0xff;
-      int r = (rgb >> 16) & 0xff;
-      int g = (rgb >> 8) & 0xff;
-      int b = rgb & 0xff;
-
-      r = (r + 128*2)/3;
-      g = (g + 128*2)/3;
-      b = (b + 128*2)/3;
-
-      return (alpha << 24) | (r << 16) | (g << 8) | b;
-    }
-
+    atlas.paintPiece(piece, g, x, y, width, height, shaded);
   }
   
   
   
   /**
-   * The receiver of loaded image data. Responsible for creating and correctly
-   * mapping the piece images.
+   * The piece images of a single size, along with their shaded versions, drawn
+   * into a single image compatible with the screen. The normal images occupy
+   * the top row of the atlas and the shaded ones the bottom row, each image in
+   * a cell the size of the largest image.
    */
   
-  private class ImageDataReceiver implements IOUtilities.DataReceiver{
+  private static class PieceAtlas{
+    
+    
+    
+    /**
+     * The atlas image.
+     */
+    
+    private final BufferedImage image;
+    
+    
+    
+    /**
+     * Maps <code>Piece</code>s to the <code>Integer</code> indices of their
+     * cells in the atlas.
+     */
+    
+    private final Map cellIndices;
+    
+    
+    
+    /**
+     * The widths of the piece images, by cell index.
+     */
+    
+    private final int [] widths;
     
     
     
     /**
-     * The map of pieces to normal images.
+     * The heights of the piece images, by cell index.
      */
     
-    private final Map normalImages;
+    private final int [] heights;
     
     
     
     /**
-     * The map of pieces to shaded images.
+     * The width of a cell.
      */
     
-    private final Map shadedImages;
+    private final int cellWidth;
+    
+    
+    
+    /**
+     * The height of a cell.
+     */
+    
+    private final int cellHeight;
+    
+    
+    
+    /**
+     * Creates a new <code>PieceAtlas</code> from the specified, already
+     * loaded, images of the specified pieces. The atlas is made compatible with
+     * the graphics configuration of the specified component, or of the default
+     * screen if the component is <code>null</code> or not displayed.
+     */
+    
+    public PieceAtlas(Piece [] pieces, Image [] pieceImages, Component target){
+      int count = pieces.length;
+      this.cellIndices = new HashMap(count * 2);
+      this.widths = new int[count];
+      this.heights = new int[count];
+      
+      int maxWidth = 1;
+      int maxHeight = 1;
+      for (int i = 0; i < count; i++){
+        widths[i] = Math.max(pieceImages[i].getWidth(null), 0);
+        heights[i] = Math.max(pieceImages[i].getHeight(null), 0);
+        maxWidth = Math.max(maxWidth, widths[i]);
+        maxHeight = Math.max(maxHeight, heights[i]);
+        cellIndices.put(pieces[i], new Integer(i));
+      }
+      this.cellWidth = maxWidth;
+      this.cellHeight = maxHeight;
+      
+      this.image = ImageUtilities.createCompatibleImage(cellWidth * count, cellHeight * 2, target);
+      
+      Graphics2D g = image.createGraphics();
+      try{
+        g.setComposite(AlphaComposite.Src);
+        for (int i = 0; i < count; i++){
+          g.drawImage(pieceImages[i], i * cellWidth, 0, null);
+          g.drawImage(pieceImages[i], i * cellWidth, cellHeight, null);
+        }
+      } finally{
+          g.dispose();
+        }
+      
+      // Shade the bottom row
+      int [] row = new int[image.getWidth()];
+      for (int y = cellHeight; y < 2 * cellHeight; y++){
+        image.getRGB(0, y, row.length, 1, row, 0, row.length);
+        for (int x = 0; x < row.length; x++)
+          row[x] = shadeRGB(row[x]);
+        image.setRGB(0, y, row.length, 1, row, 0, row.length);
+      }
+    }
+    
+    
+    
+    /**
+     * Paints the specified piece, centered in the specified rectangle.
+     */
+    
+    public void paintPiece(Piece piece, Graphics g, int x, int y, int width, int height, boolean shaded){
+      Integer cellIndex = (Integer)cellIndices.get(piece);
+      if (cellIndex == null)
+        return;
+      
+      int index = cellIndex.intValue();
+      int pieceWidth = widths[index];
+      int pieceHeight = heights[index];
+      int sx = index * cellWidth;
+      int sy = shaded ? cellHeight : 0;
+      int dx = x + (width - pieceWidth)/2;
+      int dy = y + (height - pieceHeight)/2;
+      
+      g.drawImage(image, dx, dy, dx + pieceWidth, dy + pieceHeight,
+        sx, sy, sx + pieceWidth, sy + pieceHeight, null);
+    }
+    
+    
+    
+  }
+  
+  
+  
+  /**
+   * The receiver of loaded image data. Responsible for decoding the piece
+   * images and building their atlas.
+   */
+  
+  private class ImageDataReceiver implements IOUtilities.DataReceiver{
     
     
     
@@ -433,6 +531,15 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     
     
     
+    /**
+     * The component whose graphics configuration the atlas should be
+     * compatible with; may be <code>null</code>.
+     */
+    
+    private final Component target;
+    
+    
+    
     /**
      * The components to repaint when the loading is done.
      */
@@ -442,13 +549,13 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     
     
     /**
-     * Creates a new <code>ImageDataReceiver</code> with the specified maps to
-     * fill and component to repaint when loading is done.
+     * Creates a new <code>ImageDataReceiver</code> for images of the specified
+     * size, with the specified target component and component to repaint when
+     * loading is done.
      */
     
-    public ImageDataReceiver(Component componentToRepaint, int imageSize, Map normalImages, Map shadedImages){
-      this.normalImages = normalImages;
-      this.shadedImages = shadedImages;
+    public ImageDataReceiver(Component target, Component componentToRepaint, int imageSize){
+      this.target = target;
       this.imageSize = imageSize;
       componentsToRepaint.add(componentToRepaint);
     }
@@ -467,8 +574,8 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
     
     
     /**
-     * Called when the image data has been loaded. Creates and maps the piece
-     * images.
+     * Called when the image data has been loaded. Decodes the piece images
+     * and builds their atlas.
      */
     
     @Override
@@ -479,20 +586,21 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
         if (exceptions[i] != null)
           return;
       
+      Toolkit toolkit = Toolkit.getDefaultToolkit();
+      Piece [] pieces = (Piece[])id;
+      Image [] images = new Image[data.length];
+      for (int i = 0; i < data.length; i++)
+        images[i] = toolkit.createImage(data[i]);
+      
+      int [] results = ImageUtilities.preload(images, null);
+      for (int i = 0; i < results.length; i++)
+        if (results[i] != ImageUtilities.COMPLETE)
+          return;
+      
+      PieceAtlas atlas = new PieceAtlas(pieces, images, target);
+      
       synchronized(ImagePiecePainter.this){
-        Toolkit toolkit = Toolkit.getDefaultToolkit();
-        Piece [] pieces = (Piece[])id;
-        for (int i = 0; i < data.length; i++){
-          Image normalImage = toolkit.createImage(data[i]);
-          Image shadedImage = shadeImage(normalImage);
-          
-          ImageUtilities.preload(normalImage);
-          ImageUtilities.preload(shadedImage);
-          
-          normalImages.put(pieces[i], normalImage);
-          shadedImages.put(pieces[i], shadedImage);
-        }
-        
+        atlases[imageSize] = atlas;
         imageDataReceivers.remove(new Integer(imageSize));
         
         for (Iterator i = componentsToRepaint.iterator(); i.hasNext();){
@@ -501,9 +609,6 @@ public final class ImagePiecePainter implements ResourcePiecePainter{
             component.repaint();
         }
       }
-      
-      
-      
     }
     
     
@@ -0,0 +1,139 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+
+/**
+ * A growable list of moves packed into <code>int</code>s (see
+ * {@link PackedMove}), which takes a few bytes per move rather than a
+ * <code>Move</code> object (and a reference to it) per move.
+ * <B>IMPORTANT:</B> This class is not thread safe.
+ */
+
+public final class IntMoveList{
+  
+  
+  
+  /**
+   * The packed moves. Only the first <code>size</code> elements are used.
+   */
+  
+  private int [] moves;
+  
+  
+  
+  /**
+   * The amount of moves in the list.
+   */
+  
+  private int size = 0;
+  
+  
+  
+  /**
+   * Creates a new, empty, <code>IntMoveList</code> with room for 64 moves
+   * before it needs to grow.
+   */
+  
+  public IntMoveList(){
+    this(64);
+  }
+  
+  
+  
+  /**
+   * Creates a new, empty, <code>IntMoveList</code> with room for the specified
+   * amount of moves before it needs to grow.
+   */
+  
+  public IntMoveList(int initialCapacity){
+    if (initialCapacity < 0)
+      throw new IllegalArgumentException("initialCapacity may not be negative: " + initialCapacity);
+    
+    this.moves = new int[initialCapacity];
+  }
+  
+  
+  
+  /**
+   * Returns the amount of moves in the list.
+   */
+  
+  public int size(){
+    return size;
+  }
+  
+  
+  
+  /**
+   * Returns the packed move at the specified index.
+   */
+  
+  public int get(int index){
+    if ((index < 0) || (index >= size))
+      throw new IndexOutOfBoundsException("Move index out of range: " + index);
+    
+    return moves[index];
+  }
+  
+  
+  
+  /**
+   * Adds the specified packed move to the end of the list.
+   */
+  
+  public void add(int packedMove){
+    if (size == moves.length){
+      int [] newMoves = new int[Math.max(moves.length * 2, 16)];
+      System.arraycopy(moves, 0, newMoves, 0, size);
+      moves = newMoves;
+    }
+    moves[size++] = packedMove;
+  }
+  
+  
+  
+  /**
+   * Removes the moves from the specified index to the end of the list.
+   */
+  
+  public void truncate(int newSize){
+    if ((newSize < 0) || (newSize > size))
+      throw new IndexOutOfBoundsException("Bad size: " + newSize + ", current size: " + size);
+    
+    size = newSize;
+  }
+  
+  
+  
+  /**
+   * Removes all the moves from the list.
+   */
+  
+  public void clear(){
+    size = 0;
+  }
+  
+  
+  
+}
@@ -39,8 +39,6 @@ import java.awt.event.InputEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.Vector;
 
 import javax.swing.JComponent;
@@ -58,6 +56,8 @@ import free.util.MathUtilities;
 import free.util.PaintHook;
 import free.util.PlatformUtils;
 import free.util.Utilities;
+import free.util.metrics.Histogram;
+import free.util.metrics.MetricsRegistry;
 
 
 /**
@@ -95,6 +95,15 @@ public class JBoard extends JComponent{
   
   
   
+  /**
+   * The histogram of the time it takes to paint a board, in the
+   * {@link MetricsRegistry}.
+   */
+  
+  private static final Histogram PAINT_TIME = MetricsRegistry.getInstance().getHistogram("jboard.paint");
+  
+  
+  
   /**
    * The default color for highlighting possible target squares.
    */
@@ -595,12 +604,23 @@ public class JBoard extends JComponent{
   
   
   /**
-   * A set of possible target squares during a move; <code>null</code> if none.
-   * May be <code>null</code> even during a move, if it's not required (neither
-   * in snap-to-legal-square, nor in highlight-legal-moves mode).
+   * The possible target squares during a move, as a {@link SquareSet}. Only
+   * meaningful when <code>isLegalTargetSquaresKnown</code> is
+   * <code>true</code>.
+   */
+  
+  private long legalTargetSquares = SquareSet.EMPTY;
+  
+  
+  
+  /**
+   * Whether <code>legalTargetSquares</code> holds the possible target squares
+   * of the currently moved piece. May be <code>false</code> even during a
+   * move, if they're not required (neither in snap-to-legal-square, nor in
+   * highlight-legal-moves mode).
    */
   
-  private Collection legalTargetSquares = null;
+  private boolean isLegalTargetSquaresKnown = false;
   
   
   
@@ -1137,9 +1157,9 @@ public class JBoard extends JComponent{
     
     if (isMovingPiece()){
       if (newValue)
-        legalTargetSquares = position.getTargetSquares(movedPieceSquare);
+        setLegalTargetSquares(position.getTargetSquareMask(movedPieceSquare));
       else
-        legalTargetSquares = null;
+        clearLegalTargetSquares();
       
       repaint();
     }
@@ -1173,7 +1193,7 @@ public class JBoard extends JComponent{
     Object oldColor = this.legalTargetSquaresHighlightColor;
     this.legalTargetSquaresHighlightColor = color;
     
-    if (legalTargetSquares != null)
+    if (isLegalTargetSquaresKnown)
       repaintLegalTargetSquares(null);
     
     firePropertyChange("legalTargetSquaresHighlightColor", oldColor, color);
@@ -1523,6 +1543,7 @@ public class JBoard extends JComponent{
 
   @Override
   public void paintComponent(Graphics graphics){
+    long startTime = System.nanoTime();
     super.paintComponent(graphics);
     
     Rectangle originalClip = graphics.getClipBounds();
@@ -1586,10 +1607,10 @@ public class JBoard extends JComponent{
     }
     
     // Paint possible target squares
-    if (isHighlightLegalTargetSquares && (legalTargetSquares != null)){
+    if (isHighlightLegalTargetSquares && isLegalTargetSquaresKnown){
       g.setColor(legalTargetSquaresHighlightColor);
-      for (Iterator i = legalTargetSquares.iterator(); i.hasNext();){
-        rect = squareToRect((Square)i.next(), rect);
+      for (long squares = legalTargetSquares; squares != 0; squares = SquareSet.removeFirst(squares)){
+        rect = squareToRect(SquareSet.first(squares), rect);
         if (rect.intersects(clipRect))
           g.fill(rect);
       }
@@ -1661,6 +1682,8 @@ public class JBoard extends JComponent{
         piecePainter.paintPiece(piece, g, this, rect, false);
       }
     }
+    
+    PAINT_TIME.recordSince(startTime);
   }
   
   
@@ -2067,18 +2090,19 @@ public class JBoard extends JComponent{
    */
    
   private Square calcTargetSquare(Point cursorLocation){
-    if (isSnapToLegalSquare && (legalTargetSquares != null)){
+    if (isSnapToLegalSquare && isLegalTargetSquaresKnown){
       // Check the usual case - square under the cursor
       Square cursorSquare = locationToSquare(cursorLocation);
-      if (movedPieceSquare.equals(cursorSquare) || legalTargetSquares.contains(cursorSquare))
+      if (movedPieceSquare.equals(cursorSquare) ||
+          ((cursorSquare != null) && SquareSet.contains(legalTargetSquares, cursorSquare)))
         return cursorSquare;
       
       Rectangle rect = squareToRect(0, 0, null);
       int minDistanceSquared = // We don't want squares which are too far.
         MathUtilities.sqr((int)(1.5*Math.max(rect.width, rect.height))); 
       Square nearestSquare = null;
-      for (Iterator i = legalTargetSquares.iterator(); i.hasNext();){
-        Square square = (Square)i.next();
+      for (long squares = legalTargetSquares; squares != 0; squares = SquareSet.removeFirst(squares)){
+        Square square = SquareSet.first(squares);
         squareToRect(square, rect);
         
         int dx = cursorLocation.x - (rect.x + rect.width/2);
@@ -2238,8 +2262,30 @@ public class JBoard extends JComponent{
    */
   
   private void repaintLegalTargetSquares(Rectangle helpRect){
-    for (Iterator i = legalTargetSquares.iterator(); i.hasNext();)
-      repaint(helpRect = squareToRect((Square)i.next(), helpRect));
+    for (long squares = legalTargetSquares; squares != 0; squares = SquareSet.removeFirst(squares))
+      repaint(helpRect = squareToRect(SquareSet.first(squares), helpRect));
+  }
+  
+  
+  
+  /**
+   * Sets the possible target squares of the currently moved piece.
+   */
+  
+  private void setLegalTargetSquares(long squares){
+    legalTargetSquares = squares;
+    isLegalTargetSquaresKnown = true;
+  }
+  
+  
+  
+  /**
+   * Forgets the possible target squares of the currently moved piece.
+   */
+  
+  private void clearLegalTargetSquares(){
+    legalTargetSquares = SquareSet.EMPTY;
+    isLegalTargetSquaresKnown = false;
   }
   
   
@@ -2260,13 +2306,13 @@ public class JBoard extends JComponent{
     repaint(squareToRect(movedPieceSquare, rect));
     if (targetSquare != null)
       repaint(squareToRect(targetSquare, rect));
-    if (legalTargetSquares != null)
+    if (isLegalTargetSquaresKnown)
       repaintLegalTargetSquares(rect);
     
     movedPieceSquare = null;
     movedPieceLoc = null;
     targetSquare = null;
-    legalTargetSquares = null;
+    clearLegalTargetSquares();
     
     fireMoveProgressEvent(new MoveProgressEvent(this, MoveProgressEvent.MOVE_MAKING_ENDED));
   }
@@ -2333,7 +2379,7 @@ public class JBoard extends JComponent{
         movedPieceLoc = new Point(x, y);
         
         if (isHighlightLegalTargetSquares() || isSnapToLegalSquare())
-          legalTargetSquares = position.getTargetSquares(movedPieceSquare);
+          setLegalTargetSquares(position.getTargetSquareMask(movedPieceSquare));
         
         targetSquare = calcTargetSquare(movedPieceLoc);
         
@@ -2398,7 +2444,7 @@ public class JBoard extends JComponent{
         movedPieceSquare = null;
         movedPieceLoc = null;
         targetSquare = null;
-        legalTargetSquares = null;
+        clearLegalTargetSquares();
         moveGesture = 0;
         
         fireMoveProgressEvent(new MoveProgressEvent(this, MoveProgressEvent.MOVE_MAKING_ENDED));
@@ -0,0 +1,280 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+
+/**
+ * Operations on chess moves packed into a single <code>int</code>, for storing
+ * long sequences of moves compactly (see {@link IntMoveList}). A packed move
+ * holds everything a {@link ChessMove} does, except for its string
+ * representation, so the <code>ChessMove</code> can be recreated from it
+ * without the position it was made in:
+ * <pre>
+ * bits  0-5   starting square index
+ * bits  6-11  ending square index
+ * bits 12-14  type of the promotion target, 0 if none
+ * bits 15-17  type of the captured piece, 0 if none
+ * bit  18     set if the moving player is black
+ * bit  19     set for an en passant capture
+ * bit  20     set for short castling
+ * bit  21     set for long castling
+ * bits 22-25  file of a double pawn push plus one, 0 if none
+ * bit  26     set if the captured piece is the moving player's own (a rook
+ *             "captured" by castling in Fischer random, for example)
+ * </pre>
+ * Packed moves are never negative, so a negative value may be used to mark a
+ * move which can't be packed (see {@link #canPack(Move)}).
+ */
+
+public final class PackedMove{
+  
+  
+  
+  /**
+   * The value {@link #pack(ChessMove)} never returns, which may be used to mark
+   * a move which can't be packed.
+   */
+  
+  public static final int NONE = -1;
+  
+  
+  
+  /**
+   * The mask of a piece type field.
+   */
+  
+  private static final int PIECE_TYPE_MASK = 0x7;
+  
+  
+  
+  /**
+   * The shift of the promotion target type.
+   */
+  
+  private static final int PROMOTION_SHIFT = 12;
+  
+  
+  
+  /**
+   * The shift of the captured piece type.
+   */
+  
+  private static final int CAPTURE_SHIFT = 15;
+  
+  
+  
+  /**
+   * The bit set when the moving player is black.
+   */
+  
+  private static final int BLACK_BIT = 1 << 18;
+  
+  
+  
+  /**
+   * The bit set for an en passant capture.
+   */
+  
+  private static final int EN_PASSANT_BIT = 1 << 19;
+  
+  
+  
+  /**
+   * The bit set for short castling.
+   */
+  
+  private static final int SHORT_CASTLING_BIT = 1 << 20;
+  
+  
+  
+  /**
+   * The bit set for long castling.
+   */
+  
+  private static final int LONG_CASTLING_BIT = 1 << 21;
+  
+  
+  
+  /**
+   * The shift of the double pawn push file.
+   */
+  
+  private static final int DOUBLE_PUSH_SHIFT = 22;
+  
+  
+  
+  /**
+   * The bit set when the captured piece belongs to the moving player.
+   */
+  
+  private static final int OWN_CAPTURE_BIT = 1 << 26;
+  
+  
+  
+  /**
+   * The white chess pieces, indexed by type.
+   */
+  
+  private static final ChessPiece [] WHITE_PIECES = new ChessPiece[]{
+    null, ChessPiece.WHITE_PAWN, ChessPiece.WHITE_KNIGHT, ChessPiece.WHITE_BISHOP,
+    ChessPiece.WHITE_ROOK, ChessPiece.WHITE_QUEEN, ChessPiece.WHITE_KING
+  };
+  
+  
+  
+  /**
+   * The black chess pieces, indexed by type.
+   */
+  
+  private static final ChessPiece [] BLACK_PIECES = new ChessPiece[]{
+    null, ChessPiece.BLACK_PAWN, ChessPiece.BLACK_KNIGHT, ChessPiece.BLACK_BISHOP,
+    ChessPiece.BLACK_ROOK, ChessPiece.BLACK_QUEEN, ChessPiece.BLACK_KING
+  };
+  
+  
+  
+  /**
+   * No instances.
+   */
+  
+  private PackedMove(){
+    
+  }
+  
+  
+  
+  /**
+   * Returns whether the specified move can be packed - whether it's a
+   * <code>ChessMove</code> involving only the regular chess pieces.
+   */
+  
+  public static boolean canPack(Move move){
+    if (!(move instanceof ChessMove))
+      return false;
+    
+    ChessMove cmove = (ChessMove)move;
+    return isPackable(cmove.getPromotionTarget()) && isPackable(cmove.getCapturedPiece());
+  }
+  
+  
+  
+  /**
+   * Returns whether the specified piece, which may be <code>null</code>, is one
+   * of the regular chess pieces.
+   */
+  
+  private static boolean isPackable(ChessPiece piece){
+    return (piece == null) || ((piece.getType() > 0) && (piece.getType() < WHITE_PIECES.length));
+  }
+  
+  
+  
+  /**
+   * Returns the specified move, packed into an <code>int</code>.
+   *
+   * @throws IllegalArgumentException if the move can't be packed (see
+   * {@link #canPack(Move)}).
+   */
+  
+  public static int pack(ChessMove move){
+    if (!canPack(move))
+      throw new IllegalArgumentException("Can't pack " + move);
+    
+    int packed = move.getStartingSquare().getIndex() | (move.getEndingSquare().getIndex() << 6);
+    if (move.isPromotion())
+      packed |= move.getPromotionTarget().getType() << PROMOTION_SHIFT;
+    if (move.isCapture()){
+      packed |= move.getCapturedPiece().getType() << CAPTURE_SHIFT;
+      if (move.getCapturedPiece().getPlayer() == move.getPlayer())
+        packed |= OWN_CAPTURE_BIT;
+    }
+    if (move.getPlayer().isBlack())
+      packed |= BLACK_BIT;
+    if (move.isEnPassant())
+      packed |= EN_PASSANT_BIT;
+    if (move.isShortCastling())
+      packed |= SHORT_CASTLING_BIT;
+    if (move.isLongCastling())
+      packed |= LONG_CASTLING_BIT;
+    packed |= (move.getDoublePawnPushFile() + 1) << DOUBLE_PUSH_SHIFT;
+    
+    return packed;
+  }
+  
+  
+  
+  /**
+   * Returns the player making the specified packed move.
+   */
+  
+  public static Player getPlayer(int packed){
+    return (packed & BLACK_BIT) == 0 ? Player.WHITE_PLAYER : Player.BLACK_PLAYER;
+  }
+  
+  
+  
+  /**
+   * Returns the starting square of the specified packed move.
+   */
+  
+  public static Square getStartingSquare(int packed){
+    return Bitboards.squareAt(packed & 0x3f);
+  }
+  
+  
+  
+  /**
+   * Returns the ending square of the specified packed move.
+   */
+  
+  public static Square getEndingSquare(int packed){
+    return Bitboards.squareAt((packed >> 6) & 0x3f);
+  }
+  
+  
+  
+  /**
+   * Recreates the <code>ChessMove</code> packed into the specified
+   * <code>int</code>, with the specified string representation (which may be
+   * <code>null</code>).
+   */
+  
+  public static ChessMove unpack(int packed, String moveSAN){
+    if (packed < 0)
+      throw new IllegalArgumentException("Not a packed move: " + packed);
+    
+    Player player = getPlayer(packed);
+    ChessPiece [] ownPieces = player.isWhite() ? WHITE_PIECES : BLACK_PIECES;
+    ChessPiece [] enemyPieces = player.isWhite() ? BLACK_PIECES : WHITE_PIECES;
+    ChessPiece [] capturedPieces = (packed & OWN_CAPTURE_BIT) == 0 ? enemyPieces : ownPieces;
+    
+    return new ChessMove(getStartingSquare(packed), getEndingSquare(packed), player,
+      (packed & EN_PASSANT_BIT) != 0, (packed & SHORT_CASTLING_BIT) != 0, (packed & LONG_CASTLING_BIT) != 0,
+      capturedPieces[(packed >> CAPTURE_SHIFT) & PIECE_TYPE_MASK],
+      ((packed >> DOUBLE_PUSH_SHIFT) & 0xf) - 1,
+      ownPieces[(packed >> PROMOTION_SHIFT) & PIECE_TYPE_MASK], moveSAN);
+  }
+  
+  
+  
+}
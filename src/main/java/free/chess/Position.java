@@ -21,6 +21,7 @@
 
 package free.chess;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.StringTokenizer;
 
@@ -30,7 +31,6 @@ import javax.swing.event.EventListenerList;
 
 import free.chess.event.MoveEvent;
 import free.chess.event.MoveListener;
-import free.util.Utilities;
 
 
 /**
@@ -38,6 +38,22 @@ import free.util.Utilities;
  * itself is generally variant independent, but it does make some assumptions,
  * such as the board being a 8x8 container of pieces, there being two players
  * and other things common to most chess variants.
+ * <P>The pieces are kept both in a mailbox (an array of 64 squares), for
+ * looking up the piece at a square, and in bitboards (see {@link Bitboards})
+ * - one per color and one per piece type - so that occupancy can be queried,
+ * and positions copied and compared, a whole board at a time. Two pieces of
+ * the same color and type are considered the same piece; this holds for the
+ * pieces of any single variant.
+ * <P>Besides the pieces and the player to move, a position has castling rights
+ * and an en passant file, which the wild variant maintains as moves are made.
+ * All of this state is summarized in a Zobrist hash key, which is kept up to
+ * date as the position changes, making {@link #hashCode()} a field read and
+ * letting {@link #equals(Position)} reject different positions right away.
+ * <P>Moves made with {@link #makeMove(Move)} can be taken back with
+ * {@link #unmakeMove()}. For each move, the position keeps a compact undo
+ * record - the squares the wild variant changed, with the pieces that were on
+ * them, and the player to move, castling rights and en passant file before
+ * the move. Any other modification of the position discards the undo records.
  * <B>IMPORTANT:</B> This class is not thread safe.
  */
 
@@ -45,6 +61,50 @@ public final class Position{
   
   
   
+  /**
+   * The castling right of white to castle on the king's side (towards the h
+   * file).
+   */
+  
+  public static final int WHITE_KINGSIDE_CASTLING = 1;
+  
+  
+  
+  /**
+   * The castling right of white to castle on the queen's side (towards the a
+   * file).
+   */
+  
+  public static final int WHITE_QUEENSIDE_CASTLING = 2;
+  
+  
+  
+  /**
+   * The castling right of black to castle on the king's side (towards the h
+   * file).
+   */
+  
+  public static final int BLACK_KINGSIDE_CASTLING = 4;
+  
+  
+  
+  /**
+   * The castling right of black to castle on the queen's side (towards the a
+   * file).
+   */
+  
+  public static final int BLACK_QUEENSIDE_CASTLING = 8;
+  
+  
+  
+  /**
+   * All the castling rights.
+   */
+  
+  public static final int ALL_CASTLING_RIGHTS = 15;
+  
+  
+  
   /**
    * The WildVariant of this Position.
    */
@@ -54,10 +114,29 @@ public final class Position{
   
   
   /**
-   * A matrix to keep references to the pieces.
+   * The pieces, by square index.
+   */
+  
+  private final Piece [] pieces = new Piece[64];
+  
+  
+  
+  /**
+   * The squares occupied by the pieces of each color, by color index (see
+   * {@link Bitboards#colorIndex(int)}).
+   */
+  
+  private final long [] colorMasks = new long[2];
+  
+  
+  
+  /**
+   * The squares occupied by the pieces of each type (of both colors), by
+   * piece type. Grows if a piece of a type beyond its size is put on the
+   * board.
    */
   
-  private final Piece [][] pieces = new Piece[8][8];
+  private long [] typeMasks = new long[ChessPiece.KING + 1];
   
   
   
@@ -77,6 +156,105 @@ public final class Position{
   
   
   
+  /**
+   * The castling rights, a combination of the <code>XXX_CASTLING</code>
+   * constants.
+   */
+  
+  private int castlingRights = 0;
+  
+  
+  
+  /**
+   * The file of the pawn that has just made a double push, or -1 if the last
+   * move wasn't a double pawn push.
+   */
+  
+  private int enPassantFile = -1;
+  
+  
+  
+  /**
+   * The Zobrist hash key of the position.
+   */
+  
+  private long zobristKey = 0;
+  
+  
+  
+  /**
+   * An empty <code>int</code> array, which the undo record arrays start out
+   * as, so that positions no move is made in (copies kept as snapshots, for
+   * example) don't carry them.
+   */
+  
+  private static final int [] EMPTY_INTS = new int[0];
+  
+  
+  
+  /**
+   * An empty <code>Piece</code> array, for the same purpose as
+   * <code>EMPTY_INTS</code>.
+   */
+  
+  private static final Piece [] EMPTY_PIECES = new Piece[0];
+  
+  
+  
+  /**
+   * The indices of the squares changed by the moves that can be unmade, in
+   * the order they were changed. Only the first <code>undoSquareCount</code>
+   * elements are used.
+   */
+  
+  private int [] undoSquares = EMPTY_INTS;
+  
+  
+  
+  /**
+   * The pieces that were on the squares in <code>undoSquares</code> before
+   * they were changed.
+   */
+  
+  private Piece [] undoPieces = EMPTY_PIECES;
+  
+  
+  
+  /**
+   * The amount of changed squares recorded in <code>undoSquares</code>.
+   */
+  
+  private int undoSquareCount = 0;
+  
+  
+  
+  /**
+   * For each move that can be unmade, the index in <code>undoSquares</code>
+   * of the first square it changed. Only the first <code>undoMoveCount</code>
+   * elements are used.
+   */
+  
+  private int [] undoMoveStarts = EMPTY_INTS;
+  
+  
+  
+  /**
+   * For each move that can be unmade, the state of the position before it,
+   * as packed by {@link #packUndoState()}.
+   */
+  
+  private int [] undoMoveStates = EMPTY_INTS;
+  
+  
+  
+  /**
+   * The amount of moves that can be unmade.
+   */
+  
+  private int undoMoveCount = 0;
+  
+  
+  
   /**
    * A FEN representation of the position.
    */
@@ -166,7 +344,54 @@ public final class Position{
    */
   
   public Piece getPieceAt(int file, int rank){
-    return pieces[file][rank];
+    if (((file | rank) & ~7) != 0)
+      throw new IllegalArgumentException("file and rank must be in the range [0-7] "+
+          "(file:" + file + " rank:" + rank + ")");
+    
+    return pieces[(rank << 3) | file];
+  }
+  
+  
+  
+  /**
+   * Returns the squares occupied by pieces, as a bitboard.
+   */
+  
+  public long getOccupancy(){
+    return colorMasks[0] | colorMasks[1];
+  }
+  
+  
+  
+  /**
+   * Returns the squares occupied by the pieces of the specified player, as a
+   * bitboard.
+   */
+  
+  public long getOccupancy(Player player){
+    return colorMasks[Bitboards.colorIndex(player.getPieceColor())];
+  }
+  
+  
+  
+  /**
+   * Returns the squares occupied by pieces of the specified color and type,
+   * as a bitboard.
+   */
+  
+  public long getPieceMask(int color, int type){
+    return type < typeMasks.length ? colorMasks[Bitboards.colorIndex(color)] & typeMasks[type] : 0;
+  }
+  
+  
+  
+  /**
+   * Returns the squares occupied by pieces equal to the specified piece, as a
+   * bitboard.
+   */
+  
+  public long getPieceMask(Piece piece){
+    return getPieceMask(piece.getColor(), piece.getType());
   }
   
   
@@ -191,6 +416,7 @@ public final class Position{
    */
   
   public void setPieceAt(Piece piece, Square square){
+    discardUndoRecords();
     setPieceAtImpl(piece, square);
     fireStateChanged();
   }
@@ -229,18 +455,86 @@ public final class Position{
    */
   
   public void setCurrentPlayer(Player player){
+    discardUndoRecords();
     setCurrentPlayerImpl(player);
     fireStateChanged();
   }
   
   
   
+  /**
+   * Returns the castling rights in this position, a combination of the
+   * <code>XXX_CASTLING</code> constants. Castling rights only record that
+   * neither the king nor the rook have moved yet; they say nothing about
+   * whether castling is possible in the position.
+   */
+  
+  public int getCastlingRights(){
+    return castlingRights;
+  }
+  
+  
+  
+  /**
+   * Sets the castling rights in this position.
+   *
+   * @param castlingRights A combination of the <code>XXX_CASTLING</code>
+   * constants.
+   */
+  
+  public void setCastlingRights(int castlingRights){
+    discardUndoRecords();
+    setCastlingRightsImpl(castlingRights);
+    fireStateChanged();
+  }
+  
+  
+  
+  /**
+   * Returns the file of the pawn that has just made a double push (and may
+   * thus be captured en passant), or -1 if the last move wasn't a double pawn
+   * push.
+   */
+  
+  public int getEnPassantFile(){
+    return enPassantFile;
+  }
+  
+  
+  
+  /**
+   * Sets the file of the pawn that has just made a double push, -1 for none.
+   */
+  
+  public void setEnPassantFile(int file){
+    discardUndoRecords();
+    setEnPassantFileImpl(file);
+    fireStateChanged();
+  }
+  
+  
+  
+  /**
+   * Returns the Zobrist hash key of this position. The key is computed from
+   * the pieces, the player to move, the castling rights and the en passant
+   * file, so equal positions have equal keys, and different positions almost
+   * certainly have different ones. The key is kept up to date as the position
+   * changes, so this method takes constant time.
+   */
+  
+  public long getZobristKey(){
+    return zobristKey;
+  }
+  
+  
+  
   /**
    * Sets this Position to represent the position represented by 
    * the given string. The string should represent a position by specifying
    * 64 characters indicating what occupies (-PNBRQKpnbrqk) each square, in 
    * lexigraphic order (a8, b8, ..., h1). The player to move will be
-   * the player with the white pieces.
+   * the player with the white pieces, and the position will have no castling
+   * rights and no en passant file.
    *
    * @param pos The string representing the position.
    *
@@ -252,6 +546,7 @@ public final class Position{
     if (pos.length() < 64)
       throw new PositionFormatException("Less than 64 letters in the string: " + pos);
     
+    discardUndoRecords();
     int i = 0;
     try{
       for (int rank = 7; rank >= 0; rank--){
@@ -264,6 +559,8 @@ public final class Position{
       }
     
     setCurrentPlayerImpl(Player.WHITE_PLAYER);
+    setCastlingRightsImpl(0);
+    setEnPassantFileImpl(-1);
     
     fireStateChanged();
   }
@@ -297,7 +594,11 @@ public final class Position{
    * in FEN format. The FEN format is described at 
    * <A HREF="http://www.very-best.de/pgn-spec.htm#16.1">http://www.very-best.de/pgn-spec.htm#16.1</A>.
    * The characters describing pieces aren't limited to the chess set (like in
-   * FEN), but are determined by the WildVariant of this position.
+   * FEN), but are determined by the WildVariant of this position. Besides the
+   * standard <code>KQkq</code>, castling rights may also be specified by the
+   * file of the rook (<code>A-H</code> and <code>a-h</code>), as in X-FEN;
+   * these are mapped to the side of the king on which the rook is. The
+   * halfmove clock and fullmove number are ignored.
    *
    * @throws PositionFormatException if the given string is not in the expected
    * format.
@@ -308,6 +609,8 @@ public final class Position{
     if (fenTokenizer.countTokens() != 6)
       throw new PositionFormatException("Wrong amount of fields");
     
+    discardUndoRecords();
+    
     String pos = fenTokenizer.nextToken();
     StringTokenizer ranks = new StringTokenizer(pos,"/");
     if (ranks.countTokens() != 8)
@@ -351,11 +654,76 @@ public final class Position{
     else
       throw new PositionFormatException("Wrong active color indicator: " + colorToMove);
     
+    setCastlingRightsImpl(parseCastlingRights(fenTokenizer.nextToken()));
+    
+    String enPassantSquare = fenTokenizer.nextToken();
+    if (enPassantSquare.equals("-"))
+      setEnPassantFileImpl(-1);
+    else{
+      try{
+        setEnPassantFileImpl(Square.parseSquare(enPassantSquare).getFile());
+      } catch (IllegalArgumentException e){
+          throw new PositionFormatException(e);
+        }
+    }
+    
     this.positionFEN = fen;
   }
   
   
   
+  /**
+   * Parses the castling rights field of a FEN string.
+   */
+  
+  private int parseCastlingRights(String s) throws PositionFormatException{
+    if (s.equals("-"))
+      return 0;
+    
+    int rights = 0;
+    for (int i = 0; i < s.length(); i++){
+      char c = s.charAt(i);
+      boolean isWhite = Character.isUpperCase(c);
+      int kingsideRight = isWhite ? WHITE_KINGSIDE_CASTLING : BLACK_KINGSIDE_CASTLING;
+      int queensideRight = isWhite ? WHITE_QUEENSIDE_CASTLING : BLACK_QUEENSIDE_CASTLING;
+      char lc = Character.toLowerCase(c);
+      if (lc == 'k')
+        rights |= kingsideRight;
+      else if (lc == 'q')
+        rights |= queensideRight;
+      else if ((lc >= 'a') && (lc <= 'h')){
+        int rank = isWhite ? 0 : 7;
+        int kingFile = getBackRankKingFile(isWhite ? Piece.WHITE : Piece.BLACK, rank);
+        if (kingFile == -1)
+          throw new PositionFormatException("Castling rights without a king on the back rank: " + s);
+        rights |= (lc - 'a' > kingFile) ? kingsideRight : queensideRight;
+      }
+      else
+        throw new PositionFormatException("Bad castling rights: " + s);
+    }
+    
+    return rights;
+  }
+  
+  
+  
+  /**
+   * Returns the file of the king of the specified color on the specified rank,
+   * or -1 if there's no such king there.
+   */
+  
+  private int getBackRankKingFile(int color, int rank){
+    for (int file = 0; file < 8; file++){
+      Piece piece = pieces[(rank << 3) | file];
+      if ((piece instanceof ChessPiece) && ((ChessPiece)piece).isKing() && (piece.getColor() == color))
+        return file;
+    }
+    
+    return -1;
+  }
+  
+  
+  
   /**
    * Returns the FEN representation of this Position. May return
    * <code>null</code> if the current position wasn't set via the setFEN method.
@@ -381,13 +749,19 @@ public final class Position{
   
   /**
    * Clears this position of any pieces. The current player is set to the
-   * player with the White pieces.
+   * player with the White pieces, and the castling rights and en passant file
+   * are cleared.
    */
   
   public void clear(){
-    for (int file=0;file<8;file++)
-      for (int rank=0;rank<8;rank++)
-        setPieceAtImpl(null,Square.getInstance(file,rank));
+    discardUndoRecords();
+    Arrays.fill(pieces, null);
+    Arrays.fill(colorMasks, 0);
+    Arrays.fill(typeMasks, 0);
+    currentPlayer = null;
+    castlingRights = 0;
+    enPassantFile = -1;
+    zobristKey = 0;
     setCurrentPlayerImpl(Player.WHITE_PLAYER);
     
     fireStateChanged();
@@ -397,25 +771,148 @@ public final class Position{
   
   /**
    * Makes the given Move on this position. This method first fires a MoveEvent
-   * and then a ChangeEvent.
+   * and then a ChangeEvent. The move can later be taken back with
+   * {@link #unmakeMove()}.
    * 
    * @param move The move to make.
    *
    * @throws IllegalArgumentException if the given Move is incompatible with
-   * the wild variant of this Position.
+   * the wild variant of this Position. The position is left unchanged in
+   * that case.
    */
   
   public void makeMove(Move move){
-    variant.makeMove(move, this, modifier);
+    if (undoMoveCount == undoMoveStarts.length){
+      int newLength = Math.max(undoMoveCount * 2, 8);
+      int [] newStarts = new int[newLength];
+      int [] newStates = new int[newLength];
+      System.arraycopy(undoMoveStarts, 0, newStarts, 0, undoMoveCount);
+      System.arraycopy(undoMoveStates, 0, newStates, 0, undoMoveCount);
+      undoMoveStarts = newStarts;
+      undoMoveStates = newStates;
+    }
+    undoMoveStarts[undoMoveCount] = undoSquareCount;
+    undoMoveStates[undoMoveCount] = packUndoState();
+    undoMoveCount++;
+    
+    try{
+      variant.makeMove(move, this, modifier);
+    } catch (RuntimeException e){
+        undoLastMove();
+        throw e;
+      }
+    
     fireMoveMade(move);
     fireStateChanged();
   }
   
   
   
+  /**
+   * Takes back the last move made with {@link #makeMove(Move)}, restoring the
+   * position to the state it was in before the move. This method fires a
+   * ChangeEvent.
+   *
+   * @throws IllegalStateException if there is no move to unmake - either no
+   * moves were made, or the position was otherwise modified since.
+   */
+  
+  public void unmakeMove(){
+    if (undoMoveCount == 0)
+      throw new IllegalStateException("No move to unmake");
+    
+    undoLastMove();
+    fireStateChanged();
+  }
+  
+  
+  
+  /**
+   * Returns the amount of moves that can currently be unmade via
+   * {@link #unmakeMove()}.
+   */
+  
+  public int getUnmakeableMoveCount(){
+    return undoMoveCount;
+  }
+  
+  
+  
+  /**
+   * Restores the state recorded in the last undo record and removes it.
+   */
+  
+  private void undoLastMove(){
+    undoMoveCount--;
+    int start = undoMoveStarts[undoMoveCount];
+    for (int i = undoSquareCount - 1; i >= start; i--){
+      setPieceAtImpl(undoPieces[i], Bitboards.squareAt(undoSquares[i]));
+      undoPieces[i] = null;
+    }
+    undoSquareCount = start;
+    
+    int state = undoMoveStates[undoMoveCount];
+    setCastlingRightsImpl(state & ALL_CASTLING_RIGHTS);
+    setEnPassantFileImpl(((state >> 4) & 0xf) - 1);
+    setCurrentPlayerImpl((state & 0x100) == 0 ? Player.WHITE_PLAYER : Player.BLACK_PLAYER);
+  }
+  
+  
+  
+  /**
+   * Packs the castling rights, the en passant file and the current player into
+   * an <code>int</code>, for an undo record.
+   */
+  
+  private int packUndoState(){
+    return castlingRights | ((enPassantFile + 1) << 4) | (currentPlayer.isBlack() ? 0x100 : 0);
+  }
+  
+  
+  
+  /**
+   * Records the piece currently at the specified square in the undo record of
+   * the move being made.
+   */
+  
+  private void recordUndoSquare(Square square){
+    if (undoSquareCount == undoSquares.length){
+      int newLength = Math.max(undoSquareCount * 2, 16);
+      int [] newSquares = new int[newLength];
+      Piece [] newPieces = new Piece[newLength];
+      System.arraycopy(undoSquares, 0, newSquares, 0, undoSquareCount);
+      System.arraycopy(undoPieces, 0, newPieces, 0, undoSquareCount);
+      undoSquares = newSquares;
+      undoPieces = newPieces;
+    }
+    
+    int index = square.getIndex();
+    undoSquares[undoSquareCount] = index;
+    undoPieces[undoSquareCount] = pieces[index];
+    undoSquareCount++;
+  }
+  
+  
+  
+  /**
+   * Discards all the undo records; called when the position is modified other
+   * than by making a move.
+   */
+  
+  private void discardUndoRecords(){
+    if (undoSquareCount != 0)
+      Arrays.fill(undoPieces, 0, undoSquareCount, null);
+    undoSquareCount = 0;
+    undoMoveCount = 0;
+  }
+  
+  
+  
   /**
    * Makes this position a copy of the given position by setting it to
-   * the same state. The WildVariants of the Positions must match.
+   * the same state. The WildVariants of the Positions must match. The undo
+   * records of the given position are not copied - no moves can be unmade in
+   * this position after this method returns.
    *
    * @param position The position to copy.
    */
@@ -424,13 +921,17 @@ public final class Position{
     if (!variant.equals(position.variant))
       throw new IllegalArgumentException("The WildVariants of the positions don't match");
     
-    for (int file = 0; file < pieces.length; file++){
-      for (int rank = 0; rank < pieces[file].length; rank++){
-        pieces[file][rank] = position.pieces[file][rank];
-      }
-    }
+    discardUndoRecords();
+    System.arraycopy(position.pieces, 0, pieces, 0, pieces.length);
+    System.arraycopy(position.colorMasks, 0, colorMasks, 0, colorMasks.length);
+    if (typeMasks.length != position.typeMasks.length)
+      typeMasks = new long[position.typeMasks.length];
+    System.arraycopy(position.typeMasks, 0, typeMasks, 0, typeMasks.length);
     
-    setCurrentPlayerImpl(position.getCurrentPlayer());
+    this.currentPlayer = position.currentPlayer;
+    this.castlingRights = position.castlingRights;
+    this.enPassantFile = position.enPassantFile;
+    this.zobristKey = position.zobristKey;
     
     this.positionFEN = position.positionFEN;
     
@@ -452,7 +953,29 @@ public final class Position{
    */
   
   private void setPieceAtImpl(Piece piece, Square square){
-    pieces[square.getFile()][square.getRank()] = piece;
+    int index = square.getIndex();
+    long mask = 1L << index;
+    
+    Piece oldPiece = pieces[index];
+    zobristKey ^= Zobrist.pieceKey(oldPiece, index) ^ Zobrist.pieceKey(piece, index);
+    if (oldPiece != null){
+      colorMasks[Bitboards.colorIndex(oldPiece.getColor())] &= ~mask;
+      typeMasks[oldPiece.getType()] &= ~mask;
+    }
+    
+    if (piece != null){
+      int type = piece.getType();
+      if (type >= typeMasks.length){
+        long [] newTypeMasks = new long[type + 1];
+        System.arraycopy(typeMasks, 0, newTypeMasks, 0, typeMasks.length);
+        typeMasks = newTypeMasks;
+      }
+      
+      colorMasks[Bitboards.colorIndex(piece.getColor())] |= mask;
+      typeMasks[type] |= mask;
+    }
+    
+    pieces[index] = piece;
     positionFEN = null;
   }
   
@@ -468,12 +991,43 @@ public final class Position{
    */
   
   private void setCurrentPlayerImpl(Player player){
+    zobristKey ^= Zobrist.sideKey(currentPlayer) ^ Zobrist.sideKey(player);
     this.currentPlayer = player;
     positionFEN = null;
   }
   
   
   
+  /**
+   * Sets the castling rights without firing a ChangeEvent.
+   */
+  
+  private void setCastlingRightsImpl(int castlingRights){
+    if ((castlingRights & ~ALL_CASTLING_RIGHTS) != 0)
+      throw new IllegalArgumentException("Bad castling rights: " + castlingRights);
+    
+    zobristKey ^= Zobrist.castlingKey(this.castlingRights) ^ Zobrist.castlingKey(castlingRights);
+    this.castlingRights = castlingRights;
+    positionFEN = null;
+  }
+  
+  
+  
+  /**
+   * Sets the en passant file without firing a ChangeEvent.
+   */
+  
+  private void setEnPassantFileImpl(int file){
+    if ((file < -1) || (file > 7))
+      throw new IllegalArgumentException("Bad en passant file: " + file);
+    
+    zobristKey ^= Zobrist.enPassantKey(enPassantFile) ^ Zobrist.enPassantKey(file);
+    this.enPassantFile = file;
+    positionFEN = null;
+  }
+  
+  
+  
   /**
    * Adds a ChangeListener.  The change listeners are run each
    * time the Position changes.
@@ -579,6 +1133,19 @@ public final class Position{
   
   
   
+  /**
+   * Returns the squares to which the piece at the specified square may move,
+   * as a {@link SquareSet}.
+   * 
+   * @see WildVariant#getTargetSquareMask(Position, Square square)
+   */
+  
+  public long getTargetSquareMask(Square square){
+    return variant.getTargetSquareMask(this, square);
+  }
+  
+  
+  
   /**
    * Returns a textual representation of the board.
    */
@@ -595,20 +1162,73 @@ public final class Position{
   
   /**
    * Returns true iff the specified <code>Position</code> is the same as this
-   * one.
+   * one - has the same pieces, player to move, castling rights and en passant
+   * file. Positions with different Zobrist keys are told apart by the keys
+   * alone.
    */
   
   public boolean equals(Position pos){
+    if (zobristKey != pos.zobristKey)
+      return false;
+    
     if (!variant.equals(pos.variant))
       return false;
     
     if (!currentPlayer.equals(pos.currentPlayer))
       return false;
     
-    for (int file = 0; file < pieces.length; file++)
-      for (int rank = 0; rank < pieces[file].length; rank++)
-        if (!Utilities.areEqual(pieces[file][rank], pos.pieces[file][rank]))
-          return false;
+    if ((castlingRights != pos.castlingRights) || (enPassantFile != pos.enPassantFile))
+      return false;
+    
+    if ((colorMasks[0] != pos.colorMasks[0]) || (colorMasks[1] != pos.colorMasks[1]))
+      return false;
+    
+    long [] typeMasks = this.typeMasks;
+    long [] otherTypeMasks = pos.typeMasks;
+    int length = Math.max(typeMasks.length, otherTypeMasks.length);
+    for (int type = 0; type < length; type++){
+      long mask = type < typeMasks.length ? typeMasks[type] : 0;
+      long otherMask = type < otherTypeMasks.length ? otherTypeMasks[type] : 0;
+      if (mask != otherMask)
+        return false;
+    }
+    
+    return true;
+  }
+  
+  
+  
+  /**
+   * Returns true iff the specified <code>Position</code> has the same pieces
+   * and player to move as this one, regardless of castling rights and en
+   * passant file. Useful for comparing with positions whose flags come from a
+   * source other than the moves that led to them.
+   */
+  
+  public boolean isSameBoard(Position pos){
+    long boardKey = zobristKey ^ Zobrist.castlingKey(castlingRights) ^ Zobrist.enPassantKey(enPassantFile);
+    long otherBoardKey = pos.zobristKey ^ Zobrist.castlingKey(pos.castlingRights) ^ Zobrist.enPassantKey(pos.enPassantFile);
+    if (boardKey != otherBoardKey)
+      return false;
+    
+    if (!variant.equals(pos.variant))
+      return false;
+    
+    if (!currentPlayer.equals(pos.currentPlayer))
+      return false;
+    
+    if ((colorMasks[0] != pos.colorMasks[0]) || (colorMasks[1] != pos.colorMasks[1]))
+      return false;
+    
+    long [] typeMasks = this.typeMasks;
+    long [] otherTypeMasks = pos.typeMasks;
+    int length = Math.max(typeMasks.length, otherTypeMasks.length);
+    for (int type = 0; type < length; type++){
+      long mask = type < typeMasks.length ? typeMasks[type] : 0;
+      long otherMask = type < otherTypeMasks.length ? otherTypeMasks[type] : 0;
+      if (mask != otherMask)
+        return false;
+    }
     
     return true;
   }
@@ -631,22 +1251,12 @@ public final class Position{
   
   
   /**
-   * Returns the hashcode of this position.
+   * Returns the hashcode of this position, derived from its Zobrist key.
    */
   
   @Override
   public int hashCode(){
-    int result = 17;
-    result = 37*result + variant.hashCode();
-    result = 37*result + currentPlayer.hashCode();
-    for (int file = 0; file < pieces.length; file++)
-      for (int rank = 0; rank < pieces[file].length; rank++){
-        Piece piece = pieces[file][rank];
-        int c = (piece == null) ? 0 : piece.hashCode();
-        result = 37*result + c;
-      }
-    
-    return result;
+    return (int)(zobristKey ^ (zobristKey >>> 32));
   }
   
   
@@ -688,6 +1298,7 @@ public final class Position{
      */
     
     public void setPieceAt(Piece piece, Square square){
+      position.recordUndoSquare(square);
       position.setPieceAtImpl(piece, square);
     }
     
@@ -703,6 +1314,26 @@ public final class Position{
     
     
     
+    /**
+     * Sets the castling rights.
+     */
+    
+    public void setCastlingRights(int castlingRights){
+      position.setCastlingRightsImpl(castlingRights);
+    }
+    
+    
+    
+    /**
+     * Sets the en passant file.
+     */
+    
+    public void setEnPassantFile(int file){
+      position.setEnPassantFileImpl(file);
+    }
+    
+    
+    
   }
   
   
@@ -0,0 +1,450 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+
+/**
+ * The sequence of moves made in a game from some initial position, along with
+ * the positions they lead to. The position after any amount of moves (ply) can
+ * be obtained without replaying the game from the start - the timeline keeps
+ * a snapshot of the position every <code>checkpointInterval</code> plies, so
+ * at most <code>checkpointInterval - 1</code> moves need to be made on top of
+ * the nearest snapshot, and the latest position is kept as is.
+ * <P>Memory is bounded by a maximum amount of snapshots - when a game grows
+ * long enough to need more, every other snapshot is dropped and the interval
+ * between them doubles. The default interval and maximum amount of snapshots
+ * can be tuned via the <code>free.chess.timelineCheckpointInterval</code> and
+ * <code>free.chess.timelineMaxCheckpoints</code> system properties.
+ * <P>The moves themselves are kept packed into <code>int</code>s (see
+ * {@link PackedMove}), along with their string representations; the
+ * <code>Move</code> objects are recreated when asked for. Moves which can't be
+ * packed are kept as they are.
+ * <B>IMPORTANT:</B> This class is not thread safe.
+ */
+
+public final class PositionTimeline{
+  
+  
+  
+  /**
+   * The default checkpoint interval.
+   */
+  
+  private static final int DEFAULT_CHECKPOINT_INTERVAL = getIntProperty("free.chess.timelineCheckpointInterval", 8);
+  
+  
+  
+  /**
+   * The default maximum amount of checkpoints.
+   */
+  
+  private static final int DEFAULT_MAX_CHECKPOINTS = getIntProperty("free.chess.timelineMaxCheckpoints", 64);
+  
+  
+  
+  /**
+   * The maximum amount of checkpoints.
+   */
+  
+  private final int maxCheckpoints;
+  
+  
+  
+  /**
+   * The amount of plies between consecutive checkpoints.
+   */
+  
+  private int checkpointInterval;
+  
+  
+  
+  /**
+   * The packed moves. A move which can't be packed is {@link PackedMove#NONE}
+   * here, and is kept in <code>unpackedMoves</code> instead.
+   */
+  
+  private final IntMoveList moves = new IntMoveList();
+  
+  
+  
+  /**
+   * The string representations of the moves. Only the first
+   * <code>moveCount</code> elements are used.
+   */
+  
+  private String [] moveStrings = new String[64];
+  
+  
+  
+  /**
+   * The moves which can't be packed, at their indices; <code>null</code> until
+   * the first such move is added.
+   */
+  
+  private Move [] unpackedMoves = null;
+  
+  
+  
+  /**
+   * The amount of moves.
+   */
+  
+  private int moveCount = 0;
+  
+  
+  
+  /**
+   * The checkpoints - the <code>i</code>th one is the position after
+   * <code>i*checkpointInterval</code> plies. The first is the initial
+   * position. Only the first <code>checkpointCount</code> elements are used.
+   */
+  
+  private final Position [] checkpoints;
+  
+  
+  
+  /**
+   * The amount of checkpoints.
+   */
+  
+  private int checkpointCount;
+  
+  
+  
+  /**
+   * The position after all the moves.
+   */
+  
+  private final Position latest;
+  
+  
+  
+  /**
+   * Creates a new <code>PositionTimeline</code> starting at the specified
+   * position, with the default checkpoint interval and maximum amount of
+   * checkpoints.
+   */
+  
+  public PositionTimeline(Position initialPosition){
+    this(initialPosition, DEFAULT_CHECKPOINT_INTERVAL, DEFAULT_MAX_CHECKPOINTS);
+  }
+  
+  
+  
+  /**
+   * Creates a new <code>PositionTimeline</code> starting at the specified
+   * position, with the specified initial checkpoint interval and maximum
+   * amount of checkpoints.
+   */
+  
+  public PositionTimeline(Position initialPosition, int checkpointInterval, int maxCheckpoints){
+    if (checkpointInterval <= 0)
+      throw new IllegalArgumentException("checkpointInterval must be positive: " + checkpointInterval);
+    if (maxCheckpoints < 2)
+      throw new IllegalArgumentException("maxCheckpoints must be at least 2: " + maxCheckpoints);
+    
+    this.checkpointInterval = checkpointInterval;
+    this.maxCheckpoints = maxCheckpoints;
+    this.checkpoints = new Position[maxCheckpoints];
+    this.latest = new Position(initialPosition.getVariant());
+    reset(initialPosition);
+  }
+  
+  
+  
+  /**
+   * Returns the value of the specified integer system property, or the
+   * specified default value if it isn't set, isn't a positive integer or
+   * can't be read.
+   */
+  
+  private static int getIntProperty(String name, int defaultValue){
+    try{
+      int value = Integer.getInteger(name, defaultValue).intValue();
+      return value > 0 ? value : defaultValue;
+    } catch (SecurityException e){
+        return defaultValue;
+      }
+  }
+  
+  
+  
+  /**
+   * Clears all the moves and restarts the timeline at the specified position.
+   * The wild variant of the position must match the one the timeline was
+   * created with.
+   */
+  
+  public void reset(Position initialPosition){
+    clearMoves(0);
+    
+    for (int i = 1; i < checkpointCount; i++)
+      checkpoints[i] = null;
+    checkpoints[0] = new Position(initialPosition);
+    checkpointCount = 1;
+    
+    latest.copyFrom(initialPosition);
+  }
+  
+  
+  
+  /**
+   * Returns the amount of moves in the timeline.
+   */
+  
+  public int getMoveCount(){
+    return moveCount;
+  }
+  
+  
+  
+  /**
+   * Returns the move with the specified index - the move made in the position
+   * after <code>index</code> plies.
+   */
+  
+  public Move getMove(int index){
+    int packed = moves.get(index);
+    if (packed == PackedMove.NONE)
+      return unpackedMoves[index];
+    
+    return PackedMove.unpack(packed, moveStrings[index]);
+  }
+  
+  
+  
+  /**
+   * Returns the player who made the move with the specified index, without
+   * creating the move.
+   */
+  
+  public Player getMovingPlayer(int index){
+    int packed = moves.get(index);
+    if (packed == PackedMove.NONE)
+      return unpackedMoves[index].getPlayer();
+    
+    return PackedMove.getPlayer(packed);
+  }
+  
+  
+  
+  /**
+   * Returns the string representation of the move with the specified index,
+   * as returned by its {@link Move#getStringRepresentation()} method. This may
+   * be <code>null</code>.
+   */
+  
+  public String getMoveStringRepresentation(int index){
+    moves.get(index); // Checks the index
+    return moveStrings[index];
+  }
+  
+  
+  
+  /**
+   * Returns the text of the move with the specified index, as returned by its
+   * <code>toString()</code> method. The move is only created if it has no
+   * string representation.
+   */
+  
+  public String getMoveText(int index){
+    String moveString = getMoveStringRepresentation(index);
+    return moveString == null ? getMove(index).toString() : moveString;
+  }
+  
+  
+  
+  /**
+   * Returns the current amount of plies between snapshots.
+   */
+  
+  public int getCheckpointInterval(){
+    return checkpointInterval;
+  }
+  
+  
+  
+  /**
+   * Returns a copy of the initial position.
+   */
+  
+  public Position getInitialPosition(){
+    return new Position(checkpoints[0]);
+  }
+  
+  
+  
+  /**
+   * Returns the position after all the moves. The returned position is owned
+   * by the timeline - it may be examined, but must not be modified, and it
+   * changes as moves are added and removed. Use
+   * {@link #getPosition(int, Position)} to obtain a copy.
+   */
+  
+  public Position getLatestPosition(){
+    return latest;
+  }
+  
+  
+  
+  /**
+   * Returns a new position which is the position after the specified amount
+   * of plies.
+   */
+  
+  public Position getPosition(int ply){
+    Position position = new Position(latest.getVariant());
+    getPosition(ply, position);
+    return position;
+  }
+  
+  
+  
+  /**
+   * Sets the specified position to the position after the specified amount of
+   * plies. At most <code>getCheckpointInterval() - 1</code> moves are made
+   * in the process.
+   */
+  
+  public void getPosition(int ply, Position position){
+    if ((ply < 0) || (ply > moveCount))
+      throw new IndexOutOfBoundsException("Ply out of range: " + ply);
+    
+    if (ply == moveCount){
+      position.copyFrom(latest);
+      return;
+    }
+    
+    int checkpoint = ply / checkpointInterval;
+    position.copyFrom(checkpoints[checkpoint]);
+    for (int i = checkpoint * checkpointInterval; i < ply; i++)
+      position.makeMove(getMove(i));
+  }
+  
+  
+  
+  /**
+   * Makes the specified move in the latest position and adds it to the
+   * timeline.
+   *
+   * @throws IllegalArgumentException if the move can't be made in the latest
+   * position. The timeline is left unchanged in that case.
+   */
+  
+  public void addMove(Move move){
+    latest.makeMove(move);
+    
+    if (moveCount == moveStrings.length){
+      String [] newMoveStrings = new String[moveStrings.length * 2];
+      System.arraycopy(moveStrings, 0, newMoveStrings, 0, moveCount);
+      moveStrings = newMoveStrings;
+    }
+    moveStrings[moveCount] = move.getStringRepresentation();
+    
+    if (PackedMove.canPack(move))
+      moves.add(PackedMove.pack((ChessMove)move));
+    else{
+      if (unpackedMoves == null)
+        unpackedMoves = new Move[moveStrings.length];
+      else if (unpackedMoves.length <= moveCount){
+        Move [] newUnpackedMoves = new Move[moveStrings.length];
+        System.arraycopy(unpackedMoves, 0, newUnpackedMoves, 0, unpackedMoves.length);
+        unpackedMoves = newUnpackedMoves;
+      }
+      unpackedMoves[moveCount] = move;
+      moves.add(PackedMove.NONE);
+    }
+    moveCount++;
+    
+    if (moveCount % checkpointInterval == 0){
+      if (checkpointCount == maxCheckpoints)
+        thinCheckpoints();
+      if (moveCount % checkpointInterval == 0)
+        checkpoints[checkpointCount++] = new Position(latest);
+    }
+  }
+  
+  
+  
+  /**
+   * Removes the moves from the specified index to the end of the timeline,
+   * without touching the positions.
+   */
+  
+  private void clearMoves(int newMoveCount){
+    for (int i = newMoveCount; i < moveCount; i++){
+      moveStrings[i] = null;
+      if (unpackedMoves != null)
+        unpackedMoves[i] = null;
+    }
+    moves.truncate(newMoveCount);
+    moveCount = newMoveCount;
+  }
+  
+  
+  
+  /**
+   * Drops every other checkpoint, doubling the checkpoint interval.
+   */
+  
+  private void thinCheckpoints(){
+    int newCount = (checkpointCount + 1) / 2;
+    for (int i = 1; i < newCount; i++)
+      checkpoints[i] = checkpoints[i * 2];
+    for (int i = newCount; i < checkpointCount; i++)
+      checkpoints[i] = null;
+    
+    checkpointCount = newCount;
+    checkpointInterval *= 2;
+  }
+  
+  
+  
+  /**
+   * Removes the specified amount of moves from the end of the timeline, as when
+   * they are taken back.
+   */
+  
+  public void removeLastMoves(int count){
+    if ((count < 0) || (count > moveCount))
+      throw new IllegalArgumentException("Can't remove " + count + " of " + moveCount + " moves");
+    
+    int newMoveCount = moveCount - count;
+    if (count <= latest.getUnmakeableMoveCount()){
+      for (int i = 0; i < count; i++)
+        latest.unmakeMove();
+    }
+    else // The latest position's undo records were lost; this can't happen, but just in case
+      getPosition(newMoveCount, latest);
+    
+    clearMoves(newMoveCount);
+    
+    int newCheckpointCount = moveCount / checkpointInterval + 1;
+    for (int i = newCheckpointCount; i < checkpointCount; i++)
+      checkpoints[i] = null;
+    checkpointCount = newCheckpointCount;
+  }
+  
+  
+  
+}
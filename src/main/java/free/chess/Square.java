@@ -31,13 +31,22 @@ public class Square{
   
   
   /**
-   * The pool of unique immutable instances of Square.
+   * The pool of unique immutable instances of Square. It is filled in
+   * advance, so that looking up a square needs no synchronization.
    */
   
   private static final Square [][] POOL = new Square[8][8];
   
   
   
+  static{
+    for (int file = 0; file < 8; file++)
+      for (int rank = 0; rank < 8; rank++)
+        POOL[file][rank] = new Square(file, rank);
+  }
+  
+  
+  
   /**
    * The file of the square.
    */
@@ -105,13 +114,10 @@ public class Square{
    * exception for illegal values, simply returns <code>null</code>. 
    */
   
-  public static synchronized Square getInstanceNonStrict(int file, int rank){
+  public static Square getInstanceNonStrict(int file, int rank){
     if (!isValid(file, rank))
       return null;
     
-    if (POOL[file][rank] == null)
-      POOL[file][rank] = new Square(file, rank);
-    
     return POOL[file][rank];
   }
   
@@ -160,6 +166,18 @@ public class Square{
   
   
   
+  /**
+   * Returns the index of this Square, a value in the range [0-63] -
+   * <code>rank*8 + file</code>. This is also the index of the bit representing
+   * this square in the bitboards of {@link Bitboards}.
+   */
+  
+  public int getIndex(){
+    return (rank << 3) | file;
+  }
+  
+  
+  
   /**
    * Returns a character representing the file of this Square.
    * The returned character will be in the range ['a'-'h'].
@@ -35,12 +35,14 @@ import java.util.Set;
 
 import free.util.IOUtilities;
 import free.util.ImageUtilities;
+import free.util.ScaledImageCache;
 
 
 
 /**
  * A <code>BoardPainter</code> which paints the board with two images - one for
- * light squares an one for dark squares.
+ * light squares an one for dark squares. In {@link #SCALE_MODE}, the scaled
+ * versions of the images are kept in the shared {@link ScaledImageCache}.
  */
 
 public class SquareImagesBoardPainter implements ResourceBoardPainter{
@@ -117,24 +119,6 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
   
   
   
-  /**
-   * A version of the light square image, scaled according to the last paint
-   * request.
-   */
-  
-  private Image scaledLightImage = null;
-  
-  
-  
-  /**
-   * A version of the dark square image, scaled according to the last paint
-   * request.
-   */
-  
-  private Image scaledDarkImage = null;
-  
-  
-  
   /**
    * When <code>SquareImagesBoardPainter</code> is used as a
    * <code>ResourceBoardPainter</code>, this specified the URL of the light
@@ -190,6 +174,9 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
       default:
         throw new IllegalArgumentException("Unknown image usage mode: " + mode);
     }
+    ImageUtilities.preload(lightImage);
+    ImageUtilities.preload(darkImage);
+    
     
     this.lightImage = lightImage;
     this.darkImage = darkImage;
@@ -265,15 +252,14 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
   
   
   /**
-   * If the square images are already loaded, prepares their scaled version
-   * (if needed) for the specified board size and returns <code>true</code>.
+   * If the square images are already loaded, returns <code>true</code>.
    * Otherwise, starts loading them. If asynchronous loading is enabled, the
    * loading is done in a background thread, otherwise, waits until the loading
    * is done.
    * Returns whether the images are ready. 
    */
   
-  protected synchronized boolean prepareSquareImages(int width, int height, Component target){
+  protected synchronized boolean prepareSquareImages(Component target){
     if (lightImage == null){
       if (imageDataReceiver != null){ // Already being loaded
         imageDataReceiver.addComponentToRepaint(target);
@@ -288,43 +274,11 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
       else{
         imageDataReceiver = new ImageDataReceiver(null);
         IOUtilities.loadSynchronously(new URL[]{lightImageUrl, darkImageUrl}, null, imageDataReceiver, true);
-        if ((lightImage == null) || (darkImage == null))
-          return false;
-        
-        scaleSquareImages(width, height);
-        return true;
+        return (lightImage != null) && (darkImage != null);
       }
     }
-    else{
-      scaleSquareImages(width, height);
+    else
       return true;
-    }
-  }
-  
-  
-  
-  /**
-   * Scales the square image to the specified board size.
-   */
-
-  private void scaleSquareImages(int width, int height){
-    if (mode == SCALE_MODE){
-      int squareWidth = width/8;
-      int squareHeight = height/8;
-      if ((scaledLightImage != null) &&
-          (scaledLightImage.getWidth(null) == squareWidth) &&
-          (scaledLightImage.getHeight(null) == squareHeight))
-        return;
-      
-      scaledLightImage = lightImage.getScaledInstance(squareWidth, squareHeight, Image.SCALE_SMOOTH);
-      scaledDarkImage = darkImage.getScaledInstance(squareWidth, squareHeight, Image.SCALE_SMOOTH);
-      
-      ImageUtilities.preload(scaledLightImage);
-      ImageUtilities.preload(scaledDarkImage);
-    }
-    else if (mode == SLICE_MODE){
-      
-    }
   }
   
   
@@ -336,11 +290,20 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
 
   @Override
   public void paintBoard(Graphics g, Component component, int x, int y, int width, int height){
-    if (prepareSquareImages(width, height, component)){
+    if (prepareSquareImages(component)){
       Rectangle clipRect = g.getClipBounds();
       Rectangle drawnRect = new Rectangle(x, y, width/8, height/8);
       
       if (mode == SCALE_MODE){
+        int squareWidth = width/8;
+        int squareHeight = height/8;
+        if ((squareWidth <= 0) || (squareHeight <= 0))
+          return;
+        
+        ScaledImageCache scaledImageCache = ScaledImageCache.getInstance();
+        Image scaledLightImage = scaledImageCache.getScaledImage(lightImage, squareWidth, squareHeight, component);
+        Image scaledDarkImage = scaledImageCache.getScaledImage(darkImage, squareWidth, squareHeight, component);
+        
         for (int file = 0; file < 8; file++, drawnRect.x += width/8){
           drawnRect.y = y;
           for (int rank = 7; rank >= 0; rank--, drawnRect.y += height/8){
@@ -348,7 +311,7 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
               continue;
             
             Image image = (file+rank) % 2 == 0 ? scaledDarkImage : scaledLightImage; 
-            g.drawImage(image, drawnRect.x, drawnRect.y, component);
+            g.drawImage(image, drawnRect.x, drawnRect.y, squareWidth, squareHeight, component);
           }
         }
       }
@@ -444,17 +407,25 @@ public class SquareImagesBoardPainter implements ResourceBoardPainter{
         if (exceptions[i] != null)
           return;
       
-      lightImage = Toolkit.getDefaultToolkit().createImage(data[0]);
-      darkImage = Toolkit.getDefaultToolkit().createImage(data[1]);
+      Image light = Toolkit.getDefaultToolkit().createImage(data[0]);
+      Image dark = Toolkit.getDefaultToolkit().createImage(data[1]);
       
-      ImageUtilities.preload(lightImage);
-      ImageUtilities.preload(darkImage);
+      ImageUtilities.preload(light);
+      ImageUtilities.preload(dark);
       
-      for (Iterator i = componentsToRepaint.iterator(); i.hasNext();){
-        Component component = (Component)i.next();
-        if (component != null)
-          component.repaint();
-      }      
+      synchronized(SquareImagesBoardPainter.this){
+        // Only publish the images once they're loaded, as they may be scaled right away
+        darkImage = dark;
+        lightImage = light;
+        
+        imageDataReceiver = null;
+        
+        for (Iterator i = componentsToRepaint.iterator(); i.hasNext();){
+          Component component = (Component)i.next();
+          if (component != null)
+            component.repaint();
+        }
+      }
     }
     
     
@@ -0,0 +1,173 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Operations on sets of squares represented by a single <code>long</code>, the
+ * way {@link WildVariant#getTargetSquareMask(Position, Square)} returns them -
+ * a square is in the set if the bit at its {@link Square#getIndex() index} is
+ * set (see {@link Bitboards}). Unlike a <code>Collection</code> of
+ * <code>Square</code>s, such a set is a primitive value, so creating, querying
+ * and iterating over it allocates nothing. To iterate over a set:
+ * <pre>
+ * for (long squares = set; squares != SquareSet.EMPTY; squares = SquareSet.removeFirst(squares)){
+ *   Square square = SquareSet.first(squares);
+ *   ...
+ * }
+ * </pre>
+ */
+
+public final class SquareSet{
+  
+  
+  
+  /**
+   * The empty set.
+   */
+  
+  public static final long EMPTY = 0;
+  
+  
+  
+  /**
+   * The set of all the squares of the board.
+   */
+  
+  public static final long ALL = -1;
+  
+  
+  
+  /**
+   * No instances.
+   */
+  
+  private SquareSet(){
+    
+  }
+  
+  
+  
+  /**
+   * Returns the set containing only the specified square.
+   */
+  
+  public static long of(Square square){
+    return 1L << square.getIndex();
+  }
+  
+  
+  
+  /**
+   * Returns whether the specified set contains the specified square.
+   */
+  
+  public static boolean contains(long set, Square square){
+    return (set & (1L << square.getIndex())) != 0;
+  }
+  
+  
+  
+  /**
+   * Returns the specified set with the specified square added to it.
+   */
+  
+  public static long add(long set, Square square){
+    return set | (1L << square.getIndex());
+  }
+  
+  
+  
+  /**
+   * Returns the specified set with the specified square removed from it.
+   */
+  
+  public static long remove(long set, Square square){
+    return set & ~(1L << square.getIndex());
+  }
+  
+  
+  
+  /**
+   * Returns the amount of squares in the specified set.
+   */
+  
+  public static int size(long set){
+    return Long.bitCount(set);
+  }
+  
+  
+  
+  /**
+   * Returns whether the specified set is empty.
+   */
+  
+  public static boolean isEmpty(long set){
+    return set == EMPTY;
+  }
+  
+  
+  
+  /**
+   * Returns the square with the lowest index in the specified set, or
+   * <code>null</code> if the set is empty.
+   */
+  
+  public static Square first(long set){
+    return set == EMPTY ? null : Bitboards.squareAt(Long.numberOfTrailingZeros(set));
+  }
+  
+  
+  
+  /**
+   * Returns the specified set with the square with the lowest index removed
+   * from it.
+   */
+  
+  public static long removeFirst(long set){
+    return set & (set - 1);
+  }
+  
+  
+  
+  /**
+   * Returns a new, modifiable list of the squares in the specified set, in the
+   * order of their indices. This is how the <code>Collection</code> based
+   * methods, such as {@link WildVariant#getTargetSquares(Position, Square)},
+   * are implemented on top of the <code>long</code> based ones.
+   */
+  
+  public static List toList(long set){
+    List squares = new ArrayList(Long.bitCount(set));
+    for (; set != EMPTY; set &= set - 1)
+      squares.add(Bitboards.squareAt(Long.numberOfTrailingZeros(set)));
+    
+    return squares;
+  }
+  
+  
+  
+}
@@ -27,11 +27,16 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Polygon;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import free.util.ImageUtilities;
                                                 
 
 /**            
  * An abstract class offering a convenient partial implementation for vector
- * based piece sets.
+ * based piece sets. Each piece is drawn only once per size and set of colors,
+ * into a raster of all the (normal and shaded) pieces at the current size,
+ * from which it is then copied whenever it's painted.
  */
 
 public abstract class VectorPiecePainter extends AbstractColoredPiecePainter{
@@ -56,6 +61,26 @@ public abstract class VectorPiecePainter extends AbstractColoredPiecePainter{
 
 
 
+  /**
+   * The raster of the pieces at the cached size, created lazily. Each piece
+   * occupies a cell of the cached size - the columns are the piece types, white
+   * then black, and the shaded pieces are in the second row.
+   */
+
+  private BufferedImage pieceRaster = null;
+
+
+
+
+  /**
+   * Whether each cell of <code>pieceRaster</code> has been drawn, by cell index.
+   */
+
+  private final boolean [] isPieceRasterized = new boolean[24];
+
+
+
+
   /**
    * Creates a new <code>VectorPiecePainter</code>.
    */
@@ -174,6 +199,30 @@ public abstract class VectorPiecePainter extends AbstractColoredPiecePainter{
 
 
 
+  /**
+   * Discards the raster of the pieces.
+   */
+
+  private void clearPieceRaster(){
+    pieceRaster = null;
+    for (int i = 0; i < isPieceRasterized.length; i++)
+      isPieceRasterized[i] = false;
+  }
+
+
+
+  /**
+   * Discards the raster of the pieces, as they need to be drawn with the new
+   * colors. The piece polygons remain valid.
+   */
+
+  @Override
+  protected void colorsChanged(){
+    clearPieceRaster();
+  }
+
+
+
   /**
    * Draws the given piece at the given coordinates with the given size on
    * the given Graphics.
@@ -183,27 +232,61 @@ public abstract class VectorPiecePainter extends AbstractColoredPiecePainter{
   public final void paintPiece(Piece piece, Graphics g, Component component, Rectangle rect,
       boolean isShaded){
 
-    Color pieceColor = getPieceColor(piece, isShaded);
-    Color outlineColor = getOutlineColor(piece, isShaded);
+    if (!(piece instanceof ChessPiece))
+      return;
 
     int x = rect.x;
     int y = rect.y;
     int width = rect.width;
     int height = rect.height;
 
-    g.translate(x,y);
-
-    if (!(piece instanceof ChessPiece))
+    if ((width <= 0) || (height <= 0))
       return;
 
     ChessPiece cPiece = (ChessPiece)piece;
 
     if ((cachedPieceSize.width != width) || (cachedPieceSize.height != height)){
       clearPieceCache();
+      clearPieceRaster();
       cachedPieceSize.width = width;
       cachedPieceSize.height = height;
     }
     
+    int column = 2 * (cPiece.getType() - ChessPiece.PAWN) + (cPiece.isWhite() ? 0 : 1);
+    int cellIndex = isShaded ? column + 12 : column;
+    int cellX = column * width;
+    int cellY = isShaded ? height : 0;
+    
+    if (pieceRaster == null)
+      pieceRaster = ImageUtilities.createCompatibleImage(12 * width, 2 * height, component);
+    
+    if (!isPieceRasterized[cellIndex]){
+      Graphics rasterGraphics = pieceRaster.createGraphics();
+      try{
+        rasterGraphics.clipRect(cellX, cellY, width, height);
+        rasterGraphics.translate(cellX, cellY);
+        drawPieceImage(cPiece, rasterGraphics, width, height,
+          getPieceColor(piece, isShaded), getOutlineColor(piece, isShaded));
+      } finally{
+          rasterGraphics.dispose();
+        }
+      isPieceRasterized[cellIndex] = true;
+    }
+
+    g.drawImage(pieceRaster, x, y, x + width, y + height,
+      cellX, cellY, cellX + width, cellY + height, null);
+  }
+
+
+
+  /**
+   * Paints an image of the given piece, of the given size with the given color
+   * and outline color using the given Graphics.
+   */
+
+  private void drawPieceImage(ChessPiece cPiece, Graphics g, int width, int height,
+      Color pieceColor, Color outlineColor){
+    
     if (cPiece.isKing())
       drawKingImage(g, width, height, pieceColor, outlineColor);
     else if (cPiece.isQueen())
@@ -216,8 +299,6 @@ public abstract class VectorPiecePainter extends AbstractColoredPiecePainter{
       drawKnightImage(g, width, height, pieceColor, outlineColor);
     else if (cPiece.isPawn())
       drawPawnImage(g, width, height, pieceColor, outlineColor);
-
-    g.translate(-x, -y);
   }
 
 
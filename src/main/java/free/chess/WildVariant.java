@@ -107,7 +107,9 @@ public interface WildVariant{
    * is no need to trigger the listeners to be called after the move procedure
    * is done - <code>Position.makeMove(Move)</code> triggers them as needed
    * by itself (and since this method can't be called directly, that's the only
-   * way to make a move).
+   * way to make a move). Besides moving the pieces and passing the turn,
+   * implementations should update the castling rights and the en passant file
+   * of the position, as the Zobrist key of the position covers them too.
    */
   
   void makeMove(Move move, Position pos, Position.Modifier modifier);
@@ -164,12 +166,26 @@ public interface WildVariant{
    * that every legal move by the piece has one of the squares as the target
    * square. When implementing, keep in mind the case where the moving piece is
    * not of the same color as the player to move (premove or predrag modes).
+   * This is the same set of squares as returned by
+   * {@link #getTargetSquareMask(Position, Square)}, as a list.
    */
   
   Collection getTargetSquares(Position position, Square square);
   
   
   
+  /**
+   * Returns the squares to which the piece at the specified square may move,
+   * as described in {@link #getTargetSquares(Position, Square)}, as a
+   * {@link SquareSet}. Unlike <code>getTargetSquares</code>, this doesn't
+   * need to allocate anything, so it should be preferred where it's called
+   * often, such as while the user is moving a piece.
+   */
+  
+  long getTargetSquareMask(Position position, Square square);
+  
+  
+  
   /**
    * Returns the name of this WildVariant.
    */
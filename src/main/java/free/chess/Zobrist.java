@@ -0,0 +1,188 @@
+/**
+ * The chess framework library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The chess framework library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The chess framework library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the chess framework library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.chess;
+
+
+/**
+ * The random keys from which the Zobrist hash keys of positions (see
+ * {@link Position#getZobristKey()}) are composed. A position's key is the
+ * exclusive or of the keys of each of its pieces on their squares, of the side
+ * to move (if it's black), of its castling rights and of its en passant file,
+ * so it can be kept up to date as the position changes, by xoring out the keys
+ * of the old state and xoring in the keys of the new one. The keys are
+ * generated from a fixed seed, so keys are the same across runs.
+ */
+
+final class Zobrist{
+  
+  
+  
+  /**
+   * The seed from which the keys are generated.
+   */
+  
+  private static final long SEED = 0x3243f6a8885a308dL;
+  
+  
+  
+  /**
+   * The amount of piece types for which we precompute keys. Keys for pieces of
+   * types beyond this are computed on demand.
+   */
+  
+  private static final int PIECE_TYPE_COUNT = 8;
+  
+  
+  
+  /**
+   * The keys of the pieces, by color index, piece type and square index.
+   */
+  
+  private static final long [][][] PIECE_KEYS = new long[2][PIECE_TYPE_COUNT][64];
+  
+  
+  
+  /**
+   * The key of black being the side to move.
+   */
+  
+  private static final long BLACK_TO_MOVE_KEY;
+  
+  
+  
+  /**
+   * The keys of the castling rights, by the castling rights bitmask.
+   */
+  
+  private static final long [] CASTLING_KEYS = new long[16];
+  
+  
+  
+  /**
+   * The keys of the en passant files, by file.
+   */
+  
+  private static final long [] EN_PASSANT_KEYS = new long[8];
+  
+  
+  
+  static{
+    int n = 0;
+    for (int color = 0; color < 2; color++)
+      for (int type = 0; type < PIECE_TYPE_COUNT; type++)
+        for (int index = 0; index < 64; index++)
+          PIECE_KEYS[color][type][index] = random(n++);
+    
+    BLACK_TO_MOVE_KEY = random(n++);
+    
+    // Each castling right gets its own key, and a set of rights is keyed by
+    // the exclusive or of its members, so that dropping a right is one xor.
+    long [] rightKeys = new long[4];
+    for (int i = 0; i < rightKeys.length; i++)
+      rightKeys[i] = random(n++);
+    for (int rights = 0; rights < CASTLING_KEYS.length; rights++)
+      for (int i = 0; i < rightKeys.length; i++)
+        if ((rights & (1 << i)) != 0)
+          CASTLING_KEYS[rights] ^= rightKeys[i];
+    
+    for (int file = 0; file < 8; file++)
+      EN_PASSANT_KEYS[file] = random(n++);
+  }
+  
+  
+  
+  /**
+   * No instances.
+   */
+  
+  private Zobrist(){
+    
+  }
+  
+  
+  
+  /**
+   * Returns the <code>n</code>th random key. This is the SplitMix64 generator,
+   * which yields well distributed keys for consecutive values of
+   * <code>n</code>.
+   */
+  
+  private static long random(long n){
+    long z = SEED + (n + 1) * 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+  
+  
+  
+  /**
+   * Returns the key of the specified piece on the square with the specified
+   * index; 0 if the piece is <code>null</code>.
+   */
+  
+  public static long pieceKey(Piece piece, int index){
+    if (piece == null)
+      return 0;
+    
+    int colorIndex = Bitboards.colorIndex(piece.getColor());
+    int type = piece.getType();
+    if (type < PIECE_TYPE_COUNT)
+      return PIECE_KEYS[colorIndex][type][index];
+    else // Past the precomputed keys, in a range of n that's otherwise unused
+      return random((((long)type << 1 | colorIndex) << 6 | index) << 16);
+  }
+  
+  
+  
+  /**
+   * Returns the key of the specified player being the side to move.
+   */
+  
+  public static long sideKey(Player player){
+    return (player != null) && player.isBlack() ? BLACK_TO_MOVE_KEY : 0;
+  }
+  
+  
+  
+  /**
+   * Returns the key of the specified castling rights bitmask.
+   */
+  
+  public static long castlingKey(int castlingRights){
+    return CASTLING_KEYS[castlingRights];
+  }
+  
+  
+  
+  /**
+   * Returns the key of the specified en passant file; 0 if the file is -1.
+   */
+  
+  public static long enPassantKey(int file){
+    return file == -1 ? 0 : EN_PASSANT_KEYS[file];
+  }
+  
+  
+  
+}
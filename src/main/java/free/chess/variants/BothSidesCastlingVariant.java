@@ -200,6 +200,13 @@ public class BothSidesCastlingVariant extends ChesslikeGenericVariant{
       modifier.setPieceAt(movingPiece, endSquare);
       modifier.setPieceAt(rook, rookEndSquare);
 
+      int castlingRights = pos.getCastlingRights();
+      if (movingPiece.isWhite())
+        castlingRights &= ~(Position.WHITE_KINGSIDE_CASTLING | Position.WHITE_QUEENSIDE_CASTLING);
+      else
+        castlingRights &= ~(Position.BLACK_KINGSIDE_CASTLING | Position.BLACK_QUEENSIDE_CASTLING);
+      modifier.setCastlingRights(castlingRights);
+      modifier.setEnPassantFile(-1);
       modifier.setCurrentPlayer(pos.getCurrentPlayer().getOpponent());
     }
     else
@@ -21,11 +21,16 @@
 
 package free.chess.variants.atomic;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import free.chess.Bitboards;
 import free.chess.Chess;
 import free.chess.ChessMove;
 import free.chess.ChessPiece;
 import free.chess.ChesslikeGenericVariant;
 import free.chess.Move;
+import free.chess.Piece;
 import free.chess.Position;
 import free.chess.Square;
 
@@ -105,14 +110,8 @@ public class Atomic extends ChesslikeGenericVariant{
     super.makeMove(cmove, pos, modifier);
 
     if (cmove.isCapture()){
-      clearSquare(endingSquare.getFile()+1, endingSquare.getRank()+1, pos, modifier);
-      clearSquare(endingSquare.getFile()+1, endingSquare.getRank(), pos, modifier);
-      clearSquare(endingSquare.getFile()+1, endingSquare.getRank()-1, pos, modifier);
-      clearSquare(endingSquare.getFile(), endingSquare.getRank()+1, pos, modifier);
-      clearSquare(endingSquare.getFile(), endingSquare.getRank()-1, pos, modifier);
-      clearSquare(endingSquare.getFile()-1, endingSquare.getRank()+1, pos, modifier);
-      clearSquare(endingSquare.getFile()-1, endingSquare.getRank(), pos, modifier);
-      clearSquare(endingSquare.getFile()-1, endingSquare.getRank()-1, pos, modifier);
+      for (long explosion = getExplosionMask(pos, endingSquare); explosion != 0; explosion &= explosion - 1)
+        modifier.setPieceAt(null, Bitboards.squareAt(Long.numberOfTrailingZeros(explosion)));
 
       modifier.setPieceAt(null, endingSquare);
     }
@@ -123,18 +122,88 @@ public class Atomic extends ChesslikeGenericVariant{
 
 
   /**
-   * If the given file and rank represent a valid square and that square does
-   * not contain a pawn, that square is cleared.
+   * Returns the castling rights lost by making the specified move in the
+   * specified position. In addition to the rights lost in regular chess, a
+   * capture loses the rights of castling with any rook caught in the
+   * explosion.
    */
 
-  private void clearSquare(int file, int rank, Position pos, Position.Modifier modifier){
-    if ((file<0) || (file>7) || (rank<0) || (rank>7))
-      return;
+  @Override
+  protected int getCastlingRightsLost(Position pos, ChessMove cmove){
+    int lostRights = super.getCastlingRightsLost(pos, cmove);
+    if (cmove.isCapture()){
+      long explosion = Bitboards.getKingAttacks(cmove.getEndingSquare().getIndex());
+      while (explosion != 0){
+        int index = Long.numberOfTrailingZeros(explosion);
+        explosion &= explosion - 1;
+        lostRights |= getCornerCastlingRight(Bitboards.squareAt(index));
+      }
+    }
 
-    Square square = Square.getInstance(file, rank);
-    ChessPiece piece = (ChessPiece)pos.getPieceAt(square);
-    if ((piece!=null) && !piece.isPawn())
-      modifier.setPieceAt(null, square);
+    return lostRights;
   }
 
+
+
+
+
+  /**
+   * Returns the squares, other than the specified one, cleared by an explosion
+   * on the specified square in the specified position - the pieces, but not
+   * the pawns, on the neighbouring squares.
+   */
+
+  private static long getExplosionMask(Position pos, Square square){
+    long pawns = pos.getPieceMask(Piece.WHITE, ChessPiece.PAWN) | pos.getPieceMask(Piece.BLACK, ChessPiece.PAWN);
+    return Bitboards.getKingAttacks(square.getIndex()) & pos.getOccupancy() & ~pawns;
+  }
+
+
+
+  /**
+   * Returns those of the specified moves which are legal in atomic chess - a
+   * king may not capture, and no move may destroy the mover's own king. Once
+   * either king is gone the game is over, so there are no legal moves at all.
+   */
+
+  @Override
+  protected List filterLegalMoves(Position pos, List moves){
+    int color = pos.getCurrentPlayer().getPieceColor();
+    long kings = pos.getPieceMask(color, ChessPiece.KING);
+    if ((kings == 0) || (pos.getPieceMask(-color, ChessPiece.KING) == 0))
+      return new ArrayList();
+
+    List legalMoves = new ArrayList(moves.size());
+    for (int i = 0; i < moves.size(); i++){
+      ChessMove cmove = (ChessMove)moves.get(i);
+      if (cmove.isCapture()){
+        ChessPiece movingPiece = (ChessPiece)pos.getPieceAt(cmove.getStartingSquare());
+        if (movingPiece.isKing())
+          continue;
+
+        if ((Bitboards.getKingAttacks(cmove.getEndingSquare().getIndex()) & kings) != 0)
+          continue;
+      }
+
+      legalMoves.add(cmove);
+    }
+
+    return legalMoves;
+  }
+
+
+
+  /**
+   * Returns <code>false</code>, as in atomic chess a move is legal if it
+   * explodes the enemy king, even if it leaves the mover's own king attacked,
+   * and a king may never capture.
+   */
+
+  @Override
+  protected boolean hasChessLegality(){
+    return false;
+  }
+
+
+
 }
@@ -498,10 +498,107 @@ public class FischerRandom extends ChesslikeGenericVariant{
       modifier.setPieceAt(movingPiece, endingSquare);
       modifier.setPieceAt(rook, rookEndingSquare);
 
+      int castlingRights = pos.getCastlingRights();
+      if (movingPiece.isWhite())
+        castlingRights &= ~(Position.WHITE_KINGSIDE_CASTLING | Position.WHITE_QUEENSIDE_CASTLING);
+      else
+        castlingRights &= ~(Position.BLACK_KINGSIDE_CASTLING | Position.BLACK_QUEENSIDE_CASTLING);
+      modifier.setCastlingRights(castlingRights);
+      modifier.setEnPassantFile(-1);
       modifier.setCurrentPlayer(pos.getCurrentPlayer().getOpponent());
     }
     else
       super.makeMove(move, pos, modifier);
   }
 
+
+
+  /**
+   * Returns the castling rights lost by making the specified move in the
+   * specified position. Unlike in regular chess, the rooks don't start in the
+   * corners, so, as in X-FEN, a castling right is taken to be the right of
+   * castling with the outermost rook on that side of the king on the back
+   * rank. A king move loses both rights of its side, and moving or capturing
+   * that rook loses the right of castling with it.
+   */
+
+  @Override
+  protected int getCastlingRightsLost(Position pos, ChessMove cmove){
+    ChessPiece movingPiece = (ChessPiece)pos.getPieceAt(cmove.getStartingSquare());
+    if ((movingPiece != null) && movingPiece.isKing())
+      return movingPiece.isWhite() ?
+        (Position.WHITE_KINGSIDE_CASTLING | Position.WHITE_QUEENSIDE_CASTLING) :
+        (Position.BLACK_KINGSIDE_CASTLING | Position.BLACK_QUEENSIDE_CASTLING);
+
+    return getOutermostRookCastlingRight(pos, cmove.getStartingSquare()) |
+      getOutermostRookCastlingRight(pos, cmove.getEndingSquare());
+  }
+
+
+
+  /**
+   * Returns the square of the rook the king standing on the specified square
+   * castles with - the nearest piece on the back rank in the direction of the
+   * castling, as in {@link #makeMove(Move, Position, Position.Modifier)}.
+   */
+
+  @Override
+  protected Square getCastlingRookSquare(Position pos, Square kingSquare, Square kingTarget, boolean isShortCastling){
+    int dir = isShortCastling ? 1 : -1;
+    int rank = kingSquare.getRank();
+    for (int file = kingSquare.getFile() + dir; (file >= 0) && (file <= 7); file += dir)
+      if (pos.getPieceAt(file, rank) != null)
+        return Square.getInstance(file, rank);
+
+    return null;
+  }
+
+
+
+  /**
+   * Returns the castling right of castling with the rook standing on the
+   * specified square, which is only allowed if it's the outermost rook on its
+   * side of the king (see {@link #getCastlingRightsLost(Position, ChessMove)}).
+   */
+
+  @Override
+  protected int getCastlingRight(Position pos, Square rookSquare){
+    return getOutermostRookCastlingRight(pos, rookSquare);
+  }
+
+
+
+  /**
+   * If the specified square holds a rook which is the outermost rook on its
+   * side of the king of its color on its back rank, returns the castling
+   * right of castling with it; returns 0 otherwise.
+   */
+
+  private static int getOutermostRookCastlingRight(Position pos, Square square){
+    ChessPiece rook = (ChessPiece)pos.getPieceAt(square);
+    if ((rook == null) || !rook.isRook())
+      return 0;
+
+    int rank = square.getRank();
+    if (rank != (rook.isWhite() ? 0 : 7))
+      return 0;
+
+    ChessPiece king = rook.isWhite() ? ChessPiece.WHITE_KING : ChessPiece.BLACK_KING;
+    long kingMask = pos.getPieceMask(king) & (0xffL << (rank << 3));
+    if (kingMask == 0)
+      return 0;
+
+    int kingFile = Long.numberOfTrailingZeros(kingMask) & 7;
+    int file = square.getFile();
+    int dir = file > kingFile ? 1 : -1;
+    for (int f = file + dir; (f >= 0) && (f <= 7); f += dir)
+      if (pos.getPieceAt(f, rank) == rook)
+        return 0;
+
+    if (dir == 1)
+      return rook.isWhite() ? Position.WHITE_KINGSIDE_CASTLING : Position.BLACK_KINGSIDE_CASTLING;
+    else
+      return rook.isWhite() ? Position.WHITE_QUEENSIDE_CASTLING : Position.BLACK_QUEENSIDE_CASTLING;
+  }
+
 }
@@ -21,7 +21,11 @@
 
 package free.chess.variants.giveaway;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import free.chess.Chess;
+import free.chess.ChessMove;
 import free.chess.ChessPiece;
 import free.chess.ChesslikeGenericVariant;
 import free.chess.Piece;
@@ -120,4 +124,53 @@ public class Giveaway extends ChesslikeGenericVariant{
   }
 
 
+
+  /**
+   * Returns the target squares of the piece on the specified square. As
+   * capturing is compulsory, if the piece belongs to the player to move and
+   * that player can capture, only the squares on which the piece captures are
+   * returned.
+   */
+
+  @Override
+  public long getTargetSquareMask(Position pos, Square square){
+    return getForcedCaptureTargetMask(pos, square, super.getTargetSquareMask(pos, square));
+  }
+
+
+
+  /**
+   * Returns the captures among the specified moves, as capturing is
+   * compulsory, or all of them if there are none.
+   */
+
+  @Override
+  protected List filterLegalMoves(Position pos, List moves){
+    if (!hasChessCapture(pos))
+      return moves;
+
+    List captures = new ArrayList();
+    for (int i = 0; i < moves.size(); i++){
+      ChessMove cmove = (ChessMove)moves.get(i);
+      if (cmove.isCapture())
+        captures.add(cmove);
+    }
+
+    return captures.isEmpty() ? moves : captures;
+  }
+
+
+
+  /**
+   * Returns <code>false</code>, as the king is not royal in giveaway chess and
+   * captures are compulsory.
+   */
+
+  @Override
+  protected boolean hasChessLegality(){
+    return false;
+  }
+
+
+
 }
@@ -36,6 +36,7 @@ import free.chess.PiecePainter;
 import free.chess.Player;
 import free.chess.Position;
 import free.chess.Square;
+import free.chess.SquareSet;
 import free.chess.WildVariant;
 
 
@@ -229,6 +230,7 @@ public class Kriegspiel implements WildVariant{
         modifier.setPieceAt(null, endSquare);
       }
       
+      modifier.setEnPassantFile(-1); // We can't tell whether it was a double pawn push
       modifier.setCurrentPlayer(pos.getCurrentPlayer().getOpponent());
     }
     else{ // Completely visible
@@ -297,9 +299,21 @@ public class Kriegspiel implements WildVariant{
   
   @Override
   public Collection getTargetSquares(Position pos, Square square){
+    return SquareSet.toList(getTargetSquareMask(pos, square));
+  }
+  
+  
+  
+  /**
+   * Returns the target squares of the piece as in regular chess, ignoring
+   * legality, since the player doesn't know where the opponent's pieces are.
+   */
+  
+  @Override
+  public long getTargetSquareMask(Position pos, Square square){
     checkPosition(pos);
     
-    return Chess.getInstance().getTargetSquares(pos, square);
+    return Chess.getInstance().getChessTargetSquareMask(pos, square);
   }
   
   
@@ -1,13 +1,13 @@
 package free.chess.variants.shatranj;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
-import free.chess.Chess;
+import free.chess.Bitboards;
 import free.chess.ChessPiece;
+import free.chess.Move;
 import free.chess.Piece;
+import free.chess.Player;
 import free.chess.Position;
 import free.chess.Square;
 import free.chess.variants.NoCastlingVariant;
@@ -128,11 +128,50 @@ public class Shatranj extends NoCastlingVariant{
   
   
   /**
-   * Returns target squares for a fers.
+   * Elephant (bishop) move directions. The elephant moves two squares at a time
+   * diagonally, and can jump over a piece on the intermediate square.
+   */
+  
+  private static final int [][] ELEPHANT_DIRECTIONS = new int[][]{
+    new int[]{-2, -2},                   new int[]{2, -2},
+    
+    new int[]{-2, 2},                    new int[]{2, 2}    
+  };
+  
+  
+  
+  /**
+   * The squares attacked by a fers, indexed by the index of the square it
+   * stands on.
    */
   
-  private Collection getFersTargetSquares(Position pos, Square square){
-    return getJumpingTargetSquares(pos, square, FERS_DIRECTIONS);
+  private static final long [] FERS_ATTACKS = createLeaperAttacks(FERS_DIRECTIONS);
+  
+  
+  
+  /**
+   * The squares attacked by an elephant, indexed by the index of the square it
+   * stands on.
+   */
+  
+  private static final long [] ELEPHANT_ATTACKS = createLeaperAttacks(ELEPHANT_DIRECTIONS);
+  
+  
+  
+  /**
+   * Returns a table of the squares attacked by a piece which leaps in the
+   * specified directions, indexed by the index of the square it stands on.
+   */
+  
+  private static long [] createLeaperAttacks(int [][] directions){
+    long [] attacks = new long[64];
+    for (int index = 0; index < 64; index++){
+      Square square = Bitboards.squareAt(index);
+      for (int i = 0; i < directions.length; i++)
+        attacks[index] |= Bitboards.mask(square.getFile() + directions[i][0], square.getRank() + directions[i][1]);
+    }
+    
+    return attacks;
   }
   
   
@@ -142,89 +181,112 @@ public class Shatranj extends NoCastlingVariant{
    */
   
   @Override
-  protected Collection getQueenTargetSquares(Position pos, Square square){
+  protected long getQueenTargetSquareMask(Position pos, Square square){
     checkPosition(pos);
     
-    return getFersTargetSquares(pos, square);
+    return withoutOwnPieces(pos, square, FERS_ATTACKS[square.getIndex()]);
   }
   
   
   
   /**
-   * Elephant (bishop) move directions. The elephant moves two squares at a time
-   * diagonally, and can jump over a piece on the intermediate square.
+   * Overrides to return the shatranj bishop (elephant) target squares.
    */
   
-  private static final int [][] ELEPHANT_DIRECTIONS = new int[][]{
-    new int[]{-2, -2},                   new int[]{2, -2},
+  @Override
+  protected long getBishopTargetSquareMask(Position pos, Square square){
+    checkPosition(pos);
     
-    new int[]{-2, 2},                    new int[]{2, 2}    
-  };
+    return withoutOwnPieces(pos, square, ELEPHANT_ATTACKS[square.getIndex()]);
+  }
   
   
   
   /**
-   * Returns target squares for an elephant (bishop).
+   * Overrides to return the shatranj pawn target squares. In shatranj there is
+   * no double pawn push and no en-passant. As in regular chess, a pawn not
+   * belonging to the player to move may move to any square it could on an
+   * empty board.
    */
   
-  private Collection getElephantTargetSquares(Position pos, Square square) {
-    return getJumpingTargetSquares(pos, square, ELEPHANT_DIRECTIONS); 
+  @Override
+  protected long getPawnTargetSquareMask(Position pos, Square square){
+    checkPosition(pos);
+    
+    int color = pos.getPieceAt(square).getColor();
+    boolean isMyTurn = pos.getCurrentPlayer().getPieceColor() == color;
+    long occupied = isMyTurn ? pos.getOccupancy() : 0;
+    
+    long targets = Bitboards.mask(square.getFile(), square.getRank() + color) & ~occupied;
+    long attacks = Bitboards.getPawnAttacks(color, square.getIndex());
+    if (isMyTurn)
+      attacks &= occupied & ~pos.getOccupancy(pos.getCurrentPlayer());
+    
+    return targets | attacks;
   }
   
   
   
   /**
-   * Overrides to return the shatranj bishop (elephant) target squares.
+   * Returns those of the specified moves which don't leave the mover's king
+   * attacked. Each move is made on a copy of the position, which is then
+   * checked for enemy pieces attacking the king.
    */
   
   @Override
-  protected Collection getBishopTargetSquares(Position pos, Square square){
-    checkPosition(pos);
+  protected List filterLegalMoves(Position pos, List moves){
+    Player player = pos.getCurrentPlayer();
+    Position copy = new Position(pos);
+    List legalMoves = new ArrayList(moves.size());
+    for (int i = 0; i < moves.size(); i++){
+      Move move = (Move)moves.get(i);
+      copy.makeMove(move);
+      if (!isKingAttacked(copy, player))
+        legalMoves.add(move);
+      copy.unmakeMove();
+    }
     
-    return getElephantTargetSquares(pos, square);
+    return legalMoves;
   }
   
   
   
   /**
-   * Returns target squares for a pawn. In shatranj there is no double pawn push
-   * and no en-passant.
+   * Returns whether the king of the specified player is attacked by any of the
+   * pieces of the opponent in the specified position. Rather than computing
+   * the target squares of every enemy piece, this looks for enemy pieces on
+   * the squares from which each kind of piece would attack the king.
    */
-
-  private Collection getShatranjPawnTargetSquares(Position pos, Square square) {
-    Collection chessPawnTargets = super.getPawnTargetSquares(pos, square);
-    List targetSquares = new LinkedList();
-    Chess chess = Chess.getInstance();
+  
+  private static boolean isKingAttacked(Position pos, Player player){
+    int color = player.getPieceColor();
+    long kings = pos.getPieceMask(color, ChessPiece.KING);
+    if (kings == 0)
+      return false;
     
-    // Filter en-passant and double pawn pushes.
-    for (Iterator i = chessPawnTargets.iterator(); i.hasNext();){
-      Square targetSquare = (Square)i.next();
-      
-      // No en-passant in Shatranj
-      if (chess.isEnPassant(pos, square, targetSquare, null))
-        continue;
-      
-      // No double pawn push in Shatranj
-      if (chess.getDoublePawnPushFile(pos, square, targetSquare) != -1)
-        continue;
-      
-      targetSquares.add(targetSquare);
-    }
+    int index = Long.numberOfTrailingZeros(kings);
+    int enemyColor = -color;
+    long attackers =
+      (FERS_ATTACKS[index] & pos.getPieceMask(enemyColor, ChessPiece.QUEEN)) |
+      (ELEPHANT_ATTACKS[index] & pos.getPieceMask(enemyColor, ChessPiece.BISHOP)) |
+      (Bitboards.getKnightAttacks(index) & pos.getPieceMask(enemyColor, ChessPiece.KNIGHT)) |
+      (Bitboards.getKingAttacks(index) & pos.getPieceMask(enemyColor, ChessPiece.KING)) |
+      (Bitboards.getPawnAttacks(color, index) & pos.getPieceMask(enemyColor, ChessPiece.PAWN)) |
+      (Bitboards.getRookAttacks(index, pos.getOccupancy()) & pos.getPieceMask(enemyColor, ChessPiece.ROOK));
     
-    return targetSquares;
+    return attackers != 0;
   }
   
   
   
   /**
-   * Overrides to return the shatranj pawn target squares.
+   * Returns <code>false</code>, as the fers and the elephant don't attack the
+   * squares a queen and a bishop do.
    */
   
   @Override
-  protected Collection getPawnTargetSquares(Position pos, Square square){
-    checkPosition(pos);
-    
-    return getShatranjPawnTargetSquares(pos, square);
+  protected boolean hasChessLegality(){
+    return false;
   }
   
   
@@ -26,9 +26,10 @@ import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PushbackInputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.BitSet;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -43,6 +44,8 @@ import free.chessclub.level2.DatagramListener;
 import free.util.Connection;
 import free.util.EventListenerList;
 import free.util.FormatException;
+import free.util.metrics.Histogram;
+import free.util.metrics.MetricsRegistry;
 
 
 /**
@@ -195,6 +198,109 @@ public class ChessclubConnection extends free.util.Connection{
   
   
   
+  /**
+   * The histogram of the time it takes to parse a datagram.
+   */
+  
+  private static final Histogram DATAGRAM_PARSE_TIME = MetricsRegistry.getInstance().getHistogram("icc.parseDatagram");
+  
+  
+  
+  /**
+   * The names of the datagrams, by id, as they appear in the metrics.
+   */
+  
+  private static final String [] DATAGRAM_NAMES = getDatagramNames();
+  
+  
+  
+  /**
+   * The histograms of the time it takes to handle a datagram (including
+   * notifying the datagram listeners), by datagram id. These are created
+   * lazily, as only a few kinds of datagrams are usually turned on. The counts
+   * of the histograms are the amounts of datagrams of each kind.
+   */
+  
+  private static final Histogram [] DATAGRAM_TIMES = new Histogram[Datagram.MAX_DG_ID + 1];
+  
+  
+  
+  /**
+   * The histogram of the time it takes to handle datagrams with ids we don't
+   * know.
+   */
+  
+  private static final Histogram UNKNOWN_DATAGRAM_TIME = MetricsRegistry.getInstance().getHistogram("icc.unknownDatagram");
+  
+  
+  
+  /**
+   * The histogram of the time it takes to handle a line of plain text.
+   */
+  
+  private static final Histogram LINE_TIME = MetricsRegistry.getInstance().getHistogram("icc.line");
+  
+  
+  
+  /**
+   * Returns the names of the datagrams, by id, as declared in
+   * <code>Datagram</code>. Ids with no declared name are named by their
+   * number.
+   */
+  
+  private static String [] getDatagramNames(){
+    String [] names = new String[Datagram.MAX_DG_ID + 1];
+    Field [] fields = Datagram.class.getFields();
+    for (int i = 0; i < fields.length; i++){
+      Field field = fields[i];
+      if (field.getName().startsWith("DG_") && (field.getType() == int.class) &&
+          Modifier.isStatic(field.getModifiers())){
+        try{
+          int id = field.getInt(null);
+          if ((id >= 0) && (id < names.length) && (names[id] == null))
+            names[id] = field.getName();
+        } catch (IllegalAccessException e){}
+      }
+    }
+    
+    for (int i = 0; i < names.length; i++)
+      if (names[i] == null)
+        names[i] = "DG_" + i;
+    
+    return names;
+  }
+  
+  
+  
+  /**
+   * Returns the histogram of the time it takes to handle datagrams with the
+   * specified id.
+   */
+  
+  private static Histogram getDatagramTime(int id){
+    if ((id < 0) || (id >= DATAGRAM_TIMES.length))
+      return UNKNOWN_DATAGRAM_TIME;
+    
+    // Racing here is harmless - the registry returns the same histogram
+    Histogram histogram = DATAGRAM_TIMES[id];
+    if (histogram == null)
+      DATAGRAM_TIMES[id] = histogram = MetricsRegistry.getInstance().getHistogram("icc." + DATAGRAM_NAMES[id]);
+    
+    return histogram;
+  }
+  
+  
+  
+  /**
+   * The buffer into which we read datagrams. It is only used by the reader
+   * thread and is reused for all datagrams; <code>Datagram</code> copies the
+   * data it needs out of it.
+   */
+  
+  private byte [] datagramBuffer = new byte[1024];
+  
+  
+  
   /**
    * A list of listeners to our datagram events, lazily instantiated.
    */
@@ -531,9 +637,9 @@ public class ChessclubConnection extends free.util.Connection{
   @Override
   protected void sendLoginSequence(){
     if ((getPassword() == null) || (getPassword().length() == 0))
-      sendCommandImpl(getRequestedUsername(), true);
+      writeCommand(getRequestedUsername(), false, true);
     else
-      sendCommandImpl(getRequestedUsername() + " " + getPassword(), false);
+      writeCommand(getRequestedUsername() + " " + getPassword(), false, false);
   }
   
   
@@ -544,7 +650,7 @@ public class ChessclubConnection extends free.util.Connection{
   
   @Override
   protected void handleConnected(){
-    sendCommandImpl("level1=" + level1State, true);
+    writeCommand("level1=" + level1State, false, true);
     
     int largestSetDGNumber = level2Settings.size();
     while ((largestSetDGNumber >= 0) && !level2Settings.get(largestSetDGNumber))
@@ -554,7 +660,7 @@ public class ChessclubConnection extends free.util.Connection{
       for (int i = 0; i <= largestSetDGNumber; i++){
         buf.append(level2Settings.get(i) ? "1" : "0");
       }
-      sendCommandImpl(buf.toString(), true);
+      writeCommand(buf.toString(), false, true);
       level2SettingsSent = true;
     }
     
@@ -651,8 +757,9 @@ public class ChessclubConnection extends free.util.Connection{
       }
       else{
         pin.unread(b);
-        String line = readLine(pin);
-        return filterLine(line);
+        String line = filterLine(readLine(pin));
+        if (line != null) // Skip lines which were completely filtered out (a lone prompt, for example)
+          return line;
       }
     }
   }
@@ -722,7 +829,8 @@ public class ChessclubConnection extends free.util.Connection{
    */
   
   private Datagram readDatagram(InputStream in) throws IOException{
-    StringBuffer buf = new StringBuffer();
+    byte [] buf = datagramBuffer;
+    int length = 0;
     
     int lastChar = -1;
     
@@ -732,10 +840,19 @@ public class ChessclubConnection extends free.util.Connection{
       if (b < 0)
         throw new EOFException("EOF in a datagram");
       
-      buf.append((char)b);
+      if (length == buf.length){
+        byte [] newBuf = new byte[buf.length * 2];
+        System.arraycopy(buf, 0, newBuf, 0, length);
+        datagramBuffer = buf = newBuf;
+      }
+      buf[length++] = (byte)b;
       
-      if ((lastChar == STANDARD_DELIMITER) && (b == DATAGRAM_END_DELIMITER))
-        return Datagram.parseDatagram(buf.substring(2, buf.length() - 2)); // Strip off the delimiters
+      if ((lastChar == STANDARD_DELIMITER) && (b == DATAGRAM_END_DELIMITER)){
+        long startTime = System.nanoTime();
+        Datagram datagram = Datagram.parseDatagram(buf, 2, length - 4); // Strip off the delimiters
+        DATAGRAM_PARSE_TIME.recordSince(startTime);
+        return datagram;
+      }
       
       lastChar = b;
     }
@@ -842,11 +959,31 @@ public class ChessclubConnection extends free.util.Connection{
    * we tag the command; <code>null</code> if none.
    */
   
-  public synchronized void sendCommand(String command, boolean whenLoggedIn, boolean avoidAliasing, String tag){
+  public void sendCommand(String command, boolean whenLoggedIn, boolean avoidAliasing, String tag){
+    sendCommand(command, whenLoggedIn, avoidAliasing, tag, false);
+  }
+  
+  
+  
+  /**
+   * Sends a command to the server with the specified options.
+   * 
+   * @param command The command.
+   * @param whenLoggedIn If set and we are not yet logged in, wait until login
+   * and then send the command. If unset, the command is sent immediately.
+   * @param avoidAliasing Avoid triggering any aliases with the command.
+   * @param tag The client tag ("arbitrary-string" in formats.txt) with which
+   * we tag the command; <code>null</code> if none.
+   * @param isUrgent Whether the command is urgent (a move, for example) and
+   * should be sent ahead of any other commands waiting to be sent.
+   */
+  
+  public synchronized void sendCommand(String command, boolean whenLoggedIn, boolean avoidAliasing, String tag,
+      boolean isUrgent){
     command = makeCommand(command, avoidAliasing, tag);
     
     if (isLoggedIn() || !whenLoggedIn)
-      sendCommandImpl(command, true);
+      writeCommand(command, isUrgent, true);
     else
       onLoginCommandQueue.addLast(command);
   }
@@ -876,24 +1013,12 @@ public class ChessclubConnection extends free.util.Connection{
   
   
   /**
-   * Sends the given command to the server, optionally logging it to the log stream.
+   * Returns the log stream, into which we log the commands we send.
    */
   
-  private synchronized void sendCommandImpl(String command, boolean log){
-    if (!isConnected())
-      throw new IllegalStateException("Not connected");
-    
-    if (log && (logStream != null))
-      logStream.println("SENDING COMMAND: " + command);
-    
-    try{
-      OutputStream out = getOutputStream();
-      out.write(command.getBytes("ISO8859_1"));
-      out.write('\n');
-      out.flush();
-    } catch (IOException e){
-        connectionInterrupted(e);
-      }
+  @Override
+  protected PrintStream getCommandLogStream(){
+    return logStream;
   }
   
   
@@ -979,6 +1104,7 @@ public class ChessclubConnection extends free.util.Connection{
    */
   
   private final void handleDatagram(Datagram datagram, String clientTag){
+    long startTime = System.nanoTime();
     if (logStream != null)
       logStream.println(datagram);
     
@@ -1007,6 +1133,8 @@ public class ChessclubConnection extends free.util.Connection{
     }
     
     fireDatagramEvent(datagram, clientTag);
+    
+    getDatagramTime(id).recordSince(startTime);
   }
   
   
@@ -1021,10 +1149,13 @@ public class ChessclubConnection extends free.util.Connection{
    */
   
   private final void handleLine(String line, String clientTag){
+    long startTime = System.nanoTime();
     if (logStream != null)
       logStream.println(line);
     
     processLine(line, clientTag);
+    
+    LINE_TIME.recordSince(startTime);
   }
   
   
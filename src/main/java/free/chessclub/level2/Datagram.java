@@ -22,8 +22,7 @@
 
 package free.chessclub.level2;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.charset.Charset;
 
 import free.util.FormatException;
 
@@ -33,7 +32,10 @@ import free.util.FormatException;
  * described at
  * <code>ftp://ftp.chessclub.com/pub/icc/formats/formats.txt</code>.
  * This class defines methods useful for parsing a datagram and retrieving
- * arguments from it.
+ * arguments from it. A parsed datagram keeps its data in a single byte array
+ * along with the offsets of the fields in it - numeric and boolean fields are
+ * parsed directly from the array and strings are only created for fields that
+ * are retrieved as strings.
  */
 
 public class Datagram{
@@ -179,6 +181,15 @@ public class Datagram{
                          
 
   
+  /**
+   * The charset we use to turn the bytes of the datagram into characters - each
+   * byte is mapped to the character with the same value.
+   */
+  
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+  
+  
+  
   /**
    * The ID of the datagram.
    */
@@ -188,10 +199,39 @@ public class Datagram{
   
   
   /**
-   * An array holding the datagram fields.
+   * The bytes of the datagram, or <code>null</code> if the datagram was
+   * created from already split fields.
+   */
+  
+  private final byte [] data;
+  
+  
+  
+  /**
+   * The offsets of the fields in <code>data</code>. The field at index N
+   * occupies the range [<code>fieldOffsets[2*N]</code>,
+   * <code>fieldOffsets[2*N+1]</code>).
+   */
+  
+  private final int [] fieldOffsets;
+  
+  
+  
+  /**
+   * The number of fields in the datagram.
+   */
+  
+  private final int fieldCount;
+  
+  
+  
+  /**
+   * The fields of the datagram as strings. Strings are only created when a
+   * field is first asked for as a string, so the elements of this array, or
+   * the array itself, may be <code>null</code>.
    */
 
-  private final String [] fields; 
+  private String [] fields; 
 
   
   
@@ -205,8 +245,26 @@ public class Datagram{
       throw new IllegalArgumentException("Datagram fields may not be null");
     
     this.id = id;
+    this.data = null;
+    this.fieldOffsets = null;
+    this.fieldCount = fields.length;
     this.fields = fields;
   }
+  
+  
+  
+  /**
+   * Creates a new <code>Datagram</code> with the specified datagram id, whose
+   * fields are the specified ranges of the specified data array. The array is
+   * not copied.
+   */
+  
+  private Datagram(int id, byte [] data, int [] fieldOffsets, int fieldCount){
+    this.id = id;
+    this.data = data;
+    this.fieldOffsets = fieldOffsets;
+    this.fieldCount = fieldCount;
+  }
 
   
   
@@ -224,7 +282,7 @@ public class Datagram{
    */
 
   public int getFieldCount(){
-    return fields.length;
+    return fieldCount;
   }
 
 
@@ -234,7 +292,21 @@ public class Datagram{
    */ 
 
   public String getField(int fieldIndex){
-    return fields[fieldIndex];
+    if ((fieldIndex < 0) || (fieldIndex >= fieldCount))
+      throw new ArrayIndexOutOfBoundsException(fieldIndex);
+    
+    if (fields == null)
+      fields = new String[fieldCount];
+    
+    String field = fields[fieldIndex];
+    if (field == null){
+      int start = fieldOffsets[2*fieldIndex];
+      int end = fieldOffsets[2*fieldIndex + 1];
+      field = (start == end) ? "" : new String(data, start, end - start, ISO_8859_1);
+      fields[fieldIndex] = field;
+    }
+    
+    return field;
   }
 
 
@@ -254,7 +326,14 @@ public class Datagram{
    */
 
   public int getInteger(int fieldIndex){
-    return Integer.parseInt(getField(fieldIndex));
+    if (data == null)
+      return Integer.parseInt(getField(fieldIndex));
+    
+    long value = parseLong(fieldIndex);
+    if ((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE))
+      throw new NumberFormatException("Value out of range: " + getField(fieldIndex));
+    
+    return (int)value;
   }
 
 
@@ -264,7 +343,53 @@ public class Datagram{
    */
 
   public long getLong(int fieldIndex){
-    return Long.parseLong(getField(fieldIndex));
+    if (data == null)
+      return Long.parseLong(getField(fieldIndex));
+    
+    return parseLong(fieldIndex);
+  }
+  
+  
+  
+  /**
+   * Parses the specified field as a decimal long, directly from the data
+   * array. Accepts the same strings as <code>Long.parseLong</code> does for
+   * ASCII digits.
+   */
+  
+  private long parseLong(int fieldIndex){
+    if ((fieldIndex < 0) || (fieldIndex >= fieldCount))
+      throw new ArrayIndexOutOfBoundsException(fieldIndex);
+    
+    int i = fieldOffsets[2*fieldIndex];
+    int end = fieldOffsets[2*fieldIndex + 1];
+    
+    boolean negative = false;
+    if (i < end){
+      byte first = data[i];
+      if ((first == '-') || (first == '+')){
+        negative = first == '-';
+        i++;
+      }
+    }
+    
+    if (i == end)
+      throw new NumberFormatException("Not a number: \"" + getField(fieldIndex) + "\"");
+    
+    // Accumulate negatively, as Long.parseLong does, so that Long.MIN_VALUE fits
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long result = 0;
+    for (; i < end; i++){
+      int digit = data[i] - '0';
+      if ((digit < 0) || (digit > 9) || (result < limit / 10))
+        throw new NumberFormatException("Not a number: \"" + getField(fieldIndex) + "\"");
+      result *= 10;
+      if (result < limit + digit)
+        throw new NumberFormatException("Not a number: \"" + getField(fieldIndex) + "\"");
+      result -= digit;
+    }
+    
+    return negative ? result : -result;
   }
 
 
@@ -276,7 +401,15 @@ public class Datagram{
    */
 
   public boolean getBoolean(int fieldIndex){
-    return getField(fieldIndex).equals("1");
+    if (data == null)
+      return getField(fieldIndex).equals("1");
+    
+    if ((fieldIndex < 0) || (fieldIndex >= fieldCount))
+      throw new ArrayIndexOutOfBoundsException(fieldIndex);
+    
+    int start = fieldOffsets[2*fieldIndex];
+    int end = fieldOffsets[2*fieldIndex + 1];
+    return (end - start == 1) && (data[start] == '1');
   }
   
   
@@ -292,52 +425,121 @@ public class Datagram{
    */
 
   public static Datagram parseDatagram(String dgString) throws FormatException{
-    try{
-      int index = dgString.indexOf(' ');
-      if (index == -1) // No arguments in the datagram
-        index = dgString.length();
-      int id = Integer.parseInt(dgString.substring(0, index));
-      
-      dgString += " "; // So that each field is suffixed with a space
-      
-      List fields = new LinkedList();
-      
-      index++;
-      int dgLength = dgString.length();
-      while (index < dgLength){
-        int startIndex, endIndex;
-        char firstChar = dgString.charAt(index); 
-        if (firstChar == '{'){ // The delimiters are { and }
-          startIndex = index + 1;
-          endIndex = dgString.indexOf('}', startIndex);
-          index = endIndex + 2; // "} "
-        }
-        else if (firstChar == SPECIAL_STRING_DELIM_START){ // The delimiters are ^Y{ and ^Y}
-          startIndex = index + 2;
-          endIndex = dgString.indexOf(SPECIAL_STRING_DELIM_START, startIndex);
-          index = endIndex + 3; // "^Y} "
-        }
-        else{ 
-          while (firstChar == ' '){ // Skip any extra spaces just in case
-            index++;
-            firstChar = dgString.charAt(index);
-          }
-          
-          startIndex = index;
-          endIndex = dgString.indexOf(' ', startIndex);
-          index = endIndex + 1;
+    byte [] bytes = dgString.getBytes(ISO_8859_1);
+    return parseDatagram(bytes, 0, bytes.length);
+  }
+  
+  
+  
+  /**
+   * Parses the specified range of the specified byte array and returns a
+   * <code>Datagram</code> object corresponding to the datagram represented by
+   * it. The range should be the contents of the datagram, without the
+   * surrounding delimiters. The bytes are copied into a single array owned by
+   * the datagram, and the fields are located, but not converted to strings
+   * until they are asked for.
+   *
+   * @throws FormatException if the specified data cannot be parsed as a
+   * datagram because it is not in the proper format.
+   */
+  
+  public static Datagram parseDatagram(byte [] buf, int offset, int length) throws FormatException{
+    // So that each field is suffixed with a space
+    byte [] data = new byte[length + 1];
+    System.arraycopy(buf, offset, data, 0, length);
+    data[length] = ' ';
+    
+    int index = indexOf(data, ' ', 0);
+    int id = parseId(data, index);
+    
+    int [] fieldOffsets = new int[16];
+    int fieldCount = 0;
+    
+    index++;
+    int dgLength = data.length;
+    while (index < dgLength){
+      int startIndex, endIndex;
+      byte firstChar = data[index]; 
+      if (firstChar == '{'){ // The delimiters are { and }
+        startIndex = index + 1;
+        endIndex = indexOf(data, '}', startIndex);
+        index = endIndex + 2; // "} "
+      }
+      else if (firstChar == SPECIAL_STRING_DELIM_START){ // The delimiters are ^Y{ and ^Y}
+        startIndex = index + 2;
+        endIndex = indexOf(data, SPECIAL_STRING_DELIM_START, startIndex);
+        index = endIndex + 3; // "^Y} "
+      }
+      else{ 
+        while (firstChar == ' '){ // Skip any extra spaces just in case
+          index++;
+          if (index == dgLength)
+            throw new FormatException("Trailing spaces in datagram");
+          firstChar = data[index];
         }
         
-        fields.add(dgString.substring(startIndex, endIndex));
+        startIndex = index;
+        endIndex = indexOf(data, ' ', startIndex);
+        index = endIndex + 1;
       }
-  
-      return new Datagram(id, (String[])fields.toArray(new String[fields.size()]));
-    } catch (NumberFormatException e){
-        throw new FormatException(e);
-      }
-      catch (StringIndexOutOfBoundsException e){
-        throw new FormatException(e);
+      
+      if (2*fieldCount == fieldOffsets.length){
+        int [] newOffsets = new int[fieldOffsets.length * 2];
+        System.arraycopy(fieldOffsets, 0, newOffsets, 0, fieldOffsets.length);
+        fieldOffsets = newOffsets;
       }
+      fieldOffsets[2*fieldCount] = startIndex;
+      fieldOffsets[2*fieldCount + 1] = endIndex;
+      fieldCount++;
+    }
+    
+    return new Datagram(id, data, fieldOffsets, fieldCount);
+  }
+  
+  
+  
+  /**
+   * Returns the index of the first occurrence of the specified character in the
+   * specified array, starting at the specified index.
+   * 
+   * @throws FormatException if the character doesn't occur.
+   */
+  
+  private static int indexOf(byte [] data, char c, int fromIndex) throws FormatException{
+    for (int i = fromIndex; i < data.length; i++)
+      if (data[i] == c)
+        return i;
+    
+    throw new FormatException("Missing '" + c + "' in datagram");
+  }
+  
+  
+  
+  /**
+   * Parses the datagram ID, which occupies the specified array up to the
+   * specified index.
+   */
+  
+  private static int parseId(byte [] data, int end) throws FormatException{
+    int i = 0;
+    boolean negative = false;
+    if ((end > 0) && ((data[0] == '-') || (data[0] == '+'))){
+      negative = data[0] == '-';
+      i++;
+    }
+    
+    if (i == end)
+      throw new FormatException("Missing datagram ID");
+    
+    int id = 0;
+    for (; i < end; i++){
+      int digit = data[i] - '0';
+      if ((digit < 0) || (digit > 9) || (id > (Integer.MAX_VALUE - digit) / 10))
+        throw new FormatException("Bad datagram ID");
+      id = id*10 + digit;
+    }
+    
+    return negative ? -id : id;
   }
   
   
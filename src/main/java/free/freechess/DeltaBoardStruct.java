@@ -22,9 +22,7 @@
 
 package free.freechess;
 
-import java.util.StringTokenizer;
 
-import free.util.Struct;
 
 
 /**
@@ -32,7 +30,55 @@ import free.util.Struct;
  * issuing "help iv_compressmoves" on freechess.org
  */
 
-public class DeltaBoardStruct extends Struct{
+public class DeltaBoardStruct{
+
+
+
+  /**
+   * The game number.
+   */
+
+  private final int gameNumber;
+
+
+
+  /**
+   * The amount of half-moves played in the game.
+   */
+
+  private final int pliesPlayedCount;
+
+
+
+  /**
+   * The move in algebraic format.
+   */
+
+  private final String moveAlgebraic;
+
+
+
+  /**
+   * The move in Smith-Warren format.
+   */
+
+  private final String moveSmith;
+
+
+
+  /**
+   * The amount of time taken to make the move, in milliseconds.
+   */
+
+  private final int takenTime;
+
+
+
+  /**
+   * The amount of time remaining, in milliseconds.
+   */
+
+  private final int remainingTime;
 
 
 
@@ -63,12 +109,12 @@ public class DeltaBoardStruct extends Struct{
     if (takenTime < 0)
       throw new IllegalArgumentException("The time taken to make the move ("+takenTime+") may not be negative");
 
-    setIntegerProperty("GameNumber", gameNumber);
-    setIntegerProperty("PliesPlayedCount", pliesPlayedCount);
-    setStringProperty("MoveAlgebraic", moveAlgebraic);
-    setStringProperty("MoveSmith", moveSmith);
-    setIntegerProperty("TakenTime", takenTime);
-    setIntegerProperty("RemainingTime", remainingTime);
+    this.gameNumber = gameNumber;
+    this.pliesPlayedCount = pliesPlayedCount;
+    this.moveAlgebraic = moveAlgebraic;
+    this.moveSmith = moveSmith;
+    this.takenTime = takenTime;
+    this.remainingTime = remainingTime;
   }
 
 
@@ -80,20 +126,20 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public static DeltaBoardStruct parseDeltaBoardLine(String line){
-    StringTokenizer tokens = new StringTokenizer(line, " ");
+    LineTokenizer tokens = new LineTokenizer(line, " ");
 
-    if (!tokens.nextToken().equals("<d1>")) // Skip the <d1> identifier
+    if (!tokens.nextTokenEquals("<d1>")) // Skip the <d1> identifier
       throw new IllegalArgumentException("Missing \"<d1>\" identifier");
 
-    int gameNumber = Integer.parseInt(tokens.nextToken()); // The game number.
+    int gameNumber = tokens.nextInt(); // The game number.
 
-    int pliesPlayedCount = Integer.parseInt(tokens.nextToken()); // The amount of plies played
+    int pliesPlayedCount = tokens.nextInt(); // The amount of plies played
 
     String moveAlgebraic = tokens.nextToken(); // The move in algebraic format
     String moveSmith = tokens.nextToken(); // The move in smith-warren format
 
-    int takenTime = Integer.parseInt(tokens.nextToken()); // The amount of time taken to make the move
-    int remainingTime = Integer.parseInt(tokens.nextToken()); // The amount of time remaining
+    int takenTime = tokens.nextInt(); // The amount of time taken to make the move
+    int remainingTime = tokens.nextInt(); // The amount of time remaining
 
     return new DeltaBoardStruct(gameNumber, pliesPlayedCount, moveAlgebraic, moveSmith, takenTime, remainingTime);
   }
@@ -106,7 +152,7 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public int getGameNumber(){
-    return getIntegerProperty("GameNumber");
+    return gameNumber;
   }
 
 
@@ -116,7 +162,7 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public int getPliesPlayedCount(){
-    return getIntegerProperty("PliesPlayedCount");
+    return pliesPlayedCount;
   }
 
 
@@ -126,7 +172,7 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public String getMoveAlgebraic(){
-    return getStringProperty("MoveAlgebraic");
+    return moveAlgebraic;
   }
 
 
@@ -136,7 +182,7 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public String getMoveSmith(){
-    return getStringProperty("MoveSmith");
+    return moveSmith;
   }
 
 
@@ -146,7 +192,7 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public int getTakenTime(){
-    return getIntegerProperty("TakenTime");
+    return takenTime;
   }
 
 
@@ -156,7 +202,7 @@ public class DeltaBoardStruct extends Struct{
    */
 
   public int getRemainingTime(){
-    return getIntegerProperty("RemainingTime");
+    return remainingTime;
   }
 
 
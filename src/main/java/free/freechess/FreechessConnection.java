@@ -22,12 +22,10 @@
 
 package free.freechess;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
 import java.util.BitSet;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -37,6 +35,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import free.util.Connection;
+import free.util.metrics.Histogram;
+import free.util.metrics.MetricsRegistry;
 
 
 /**
@@ -299,7 +299,7 @@ public class FreechessConnection extends Connection{
   
   @Override
   protected void handleConnected(){
-    sendCommandImpl(createLoginIvarsSettingString(requestedIvarStates), true);
+    writeCommand(createLoginIvarsSettingString(requestedIvarStates), false, true);
     filterLine("#Ivars set.");
     ivarStates = (BitSet)requestedIvarStates.clone();
     
@@ -314,9 +314,9 @@ public class FreechessConnection extends Connection{
 
   @Override
   protected void sendLoginSequence(){
-    sendCommandImpl(getRequestedUsername(), true);
+    writeCommand(getRequestedUsername(), false, true);
     if (getPassword() != null)
-      sendCommandImpl(getPassword(), false);
+      writeCommand(getPassword(), false, false);
   }
   
   
@@ -372,7 +372,7 @@ public class FreechessConnection extends Connection{
       
       for (Iterator i = onLoginCommandQueue.iterator(); i.hasNext();){
         String command = (String)i.next();
-        sendCommandImpl(command, true);
+        writeCommand(command, false, true);
       }
       onLoginCommandQueue.clear();
     }
@@ -391,11 +391,31 @@ public class FreechessConnection extends Connection{
    * command.
    */
   
-  public synchronized void sendCommand(String command, boolean whenLoggedIn, boolean avoidAliasing, boolean avoidUnidling){
+  public void sendCommand(String command, boolean whenLoggedIn, boolean avoidAliasing, boolean avoidUnidling){
+    sendCommand(command, whenLoggedIn, avoidAliasing, avoidUnidling, false);
+  }
+  
+  
+  
+  /**
+   * Sends a command to the server with the specified options.
+   * 
+   * @param command The command.
+   * @param whenLoggedIn If set and we are not yet logged in, wait until login
+   * and then send the command. If unset, the command is sent immediately.
+   * @param avoidAliasing Avoid triggering any aliases with the command.
+   * @param avoidUnidling Avoid resetting the user's idle time counter with the
+   * command.
+   * @param isUrgent Whether the command is urgent (a move, for example) and
+   * should be sent ahead of any other commands waiting to be sent.
+   */
+  
+  public synchronized void sendCommand(String command, boolean whenLoggedIn, boolean avoidAliasing,
+      boolean avoidUnidling, boolean isUrgent){
     command = makeCommand(command, avoidAliasing, avoidUnidling);
     
     if (isLoggedIn() || !whenLoggedIn)
-      sendCommandImpl(command, true);
+      writeCommand(command, isUrgent, true);
     else
       onLoginCommandQueue.addLast(command);
   }
@@ -420,24 +440,23 @@ public class FreechessConnection extends Connection{
   
   
   /**
-   * Sends the given command to the server, optionally echoing it to System.out.
+   * Returns the charset with which we encode commands - ASCII.
    */
 
-  private synchronized void sendCommandImpl(String command, boolean echo){
-    if (!isConnected())
-      throw new IllegalStateException("Not connected");
+  @Override
+  protected Charset getCommandCharset(){
+    return Charset.forName("US-ASCII");
+  }
+
 
-    if (echo)
-      System.out.println("SENDING COMMAND: " + command);
 
-    try{
-      OutputStream out = getOutputStream();
-      out.write(command.getBytes("ASCII"));
-      out.write('\n');
-      out.flush();
-    } catch (IOException e){
-        connectionInterrupted(e);
-      }
+  /**
+   * Returns the log stream, into which we echo the commands we send.
+   */
+
+  @Override
+  protected PrintStream getCommandLogStream(){
+    return logStream;
   }
   
   
@@ -462,13 +481,13 @@ public class FreechessConnection extends Connection{
   
   /**
    * Overrides {@link Connection#createInputStream(InputStream)} to wrap the
-   * specified <code>InputStream</code> in a <code>BufferedInputStream</code>
-   * and a <code>PushbackInputStream</code>.
+   * specified <code>InputStream</code> in a {@link LineFramer}, which does its
+   * own buffering.
    */
   
   @Override
   protected InputStream createInputStream(InputStream in){
-    return new PushbackInputStream(new BufferedInputStream(in));
+    return new LineFramer(in, "fics% ");
   }
 
 
@@ -479,50 +498,189 @@ public class FreechessConnection extends Connection{
   
   @Override
   protected Object readMessage(InputStream inputStream) throws IOException{
-    PushbackInputStream pin = (PushbackInputStream)inputStream;
-    StringBuffer buf = new StringBuffer();
-    
-    boolean lineStartsWithPrompt = false;
-    while (true){
-      int b = pin.read();
-      
-      if (b < 0){
-        if (buf.length() == 0) // Clean disconnection
-          return null;
-        break;
-      }
-            
-      // End of line
-      if (b == '\n'){
-        // FICS uses \n\r for an end-of-line marker!?
-        // Eat the following '\r', if there is one
-        b = pin.read();
-        if ((b > 0) && (b != '\r'))
-          pin.unread(b);
-        
-        // Ignore all-prompt lines
-        if (lineStartsWithPrompt && (buf.length() == 0)){
-          lineStartsWithPrompt = false;
-          continue;
-        }
-        else
-          break;
-      }
-      
-      buf.append((char)b);
-      
-      // Filter out the prompt
-      if (buf.toString().equals("fics% ")){
-        buf.setLength(0);
-        lineStartsWithPrompt = true;
-      }
-    }
-    
-    return buf.toString();
+    return ((LineFramer)inputStream).readLine();
   }
   
   
   
+  /**
+   * The indices of the <code>handleXXX</code> methods, in the order in which
+   * they are tried. A set of handlers is represented as a <code>long</code>
+   * bitmask of these indices.
+   */
+
+  private static final int GAME_INFO_HANDLER = 0;
+  private static final int STYLE12_HANDLER = 1;
+  private static final int DELTA_BOARD_HANDLER = 2;
+  private static final int SEEKS_CLEARED_HANDLER = 3;
+  private static final int SEEK_ADDED_HANDLER = 4;
+  private static final int SEEKS_REMOVED_HANDLER = 5;
+  private static final int BUGHOUSE_HOLDINGS_HANDLER = 6;
+  private static final int GAME_END_HANDLER = 7;
+  private static final int STOPPED_OBSERVING_HANDLER = 8;
+  private static final int STOPPED_EXAMINING_HANDLER = 9;
+  private static final int ENTERED_BSETUP_MODE_HANDLER = 10;
+  private static final int EXITED_BSETUP_MODE_HANDLER = 11;
+  private static final int ILLEGAL_MOVE_HANDLER = 12;
+  private static final int CHANNEL_TELL_HANDLER = 13;
+  private static final int LOGIN_HANDLER = 14;
+  private static final int IVAR_STATE_CHANGED_HANDLER = 15;
+  private static final int PERSONAL_TELL_HANDLER = 16;
+  private static final int SAY_TELL_HANDLER = 17;
+  private static final int PTELL_HANDLER = 18;
+  private static final int SHOUT_HANDLER = 19;
+  private static final int ISHOUT_HANDLER = 20;
+  private static final int TSHOUT_HANDLER = 21;
+  private static final int CSHOUT_HANDLER = 22;
+  private static final int ANNOUNCEMENT_HANDLER = 23;
+  private static final int KIBITZ_HANDLER = 24;
+  private static final int WHISPER_HANDLER = 25;
+  private static final int QTELL_HANDLER = 26;
+  private static final int OFFER_HANDLER = 27;
+  private static final int OFFER_REMOVED_HANDLER = 28;
+  private static final int PLAYER_OFFERED_HANDLER = 29;
+  private static final int PLAYER_DECLINED_HANDLER = 30;
+  private static final int PLAYER_WITHDREW_HANDLER = 31;
+  private static final int PLAYER_COUNTERED_TAKEBACK_OFFER_HANDLER = 32;
+  private static final int SIMUL_CURRENT_BOARD_CHANGED_HANDLER = 33;
+  private static final int PRIMARY_GAME_CHANGED_HANDLER = 34;
+
+
+
+  /**
+   * The set of all the handlers. Trying all of them, in order, on every line
+   * is what the dispatch tables below are designed to avoid.
+   */
+
+  static final long ALL_HANDLERS = (1L << (PRIMARY_GAME_CHANGED_HANDLER + 1)) - 1;
+
+
+
+  /**
+   * The names of the handlers, by index, as they appear in the metrics.
+   */
+
+  private static final String [] HANDLER_NAMES = new String[]{
+    "handleGameInfo", "handleStyle12", "handleDeltaBoard", "handleSeeksCleared", "handleSeekAdded",
+    "handleSeeksRemoved", "handleBughouseHoldings", "handleGameEnd", "handleStoppedObserving",
+    "handleStoppedExamining", "handleEnteredBSetupMode", "handleExitedBSetupMode", "handleIllegalMove",
+    "handleChannelTell", "handleLogin", "handleIvarStateChanged", "handlePersonalTell", "handleSayTell",
+    "handlePTell", "handleShout", "handleIShout", "handleTShout", "handleCShout", "handleAnnouncement",
+    "handleKibitz", "handleWhisper", "handleQTell", "handleOffer", "handleOfferRemoved", "handlePlayerOffered",
+    "handlePlayerDeclined", "handlePlayerWithdrew", "handlePlayerCounteredTakebackOffer",
+    "handleSimulCurrentBoardChanged", "handlePrimaryGameChanged"
+  };
+
+
+
+  /**
+   * The histograms of the time it takes to handle a line, by the index of the
+   * handler which handled it. The time includes trying the handlers before it
+   * and the processing done by the handler itself (firing events, for
+   * example). The counts of the histograms are the amounts of lines of each
+   * type.
+   */
+
+  private static final Histogram [] HANDLER_TIMES = new Histogram[HANDLER_NAMES.length];
+
+
+
+  /**
+   * The histogram of the time it takes to handle a line which no handler
+   * recognizes.
+   */
+
+  private static final Histogram UNHANDLED_LINE_TIME = MetricsRegistry.getInstance().getHistogram("fics.unhandledLine");
+
+
+
+  static{
+    for (int i = 0; i < HANDLER_NAMES.length; i++)
+      HANDLER_TIMES[i] = MetricsRegistry.getInstance().getHistogram("fics." + HANDLER_NAMES[i]);
+  }
+
+
+
+  /**
+   * The handlers which may match a line starting with a username - chat of
+   * various kinds.
+   */
+
+  private static final long CHAT_HANDLERS = 
+    handlers(new int[]{CHANNEL_TELL_HANDLER, PERSONAL_TELL_HANDLER, SAY_TELL_HANDLER, PTELL_HANDLER,
+      SHOUT_HANDLER, CSHOUT_HANDLER, KIBITZ_HANDLER, WHISPER_HANDLER});
+
+
+
+  /**
+   * The handlers which may match a line where the username is immediately
+   * followed by a space (no titles, channel number, rating or game number).
+   */
+
+  private static final long SPACE_CHAT_HANDLERS =
+    handlers(new int[]{PERSONAL_TELL_HANDLER, SAY_TELL_HANDLER, PTELL_HANDLER, SHOUT_HANDLER, CSHOUT_HANDLER});
+
+
+
+  /**
+   * Maps the first character of a line to the set of handlers which may match
+   * it, excluding the ones that depend on a username being at the beginning of
+   * the line, which are determined separately.
+   */
+
+  private static final long [] FIRST_CHAR_HANDLERS = new long[128];
+
+
+
+  /**
+   * Maps the second character of a line starting with <code>'&lt;'</code>
+   * (an ivar-enabled tag, such as <code>&lt;12&gt;</code> or
+   * <code>&lt;sr&gt;</code>) to the set of handlers which may match it.
+   */
+
+  private static final long [] TAG_HANDLERS = new long[128];
+
+
+
+  static{
+    TAG_HANDLERS['g'] = handlers(new int[]{GAME_INFO_HANDLER});
+    TAG_HANDLERS['1'] = handlers(new int[]{STYLE12_HANDLER});
+    TAG_HANDLERS['d'] = handlers(new int[]{DELTA_BOARD_HANDLER});
+    TAG_HANDLERS['s'] = handlers(new int[]{SEEKS_CLEARED_HANDLER, SEEK_ADDED_HANDLER, SEEKS_REMOVED_HANDLER});
+    TAG_HANDLERS['b'] = handlers(new int[]{BUGHOUSE_HOLDINGS_HANDLER});
+    TAG_HANDLERS['p'] = handlers(new int[]{OFFER_HANDLER, OFFER_REMOVED_HANDLER});
+
+    FIRST_CHAR_HANDLERS['{'] = handlers(new int[]{GAME_END_HANDLER});
+    FIRST_CHAR_HANDLERS['R'] = handlers(new int[]{STOPPED_OBSERVING_HANDLER});
+    FIRST_CHAR_HANDLERS['Y'] = handlers(new int[]{STOPPED_EXAMINING_HANDLER,
+      SIMUL_CURRENT_BOARD_CHANGED_HANDLER, PRIMARY_GAME_CHANGED_HANDLER});
+    FIRST_CHAR_HANDLERS['E'] = handlers(new int[]{ENTERED_BSETUP_MODE_HANDLER});
+    FIRST_CHAR_HANDLERS['G'] = handlers(new int[]{EXITED_BSETUP_MODE_HANDLER, PLAYER_OFFERED_HANDLER,
+      PLAYER_DECLINED_HANDLER, PLAYER_WITHDREW_HANDLER, PLAYER_COUNTERED_TAKEBACK_OFFER_HANDLER});
+    FIRST_CHAR_HANDLERS['I'] = handlers(new int[]{ILLEGAL_MOVE_HANDLER});
+    FIRST_CHAR_HANDLERS['T'] = handlers(new int[]{ILLEGAL_MOVE_HANDLER});
+    FIRST_CHAR_HANDLERS['*'] = handlers(new int[]{LOGIN_HANDLER});
+    FIRST_CHAR_HANDLERS['-'] = handlers(new int[]{ISHOUT_HANDLER});
+    FIRST_CHAR_HANDLERS[':'] = handlers(new int[]{TSHOUT_HANDLER, QTELL_HANDLER});
+    FIRST_CHAR_HANDLERS[' '] = handlers(new int[]{ANNOUNCEMENT_HANDLER});
+  }
+
+
+
+  /**
+   * Returns the set of the specified handlers.
+   */
+
+  private static long handlers(int [] handlerIndices){
+    long handlers = 0;
+    for (int i = 0; i < handlerIndices.length; i++)
+      handlers |= 1L << handlerIndices[i];
+
+    return handlers;
+  }
+
+
+
   /**
    * The method is responsible for determining the type of the
    * information, parsing it and sending it for further processing.
@@ -535,76 +693,29 @@ public class FreechessConnection extends Connection{
     if (logStream != null)
       logStream.println(line);
     
-    if (handleGameInfo(line))
-      return;
-    if (handleStyle12(line))
-      return;
-    if (handleDeltaBoard(line))
-      return;
-    if (handleSeeksCleared(line))
-      return;
-    if (handleSeekAdded(line))
-      return;
-    if (handleSeeksRemoved(line))
-      return;
-    if (handleBughouseHoldings(line))
-      return;
-    if (handleGameEnd(line))
-      return;
-    if (handleStoppedObserving(line))
-      return;
-    if (handleStoppedExamining(line))
-      return;
-    if (handleEnteredBSetupMode(line))
-      return;
-    if (handleExitedBSetupMode(line))
-      return;
-    if (handleIllegalMove(line))
-      return;
-    if (handleChannelTell(line))
-      return;
-    if (handleLogin(line))
-      return;
-    if (handleIvarStateChanged(line))
-      return;
-    if (handlePersonalTell(line))
-      return;
-    if (handleSayTell(line))
-      return;
-    if (handlePTell(line))
-      return;
-    if (handleShout(line))
-      return;
-    if (handleIShout(line))
-      return;
-    if (handleTShout(line))
-      return;
-    if (handleCShout(line))
-      return;
-    if (handleAnnouncement(line))
-      return;
-    if (handleKibitz(line))
-      return;
-    if (handleWhisper(line))
-      return;
-    if (handleQTell(line))
-      return;
-    if (handleOffer(line))
-      return;
-    if (handleOfferRemoved(line))
-      return;
-    if (handlePlayerOffered(line))                    //
-      return;                                         // We have to handle these
-    if (handlePlayerDeclined(line))                   // "manually", since the  
-      return;                                         // server currently does  
-    if (handlePlayerWithdrew(line))                   // not inform us of offers
-      return;                                         // in games we're         
-    if (handlePlayerCounteredTakebackOffer(line))     // observing.             
-      return;                                         // 
-    if (handleSimulCurrentBoardChanged(line))
-      return;
-    if (handlePrimaryGameChanged(line))
-      return;
+    handleLine(line, getCandidateHandlers(line));
+  }
+
+
+
+  /**
+   * Tries the specified handlers on the specified line, in order, until one of
+   * them handles it. If none does, the line is filtered or passed on to
+   * {@link #processLine(String)}. Passing {@link #ALL_HANDLERS} as the set of
+   * handlers yields the behaviour of trying every handler on every line.
+   */
+
+  void handleLine(String line, long handlers){
+    long startTime = System.nanoTime();
+    while (handlers != 0){
+      int handler = Long.numberOfTrailingZeros(handlers);
+      if (runHandler(handler, line)){
+        HANDLER_TIMES[handler].recordSince(startTime);
+        return;
+      }
+      
+      handlers &= handlers - 1;
+    }
     
     Integer filterCount = (Integer)linesToFilter.get(line);
     if (filterCount == null)
@@ -613,6 +724,151 @@ public class FreechessConnection extends Connection{
       linesToFilter.remove(line);
     else
       linesToFilter.put(line, new Integer(filterCount.intValue() - 1));
+    
+    UNHANDLED_LINE_TIME.recordSince(startTime);
+  }
+
+
+
+  /**
+   * Returns the set of handlers which may possibly match the specified line,
+   * judging by its leading characters. This is always a superset of the
+   * handlers which actually match it, so trying only these handlers, in order,
+   * gives the same result as trying all of them.
+   */
+
+  static long getCandidateHandlers(String line){
+    int length = line.length();
+    if (length == 0)
+      return 0;
+    
+    char firstChar = line.charAt(0);
+    if (firstChar >= 128)
+      return 0;
+    
+    if (firstChar == '<'){
+      char secondChar = length > 1 ? line.charAt(1) : 0;
+      return secondChar < 128 ? TAG_HANDLERS[secondChar] : 0;
+    }
+    
+    long handlers = FIRST_CHAR_HANDLERS[firstChar];
+    
+    // IVAR_SET_REGEX
+    if (isWordChar(firstChar) && (length >= 6) && line.startsWith("set", length - 4))
+      handlers |= 1L << IVAR_STATE_CHANGED_HANDLER;
+    
+    if (isUsernameChar(firstChar))
+      handlers |= getChatCandidateHandlers(line);
+    
+    return handlers;
+  }
+
+
+
+  /**
+   * Returns the set of chat handlers which may possibly match the specified
+   * line. All of them expect a username (<code>[A-z]{3,17}</code>) at the
+   * beginning of the line, followed by either titles, a channel number or a
+   * rating (all starting with <code>'('</code>), a game number (starting with
+   * <code>'['</code>) or a space.
+   */
+
+  private static long getChatCandidateHandlers(String line){
+    int length = line.length();
+    boolean hasBracket = false;
+    int usernameEnd = 0;
+    while ((usernameEnd < length) && isUsernameChar(line.charAt(usernameEnd))){
+      if (line.charAt(usernameEnd) == '[')
+        hasBracket = true;
+      usernameEnd++;
+    }
+    
+    if (usernameEnd < 3)
+      return 0;
+    
+    // '[' is in the [A-z] range, so the username may end before it
+    if (hasBracket)
+      return CHAT_HANDLERS;
+    
+    if ((usernameEnd > 17) || (usernameEnd == length))
+      return 0;
+    
+    switch (line.charAt(usernameEnd)){
+      case '(': return CHAT_HANDLERS;
+      case ' ': return SPACE_CHAT_HANDLERS;
+      default: return 0;
+    }
+  }
+
+
+
+  /**
+   * Returns whether the specified character is matched by
+   * <code>USERNAME_REGEX</code>.
+   */
+
+  private static boolean isUsernameChar(char c){
+    return (c >= 'A') && (c <= 'z');
+  }
+
+
+
+  /**
+   * Returns whether the specified character is matched by <code>\w</code>.
+   */
+
+  private static boolean isWordChar(char c){
+    return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '_');
+  }
+
+
+
+  /**
+   * Runs the handler with the specified index on the specified line and
+   * returns its result.
+   */
+
+  private boolean runHandler(int handler, String line){
+    switch (handler){
+      case GAME_INFO_HANDLER: return handleGameInfo(line);
+      case STYLE12_HANDLER: return handleStyle12(line);
+      case DELTA_BOARD_HANDLER: return handleDeltaBoard(line);
+      case SEEKS_CLEARED_HANDLER: return handleSeeksCleared(line);
+      case SEEK_ADDED_HANDLER: return handleSeekAdded(line);
+      case SEEKS_REMOVED_HANDLER: return handleSeeksRemoved(line);
+      case BUGHOUSE_HOLDINGS_HANDLER: return handleBughouseHoldings(line);
+      case GAME_END_HANDLER: return handleGameEnd(line);
+      case STOPPED_OBSERVING_HANDLER: return handleStoppedObserving(line);
+      case STOPPED_EXAMINING_HANDLER: return handleStoppedExamining(line);
+      case ENTERED_BSETUP_MODE_HANDLER: return handleEnteredBSetupMode(line);
+      case EXITED_BSETUP_MODE_HANDLER: return handleExitedBSetupMode(line);
+      case ILLEGAL_MOVE_HANDLER: return handleIllegalMove(line);
+      case CHANNEL_TELL_HANDLER: return handleChannelTell(line);
+      case LOGIN_HANDLER: return handleLogin(line);
+      case IVAR_STATE_CHANGED_HANDLER: return handleIvarStateChanged(line);
+      case PERSONAL_TELL_HANDLER: return handlePersonalTell(line);
+      case SAY_TELL_HANDLER: return handleSayTell(line);
+      case PTELL_HANDLER: return handlePTell(line);
+      case SHOUT_HANDLER: return handleShout(line);
+      case ISHOUT_HANDLER: return handleIShout(line);
+      case TSHOUT_HANDLER: return handleTShout(line);
+      case CSHOUT_HANDLER: return handleCShout(line);
+      case ANNOUNCEMENT_HANDLER: return handleAnnouncement(line);
+      case KIBITZ_HANDLER: return handleKibitz(line);
+      case WHISPER_HANDLER: return handleWhisper(line);
+      case QTELL_HANDLER: return handleQTell(line);
+      case OFFER_HANDLER: return handleOffer(line);
+      case OFFER_REMOVED_HANDLER: return handleOfferRemoved(line);
+      case PLAYER_OFFERED_HANDLER: return handlePlayerOffered(line);               // We have to handle these
+      case PLAYER_DECLINED_HANDLER: return handlePlayerDeclined(line);             // "manually", since the
+      case PLAYER_WITHDREW_HANDLER: return handlePlayerWithdrew(line);             // server currently does
+      case PLAYER_COUNTERED_TAKEBACK_OFFER_HANDLER:                                // not inform us of offers
+        return handlePlayerCounteredTakebackOffer(line);                           // in games we're observing.
+      case SIMUL_CURRENT_BOARD_CHANGED_HANDLER: return handleSimulCurrentBoardChanged(line);
+      case PRIMARY_GAME_CHANGED_HANDLER: return handlePrimaryGameChanged(line);
+      default:
+        throw new IllegalArgumentException("Unknown handler: " + handler);
+    }
   }
 
 
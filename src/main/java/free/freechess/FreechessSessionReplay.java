@@ -0,0 +1,84 @@
+/**
+ * The freechess.org connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the freechess.org connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.freechess;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import free.util.Connection;
+import free.util.SessionReplay;
+
+
+/**
+ * Plays back a recorded freechess.org session through a <code>FreechessConnection</code>
+ * and reports how quickly it was parsed and dispatched. Usage:
+ * <code>java free.freechess.FreechessSessionReplay [-realtime] &lt;recording file&gt;</code>.
+ * Sessions are recorded by running with the
+ * <code>free.util.sessionRecordFile</code> system property set.
+ *
+ * @see free.util.SessionRecorder
+ */
+
+public class FreechessSessionReplay extends SessionReplay{
+
+
+
+  /**
+   * Creates a <code>FreechessConnection</code> reading from the specified socket.
+   */
+
+  @Override
+  protected Connection createConnection(final Socket socket){
+    return new FreechessConnection("guest", null, null){
+
+      @Override
+      protected Socket connectImpl(String hostname, int port){
+        return socket;
+      }
+
+      @Override
+      protected void execRunnable(Runnable runnable){
+        FreechessSessionReplay.this.execRunnable(runnable);
+      }
+
+      @Override
+      protected void handleDisconnection(IOException e){
+        replayFinished();
+      }
+
+    };
+  }
+
+
+
+  /**
+   * The main method.
+   */
+
+  public static void main(String [] args){
+    new FreechessSessionReplay().replayMain(args);
+  }
+
+
+
+}
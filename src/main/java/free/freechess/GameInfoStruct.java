@@ -22,9 +22,7 @@
 
 package free.freechess;
 
-import java.util.StringTokenizer;
 
-import free.util.Struct;
 
 
 /**
@@ -33,11 +31,147 @@ import free.util.Struct;
  * the format.
  */
 
-public class GameInfoStruct extends Struct{
+public class GameInfoStruct{
 
 
 
 
+  /**
+   * The game number.
+   */
+
+  private final int gameNumber;
+
+
+
+  /**
+   * Whether the game is private.
+   */
+
+  private final boolean isGamePrivate;
+
+
+
+  /**
+   * The game category - the rating category or the wild variant name.
+   */
+
+  private final String gameCategory;
+
+
+
+  /**
+   * Whether the game is rated.
+   */
+
+  private final boolean isGameRated;
+
+
+
+  /**
+   * Whether the white player is registered.
+   */
+
+  private final boolean isWhiteRegistered;
+
+
+
+  /**
+   * Whether the black player is registered.
+   */
+
+  private final boolean isBlackRegistered;
+
+
+
+  /**
+   * The initial amount of time on white's clock, in seconds.
+   */
+
+  private final int whiteTime;
+
+
+
+  /**
+   * White's increment, in seconds.
+   */
+
+  private final int whiteInc;
+
+
+
+  /**
+   * The initial amount of time on black's clock, in seconds.
+   */
+
+  private final int blackTime;
+
+
+
+  /**
+   * Black's increment, in seconds.
+   */
+
+  private final int blackInc;
+
+
+
+  /**
+   * The number of the partner's game, or 0 if none.
+   */
+
+  private final int partnerGameNumber;
+
+
+
+  /**
+   * White's rating.
+   */
+
+  private final int whiteRating;
+
+
+
+  /**
+   * White's rating provshow character.
+   */
+
+  private final char whiteProvShow;
+
+
+
+  /**
+   * Black's rating.
+   */
+
+  private final int blackRating;
+
+
+
+  /**
+   * Black's rating provshow character.
+   */
+
+  private final char blackProvShow;
+
+
+
+  /**
+   * Whether white uses timeseal.
+   */
+
+  private final boolean isWhiteTimesealed;
+
+
+
+  /**
+   * Whether black uses timeseal.
+   */
+
+  private final boolean isBlackTimesealed;
+
+
+
   /**
    * Creates a new GameInfoStruct with the specified arguments.
    *
@@ -73,8 +207,6 @@ public class GameInfoStruct extends Struct{
       int whiteRating, char whiteProvShow, int blackRating, char blackProvShow, 
       boolean isWhiteTimesealed, boolean isBlackTimesealed){
 
-    super(20);
-
     if (whiteTime < 0)
       throw new IllegalArgumentException("White's initial time ("+whiteTime+") may not be negative");
 
@@ -87,23 +219,23 @@ public class GameInfoStruct extends Struct{
     if (blackInc < 0)
       throw new IllegalArgumentException("Black's increment ("+blackInc+") may not be negative");
 
-    setIntegerProperty("GameNumber", gameNumber);
-    setBooleanProperty("IsGamePrivate", isGamePrivate);
-    setStringProperty("GameCategory", gameCategory);
-    setBooleanProperty("IsGameRated", isGameRated);
-    setBooleanProperty("IsWhiteRegistered", isWhiteRegistered);
-    setBooleanProperty("IsBlackRegistered", isBlackRegistered);
-    setIntegerProperty("WhiteTime", whiteTime);
-    setIntegerProperty("WhiteInc", whiteInc);
-    setIntegerProperty("BlackTime", blackTime);
-    setIntegerProperty("BlackInc", blackInc);
-    setIntegerProperty("PartnerGameNumber", partnerGameNumber);
-    setIntegerProperty("WhiteRating", whiteRating);
-    setCharProperty("WhiteProvShow", whiteProvShow);
-    setIntegerProperty("BlackRating", blackRating);
-    setCharProperty("BlackProvShow", blackProvShow);
-    setBooleanProperty("IsWhiteTimesealed", isWhiteTimesealed);
-    setBooleanProperty("IsBlackTimesealed", isBlackTimesealed);
+    this.gameNumber = gameNumber;
+    this.isGamePrivate = isGamePrivate;
+    this.gameCategory = gameCategory;
+    this.isGameRated = isGameRated;
+    this.isWhiteRegistered = isWhiteRegistered;
+    this.isBlackRegistered = isBlackRegistered;
+    this.whiteTime = whiteTime;
+    this.whiteInc = whiteInc;
+    this.blackTime = blackTime;
+    this.blackInc = blackInc;
+    this.partnerGameNumber = partnerGameNumber;
+    this.whiteRating = whiteRating;
+    this.whiteProvShow = whiteProvShow;
+    this.blackRating = blackRating;
+    this.blackProvShow = blackProvShow;
+    this.isWhiteTimesealed = isWhiteTimesealed;
+    this.isBlackTimesealed = isBlackTimesealed;
   }
 
 
@@ -116,56 +248,58 @@ public class GameInfoStruct extends Struct{
    */
 
   public static GameInfoStruct parseGameInfoLine(String line){
-    StringTokenizer tokens = new StringTokenizer(line, " ,=");
+    LineTokenizer tokens = new LineTokenizer(line, " ,=");
 
-    if (!tokens.nextToken().equals("<g1>")) // Skip the <g1> identifier
+    if (!tokens.nextTokenEquals("<g1>")) // Skip the <g1> identifier
       throw new IllegalArgumentException("Missing \"<g1>\" identifier");
 
-    int gameNumber = Integer.parseInt(tokens.nextToken()); // Game number
+    int gameNumber = tokens.nextInt(); // Game number
 
-    assertToken(tokens, "p"); // p=
-    boolean isGamePrivate = parseBoolean(tokens.nextToken()); // Is the game private?
+    tokens.skipToken("p"); // p=
+    boolean isGamePrivate = tokens.nextBoolean(); // Is the game private?
 
-    assertToken(tokens, "t"); // t=
+    tokens.skipToken("t"); // t=
     String gameType = tokens.nextToken(); // Game type
 
-    assertToken(tokens, "r"); // r=
-    boolean isGameRated = parseBoolean(tokens.nextToken()); // Is the game rated?
+    tokens.skipToken("r"); // r=
+    boolean isGameRated = tokens.nextBoolean(); // Is the game rated?
+
+    tokens.skipToken("u"); // u=
+    boolean isWhiteRegistered = tokens.nextBoolean(); // Is white registered?
+    boolean isBlackRegistered = tokens.nextBoolean(); // Is black registered?
 
-    assertToken(tokens, "u"); // u=
-    boolean isWhiteRegistered = parseBoolean(tokens.nextToken()); // Is white registered?
-    boolean isBlackRegistered = parseBoolean(tokens.nextToken()); // Is black registered?
+    tokens.skipToken("it"); // it=
+    int whiteTime = tokens.nextInt(); // White's initial time
+    int whiteInc = tokens.nextInt(); // White's increment    
 
-    assertToken(tokens, "it"); // it=
-    int whiteTime = Integer.parseInt(tokens.nextToken()); // White's initial time
-    int whiteInc = Integer.parseInt(tokens.nextToken()); // White's increment    
+    tokens.skipToken("i");
+    int blackTime = tokens.nextInt(); // Black's initial time
+    int blackInc = tokens.nextInt(); // Black's increment
 
-    assertToken(tokens, "i");
-    int blackTime = Integer.parseInt(tokens.nextToken()); // Black's initial time
-    int blackInc = Integer.parseInt(tokens.nextToken()); // Black's increment
+    tokens.skipToken("pt");
+    int partnerGameNumber = tokens.nextInt(); // The partner's game number
 
-    assertToken(tokens, "pt");
-    int partnerGameNumber = Integer.parseInt(tokens.nextToken()); // The partner's game number
+    tokens.skipToken("rt");
 
-    assertToken(tokens, "rt");
-    String whiteRatingString = tokens.nextToken(); // White's rating + provshow character
-    String blackRatingString = tokens.nextToken(); // Black's rating + provshow character
+    // White's rating + provshow character
+    tokens.advance();
+    int ratingEnd = tokens.getTokenEnd();
     char whiteProvShow = ' ';
+    if (!Character.isDigit(line.charAt(ratingEnd - 1)))
+      whiteProvShow = line.charAt(--ratingEnd);
+    int whiteRating = LineTokenizer.parseInt(line, tokens.getTokenStart(), ratingEnd, 10);
+
+    // Black's rating + provshow character
+    tokens.advance();
+    ratingEnd = tokens.getTokenEnd();
     char blackProvShow = ' ';
-    if (!Character.isDigit(whiteRatingString.charAt(whiteRatingString.length() - 1))){
-      whiteProvShow = whiteRatingString.charAt(whiteRatingString.length() - 1);
-      whiteRatingString = whiteRatingString.substring(0, whiteRatingString.length() - 1);
-    }
-    if (!Character.isDigit(blackRatingString.charAt(blackRatingString.length() - 1))){
-      blackProvShow = blackRatingString.charAt(blackRatingString.length() - 1);
-      blackRatingString = blackRatingString.substring(0, blackRatingString.length() - 1);
-    }
-    int whiteRating = Integer.parseInt(whiteRatingString);
-    int blackRating = Integer.parseInt(blackRatingString);
-
-    assertToken(tokens, "ts");
-    boolean isWhiteTimesealed = parseBoolean(tokens.nextToken()); // Is white timesealed?
-    boolean isBlackTimesealed = parseBoolean(tokens.nextToken()); // Is black timesealed?
+    if (!Character.isDigit(line.charAt(ratingEnd - 1)))
+      blackProvShow = line.charAt(--ratingEnd);
+    int blackRating = LineTokenizer.parseInt(line, tokens.getTokenStart(), ratingEnd, 10);
+
+    tokens.skipToken("ts");
+    boolean isWhiteTimesealed = tokens.nextBoolean(); // Is white timesealed?
+    boolean isBlackTimesealed = tokens.nextBoolean(); // Is black timesealed?
 
     return new GameInfoStruct(gameNumber, isGamePrivate, gameType, isGameRated, isWhiteRegistered,
       isBlackRegistered, whiteTime, whiteInc, blackTime, blackInc, partnerGameNumber,
@@ -175,43 +309,12 @@ public class GameInfoStruct extends Struct{
 
 
 
-  /**
-   * If the given string is "1", return <code>true</code>. If it's "0", returns
-   * <code>false</code>. Otherwise throws an IllegalArgumentException.
-   */
-
-  private static boolean parseBoolean(String val){
-    if (val.equals("1"))
-      return true;
-    else if (val.equals("0"))
-      return false;
-    else
-      throw new IllegalArgumentException("Bad boolean value: "+val);
-  }
-
-
-
-
-  /**
-   * Checks that the next token for the given StringTokenizer is the specified
-   * String. Throws an IllegalArgumentException if it isn't.
-   */
-
-  private static void assertToken(StringTokenizer tokenizer, String token){
-   String realToken = tokenizer.nextToken();
-   if (!realToken.equals(token))
-     throw new IllegalArgumentException("Bad token \""+realToken+"\", expected \""+token+"\" instead");
-  }
-
-
-
-
   /**
    * Returns the game number.
    */
 
   public int getGameNumber(){
-    return getIntegerProperty("GameNumber");
+    return gameNumber;
   }
 
 
@@ -223,7 +326,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public boolean isGamePrivate(){
-    return getBooleanProperty("IsGamePrivate");
+    return isGamePrivate;
   }
 
 
@@ -235,7 +338,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public String getGameCategory(){
-    return getStringProperty("GameCategory");
+    return gameCategory;
   }
 
 
@@ -247,7 +350,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public boolean isGameRated(){
-    return getBooleanProperty("IsGameRated");
+    return isGameRated;
   }
 
 
@@ -259,7 +362,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public boolean isWhiteRegistered(){
-    return getBooleanProperty("IsWhiteRegistered");
+    return isWhiteRegistered;
   }
 
 
@@ -271,7 +374,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public boolean isBlackRegistered(){
-    return getBooleanProperty("IsBlackRegistered");
+    return isBlackRegistered;
   }
 
 
@@ -282,7 +385,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getWhiteTime(){
-    return getIntegerProperty("WhiteTime");
+    return whiteTime;
   }
 
 
@@ -293,7 +396,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getBlackTime(){
-    return getIntegerProperty("BlackTime");
+    return blackTime;
   }
 
 
@@ -305,7 +408,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getWhiteInc(){
-    return getIntegerProperty("WhiteInc");
+    return whiteInc;
   }
 
 
@@ -317,7 +420,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getBlackInc(){
-    return getIntegerProperty("BlackInc");
+    return blackInc;
   }
 
 
@@ -328,7 +431,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getPartnerGameNumber(){
-    return getIntegerProperty("PartnerGameNumber");
+    return partnerGameNumber;
   }
 
 
@@ -339,7 +442,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getWhiteRating(){
-    return getIntegerProperty("WhiteRating");
+    return whiteRating;
   }
 
 
@@ -351,7 +454,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public char getWhiteProvShow(){
-    return getCharProperty("WhiteProvShow");
+    return whiteProvShow;
   }
 
 
@@ -362,7 +465,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public int getBlackRating(){
-    return getIntegerProperty("BlackRating");
+    return blackRating;
   }
 
 
@@ -374,7 +477,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public char getBlackProvShow(){
-    return getCharProperty("BlackProvShow");
+    return blackProvShow;
   }
 
 
@@ -386,7 +489,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public boolean isWhiteTimesealed(){
-    return getBooleanProperty("IsWhiteTimesealed");
+    return isWhiteTimesealed;
   }
 
 
@@ -398,7 +501,7 @@ public class GameInfoStruct extends Struct{
    */
 
   public boolean isBlackTimesealed(){
-    return getBooleanProperty("IsBlackTimesealed");
+    return isBlackTimesealed;
   }
 
 
@@ -0,0 +1,296 @@
+/**
+ * The freechess.org connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the freechess.org connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.freechess;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+
+/**
+ * An <code>InputStream</code> which splits the data arriving from a
+ * freechess.org server into lines. The data is read in blocks into a single,
+ * reusable byte buffer which is then scanned for line terminators and leading
+ * prompts in a single pass, so the only allocation made per line is the
+ * resulting <code>String</code> itself. Lines which consist only of the prompt
+ * are skipped entirely, without any allocation.
+ * <p>FICS terminates lines with <code>"\n\r"</code>; a lone <code>'\n'</code>
+ * is accepted as well.
+ */
+
+public class LineFramer extends FilterInputStream{
+
+
+
+  /**
+   * The charset we use to turn bytes into characters - each byte is mapped to
+   * the character with the same value.
+   */
+
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+
+
+  /**
+   * The initial size of the buffer.
+   */
+
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+
+
+  /**
+   * The prompt we strip from the beginning of lines, as bytes.
+   */
+
+  private final byte [] prompt;
+
+
+
+  /**
+   * The buffer. It grows if a single line doesn't fit into it.
+   */
+
+  private byte [] buf = new byte[INITIAL_BUFFER_SIZE];
+
+
+
+  /**
+   * The index of the first byte in the buffer which hasn't been consumed yet.
+   */
+
+  private int pos = 0;
+
+
+
+  /**
+   * The index one past the last valid byte in the buffer.
+   */
+
+  private int limit = 0;
+
+
+
+  /**
+   * Whether the last line was terminated with a <code>'\n'</code>, in which
+   * case a <code>'\r'</code> immediately following it is part of the line
+   * terminator. We remember this instead of peeking at the next byte so that a
+   * line is returned as soon as its <code>'\n'</code> arrives.
+   */
+
+  private boolean skipCarriageReturn = false;
+
+
+
+  /**
+   * Creates a new <code>LineFramer</code> reading from the specified
+   * <code>InputStream</code> and stripping the specified prompt from the
+   * beginning of lines. The underlying stream is read in large blocks, so there
+   * is no need to wrap it in a <code>BufferedInputStream</code>.
+   */
+
+  public LineFramer(InputStream in, String prompt){
+    super(in);
+
+    if (prompt == null)
+      throw new IllegalArgumentException("prompt may not be null");
+    if (prompt.length() == 0)
+      throw new IllegalArgumentException("prompt may not be empty");
+
+    this.prompt = prompt.getBytes(ISO_8859_1);
+  }
+
+
+
+  /**
+   * Reads a single line, stripping any prompts at its beginning and skipping
+   * lines which consist only of prompts. The line terminator is not included.
+   * Returns <code>null</code> if the end of the stream is reached before any
+   * data is read.
+   */
+
+  public String readLine() throws IOException{
+    boolean lineStartsWithPrompt = false;
+    int lineStart = pos;
+    int i = pos;
+
+    while (true){
+      if (i == limit){
+        // Move the current line to the beginning of the buffer and read more data
+        if (lineStart > 0){
+          System.arraycopy(buf, lineStart, buf, 0, limit - lineStart);
+          limit -= lineStart;
+          i -= lineStart;
+          lineStart = 0;
+        }
+        if (limit == buf.length){
+          byte [] newBuf = new byte[buf.length * 2];
+          System.arraycopy(buf, 0, newBuf, 0, limit);
+          buf = newBuf;
+        }
+
+        int count = in.read(buf, limit, buf.length - limit);
+        if (count < 0){
+          pos = limit;
+          return i == lineStart ? null : makeString(lineStart, i - lineStart);
+        }
+        limit += count;
+        continue;
+      }
+
+      int b = buf[i];
+
+      if (skipCarriageReturn){
+        skipCarriageReturn = false;
+        if (b == '\r'){
+          lineStart = ++i;
+          continue;
+        }
+      }
+
+      if (b == '\n'){
+        int lineLength = i - lineStart;
+        pos = ++i;
+        skipCarriageReturn = true;
+
+        // Ignore all-prompt lines
+        if (lineStartsWithPrompt && (lineLength == 0)){
+          lineStartsWithPrompt = false;
+          lineStart = i;
+          continue;
+        }
+
+        return makeString(lineStart, lineLength);
+      }
+
+      i++;
+
+      // Filter out the prompt
+      if ((i - lineStart == prompt.length) && isPromptAt(lineStart)){
+        lineStart = i;
+        lineStartsWithPrompt = true;
+      }
+    }
+  }
+
+
+
+  /**
+   * Returns whether the prompt occupies the buffer at the specified index.
+   */
+
+  private boolean isPromptAt(int index){
+    for (int i = 0; i < prompt.length; i++)
+      if (buf[index + i] != prompt[i])
+        return false;
+
+    return true;
+  }
+
+
+
+  /**
+   * Creates a string from the specified range of the buffer.
+   */
+
+  private String makeString(int offset, int length){
+    return length == 0 ? "" : new String(buf, offset, length, ISO_8859_1);
+  }
+
+
+
+  /**
+   * Reads a single byte, taking it from the buffer first, if available.
+   */
+
+  @Override
+  public int read() throws IOException{
+    if (pos < limit)
+      return buf[pos++] & 0xff;
+
+    return in.read();
+  }
+
+
+
+  /**
+   * Reads bytes into the specified array, taking them from the buffer first, if
+   * available.
+   */
+
+  @Override
+  public int read(byte [] b, int off, int len) throws IOException{
+    if (pos < limit){
+      int count = Math.min(len, limit - pos);
+      System.arraycopy(buf, pos, b, off, count);
+      pos += count;
+      return count;
+    }
+
+    return in.read(b, off, len);
+  }
+
+
+
+  /**
+   * Returns the amount of bytes that can be read without blocking.
+   */
+
+  @Override
+  public int available() throws IOException{
+    return (limit - pos) + in.available();
+  }
+
+
+
+  /**
+   * Skips the specified amount of bytes, taking them from the buffer first, if
+   * available.
+   */
+
+  @Override
+  public long skip(long n) throws IOException{
+    if (pos < limit){
+      int count = (int)Math.min(n, limit - pos);
+      pos += count;
+      return count;
+    }
+
+    return in.skip(n);
+  }
+
+
+
+  /**
+   * Returns <code>false</code>, as marking is not supported.
+   */
+
+  @Override
+  public boolean markSupported(){
+    return false;
+  }
+
+
+
+}
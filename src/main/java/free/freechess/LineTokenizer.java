@@ -0,0 +1,295 @@
+/**
+ * The freechess.org connection library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2002, 2003 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The freechess.org connection library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The freechess.org connection library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the freechess.org connection library; if not, write to the Free
+ * Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.freechess;
+
+import java.util.NoSuchElementException;
+
+
+/**
+ * Splits a line into tokens separated by runs of delimiter characters, the
+ * same way <code>StringTokenizer</code> does, but in a single pass and without
+ * creating a <code>String</code> for each token - numbers, booleans and
+ * expected keywords are parsed and compared directly in the line. Used by the
+ * parsers of the various datagram-like lines FICS sends.
+ */
+
+final class LineTokenizer{
+
+
+
+  /**
+   * The line we're tokenizing.
+   */
+
+  private final String line;
+
+
+
+  /**
+   * The delimiter characters.
+   */
+
+  private final String delimiters;
+
+
+
+  /**
+   * The index one past the end of the tokenized range of the line.
+   */
+
+  private final int end;
+
+
+
+  /**
+   * The index at which we continue looking for the next token.
+   */
+
+  private int position;
+
+
+
+  /**
+   * The start index of the current token.
+   */
+
+  private int tokenStart = 0;
+
+
+
+  /**
+   * The index one past the end of the current token.
+   */
+
+  private int tokenEnd = 0;
+
+
+
+  /**
+   * Creates a new <code>LineTokenizer</code> for the specified line, with the
+   * specified delimiter characters.
+   */
+
+  public LineTokenizer(String line, String delimiters){
+    this(line, 0, line.length(), delimiters);
+  }
+
+
+
+  /**
+   * Creates a new <code>LineTokenizer</code> for the specified range of the
+   * specified line, with the specified delimiter characters.
+   */
+
+  public LineTokenizer(String line, int start, int end, String delimiters){
+    if ((start < 0) || (start > end) || (end > line.length()))
+      throw new IndexOutOfBoundsException("Bad range: [" + start + ", " + end + ")");
+
+    this.line = line;
+    this.delimiters = delimiters;
+    this.end = end;
+    this.position = start;
+  }
+
+
+
+  /**
+   * Returns whether the specified character is a delimiter.
+   */
+
+  private boolean isDelimiter(char c){
+    return delimiters.indexOf(c) != -1;
+  }
+
+
+
+  /**
+   * Moves on to the next token. Throws a <code>NoSuchElementException</code>
+   * if there are no more tokens.
+   */
+
+  public void advance(){
+    int i = position;
+    while ((i < end) && isDelimiter(line.charAt(i)))
+      i++;
+
+    if (i == end)
+      throw new NoSuchElementException();
+
+    tokenStart = i;
+    while ((i < end) && !isDelimiter(line.charAt(i)))
+      i++;
+    tokenEnd = i;
+    position = i;
+  }
+
+
+
+  /**
+   * Returns the start index of the current token.
+   */
+
+  public int getTokenStart(){
+    return tokenStart;
+  }
+
+
+
+  /**
+   * Returns the index one past the end of the current token.
+   */
+
+  public int getTokenEnd(){
+    return tokenEnd;
+  }
+
+
+
+  /**
+   * Returns the next token.
+   */
+
+  public String nextToken(){
+    advance();
+    return line.substring(tokenStart, tokenEnd);
+  }
+
+
+
+  /**
+   * Returns whether the next token is the specified string.
+   */
+
+  public boolean nextTokenEquals(String s){
+    advance();
+    return (tokenEnd - tokenStart == s.length()) && line.startsWith(s, tokenStart);
+  }
+
+
+
+  /**
+   * Checks that the next token is the specified string. Throws an
+   * <code>IllegalArgumentException</code> if it isn't.
+   */
+
+  public void skipToken(String token){
+    if (!nextTokenEquals(token))
+      throw new IllegalArgumentException("Bad token \"" + line.substring(tokenStart, tokenEnd) +
+        "\", expected \"" + token + "\" instead");
+  }
+
+
+
+  /**
+   * Returns the first character of the next token.
+   */
+
+  public char nextChar(){
+    advance();
+    return line.charAt(tokenStart);
+  }
+
+
+
+  /**
+   * Parses the next token as a decimal integer.
+   */
+
+  public int nextInt(){
+    return nextInt(10);
+  }
+
+
+
+  /**
+   * Parses the next token as an integer in the specified radix.
+   */
+
+  public int nextInt(int radix){
+    advance();
+    return parseInt(line, tokenStart, tokenEnd, radix);
+  }
+
+
+
+  /**
+   * Parses the next token as a boolean - "1" is <code>true</code> and "0" is
+   * <code>false</code>. Throws an <code>IllegalArgumentException</code>
+   * otherwise.
+   */
+
+  public boolean nextBoolean(){
+    advance();
+    if (tokenEnd - tokenStart == 1){
+      char c = line.charAt(tokenStart);
+      if (c == '1')
+        return true;
+      else if (c == '0')
+        return false;
+    }
+
+    throw new IllegalArgumentException("Bad boolean value: " + line.substring(tokenStart, tokenEnd));
+  }
+
+
+
+  /**
+   * Parses the specified range of the specified string as an integer in the
+   * specified radix. Accepts the same strings <code>Integer.parseInt</code>
+   * does, without creating a substring.
+   */
+
+  public static int parseInt(String s, int start, int end, int radix){
+    int i = start;
+    boolean negative = false;
+    if (i < end){
+      char first = s.charAt(i);
+      if ((first == '-') || (first == '+')){
+        negative = first == '-';
+        i++;
+      }
+    }
+
+    if (i == end)
+      throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+
+    // Accumulate negatively, as Integer.parseInt does, so that MIN_VALUE fits
+    int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+    int multiplicationLimit = limit / radix;
+    int result = 0;
+    for (; i < end; i++){
+      int digit = Character.digit(s.charAt(i), radix);
+      if ((digit < 0) || (result < multiplicationLimit))
+        throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+      result *= radix;
+      if (result < limit + digit)
+        throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
+      result -= digit;
+    }
+
+    return negative ? result : -result;
+  }
+
+
+
+}
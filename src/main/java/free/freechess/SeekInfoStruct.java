@@ -22,9 +22,7 @@
 
 package free.freechess;
 
-import java.util.StringTokenizer;
 
-import free.util.Struct;
 
 
 /**
@@ -33,7 +31,7 @@ import free.util.Struct;
  * Internet Chess Server (http://www.freechess.org).
  */
 
-public class SeekInfoStruct extends Struct{
+public class SeekInfoStruct{
 
 
 
@@ -109,6 +107,126 @@ public class SeekInfoStruct extends Struct{
 
 
   
+  /**
+   * Whether the user can accept the seek.
+   */
+
+  private final boolean canAcceptSeek;
+
+
+
+  /**
+   * The index of the seek.
+   */
+
+  private final int index;
+
+
+
+  /**
+   * The handle of the seeking player.
+   */
+
+  private final String name;
+
+
+
+  /**
+   * The titles of the seeking player, ORed into an int.
+   */
+
+  private final int titles;
+
+
+
+  /**
+   * The seeker's rating.
+   */
+
+  private final int rating;
+
+
+
+  /**
+   * The seeker rating's provshow character.
+   */
+
+  private final char provShow;
+
+
+
+  /**
+   * The initial time of the sought match, in minutes.
+   */
+
+  private final int time;
+
+
+
+  /**
+   * The increment of the sought match, in seconds.
+   */
+
+  private final int increment;
+
+
+
+  /**
+   * Whether the sought match is rated.
+   */
+
+  private final boolean isRated;
+
+
+
+  /**
+   * The sought game type.
+   */
+
+  private final String matchType;
+
+
+
+  /**
+   * The color requested by the seeker - 'W', 'B' or '?'.
+   */
+
+  private final char requestedColor;
+
+
+
+  /**
+   * The minimum rating of the desired opponent.
+   */
+
+  private final int minRating;
+
+
+
+  /**
+   * The maximum rating of the desired opponent.
+   */
+
+  private final int maxRating;
+
+
+
+  /**
+   * Whether the match will be accepted automatically.
+   */
+
+  private final boolean isAutomaticAccept;
+
+
+
+  /**
+   * Whether one must pass the seeker's formula to accept the seek.
+   */
+
+  private final boolean isFormulaUsed;
+
+
+
   /**
    * Creates a new SeekInfoStruct with the specified arguments.
    *
@@ -154,21 +272,21 @@ public class SeekInfoStruct extends Struct{
         throw new IllegalArgumentException("Bad color character: "+color);
     }
 
-    setBooleanProperty("CanAcceptSeek", canAcceptSeek);
-    setIntegerProperty("Index", index);
-    setStringProperty("Name", name);
-    setIntegerProperty("Titles", titles);
-    setIntegerProperty("Rating", rating);
-    setCharProperty("ProvShow", provshow);
-    setIntegerProperty("Time", time);
-    setIntegerProperty("Increment", inc);
-    setBooleanProperty("IsRated", isRated);
-    setStringProperty("MatchType", matchType);
-    setCharProperty("RequestedColor", color);
-    setIntegerProperty("MinRating", minRating);
-    setIntegerProperty("MaxRating", maxRating);
-    setBooleanProperty("IsAutomaticAccept", isAutomaticAccept);
-    setBooleanProperty("IsFormulaUsed", isFormulaUsed);
+    this.canAcceptSeek = canAcceptSeek;
+    this.index = index;
+    this.name = name;
+    this.titles = titles;
+    this.rating = rating;
+    this.provShow = provshow;
+    this.time = time;
+    this.increment = inc;
+    this.isRated = isRated;
+    this.matchType = matchType;
+    this.requestedColor = color;
+    this.minRating = minRating;
+    this.maxRating = maxRating;
+    this.isAutomaticAccept = isAutomaticAccept;
+    this.isFormulaUsed = isFormulaUsed;
   }
 
 
@@ -186,58 +304,56 @@ public class SeekInfoStruct extends Struct{
    */
 
   public static SeekInfoStruct parseSeekInfoLine(String line){
-    StringTokenizer tokens = new StringTokenizer(line, " -=");
+    LineTokenizer tokens = new LineTokenizer(line, " -=");
 
     boolean canAcceptSeek;
-    String identifier = tokens.nextToken();
-    if (identifier.equals("<s>")) // Skip the <s> identifier
+    if (tokens.nextTokenEquals("<s>")) // Skip the <s> identifier
       canAcceptSeek = true;
-    else if (identifier.equals("<sn>"))
+    else if ((tokens.getTokenEnd() - tokens.getTokenStart() == 4) && line.startsWith("<sn>", tokens.getTokenStart()))
       canAcceptSeek = false;
     else
       throw new IllegalArgumentException("Missing \"<s>\" or \"<sn>\" identifier");
 
-    int index = Integer.parseInt(tokens.nextToken());
+    int index = tokens.nextInt();
 
-    assertToken(tokens, "w"); // w=
+    tokens.skipToken("w"); // w=
     String name = tokens.nextToken();
 
-    assertToken(tokens, "ti"); // ti=
-    int titles = Integer.parseInt(tokens.nextToken(), 16);
+    tokens.skipToken("ti"); // ti=
+    int titles = tokens.nextInt(16);
 
-    assertToken(tokens, "rt"); // rt=
-    String ratingString = tokens.nextToken();
+    tokens.skipToken("rt"); // rt=
+    tokens.advance();
+    int ratingEnd = tokens.getTokenEnd();
     char provShow = ' ';
-    if (!Character.isDigit(ratingString.charAt(ratingString.length() - 1))){
-      provShow = ratingString.charAt(ratingString.length() - 1);
-      ratingString = ratingString.substring(0, ratingString.length() - 1);
-    }
-    int rating = Integer.parseInt(ratingString);
+    if (!Character.isDigit(line.charAt(ratingEnd - 1)))
+      provShow = line.charAt(--ratingEnd);
+    int rating = LineTokenizer.parseInt(line, tokens.getTokenStart(), ratingEnd, 10);
 
-    assertToken(tokens, "t"); // t=
-    int time = Integer.parseInt(tokens.nextToken());
+    tokens.skipToken("t"); // t=
+    int time = tokens.nextInt();
 
-    assertToken(tokens, "i"); // i=
-    int inc = Integer.parseInt(tokens.nextToken());
+    tokens.skipToken("i"); // i=
+    int inc = tokens.nextInt();
 
-    assertToken(tokens, "r"); // r=
-    boolean isRated = tokens.nextToken().equals("r");
+    tokens.skipToken("r"); // r=
+    boolean isRated = tokens.nextTokenEquals("r");
 
-    assertToken(tokens, "tp"); // tp=
+    tokens.skipToken("tp"); // tp=
     String matchType = tokens.nextToken();
 
-    assertToken(tokens, "c"); // c=
-    char requestedColor = tokens.nextToken().charAt(0);
+    tokens.skipToken("c"); // c=
+    char requestedColor = tokens.nextChar();
 
-    assertToken(tokens, "rr"); // rr=
-    int minRating = Integer.parseInt(tokens.nextToken());
-    int maxRating = Integer.parseInt(tokens.nextToken());
+    tokens.skipToken("rr"); // rr=
+    int minRating = tokens.nextInt();
+    int maxRating = tokens.nextInt();
 
-    assertToken(tokens, "a"); // a=
-    boolean isAutomaticAccept = tokens.nextToken().equals("t");
+    tokens.skipToken("a"); // a=
+    boolean isAutomaticAccept = tokens.nextTokenEquals("t");
 
-    assertToken(tokens, "f"); // f=
-    boolean isFormulaUsed = tokens.nextToken().equals("t");
+    tokens.skipToken("f"); // f=
+    boolean isFormulaUsed = tokens.nextTokenEquals("t");
 
     return new SeekInfoStruct(canAcceptSeek, index, name, titles, rating, provShow,
       time, inc, isRated, matchType, requestedColor, minRating, maxRating, 
@@ -247,27 +363,13 @@ public class SeekInfoStruct extends Struct{
 
 
 
-  /**
-   * Checks that the next token for the given StringTokenizer is the specified
-   * String. Throws an IllegalArgumentException if it isn't.
-   */
-
-  private static void assertToken(StringTokenizer tokenizer, String token){
-   String realToken = tokenizer.nextToken();
-   if (!realToken.equals(token))
-     throw new IllegalArgumentException("Bad token \""+realToken+"\", expected \""+token+"\" instead");
-  }
-
-
-
-
   /**
    * Returns <code>true</code> if the user account can accept the seek, returns
    * <code>false</code> otherwise.
    */
 
   public boolean canAcceptSeek(){
-    return getBooleanProperty("CanAcceptSeek");
+    return canAcceptSeek;
   }
 
 
@@ -278,7 +380,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public int getSeekIndex(){
-    return getIntegerProperty("Index");
+    return index;
   }
 
 
@@ -289,7 +391,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public String getSeekerHandle(){
-    return getStringProperty("Name");
+    return name;
   }
 
 
@@ -302,7 +404,7 @@ public class SeekInfoStruct extends Struct{
    */
   
   public int getSeekerTitles(){
-    return getIntegerProperty("Titles");
+    return titles;
   }
 
 
@@ -313,7 +415,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public int getSeekerRating(){
-    return getIntegerProperty("Rating");
+    return rating;
   }
 
 
@@ -325,7 +427,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public char getSeekerProvShow(){
-    return getCharProperty("ProvShow");
+    return provShow;
   }
 
 
@@ -336,7 +438,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public int getMatchTime(){
-    return getIntegerProperty("Time");
+    return time;
   }
 
 
@@ -347,7 +449,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public int getMatchIncrement(){
-    return getIntegerProperty("Increment");
+    return increment;
   }
 
 
@@ -359,7 +461,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public boolean isMatchRated(){
-    return getBooleanProperty("IsRated");
+    return isRated;
   }
 
 
@@ -372,7 +474,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public String getMatchType(){
-    return getStringProperty("MatchType");
+    return matchType;
   }
 
 
@@ -384,7 +486,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public char getSeekerColor(){
-    return getCharProperty("RequestedColor");
+    return requestedColor;
   }
 
 
@@ -395,7 +497,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public int getOpponentMinRating(){
-    return getIntegerProperty("MinRating");
+    return minRating;
   }
 
 
@@ -406,7 +508,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public int getOpponentMaxRating(){
-    return getIntegerProperty("MaxRating");
+    return maxRating;
   }
 
 
@@ -418,7 +520,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public boolean isAutomaticAccept(){
-    return getBooleanProperty("IsAutomaticAccept");
+    return isAutomaticAccept;
   }
 
 
@@ -430,7 +532,7 @@ public class SeekInfoStruct extends Struct{
    */
 
   public boolean isFormulaUsed(){
-    return getBooleanProperty("IsFormulaUsed");
+    return isFormulaUsed;
   }
 
 
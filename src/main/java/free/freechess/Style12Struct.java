@@ -22,10 +22,6 @@
 
 package free.freechess;
 
-import java.util.StringTokenizer;
-
-import free.util.Struct;
-
 
 /**
  * A structure holding parsed information from a style12 line.
@@ -33,7 +29,7 @@ import free.util.Struct;
  * or the "help style12" helpfile on freechess.org for information about the format.
  */
 
-public class Style12Struct extends Struct{
+public class Style12Struct{
 
 
 
@@ -62,6 +58,253 @@ public class Style12Struct extends Struct{
 
 
 
+  /**
+   * The string holding the current board - either the board in lexigraphic
+   * format, or the whole style12 line the board was parsed from.
+   */
+
+  private final String boardSource;
+
+
+
+  /**
+   * The index in <code>boardSource</code> of the first character of the
+   * board.
+   */
+
+  private final int boardStart;
+
+
+
+  /**
+   * The distance in <code>boardSource</code> between the first characters of
+   * two consecutive rows of the board - 8 for a board in lexigraphic format,
+   * 9 for a board in a style12 line, where the rows are separated by spaces.
+   */
+
+  private final int boardRowStride;
+
+
+
+  /**
+   * The current board, in lexigraphic format; <code>null</code> until first
+   * asked for, if the board was parsed from a style12 line.
+   */
+
+  private String boardLexigraphic;
+
+
+
+  /**
+   * The player to move, either "W" or "B".
+   */
+
+  private final String currentPlayer;
+
+
+
+  /**
+   * The file of the double pawn push on the last move, or -1 if the last move
+   * wasn't a double pawn push.
+   */
+
+  private final int doublePawnPushFile;
+
+
+
+  /**
+   * Whether white can still castle kingside.
+   */
+
+  private final boolean canWhiteCastleKingside;
+
+
+
+  /**
+   * Whether white can still castle queenside.
+   */
+
+  private final boolean canWhiteCastleQueenside;
+
+
+
+  /**
+   * Whether black can still castle kingside.
+   */
+
+  private final boolean canBlackCastleKingside;
+
+
+
+  /**
+   * Whether black can still castle queenside.
+   */
+
+  private final boolean canBlackCastleQueenside;
+
+
+
+  /**
+   * The amount of half moves made since the last irreversible move.
+   */
+
+  private final int pliesSinceIrreversible;
+
+
+
+  /**
+   * The game number.
+   */
+
+  private final int gameNumber;
+
+
+
+  /**
+   * The white player's nickname.
+   */
+
+  private final String whiteName;
+
+
+
+  /**
+   * The black player's nickname.
+   */
+
+  private final String blackName;
+
+
+
+  /**
+   * The game type - <code>MY_GAME</code>, <code>OBSERVED_GAME</code> or
+   * <code>ISOLATED_BOARD</code>.
+   */
+
+  private final int gameType;
+
+
+
+  /**
+   * Whether the game is a played game, as opposed to an examined one.
+   */
+
+  private final boolean isPlayedGame;
+
+
+
+  /**
+   * Whether it's the user's turn.
+   */
+
+  private final boolean isMyTurn;
+
+
+
+  /**
+   * The initial time in the match, in seconds.
+   */
+
+  private final int initTime;
+
+
+
+  /**
+   * The increment, in seconds.
+   */
+
+  private final int increment;
+
+
+
+  /**
+   * White's material strength.
+   */
+
+  private final int whiteMaterialStrength;
+
+
+
+  /**
+   * Black's material strength.
+   */
+
+  private final int blackMaterialStrength;
+
+
+
+  /**
+   * White's remaining time.
+   */
+
+  private final int whiteTime;
+
+
+
+  /**
+   * Black's remaining time.
+   */
+
+  private final int blackTime;
+
+
+
+  /**
+   * The number of the next move.
+   */
+
+  private final int nextMoveNumber;
+
+
+
+  /**
+   * A verbose representation of the last move, or <code>null</code> if none.
+   */
+
+  private final String moveVerbose;
+
+
+
+  /**
+   * A SAN representation of the last move, or <code>null</code> if none.
+   */
+
+  private final String moveSAN;
+
+
+
+  /**
+   * The amount of time it took to make the last move.
+   */
+
+  private final int moveTime;
+
+
+
+  /**
+   * Whether the board is flipped (black at bottom).
+   */
+
+  private final boolean isBoardFlipped;
+
+
+
+  /**
+   * Whether the clock of the player to move is running.
+   */
+
+  private final boolean isClockRunning;
+
+
+
+  /**
+   * The lag incurred when making the last move.
+   */
+
+  private final int lag;
+
+
+
   /**
    * Creates a new Style12Struct with the specified arguments. You would usually
    * want to use the <code>parseStyle12Line</code> method and not this
@@ -117,15 +360,41 @@ public class Style12Struct extends Struct{
       int whiteMaterialStrength, int blackMaterialStrength, int whiteTime,
       int blackTime, int nextMoveNumber, String moveVerbose, String moveSAN,
       int moveTime, boolean isBoardFlipped, boolean isClockRunning, int lag){
+    this(boardLexigraphic, 0, 8, currentPlayer, doublePawnPushFile, canWhiteCastleKingside,
+      canWhiteCastleQueenside, canBlackCastleKingside, canBlackCastleQueenside, pliesSinceIrreversible,
+      gameNumber, whiteName, blackName, gameType, isPlayedGame, isMyTurn, initTime, increment,
+      whiteMaterialStrength, blackMaterialStrength, whiteTime, blackTime, nextMoveNumber, moveVerbose,
+      moveSAN, moveTime, isBoardFlipped, isClockRunning, lag);
+  }
+
+
+
+
+  /**
+   * Creates a new Style12Struct whose board is read from the specified
+   * string, starting at the specified index, with the first characters of
+   * consecutive rows the specified distance apart. The rest of the arguments
+   * are as in the public constructor.
+   */
+
+  private Style12Struct(String boardSource, int boardStart, int boardRowStride, String currentPlayer,
+      int doublePawnPushFile, boolean canWhiteCastleKingside, 
+      boolean canWhiteCastleQueenside, boolean canBlackCastleKingside,
+      boolean canBlackCastleQueenside, int pliesSinceIrreversible,
+      int gameNumber, String whiteName, String blackName, int gameType,
+      boolean isPlayedGame, boolean isMyTurn, int initTime, int increment,
+      int whiteMaterialStrength, int blackMaterialStrength, int whiteTime,
+      int blackTime, int nextMoveNumber, String moveVerbose, String moveSAN,
+      int moveTime, boolean isBoardFlipped, boolean isClockRunning, int lag){
 
     if ((doublePawnPushFile < -1) || (doublePawnPushFile > 7))
       throw new IllegalArgumentException("Bad value for double pawn push file: "+doublePawnPushFile);
 
-    if (boardLexigraphic == null)
+    if (boardSource == null)
       throw new IllegalArgumentException("Board may not be null");
 
-    if (boardLexigraphic.length() != 64)
-      throw new IllegalArgumentException("Board string length ("+boardLexigraphic.length()+") must be 64 characters");
+    if ((boardRowStride == 8) && (boardSource.length() != 64))
+      throw new IllegalArgumentException("Board string length ("+boardSource.length()+") must be 64 characters");
 
     if ((currentPlayer == null) || ((!currentPlayer.equals("W")) && (!currentPlayer.equals("B"))))
       throw new IllegalArgumentException("Current player string ("+currentPlayer+") must be either \"W\" or \"B\"");
@@ -169,33 +438,36 @@ public class Style12Struct extends Struct{
     if (lag < 0)
       throw new IllegalArgumentException("Lag may not be negative (really, it's against the laws of physics)");
 
-    setStringProperty("BoardLexigraphic", boardLexigraphic);
-    setStringProperty("CurrentPlayer", currentPlayer);
-    setIntegerProperty("DoublePawnPushFile", doublePawnPushFile);
-    setBooleanProperty("CanWhiteCastleKingside", canWhiteCastleKingside);
-    setBooleanProperty("CanWhiteCastleQueenside", canWhiteCastleQueenside);
-    setBooleanProperty("CanBlackCastleKingside", canBlackCastleKingside);
-    setBooleanProperty("CanBlackCastleQueenside", canBlackCastleQueenside);
-    setIntegerProperty("PliesSinceIrreversible", pliesSinceIrreversible);
-    setIntegerProperty("GameNumber", gameNumber);
-    setStringProperty("WhiteName", whiteName);
-    setStringProperty("BlackName", blackName);
-    setIntegerProperty("GameType", gameType);
-    setBooleanProperty("IsPlayedGame", isPlayedGame);
-    setBooleanProperty("IsMyTurn", isMyTurn);
-    setIntegerProperty("InitTime", initTime);
-    setIntegerProperty("Increment", increment);
-    setIntegerProperty("WhiteMaterialStrength", whiteMaterialStrength);
-    setIntegerProperty("BlackMaterialStrength", blackMaterialStrength);
-    setIntegerProperty("WhiteTime", whiteTime);
-    setIntegerProperty("BlackTime", blackTime);
-    setIntegerProperty("NextMoveNumber", nextMoveNumber);
-    setStringProperty("MoveVerbose", moveVerbose);
-    setStringProperty("MoveSAN", moveSAN);
-    setIntegerProperty("MoveTime", moveTime);
-    setBooleanProperty("IsBoardFlipped", isBoardFlipped);
-    setBooleanProperty("IsClockRunning", isClockRunning);
-    setIntegerProperty("Lag", lag);
+    this.boardSource = boardSource;
+    this.boardStart = boardStart;
+    this.boardRowStride = boardRowStride;
+    this.boardLexigraphic = boardRowStride == 8 ? boardSource : null;
+    this.currentPlayer = currentPlayer;
+    this.doublePawnPushFile = doublePawnPushFile;
+    this.canWhiteCastleKingside = canWhiteCastleKingside;
+    this.canWhiteCastleQueenside = canWhiteCastleQueenside;
+    this.canBlackCastleKingside = canBlackCastleKingside;
+    this.canBlackCastleQueenside = canBlackCastleQueenside;
+    this.pliesSinceIrreversible = pliesSinceIrreversible;
+    this.gameNumber = gameNumber;
+    this.whiteName = whiteName;
+    this.blackName = blackName;
+    this.gameType = gameType;
+    this.isPlayedGame = isPlayedGame;
+    this.isMyTurn = isMyTurn;
+    this.initTime = initTime;
+    this.increment = increment;
+    this.whiteMaterialStrength = whiteMaterialStrength;
+    this.blackMaterialStrength = blackMaterialStrength;
+    this.whiteTime = whiteTime;
+    this.blackTime = blackTime;
+    this.nextMoveNumber = nextMoveNumber;
+    this.moveVerbose = moveVerbose;
+    this.moveSAN = moveSAN;
+    this.moveTime = moveTime;
+    this.isBoardFlipped = isBoardFlipped;
+    this.isClockRunning = isClockRunning;
+    this.lag = lag;
   }
 
 
@@ -206,33 +478,55 @@ public class Style12Struct extends Struct{
    */
 
   public static Style12Struct parseStyle12Line(String line){
-    StringTokenizer tokens = new StringTokenizer(line, " ");
+    LineTokenizer tokens = new LineTokenizer(line, " ");
 
-    if (!tokens.nextToken().equals("<12>")) // Skip the "<12>" identifier
+    if (!tokens.nextTokenEquals("<12>")) // Skip the "<12>" identifier
       throw new IllegalArgumentException("Missing \"<12>\" identifier");
 
-    StringBuffer posBuf = new StringBuffer(64);
-    for (int i = 0; i < 8; i++)
-      posBuf.append(tokens.nextToken()); // The board
-    String positionLexigraphic = posBuf.toString();
+    // The board. Its rows are normally 8 characters each, separated by single
+    // spaces, so it's read directly from the line; otherwise it's copied.
+    tokens.advance();
+    int boardStart = tokens.getTokenStart();
+    boolean isBoardInLine = true;
+    StringBuilder boardBuf = null;
+    for (int i = 0; i < 8; i++){
+      if (i != 0)
+        tokens.advance();
+      if (isBoardInLine && ((tokens.getTokenStart() != boardStart + 9*i) || (tokens.getTokenEnd() != boardStart + 9*i + 8))){
+        isBoardInLine = false;
+        boardBuf = new StringBuilder(64);
+        for (int j = 0; j < i; j++)
+          boardBuf.append(line, boardStart + 9*j, boardStart + 9*j + 8);
+      }
+      if (!isBoardInLine)
+        boardBuf.append(line, tokens.getTokenStart(), tokens.getTokenEnd());
+    }
 
-    String currentPlayer = tokens.nextToken(); // The color string, either "B" or "W"
+    // The color string, either "B" or "W"
+    String currentPlayer;
+    tokens.advance();
+    if (isSingleChar(line, tokens, 'W'))
+      currentPlayer = "W";
+    else if (isSingleChar(line, tokens, 'B'))
+      currentPlayer = "B";
+    else
+      currentPlayer = line.substring(tokens.getTokenStart(), tokens.getTokenEnd());
 
-    int doublePawnPushFile = Integer.parseInt(tokens.nextToken()); // The double pawn push file
+    int doublePawnPushFile = tokens.nextInt(); // The double pawn push file
 
-    boolean canWhiteCastleKingside = parseBoolean(tokens.nextToken()); // Can white castle kingside
-    boolean canWhiteCastleQueenside = parseBoolean(tokens.nextToken()); // Can white castle queenside
-    boolean canBlackCastleKingside = parseBoolean(tokens.nextToken()); // Can black castle kingside
-    boolean canBlackCastleQueenside = parseBoolean(tokens.nextToken()); // Can black castle queenside
+    boolean canWhiteCastleKingside = tokens.nextBoolean(); // Can white castle kingside
+    boolean canWhiteCastleQueenside = tokens.nextBoolean(); // Can white castle queenside
+    boolean canBlackCastleKingside = tokens.nextBoolean(); // Can black castle kingside
+    boolean canBlackCastleQueenside = tokens.nextBoolean(); // Can black castle queenside
 
-    int pliesSinceIrreversible = Integer.parseInt(tokens.nextToken()); // Number of plies since an irreversible move
+    int pliesSinceIrreversible = tokens.nextInt(); // Number of plies since an irreversible move
 
-    int gameNumber = Integer.parseInt(tokens.nextToken()); // The game number
+    int gameNumber = tokens.nextInt(); // The game number
 
     String whiteName = tokens.nextToken(); // White's name
     String blackName = tokens.nextToken(); // Black's name
 
-    int myRelation = Integer.parseInt(tokens.nextToken()); // My relation to the game
+    int myRelation = tokens.nextInt(); // My relation to the game
     int gameType;
     boolean isPlayedGame;
     switch (myRelation){
@@ -263,40 +557,39 @@ public class Style12Struct extends Struct{
 
     boolean isMyTurn = myRelation > 0;
 
-    int initTime = 60*Integer.parseInt(tokens.nextToken()); // Initial time
-    int increment = Integer.parseInt(tokens.nextToken()); // Increment
+    int initTime = 60*tokens.nextInt(); // Initial time
+    int increment = tokens.nextInt(); // Increment
 
-    int whiteMaterialStrength = Integer.parseInt(tokens.nextToken()); // White's material strength
-    int blackMaterialStrength = Integer.parseInt(tokens.nextToken()); // Black's material strength
+    int whiteMaterialStrength = tokens.nextInt(); // White's material strength
+    int blackMaterialStrength = tokens.nextInt(); // Black's material strength
 
-    int whiteTime = Integer.parseInt(tokens.nextToken()); // White's remaining time
-    int blackTime = Integer.parseInt(tokens.nextToken()); // Black's remaining time
+    int whiteTime = tokens.nextInt(); // White's remaining time
+    int blackTime = tokens.nextInt(); // Black's remaining time
 
-    int nextMoveNumber = Integer.parseInt(tokens.nextToken()); // The number of the next move
+    int nextMoveNumber = tokens.nextInt(); // The number of the next move
 
-    String moveVerbose = tokens.nextToken(); // The move in verbose notation
-    if (moveVerbose.equals("none"))
-      moveVerbose = null;
+    String moveVerbose = tokens.nextTokenEquals("none") ? null : // The move in verbose notation
+      line.substring(tokens.getTokenStart(), tokens.getTokenEnd());
 
-    String moveTimeString = tokens.nextToken(); // The amount of time taken for the last move
-    moveTimeString = moveTimeString.substring(1, moveTimeString.length() - 1);
-    StringTokenizer timeTokens = new StringTokenizer(moveTimeString, ":.");
-    int minutes = Integer.parseInt(timeTokens.nextToken());
-    int seconds = Integer.parseInt(timeTokens.nextToken());
-    int milliseconds = Integer.parseInt(timeTokens.nextToken());
+    // The amount of time taken for the last move, in (minutes:seconds.milliseconds) format
+    tokens.advance();
+    LineTokenizer timeTokens = new LineTokenizer(line, tokens.getTokenStart() + 1, tokens.getTokenEnd() - 1, ":.");
+    int minutes = timeTokens.nextInt();
+    int seconds = timeTokens.nextInt();
+    int milliseconds = timeTokens.nextInt();
     int moveTime = 60*1000*minutes + 1000*seconds + milliseconds;
 
-    String moveSAN = tokens.nextToken(); // The move in SAN notation
-    if (moveSAN.equals("none"))
-      moveSAN = null;
+    String moveSAN = tokens.nextTokenEquals("none") ? null : // The move in SAN notation
+      line.substring(tokens.getTokenStart(), tokens.getTokenEnd());
 
-    boolean isBoardFlipped = parseBoolean(tokens.nextToken()); // Is the board flipped?
+    boolean isBoardFlipped = tokens.nextBoolean(); // Is the board flipped?
 
-    boolean isClockRunning = parseBoolean(tokens.nextToken()); // Is the clock of the player to move running?
+    boolean isClockRunning = tokens.nextBoolean(); // Is the clock of the player to move running?
 
-    int lag = Integer.parseInt(tokens.nextToken()); // The lag, in milliseconds.
+    int lag = tokens.nextInt(); // The lag, in milliseconds.
 
-    return new Style12Struct(positionLexigraphic, currentPlayer, doublePawnPushFile, canWhiteCastleKingside,
+    return new Style12Struct(isBoardInLine ? line : boardBuf.toString(), isBoardInLine ? boardStart : 0,
+      isBoardInLine ? 9 : 8, currentPlayer, doublePawnPushFile, canWhiteCastleKingside,
       canWhiteCastleQueenside, canBlackCastleKingside, canBlackCastleQueenside, pliesSinceIrreversible,
       gameNumber, whiteName, blackName, gameType, isPlayedGame, isMyTurn, initTime, increment,
       whiteMaterialStrength, blackMaterialStrength, whiteTime, blackTime, nextMoveNumber, moveVerbose,
@@ -307,19 +600,13 @@ public class Style12Struct extends Struct{
 
 
   /**
-   * If the given string is "1", return <code>true</code>. If it's "0", returns
-   * <code>false</code>. Otherwise throws an IllegalArgumentException.
+   * Returns whether the current token of the specified tokenizer is the
+   * specified single character.
    */
 
-  private static boolean parseBoolean(String val){
-    if (val.equals("1"))
-      return true;
-    else if (val.equals("0"))
-      return false;
-    else
-      throw new IllegalArgumentException("Bad boolean value: "+val);
+  private static boolean isSingleChar(String line, LineTokenizer tokens, char c){
+    return (tokens.getTokenEnd() - tokens.getTokenStart() == 1) && (line.charAt(tokens.getTokenStart()) == c);
   }
-  
 
 
 
@@ -329,7 +616,51 @@ public class Style12Struct extends Struct{
    */
 
   public String getBoardLexigraphic(){
-    return getStringProperty("BoardLexigraphic");
+    if (boardLexigraphic == null){
+      StringBuilder buf = new StringBuilder(64);
+      for (int i = 0; i < 8; i++)
+        buf.append(boardSource, boardStart + i*boardRowStride, boardStart + i*boardRowStride + 8);
+      boardLexigraphic = buf.toString();
+    }
+
+    return boardLexigraphic;
+  }
+
+
+
+
+  /**
+   * Returns the character of the square with the specified index in the
+   * lexigraphic format of the current board (0 is a8, 63 is h1). Unlike
+   * {@link #getBoardLexigraphic()}, this never creates any objects.
+   */
+
+  public char getBoardChar(int index){
+    return boardSource.charAt(boardStart + (index >> 3)*boardRowStride + (index & 7));
+  }
+
+
+
+
+  /**
+   * Returns whether the specified Style12Struct describes the same position as
+   * this one - whether {@link #getBoardFEN()} would return the same string for
+   * both. Unlike comparing the FEN strings, this creates no objects.
+   */
+
+  public boolean isSamePosition(Style12Struct other){
+    for (int i = 0; i < 64; i++)
+      if (getBoardChar(i) != other.getBoardChar(i))
+        return false;
+
+    return currentPlayer.equals(other.currentPlayer) &&
+      (doublePawnPushFile == other.doublePawnPushFile) &&
+      (canWhiteCastleKingside == other.canWhiteCastleKingside) &&
+      (canWhiteCastleQueenside == other.canWhiteCastleQueenside) &&
+      (canBlackCastleKingside == other.canBlackCastleKingside) &&
+      (canBlackCastleQueenside == other.canBlackCastleQueenside) &&
+      (pliesSinceIrreversible == other.pliesSinceIrreversible) &&
+      (nextMoveNumber == other.nextMoveNumber);
   }
 
 
@@ -341,11 +672,10 @@ public class Style12Struct extends Struct{
 
   public String getBoardFEN(){
     StringBuffer buf = new StringBuffer();
-    String boardLexigraphic = getBoardLexigraphic();
     int emptySquareCounter = 0;
     for (int i = 0; i < 8; i++){
       for (int j = 0; j < 8; j++){
-        char c = boardLexigraphic.charAt(j+i*8);
+        char c = getBoardChar(j+i*8);
         if (c == '-')
           emptySquareCounter++;
         else{
@@ -415,7 +745,7 @@ public class Style12Struct extends Struct{
    */
 
   public String getCurrentPlayer(){
-    return getStringProperty("CurrentPlayer");
+    return currentPlayer;
   }
 
 
@@ -427,7 +757,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getDoublePawnPushFile(){
-    return getIntegerProperty("DoublePawnPushFile");
+    return doublePawnPushFile;
   }
 
 
@@ -439,7 +769,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean canWhiteCastleKingside(){
-    return getBooleanProperty("CanWhiteCastleKingside");
+    return canWhiteCastleKingside;
   }
 
 
@@ -451,7 +781,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean canWhiteCastleQueenside(){
-    return getBooleanProperty("CanWhiteCastleQueenside");
+    return canWhiteCastleQueenside;
   }
 
   
@@ -463,7 +793,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean canBlackCastleKingside(){
-    return getBooleanProperty("CanBlackCastleKingside");
+    return canBlackCastleKingside;
   }
 
 
@@ -475,7 +805,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean canBlackCastleQueenside(){
-    return getBooleanProperty("CanBlackCastleQueenside");
+    return canBlackCastleQueenside;
   }
 
 
@@ -487,7 +817,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getPliesSinceIrreversible(){
-    return getIntegerProperty("PliesSinceIrreversible");
+    return pliesSinceIrreversible;
   }
 
 
@@ -498,7 +828,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getGameNumber(){
-    return getIntegerProperty("GameNumber");
+    return gameNumber;
   }
 
 
@@ -509,7 +839,7 @@ public class Style12Struct extends Struct{
    */
 
   public String getWhiteName(){
-    return getStringProperty("WhiteName");
+    return whiteName;
   }
 
 
@@ -520,7 +850,7 @@ public class Style12Struct extends Struct{
    */
 
   public String getBlackName(){
-    return getStringProperty("BlackName");
+    return blackName;
   }
 
 
@@ -532,7 +862,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getGameType(){
-    return getIntegerProperty("GameType");
+    return gameType;
   }
 
 
@@ -544,7 +874,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean isPlayedGame(){
-    return getBooleanProperty("IsPlayedGame");
+    return isPlayedGame;
   }
 
 
@@ -562,7 +892,7 @@ public class Style12Struct extends Struct{
     if ((getGameType() != MY_GAME) || !isPlayedGame())
       throw new IllegalStateException("Either the game type is not MY_GAME or it's not a played game.");
 
-    return getBooleanProperty("IsMyTurn");
+    return isMyTurn;
   }
 
 
@@ -572,7 +902,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getInitialTime(){
-    return getIntegerProperty("InitTime");
+    return initTime;
   }
 
 
@@ -582,7 +912,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getIncrement(){
-    return getIntegerProperty("Increment");
+    return increment;
   }
 
 
@@ -592,7 +922,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getWhiteMaterialStrength(){
-    return getIntegerProperty("WhiteMaterialStrength");
+    return whiteMaterialStrength;
   }
 
 
@@ -602,7 +932,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getBlackMaterialStrength(){
-    return getIntegerProperty("BlackMaterialStrength");
+    return blackMaterialStrength;
   }
 
 
@@ -612,7 +942,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getWhiteTime(){
-    return getIntegerProperty("WhiteTime");
+    return whiteTime;
   }
 
 
@@ -622,7 +952,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getBlackTime(){
-    return getIntegerProperty("BlackTime");
+    return blackTime;
   }
 
 
@@ -633,7 +963,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getNextMoveNumber(){
-    return getIntegerProperty("NextMoveNumber");
+    return nextMoveNumber;
   }
 
 
@@ -657,7 +987,7 @@ public class Style12Struct extends Struct{
    */
 
   public String getMoveVerbose(){
-    return getStringProperty("MoveVerbose");
+    return moveVerbose;
   }
 
 
@@ -668,7 +998,7 @@ public class Style12Struct extends Struct{
    */
 
   public String getMoveSAN(){
-    return getStringProperty("MoveSAN");
+    return moveSAN;
   }
 
 
@@ -678,7 +1008,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getMoveTime(){
-    return getIntegerProperty("MoveTime");
+    return moveTime;
   }
 
 
@@ -689,7 +1019,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean isBoardFlipped(){
-    return getBooleanProperty("IsBoardFlipped");
+    return isBoardFlipped;
   }
 
 
@@ -699,7 +1029,7 @@ public class Style12Struct extends Struct{
    */
 
   public boolean isClockRunning(){
-    return getBooleanProperty("IsClockRunning");
+    return isClockRunning;
   }
 
 
@@ -710,7 +1040,7 @@ public class Style12Struct extends Struct{
    */
 
   public int getLag(){
-    return getIntegerProperty("Lag");
+    return lag;
   }
 
 
@@ -22,12 +22,19 @@
 package free.jin;
 
 import java.beans.PropertyChangeListener;
+import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.Vector;
 
+import free.chess.Move;
 import free.chess.Player;
 import free.chess.Position;
+import free.chess.PositionTimeline;
 import free.chess.TimeControl;
 import free.chess.WildVariant;
 import free.util.BeanProperties;
+import free.util.Pair;
+import free.util.Utilities;
 
 
 /**
@@ -356,6 +363,65 @@ public class Game{
 
 
 
+  /**
+   * The moves made in the game and the positions they lead to; created
+   * lazily, from the initial position. The timeline and the repetition history
+   * are kept by the connection, on the <code>Game</code> seen by the
+   * listeners, in the AWT event dispatching thread, so that they are up to date
+   * by the time move, takeback and position change events are delivered.
+   */
+
+  private PositionTimeline timeline = null;
+
+
+
+  /**
+   * The Zobrist keys of the positions in the game, starting with the initial
+   * position, in the order they occurred. Only the first
+   * <code>repetitionHistorySize</code> elements are used.
+   */
+
+  private long [] repetitionHistory = new long[32];
+
+
+
+  /**
+   * The amount of positions in the repetition history.
+   */
+
+  private int repetitionHistorySize = 0;
+
+
+
+  /**
+   * An open addressing hash table of the Zobrist keys of the positions in the
+   * repetition history. The amount of times the position with the key at a
+   * given index occurred is at the same index of <code>repetitionCounts</code>.
+   */
+
+  private long [] repetitionKeys = new long[64];
+
+
+
+  /**
+   * The amount of times the position with the key at the same index of
+   * <code>repetitionKeys</code> occurred; -1 for unused slots. Keys whose
+   * positions were taken back stay in the table with a count of 0 until it's
+   * rebuilt.
+   */
+
+  private int [] repetitionCounts = newRepetitionCounts(64);
+
+
+
+  /**
+   * The amount of used slots in <code>repetitionKeys</code>.
+   */
+
+  private int repetitionKeysUsed = 0;
+
+
+
 
   /**
    * Creates a new Game with the given game properties.
@@ -411,6 +477,134 @@ public class Game{
 
 
 
+  /**
+   * Creates a new <code>Game</code> with the same properties (including the
+   * result) as the specified one, but without any of its listeners, and with
+   * its own timeline and repetition history, starting at the initial position.
+   */
+
+  public Game(Game game){
+    copyFrom(game);
+  }
+
+
+
+  /**
+   * Sets all the properties of this game to the values they have in the
+   * specified game, notifying the property change listeners of the ones that
+   * change. As in {@link #setResult(int, int, Player)}, the result code is set
+   * last. The timeline and the repetition history are not copied.
+   */
+
+  public void copyFrom(Game game){
+    Vector<String> removedNames = new Vector<>();
+    Enumeration<?> names = props.getPropertyNames();
+    while (names.hasMoreElements()){
+      String name = (String)names.nextElement();
+      if (game.props.getProperty(name, null) == null)
+        removedNames.addElement(name);
+    }
+    for (int i = 0; i < removedNames.size(); i++)
+      props.setProperty(removedNames.elementAt(i), null);
+
+    names = game.props.getPropertyNames();
+    while (names.hasMoreElements()){
+      String name = (String)names.nextElement();
+      if (!"resultCode".equals(name))
+        copyProperty(game, name);
+    }
+
+    copyProperty(game, "resultCode");
+  }
+
+
+
+  /**
+   * Returns the properties whose values in the specified game differ from
+   * their values in this one, as a list of <code>Pair</code>s of property
+   * names and values (<code>null</code> for properties the specified game
+   * doesn't have), with the result code, if it differs, last. Returns
+   * <code>null</code> if no property differs. <code>Position</code>s are
+   * copied, so the list is a snapshot. Unlike {@link #copyFrom(Game)}, this
+   * copies nothing when nothing changed, so it's suitable for publishing the
+   * state of a game after every move.
+   */
+
+  public Vector<Pair> getChangedProperties(Game game){
+    Vector<Pair> changes = null;
+    Pair resultCodeChange = null;
+
+    Enumeration<?> names = props.getPropertyNames();
+    while (names.hasMoreElements()){
+      String name = (String)names.nextElement();
+      if (game.props.getProperty(name, null) == null){
+        if (changes == null)
+          changes = new Vector<>();
+        changes.addElement(new Pair(name, null));
+      }
+    }
+
+    names = game.props.getPropertyNames();
+    while (names.hasMoreElements()){
+      String name = (String)names.nextElement();
+      Object value = game.props.getProperty(name, null);
+      if (Utilities.areEqual(value, props.getProperty(name, null)))
+        continue;
+
+      if (value instanceof Position)
+        value = new Position((Position)value);
+
+      if (changes == null)
+        changes = new Vector<>();
+      if ("resultCode".equals(name))
+        resultCodeChange = new Pair(name, value);
+      else
+        changes.addElement(new Pair(name, value));
+    }
+
+    if (resultCodeChange != null)
+      changes.addElement(resultCodeChange);
+
+    return changes;
+  }
+
+
+
+  /**
+   * Sets the properties of this game to the values in the specified list of
+   * changes, as returned by {@link #getChangedProperties(Game)}, notifying the
+   * property change listeners. <code>Position</code>s are copied, so the same
+   * list may be applied to several games.
+   */
+
+  public void setProperties(Vector<Pair> changes){
+    for (int i = 0; i < changes.size(); i++){
+      Pair change = changes.elementAt(i);
+      Object value = change.getSecond();
+      if (value instanceof Position)
+        value = new Position((Position)value);
+
+      props.setProperty((String)change.getFirst(), value);
+    }
+  }
+
+
+
+  /**
+   * Copies the value of the specified property from the specified game.
+   * <code>Position</code>s are mutable, so we copy them too.
+   */
+
+  private void copyProperty(Game game, String name){
+    Object value = game.props.getProperty(name, null);
+    if (value instanceof Position)
+      value = new Position((Position)value);
+
+    props.setProperty(name, value);
+  }
+
+
+
   /**
    * Registers the specified <code>PropertyChangeListener</code>.
    */
@@ -466,7 +660,9 @@ public class Game{
 
 
   /**
-   * Sets the initial position of the game to the given position.
+   * Sets the initial position of the game to the given position. Note that
+   * this doesn't reset the timeline; call {@link #resetMoves(Position)} for
+   * that.
    */
 
   public void setInitialPosition(Position initialPosition){
@@ -515,6 +711,205 @@ public class Game{
 
 
 
+  /**
+   * Returns the timeline of the moves made in the game, starting at the
+   * initial position. The timeline is shared by everyone interested in the
+   * moves of the game, so it must only be modified via {@link #addMove(Move)},
+   * {@link #takebackMoves(int)} and {@link #resetMoves(Position)}.
+   */
+
+  public PositionTimeline getTimeline(){
+    if (timeline == null){
+      Position initialPosition = (Position)props.getProperty("initialPosition");
+      timeline = new PositionTimeline(initialPosition);
+      resetRepetitionHistory(initialPosition.getZobristKey());
+    }
+
+    return timeline;
+  }
+
+
+
+  /**
+   * Adds the specified move, made in the latest position of the game, to the
+   * timeline and the position it leads to to the repetition history.
+   */
+
+  public void addMove(Move move){
+    PositionTimeline timeline = getTimeline();
+    timeline.addMove(move);
+    addToRepetitionHistory(timeline.getLatestPosition().getZobristKey());
+  }
+
+
+
+  /**
+   * Removes the last specified amount of moves from the timeline and the
+   * repetition history, as when they are taken back.
+   */
+
+  public void takebackMoves(int count){
+    getTimeline().removeLastMoves(count);
+    removeFromRepetitionHistory(count);
+  }
+
+
+
+  /**
+   * Clears the timeline and the repetition history, restarting them at the
+   * specified position. This should be called whenever the position of the
+   * game is set, rather than reached by making a move.
+   */
+
+  public void resetMoves(Position position){
+    getTimeline().reset(position);
+    resetRepetitionHistory(position.getZobristKey());
+  }
+
+
+
+  /**
+   * Clears the repetition history and starts it anew with the position with
+   * the specified Zobrist key (see {@link Position#getZobristKey()}).
+   */
+
+  private void resetRepetitionHistory(long zobristKey){
+    repetitionHistorySize = 0;
+    Arrays.fill(repetitionCounts, -1);
+    repetitionKeysUsed = 0;
+    addToRepetitionHistory(zobristKey);
+  }
+
+
+
+  /**
+   * Returns a new array of repetition counts of the specified size, with all
+   * the slots marked unused.
+   */
+
+  private static int [] newRepetitionCounts(int size){
+    int [] counts = new int[size];
+    Arrays.fill(counts, -1);
+    return counts;
+  }
+
+
+
+  /**
+   * Returns the index of the slot of the specified Zobrist key in
+   * <code>repetitionKeys</code>, or of the unused slot where it should be put,
+   * if it isn't there.
+   */
+
+  private int getRepetitionSlot(long zobristKey){
+    int mask = repetitionKeys.length - 1;
+    int index = (int)(zobristKey ^ (zobristKey >>> 32)) & mask;
+    while ((repetitionCounts[index] != -1) && (repetitionKeys[index] != zobristKey))
+      index = (index + 1) & mask;
+
+    return index;
+  }
+
+
+
+  /**
+   * Rebuilds the repetition hash table with twice as many slots, dropping the
+   * keys of positions which no longer occur in the repetition history.
+   */
+
+  private void growRepetitionTable(){
+    long [] oldKeys = repetitionKeys;
+    int [] oldCounts = repetitionCounts;
+    repetitionKeys = new long[oldKeys.length * 2];
+    repetitionCounts = newRepetitionCounts(oldKeys.length * 2);
+    repetitionKeysUsed = 0;
+
+    for (int i = 0; i < oldKeys.length; i++){
+      if (oldCounts[i] > 0){
+        int index = getRepetitionSlot(oldKeys[i]);
+        repetitionKeys[index] = oldKeys[i];
+        repetitionCounts[index] = oldCounts[i];
+        repetitionKeysUsed++;
+      }
+    }
+  }
+
+
+
+  /**
+   * Adds the position with the specified Zobrist key, reached by making a
+   * move, to the repetition history, and returns the amount of times it has
+   * occurred so far (including this time). Takes amortized constant time and
+   * allocates nothing, unless the hash table or the history need to grow.
+   */
+
+  private int addToRepetitionHistory(long zobristKey){
+    if (repetitionHistorySize == repetitionHistory.length){
+      long [] newHistory = new long[repetitionHistory.length * 2];
+      System.arraycopy(repetitionHistory, 0, newHistory, 0, repetitionHistorySize);
+      repetitionHistory = newHistory;
+    }
+    repetitionHistory[repetitionHistorySize++] = zobristKey;
+
+    int index = getRepetitionSlot(zobristKey);
+    if (repetitionCounts[index] == -1){
+      if ((repetitionKeysUsed + 1) * 2 > repetitionKeys.length){
+        growRepetitionTable();
+        index = getRepetitionSlot(zobristKey);
+      }
+      repetitionKeys[index] = zobristKey;
+      repetitionCounts[index] = 0;
+      repetitionKeysUsed++;
+    }
+
+    return ++repetitionCounts[index];
+  }
+
+
+
+  /**
+   * Removes the positions reached by the last specified amount of moves from
+   * the repetition history, as when the moves are taken back. The initial
+   * position is never removed.
+   */
+
+  private void removeFromRepetitionHistory(int plies){
+    if ((plies < 0) || (plies >= repetitionHistorySize))
+      throw new IllegalArgumentException("Can't remove " + plies + " plies from a history of " +
+        repetitionHistorySize + " positions");
+
+    while (plies-- > 0)
+      repetitionCounts[getRepetitionSlot(repetitionHistory[--repetitionHistorySize])]--;
+  }
+
+
+
+  /**
+   * Returns the amount of times the current position (the last one in the
+   * repetition history) has occurred in the game, as far as the repetition
+   * history goes - if the history was started from a position set in the
+   * middle of the game, earlier occurrences aren't counted.
+   */
+
+  public int getRepetitionCount(){
+    getTimeline(); // Starts the repetition history, if it hasn't been started yet
+
+    return repetitionCounts[getRepetitionSlot(repetitionHistory[repetitionHistorySize - 1])];
+  }
+
+
+
+  /**
+   * Returns whether the current position has occurred at least three times
+   * in the game. See {@link #getRepetitionCount()}.
+   */
+
+  public boolean isThreefoldRepetition(){
+    return getRepetitionCount() >= 3;
+  }
+
+
+
   /**
    * Returns the WildVariant of this Game.
    */
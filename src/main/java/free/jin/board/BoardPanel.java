@@ -40,7 +40,6 @@ import java.awt.event.MouseMotionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.net.URL;
-import java.util.Vector;
 
 import javax.swing.JComponent;
 import javax.swing.JLabel;
@@ -65,11 +64,13 @@ import javax.swing.table.TableModel;
 import free.chess.AbstractChessClock;
 import free.chess.Chess;
 import free.chess.ChessMove;
+import free.chess.ChesslikeGenericVariant;
 import free.chess.JBoard;
 import free.chess.JChessClock;
 import free.chess.Move;
 import free.chess.Player;
 import free.chess.Position;
+import free.chess.PositionTimeline;
 import free.chess.WildVariant;
 import free.chess.event.MoveEvent;
 import free.chess.event.MoveListener;
@@ -171,10 +172,12 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
   
   
   /**
-   * The list of made moves.
+   * The timeline of the made moves, shared with the game (and everyone else
+   * interested in its moves). It's updated by the time we get the events
+   * about the moves.
    */
   
-  protected final Vector madeMoves = new Vector();
+  protected final PositionTimeline timeline;
   
   
   
@@ -188,6 +191,26 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
   
   
   
+  /**
+   * The position after the first <code>browsedMoveNumber</code> made moves,
+   * used for displaying earlier positions in the game when the user browses
+   * the move list. It's brought to the selected move by making or unmaking the
+   * moves in between, if there are only a few, or from the nearest checkpoint
+   * of the timeline otherwise.
+   */
+  
+  private final Position browsedPosition;
+  
+  
+  
+  /**
+   * The amount of made moves played in <code>browsedPosition</code>.
+   */
+  
+  private int browsedMoveNumber = 0;
+  
+  
+  
   /**
    * The number of the move after which the position displayed on the board 
    * occurs.
@@ -399,7 +422,9 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
   public BoardPanel(BoardManager boardManager, Game game){
     this.game = game;
     this.boardManager = boardManager;
+    this.timeline = game.getTimeline();
     this.realPosition = game.getInitialPosition();
+    this.browsedPosition = new Position(realPosition);
     
     boardManager.addPropertyChangeListener(this);
     game.addPropertyChangeListener(this);
@@ -1032,17 +1057,17 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       model.setValueAt((rowCount + movesSinceStart)+".", rowCount-1, 0);
     }
     if (move.getPlayer().isWhite())
-      model.setValueAt(move, rowCount-1, 1);
+      model.setValueAt(move.toString(), rowCount-1, 1);
     else{
-      model.setValueAt(move, rowCount-1, 2);
+      model.setValueAt(move.toString(), rowCount-1, 2);
     }
     
     if (displayedMoveNumber == 0){
       moveListTable.clearSelection();
-      positionScrollBar.setValues(0, 1, 0, madeMoves.size() + 1); 
+      positionScrollBar.setValues(0, 1, 0, timeline.getMoveCount() + 1); 
     }
     else{
-      boolean isFirstMoveBlack = ((Move)madeMoves.elementAt(0)).getPlayer().isBlack();
+      boolean isFirstMoveBlack = timeline.getMovingPlayer(0).isBlack();
       int visualMoveNumber = isFirstMoveBlack ? displayedMoveNumber + 1 : displayedMoveNumber;
       int row = (visualMoveNumber - 1) / 2;
       int column = 2 - (visualMoveNumber%2);
@@ -1050,7 +1075,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       isPositionScrollBarUpdating = true;
       isMoveListTableSelectionUpdating = true;
       setMoveListTableSelection(row, column);
-      positionScrollBar.setValues(displayedMoveNumber, 1, 0, madeMoves.size() + 1); 
+      positionScrollBar.setValues(displayedMoveNumber, 1, 0, timeline.getMoveCount() + 1); 
       isMoveListTableSelectionUpdating = false;
       isPositionScrollBarUpdating = false;
     }
@@ -1068,8 +1093,8 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
   protected void updateMoveListTable(){
     DefaultTableModel model = (DefaultTableModel)moveListTableModel;
     int movesSinceStart = game.getPliesSinceStart()/2;
-    int moveCount = madeMoves.size();
-    boolean isFirstMoveBlack = (moveCount > 0) && ((Move)madeMoves.elementAt(0)).getPlayer().isBlack();
+    int moveCount = timeline.getMoveCount();
+    boolean isFirstMoveBlack = (moveCount > 0) && timeline.getMovingPlayer(0).isBlack();
     int numRows = isFirstMoveBlack ? 1+moveCount/2 : (moveCount+1)/2;
     model.setNumRows(numRows);
     for (int i = 0; i < numRows; i++)
@@ -1078,8 +1103,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     int row = 0;
     int column = isFirstMoveBlack ? 2 : 1;
     for (int i = 0; i < moveCount; i++){
-      Object move = madeMoves.elementAt(i);
-      model.setValueAt(move, row, column);
+      model.setValueAt(timeline.getMoveText(i), row, column);
       column++;
       if (column == 3){
         row++;
@@ -1093,7 +1117,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     
     if (displayedMoveNumber == 0){
       moveListTable.clearSelection();
-      positionScrollBar.setValues(0, 1, 0, madeMoves.size() + 1);
+      positionScrollBar.setValues(0, 1, 0, timeline.getMoveCount() + 1);
     }
     else{
       int visualMoveNumber = isFirstMoveBlack ? displayedMoveNumber + 1 : displayedMoveNumber;
@@ -1103,7 +1127,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       isPositionScrollBarUpdating = true;
       isMoveListTableSelectionUpdating = true;
       setMoveListTableSelection(row, column);
-      positionScrollBar.setValues(displayedMoveNumber, 1, 0, madeMoves.size() + 1); 
+      positionScrollBar.setValues(displayedMoveNumber, 1, 0, timeline.getMoveCount() + 1); 
       isMoveListTableSelectionUpdating = false;
       isPositionScrollBarUpdating = false;
     }
@@ -1150,7 +1174,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     if ((displayedMoveNumber == 0) || (isOwnMove && !highlightOwnMoves))
       board.setHighlightedMove(null);
     else{
-      Move move = (Move)madeMoves.elementAt(displayedMoveNumber - 1);
+      Move move = timeline.getMove(displayedMoveNumber - 1);
       board.setHighlightedMove(move);
     }
   }
@@ -1658,7 +1682,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     if (queuedMove != null)
       board.setShaded(queuedMove.getEndingSquare(), true);
     
-    board.setEditable((queuedMove == null) && (displayedMoveNumber == madeMoves.size()));
+    board.setEditable((queuedMove == null) && (displayedMoveNumber == timeline.getMoveCount()));
   }
   
   
@@ -1668,12 +1692,12 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
    */
   
   private void setDisplayedMove(int moveNum){
-    if ((moveNum < 0) || (moveNum > madeMoves.size()))
+    if ((moveNum < 0) || (moveNum > timeline.getMoveCount()))
       throw new IllegalArgumentException("displayed move number out of range");
     
     displayedMoveNumber = moveNum;
     
-    if (displayedMoveNumber != madeMoves.size())
+    if (displayedMoveNumber != timeline.getMoveCount())
       board.setEditable(false);
     else if (moveSendingMode == BoardManager.PREMOVE_MOVE_SENDING_MODE)
       board.setEditable(queuedMove == null);
@@ -1720,10 +1744,9 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     
     // The user is looking at a position other than the last one, so we don't
     // want to update the board when a new move arrives.
-    if (displayedMoveNumber != madeMoves.size())
+    if (displayedMoveNumber != timeline.getMoveCount() - 1)
       shouldUpdateBoard = false;
     
-    madeMoves.addElement(move);
     realPosition.makeMove(move);
     
     // This is not the server echoeing a move made on the board
@@ -1756,7 +1779,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     }
     
     if (shouldUpdateBoard){
-      setDisplayedMove(madeMoves.size());
+      setDisplayedMove(timeline.getMoveCount());
       updateMoveHighlighting(isMoveEnRoute());
     }
     
@@ -1808,11 +1831,11 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
   /**
    * If the specified move is legal in the specified position, this method
    * returns <code>true</code>. If the specified move is illegal, it may return
-   * <code>false</code>. It's not meant as a complete move legality check,
-   * instead, it (currently) only detects some obviously illegal moves so that
-   * they can be rejected immediately, instead of wasting time by sending them
-   * to the server. With time, more complex (and eventually complete) move
-   * legality checking will be added. 
+   * <code>false</code>, so that it can be rejected immediately, instead of
+   * wasting time by sending it to the server. In variants with the legality of
+   * regular chess (see {@link ChesslikeGenericVariant#isLegal(Position, Move)})
+   * the check is complete; in others, only some obviously illegal moves are
+   * detected.
    */
   
   protected boolean checkLegality(Position pos, Move move){
@@ -1826,6 +1849,10 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       // Trying to capture your own piece
       if (cmove.isCapture() && (cmove.getCapturedPiece().getPlayer() == pos.getCurrentPlayer()))
         return false;
+      
+      WildVariant variant = pos.getVariant();
+      if (variant instanceof ChesslikeGenericVariant)
+        return ((ChesslikeGenericVariant)variant).isLegal(pos, move);
     }
     
     return true;
@@ -1842,8 +1869,9 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     if (evt.getGame() != game)
       return;
     
-    madeMoves.removeAllElements();
     realPosition.copyFrom(evt.getPosition());
+    browsedPosition.copyFrom(realPosition);
+    browsedMoveNumber = 0;
     
     isBoardPositionUpdating = true;
     board.getPosition().copyFrom(realPosition);
@@ -1873,24 +1901,28 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       return;
     
     int takebackCount = evt.getTakebackCount();
-    int numMadeMoves = madeMoves.size()-takebackCount;
-    for (int i = madeMoves.size()-1; i >= numMadeMoves; i--)
-      madeMoves.removeElementAt(i);
+    int numMadeMoves = timeline.getMoveCount();
     
-    realPosition.copyFrom(game.getInitialPosition());
-    for (int i = 0; i < numMadeMoves; i++)
-      realPosition.makeMove((Move)madeMoves.elementAt(i));
+    if (takebackCount <= realPosition.getUnmakeableMoveCount()){
+      for (int i = 0; i < takebackCount; i++)
+        realPosition.unmakeMove();
+    }
+    else // Shouldn't happen, but we can always get it from the timeline
+      timeline.getPosition(numMadeMoves, realPosition);
+    
+    if (browsedMoveNumber > numMadeMoves)
+      browseTo(numMadeMoves);
     
     moveEnRoute = null;
     setQueuedMove(null);
     
     // Try not to change the board if possible. If, however we were displaying the position
     // after a move that was taken back, we have to update the board.
-    if (displayedMoveNumber >= madeMoves.size()){
+    if (displayedMoveNumber >= timeline.getMoveCount()){
       isBoardPositionUpdating = true;
       board.getPosition().copyFrom(realPosition);
       isBoardPositionUpdating = false;
-      setDisplayedMove(madeMoves.size());
+      setDisplayedMove(timeline.getMoveCount());
       updateMoveHighlighting(false);
     }
     
@@ -1927,7 +1959,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     playersClock.setRunning(true);
     
     updateClockActiveness();
-    setDisplayedMove(madeMoves.size());
+    setDisplayedMove(timeline.getMoveCount());
     updateMoveListTable();
   }
   
@@ -2030,6 +2062,16 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     Move move = evt.getMove();
     
     if (source == board.getPosition()){
+      // Reject moves we know to be illegal right away. Moves made when it's not
+      // the user's turn (premoves, predrags) are left to be checked when they're due
+      if (game.isPlayed() && isUserTurn() && !isMoveEnRoute() && !checkLegality(realPosition, move)){
+        isBoardPositionUpdating = true;
+        board.getPosition().copyFrom(realPosition);
+        isBoardPositionUpdating = false;
+        playSound("IllegalMove");
+        return;
+      }
+      
       playAudioClipForMove(move);
       if (game.isPlayed() && (moveSendingMode == BoardManager.PREMOVE_MOVE_SENDING_MODE) &&
           (isMoveEnRoute() || !isUserTurn()))
@@ -2103,27 +2145,24 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
     isMoveListTableSelectionUpdating = true;
     
     try{
-      boolean isFirstMoveBlack = ((Move)madeMoves.elementAt(0)).getPlayer().isBlack();
+      boolean isFirstMoveBlack = timeline.getMovingPlayer(0).isBlack();
       
       int moveNum = column + row*2;
       if (isFirstMoveBlack && (moveNum > 0))
         moveNum--;
       
-      if (moveNum == madeMoves.size() + 1) // The user pressed the last empty cell
+      if (moveNum == timeline.getMoveCount() + 1) // The user pressed the last empty cell
         moveNum--;
       
-      if (moveNum > madeMoves.size()) // Shouldn't happen
+      if (moveNum > timeline.getMoveCount()) // Shouldn't happen
         throw new IllegalStateException();
       
-      Position pos = game.getInitialPosition();
-      for (int i = 0; i < moveNum; i++){
-        Move move = (Move)madeMoves.elementAt(i);
-        pos.makeMove(move);
-      }
+      Position pos = browseTo(moveNum);
       
       board.clearShaded();
       
-      if ((moveNum == madeMoves.size()) && (queuedMove != null)){
+      if ((moveNum == timeline.getMoveCount()) && (queuedMove != null)){
+        pos = new Position(pos);
         pos.makeMove(queuedMove);
         board.setShaded(queuedMove.getEndingSquare(), true);
       }
@@ -2134,9 +2173,9 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       setDisplayedMove(moveNum);
       
       if (!isPositionScrollBarUpdating)
-        positionScrollBar.setValues(displayedMoveNumber, 1, 0, madeMoves.size() + 1); 
+        positionScrollBar.setValues(displayedMoveNumber, 1, 0, timeline.getMoveCount() + 1); 
       
-      board.setEditable(displayedMoveNumber == madeMoves.size());
+      board.setEditable(displayedMoveNumber == timeline.getMoveCount());
       
       updateMoveHighlighting(false);
       
@@ -2148,6 +2187,34 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
   
   
   
+  /**
+   * Brings <code>browsedPosition</code> to the position after the specified
+   * amount of made moves and returns it. If it's fewer moves away than the
+   * checkpoint interval of the timeline, the moves in between are unmade or
+   * made; otherwise the position is reconstructed from the nearest checkpoint.
+   */
+  
+  private Position browseTo(int moveNum){
+    int distance = moveNum - browsedMoveNumber;
+    int checkpointInterval = timeline.getCheckpointInterval();
+    if ((distance < 0) && (-distance < checkpointInterval) &&
+        (-distance <= browsedPosition.getUnmakeableMoveCount())){
+      for (int i = distance; i < 0; i++)
+        browsedPosition.unmakeMove();
+    }
+    else if ((distance >= 0) && (distance < checkpointInterval)){
+      for (int i = browsedMoveNumber; i < moveNum; i++)
+        browsedPosition.makeMove(timeline.getMove(i));
+    }
+    else
+      timeline.getPosition(moveNum, browsedPosition);
+    
+    browsedMoveNumber = moveNum;
+    return browsedPosition;
+  }
+  
+  
+  
   /**
    * AdjustmentListener implementation. Listens to events from the positionScrollBar
    * and updates the position on the board accordingly.
@@ -2162,10 +2229,10 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       
       isPositionScrollBarUpdating = true;
       
-      if (madeMoves.size() > 0){
+      if (timeline.getMoveCount() > 0){
         int moveNum = positionScrollBar.getValue();
         
-        boolean isFirstMoveBlack = ((Move)madeMoves.elementAt(0)).getPlayer().isBlack();
+        boolean isFirstMoveBlack = timeline.getMovingPlayer(0).isBlack();
         int visualMoveNumber = isFirstMoveBlack ? moveNum + 1 : moveNum;
         int row = (visualMoveNumber-1)/2;
         int column = (visualMoveNumber == 0) ? 0 : 2 - (visualMoveNumber%2);
@@ -2209,7 +2276,7 @@ public class BoardPanel extends FixedJPanel implements MoveListener, GameListene
       else if ("moveSendingMode".equals(propertyName)){
         moveSendingMode = boardManager.getMoveSendingMode();
         
-        if (displayedMoveNumber == madeMoves.size()){
+        if (displayedMoveNumber == timeline.getMoveCount()){
           if ((moveSendingMode == BoardManager.PREMOVE_MOVE_SENDING_MODE) || 
               (moveSendingMode == BoardManager.PREDRAG_MOVE_SENDING_MODE))
             board.setEditable(true);
@@ -21,6 +21,8 @@
 
 package free.jin.chessclub;
 
+import javax.swing.SwingUtilities;
+
 import free.chessclub.level2.Datagram;
 import free.jin.chessclub.event.ArrowEvent;
 import free.jin.chessclub.event.ChessEventEvent;
@@ -206,7 +208,17 @@ public class ChessclubListenerManager extends BasicListenerManager{
    */
   
   @Override
-  public void fireGameEvent(GameEvent evt){
+  public void fireGameEvent(final GameEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireGameEvent(evt);
+        }
+      });
+      return;
+    }
+
     if (!isChessclubSpecificEvent(evt))
       super.fireGameEvent(evt);
     else{
@@ -214,6 +226,7 @@ public class ChessclubListenerManager extends BasicListenerManager{
       for (int i = 0; i < listeners.length; i += 2){
         if (listeners[i] == GameListener.class){
           GameListener listener = (GameListener)listeners[i+1];
+          long startTime = System.nanoTime();
           try{
             if (listener instanceof ChessclubGameListener){
               ChessclubGameListener chessclubListener = (ChessclubGameListener)listener;
@@ -240,6 +253,7 @@ public class ChessclubListenerManager extends BasicListenerManager{
           } catch (RuntimeException e){
               e.printStackTrace();
             }
+          recordListenerTime(listener, startTime);
         }
       }
     }
@@ -367,11 +381,22 @@ public class ChessclubListenerManager extends BasicListenerManager{
    * listeners.
    */
 
-  public void fireChessEventEvent(ChessEventEvent evt){
+  public void fireChessEventEvent(final ChessEventEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireChessEventEvent(evt);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ChessEventListener.class){
         ChessEventListener listener = (ChessEventListener)listeners[i+1];
+        long startTime = System.nanoTime();
         try{
           switch (evt.getID()){
             case ChessEventEvent.EVENT_ADDED:
@@ -384,6 +409,7 @@ public class ChessclubListenerManager extends BasicListenerManager{
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -26,19 +26,20 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
-
-import javax.swing.SwingUtilities;
+import java.util.concurrent.Executor;
 
 import free.chess.Chess;
 import free.chess.ChessMove;
@@ -48,6 +49,7 @@ import free.chess.Move;
 import free.chess.OddsTimeControl;
 import free.chess.Player;
 import free.chess.Position;
+import free.chess.PositionTimeline;
 import free.chess.Square;
 import free.chess.TimeControl;
 import free.chess.WildVariant;
@@ -130,6 +132,15 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   
   
+  /**
+   * The executor on which we handle the datagrams and lines arriving from the
+   * server.
+   */
+  
+  private final Executor messageExecutor = createSerialExecutor("ChessclubMessageThread");
+  
+  
+  
   /**
    * A flag which is set when the login procedure is done (that is, when all
    * the responses to the actions in <code>handleLoginSucceeded</code> arrive).
@@ -271,12 +282,13 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   
   /**
-   * Fires a "failed" connection event.
+   * Fires a "failed" connection event and disposes of the listener manager.
    */
   
   @Override
   protected void handleConnectingFailed(IOException e){
     listenerManager.fireConnectingFailed(this, e.getMessage());
+    listenerManager.dispose();
     
     super.handleConnectingFailed(e);
   }
@@ -329,12 +341,14 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   
   /**
-   * Fires a "connection lost" connection event.
+   * Fires a "connection lost" connection event and disposes of the listener
+   * manager.
    */
   
   @Override
   protected void handleDisconnection(IOException e){
     listenerManager.fireConnectionLost(this);
+    listenerManager.dispose();
     
     super.handleDisconnection(e);
   }
@@ -1088,7 +1102,9 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   /**
    * A Hashtable mapping Game objects to Vectors of moves which were sent for
    * these games but the server didn't tell us yet whether the move is legal
-   * or not.
+   * or not. A move is added before it's sent, as the server's echo is parsed
+   * in another thread, and each Vector is synchronized on when checking and
+   * removing its first move.
    */
 
   private final Hashtable unechoedMoves = new Hashtable(1);
@@ -1131,6 +1147,77 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
 
 
+  /**
+   * Applies the changes made to the latest state of the game of the specified
+   * <code>GameInfo</code> to the <code>Game</code> object seen by the
+   * listeners. The changes are applied in the AWT thread, after the events
+   * fired so far have been delivered.
+   */
+
+  private void publishGameChanges(GameInfo gameInfo){
+    final Game game = gameInfo.game;
+    final Game latest = new Game(gameInfo.latest);
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.copyFrom(latest);
+      }
+    });
+  }
+
+
+
+
+  /**
+   * Adds the specified move to the timeline of the specified game, in the AWT
+   * thread, so that it's updated by the time the events fired after this are
+   * delivered.
+   */
+
+  private void addMove(final Game game, final Move move){
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.addMove(move);
+      }
+    });
+  }
+
+
+
+  /**
+   * Takes back the specified amount of moves from the timeline of the
+   * specified game, in the AWT thread.
+   */
+
+  private void takebackMoves(final Game game, final int count){
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.takebackMoves(count);
+      }
+    });
+  }
+
+
+
+  /**
+   * Restarts the timeline of the specified game at the specified position, in
+   * the AWT thread.
+   */
+
+  private void resetMoves(final Game game, Position position){
+    final Position initialPosition = new Position(position);
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.resetMoves(initialPosition);
+      }
+    });
+  }
+
+
+
   /**
    * Adds the specified <code>GameInfo</code> to the
    * <code>gameNumbersToGameInfo</code> hashtable.
@@ -1138,7 +1225,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
   private void addGameInfo(int gameNumber, GameInfo gameInfo){
     gameNumbersToGameInfo.put(new Integer(gameNumber), gameInfo);
-    if (gameInfo.game.getGameType() == Game.MY_GAME)
+    if (gameInfo.latest.getGameType() == Game.MY_GAME)
       userGamesCount++;
   }
 
@@ -1152,7 +1239,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
   private GameInfo removeGameInfo(int gameNumber){
     GameInfo gameInfo = (GameInfo)gameNumbersToGameInfo.remove(new Integer(gameNumber));
-    if ((gameInfo != null) && (gameInfo.game.getGameType() == Game.MY_GAME))
+    if ((gameInfo != null) && (gameInfo.latest.getGameType() == Game.MY_GAME))
       userGamesCount--;
 
     return gameInfo;
@@ -1554,7 +1641,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
     try{
       GameInfo gameInfo = getGameInfo(gameNumber);
-      Game game = gameInfo.game;
+      Game game = gameInfo.latest;
 
       updateGame(game.getGameType(), gameNumber, whiteName, blackName, ratingCategoryString,
         isRated, getTimeControl(whiteInitial, whiteIncrement, blackInitial, blackIncrement),
@@ -1588,10 +1675,11 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
     try{
       GameInfo gameInfo = getGameInfo(gameNumber);
-      Game game = gameInfo.game;
+      Game game = gameInfo.latest;
 
       try{
         setGameResult(game, gameResultCode, scoreString);
+        publishGameChanges(gameInfo);
 
         if (becomesExamined){
           // For our own games, we will get a DG_MY_RELATION_TO_GAME
@@ -1605,7 +1693,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
         }
         else if (game.getGameType() == Game.ISOLATED_BOARD){
-          fireGameEvent(new GameEndEvent(this, clientTag, game));
+          fireGameEvent(new GameEndEvent(this, clientTag, gameInfo.game));
         }
 
 
@@ -1710,7 +1798,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
         
     try{
       GameInfo gameInfo = getGameInfo(gameNumber);
-      Game game = gameInfo.game;
+      Game game = gameInfo.latest;
   
       game.setGameType(gameType);
       game.setId(new Integer(gameNumber));
@@ -1724,6 +1812,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
       game.setBlackRating(blackRating);
       game.setWhiteTitles(whiteTitles);
       game.setBlackTitles(blackTitles);
+      publishGameChanges(gameInfo);
     } catch (NoSuchGameException e){}
   }
   
@@ -1764,13 +1853,14 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
         Position newInitPos = new Position(game.getVariant());
         newInitPos.setFEN(initFEN);
 
-        game.setInitialPosition(newInitPos);
-        game.setPliesSinceStart(0);
-        gameInfo.moves.removeAllElements();
-        gameInfo.position.copyFrom(game.getInitialPosition());
+        gameInfo.latest.setInitialPosition(newInitPos);
+        gameInfo.latest.setPliesSinceStart(0);
+        publishGameChanges(gameInfo);
+        gameInfo.timeline.reset(newInitPos);
         gameInfo.numMovesToFollow = numMovesToFollow;
+        resetMoves(game, newInitPos);
 
-        fireGameEvent(new PositionChangedEvent(this, clientTag, game, gameInfo.position));
+        fireGameEvent(new PositionChangedEvent(this, clientTag, game, newInitPos));
       } catch (NoSuchGameException e){}
     }
 
@@ -1806,8 +1896,10 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
       unechoedMoves.remove(game);
 
       // Make sure the game doesn't stay in progress...
-      if (game.getResultCode() == Game.GAME_IN_PROGRESS) 
-        game.setResult(Game.UNKNOWN_RESULT, Game.UNKNOWN_REASON, null);
+      if (gameInfo.latest.getResultCode() == Game.GAME_IN_PROGRESS){
+        gameInfo.latest.setResult(Game.UNKNOWN_RESULT, Game.UNKNOWN_REASON, null);
+        publishGameChanges(gameInfo);
+      }
 
       clearOffers(clientTag, gameInfo, Player.WHITE_PLAYER);
       clearOffers(clientTag, gameInfo, Player.BLACK_PLAYER);
@@ -1820,7 +1912,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
       if (gameExists(gameNumber)){
         try{
           GameInfo gameInfo = getGameInfo(gameNumber);
-          Game game = gameInfo.game;
+          Game game = gameInfo.latest;
 
           boolean isPlayedGame = game.isPlayed();
           if (ChessclubConstants.EXAMINING_PLAYER_STATE.equals(playerState))
@@ -1890,11 +1982,11 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
     try{
       GameInfo gameInfo = getGameInfo(gameNumber);
       Game game = gameInfo.game;
-      Position position = gameInfo.position;
-      Move move = parseWarrenSmith(smithMove, position, algebraicMove); 
+      PositionTimeline timeline = gameInfo.timeline;
+      Move move = parseWarrenSmith(smithMove, timeline.getLatestPosition(), algebraicMove); 
 
-      position.makeMove(move);
-      gameInfo.moves.addElement(move);
+      timeline.addMove(move);
+      addMove(game, move);
 
       boolean isNewMove = (variationCode != ChessclubConstants.INITIAL_MOVE) &&
                           (variationCode != ChessclubConstants.FORWARD_MOVE);
@@ -1907,10 +1999,14 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
       }
       else{
         Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
-        if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0)){ // Might be our move.
-          Move madeMove = (Move)unechoedGameMoves.elementAt(0);
-          if (isSameMove(game, move, madeMove))
-            unechoedGameMoves.removeElementAt(0); 
+        if (unechoedGameMoves != null){
+          synchronized(unechoedGameMoves){
+            if (unechoedGameMoves.size() != 0){ // Might be our move.
+              Move madeMove = (Move)unechoedGameMoves.elementAt(0);
+              if (isSameMove(game, move, madeMove))
+                unechoedGameMoves.removeElementAt(0); 
+            }
+          }
         }
       }
     } catch (NoSuchGameException e){}
@@ -1981,16 +2077,11 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
     try{
       GameInfo gameInfo = getGameInfo(gameNumber);
       Game game = gameInfo.game;
-      Position pos = gameInfo.position;
-      Vector moves = gameInfo.moves;
+      PositionTimeline timeline = gameInfo.timeline;
 
-      int numMadeMoves = moves.size() - backwardCount;
-      for (int i = moves.size() - 1; i >= numMadeMoves; i--)
-        moves.removeElementAt(i);
-
-      pos.copyFrom(game.getInitialPosition());
-      for (int i = 0; i < numMadeMoves; i++)
-        pos.makeMove((Move)moves.elementAt(i));
+      int count = Math.min(backwardCount, timeline.getMoveCount());
+      timeline.removeLastMoves(count);
+      takebackMoves(game, count);
 
       fireGameEvent(new TakebackEvent(this, clientTag, game, backwardCount));
     } catch (NoSuchGameException e){}
@@ -2016,16 +2107,11 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
     try{
       GameInfo gameInfo = getGameInfo(gameNumber);
       Game game = gameInfo.game;
-      Position pos = gameInfo.position;
-      Vector moves = gameInfo.moves;
-
-      int numMadeMoves = moves.size() - takebackCount;
-      for (int i = moves.size() - 1; i >= numMadeMoves; i--)
-        moves.removeElementAt(i);
+      PositionTimeline timeline = gameInfo.timeline;
 
-      pos.copyFrom(game.getInitialPosition());
-      for (int i = 0; i < numMadeMoves; i++)
-        pos.makeMove((Move)moves.elementAt(i));
+      int count = Math.min(takebackCount, timeline.getMoveCount());
+      timeline.removeLastMoves(count);
+      takebackMoves(game, count);
 
       fireGameEvent(new TakebackEvent(this, clientTag, game, takebackCount));
       updateTakebackOffer(clientTag, gameInfo, Player.WHITE_PLAYER, 0); // The server seems to only clear
@@ -2149,7 +2235,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
       Game game = gameInfo.game;
 
       Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
-      if ((unechoedGameMoves == null) || (unechoedGameMoves.size() == 0)) // Not a move we made (probably the user typed it in)
+      if (unechoedGameMoves == null) // Not a move we made (probably the user typed it in)
         return;
       
       int reasonCode;
@@ -2167,11 +2253,19 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
           reasonCode = IllegalMoveEvent.OTHER;
       }
 
-      Move move = (Move)unechoedGameMoves.elementAt(0);
-      if (moveToString(game, move).equals(moveString)){ // Our move
+      Move move;
+      synchronized(unechoedGameMoves){
+        if (unechoedGameMoves.size() == 0) // Not a move we made (probably the user typed it in)
+          return;
+
+        move = (Move)unechoedGameMoves.elementAt(0);
+        if (!moveToString(game, move).equals(moveString)) // Not our move
+          return;
+
         unechoedGameMoves.removeAllElements();
-        fireGameEvent(new IllegalMoveEvent(this, clientTag, game, move, reasonCode));
       }
+      
+      fireGameEvent(new IllegalMoveEvent(this, clientTag, game, move, reasonCode));
     } catch (NoSuchGameException e){}
   }
   
@@ -2203,7 +2297,8 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
         gameInfo.setBlackClock(msec, isRunning);
 
       Player player = (isWhite ? Player.WHITE_PLAYER : Player.BLACK_PLAYER);
-      fireGameEvent(new ClockAdjustmentEvent(this, clientTag, game, player, msec, isRunning && game.isPlayed()));
+      fireGameEvent(new ClockAdjustmentEvent(this, clientTag, game, player, msec,
+        isRunning && gameInfo.latest.isPlayed()));
       // The server always sends isRunning==true, even for examined games where
       // it doesn't make sense.
       
@@ -2461,20 +2556,27 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   @Override
   public void makeMove(Game game, Move move){
     String moveString = moveToString(game, move);
+
+    // Added before sending, as the echo may be parsed before sendCommand returns
+    Vector unechoedGameMoves;
+    synchronized(unechoedMoves){
+      unechoedGameMoves = (Vector)unechoedMoves.get(game);
+      if (unechoedGameMoves == null){
+        unechoedGameMoves = new Vector(2);
+        unechoedMoves.put(game, unechoedGameMoves);
+      }
+    }
+    synchronized(unechoedGameMoves){
+      unechoedGameMoves.addElement(move);
+    }
+
     if (userGamesCount > 1)
       // It seems that "; goto <gamenum> ; <movestring>" will abort making the
       // move (or whatever other command follows it) if you aren't playing
       // a game with the specified number.
-      sendCommand("multi goto " + game.getID() + " ; chessmove " + moveString, true, true, null);
+      sendCommand("multi goto " + game.getID() + " ; chessmove " + moveString, true, true, null, true);
     else
-      sendCommand("chessmove " + moveString, true, true, null);
-
-    Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
-    if (unechoedGameMoves == null){
-      unechoedGameMoves = new Vector(2);
-      unechoedMoves.put(game, unechoedGameMoves);
-    }
-    unechoedGameMoves.addElement(move);
+      sendCommand("chessmove " + moveString, true, true, null, true);
   }
 
 
@@ -2779,7 +2881,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    * The set (of <code>ChessclubUser</code>s) of friends.
    */
   
-  private final Set friends = new HashSet();
+  private final Set<ServerUser> friends = Collections.synchronizedSet(new HashSet<ServerUser>());
   
   
   
@@ -2790,7 +2892,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    * because some of the elements here may be due to an alias.
    */
   
-  private final Map onlineFriendStates = new HashMap();
+  private final Map<ServerUser, Integer> onlineFriendStates = Collections.synchronizedMap(new HashMap<ServerUser, Integer>());
   
   
   
@@ -2845,7 +2947,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   protected void processNotifyArrived(String clientTag, String username, String stateCode, int gameNumber){
     ChessclubUser user = ChessclubUser.get(username);
     
-    Integer existingState = (Integer)onlineFriendStates.get(user);
+    Integer existingState = onlineFriendStates.get(user);
     
     // Check whether really arrived, or just we're being told that he's online 
     if ((existingState == null) && !SYNTHETIC_DG_NOTIFY_ARRIVED_TAG.equals(clientTag) && isLoginProcedureEnded){
@@ -2905,7 +3007,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   protected void processNotifyState(String clientTag, String username, String stateCode, int gameNumber){
     ServerUser user = ChessclubUser.get(username);
-    Integer currentState = (Integer)onlineFriendStates.get(user);
+    Integer currentState = onlineFriendStates.get(user);
     
     Integer newState = friendStateForCode(stateCode);
     
@@ -2948,15 +3050,21 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
         
         if (user.isAlias()){
           // Disconnect everyone who is suspect to be online due to the alias
-          // and re-request the list.
-          for (Iterator i = onlineFriendStates.keySet().iterator(); i.hasNext();){
-            ServerUser u = (ServerUser)i.next();
-            if (!friends.contains(u)){
-              i.remove();
-              listenerManager.fireFriendsEvent(
-                  new FriendsEvent(this, clientTag, FriendsEvent.FRIEND_STATE_CHANGED, u, 0));
+          // and re-request the list. The events are fired after releasing the
+          // lock, as firing may block while the event thread waits for it.
+          List<ServerUser> disconnected = new ArrayList<>();
+          synchronized(onlineFriendStates){
+            for (Iterator<ServerUser> i = onlineFriendStates.keySet().iterator(); i.hasNext();){
+              ServerUser u = i.next();
+              if (!friends.contains(u)){
+                i.remove();
+                disconnected.add(u);
+              }
             }
           }
+          for (int i = 0; i < disconnected.size(); i++)
+            listenerManager.fireFriendsEvent(new FriendsEvent(this, clientTag, FriendsEvent.FRIEND_STATE_CHANGED,
+                disconnected.get(i), 0));
         }
       }
     }
@@ -3015,7 +3123,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   @Override
   public Collection getFriends(){
-    return Collections.unmodifiableCollection(friends);
+    return Collections.unmodifiableCollection(new ArrayList<>(friends));
   }
   
   
@@ -3026,7 +3134,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   @Override
   public Collection getOnlineFriends(){
-    return Collections.unmodifiableCollection(onlineFriendStates.keySet());
+    return Collections.unmodifiableCollection(new ArrayList<>(onlineFriendStates.keySet()));
   }
   
   
@@ -3059,7 +3167,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   @Override
   public int getFriendState(ServerUser user){
-    Integer state = (Integer)onlineFriendStates.get(user);
+    Integer state = onlineFriendStates.get(user);
     
     if (state == null) // The friend isn't online
       return 0;
@@ -3070,8 +3178,8 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
 
   /**
-   * A container for various game information, such as the Game object, the current
-   * Position and a list of made moves.
+   * A container for various game information, such as the Game object and the
+   * timeline of made moves.
    */
 
   private static class GameInfo{
@@ -3086,19 +3194,23 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
 
     /**
-     * The current position.
+     * A copy of <code>game</code> which is kept up to date with the datagrams
+     * we have processed. Since <code>game</code> is shared with the listeners,
+     * it is only modified in the event dispatching thread, so it may lag behind
+     * the server - use this one to find out the state of the game while
+     * processing datagrams.
      */
 
-    public final Position position;
-
+    public final Game latest;
 
 
 
     /**
-     * The list of moves.
+     * The moves made in the game and the positions they lead to. This is the
+     * connection thread's counterpart of the timeline of <code>game</code>.
      */
 
-    public final Vector moves;
+    public final PositionTimeline timeline;
 
 
 
@@ -3206,8 +3318,8 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
 
     public GameInfo(Game game, Position initialPos, int numMovesToFollow){
       this.game = game;
-      this.position = initialPos;
-      this.moves = new Vector();
+      this.latest = new Game(game);
+      this.timeline = new PositionTimeline(initialPos);
       this.numMovesToFollow = numMovesToFollow;
       this.isFlipped = game.isBoardInitiallyFlipped();
       
@@ -3367,7 +3479,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    * Maps seek IDs to Seek objects currently in the sought list.
    */
 
-  private final Hashtable seeks = new Hashtable();
+  private final Hashtable<Integer, Seek> seeks = new Hashtable<>();
 
 
 
@@ -3399,10 +3511,10 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    */
   
   private void clearSeeks(String clientTag){
-    Set seekIndices = seeks.keySet();
-    for (Iterator i = seekIndices.iterator(); i.hasNext();){
-      Integer seekIndex = (Integer)i.next();
-      Seek seek = (Seek)seeks.get(seekIndex);
+    Set<Integer> seekIndices = seeks.keySet();
+    for (Iterator<Integer> i = seekIndices.iterator(); i.hasNext();){
+      Integer seekIndex = i.next();
+      Seek seek = seeks.get(seekIndex);
       
       i.remove();
       listenerManager.fireSeekEvent(new SeekEvent(this, clientTag, SeekEvent.SEEK_REMOVED, seek));
@@ -3490,7 +3602,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    */
 
   protected void processSeekRemoved(String clientTag, int index, int reasonCode){
-    Seek seek = (Seek)seeks.remove(new Integer(index));
+    Seek seek = seeks.remove(new Integer(index));
 
     if (seek == null)
       return;
@@ -3506,7 +3618,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   @Override
   public Collection getSeeks(){
-    return Collections.unmodifiableCollection(seeks.values());
+    return Collections.unmodifiableCollection(new ArrayList<>(seeks.values()));
   }
   
   
@@ -3957,7 +4069,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    * Contains the currently existing events.
    */
 
-  private final Hashtable chessEvents = new Hashtable();
+  private final Hashtable<Integer, ChessEvent> chessEvents = new Hashtable<>();
   
 
 
@@ -4033,7 +4145,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
             infoCommands.length == 0 ? null : infoCommands, makeNewWindowOnInfo,
             confirmText.length() != 0 ? confirmText : null,
             isOpenToGuests);
-    ChessEvent existingEvent = (ChessEvent)chessEvents.put(new Integer(id), newEvent);
+    ChessEvent existingEvent = chessEvents.put(new Integer(id), newEvent);
 
     if (existingEvent != null)
       listenerManager.fireChessEventEvent(
@@ -4060,7 +4172,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    */
 
   protected void processRemoveTourney(String clientTag, int id){
-    ChessEvent evt = (ChessEvent)chessEvents.get(new Integer(id));
+    ChessEvent evt = chessEvents.get(new Integer(id));
     if (evt == null) // Ignore DG_REMOVE_TOURNEY for events we didn't get a DG_TOURNEY for.
       return;
 
@@ -4074,7 +4186,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    */
   
   public Set getChessEvents(){
-    return Collections.unmodifiableSet(new HashSet(chessEvents.values()));
+    return Collections.unmodifiableSet(new HashSet<>(chessEvents.values()));
   }
   
   
@@ -4084,7 +4196,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
    * offer.
    */
   
-  private final Map matchOffers = new HashMap();
+  private final Map<Pair, MatchOffer> matchOffers = Collections.synchronizedMap(new HashMap<Pair, MatchOffer>());
   
   
   
@@ -4194,7 +4306,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
     ServerUser challenger = userForName(challengerName);
     ServerUser receiver = userForName(receiverName);
     
-    MatchOffer matchOffer = (MatchOffer)matchOffers.remove(new Pair(challenger, receiver));
+    MatchOffer matchOffer = matchOffers.remove(new Pair(challenger, receiver));
     if (matchOffer == null)
       return;
     
@@ -4210,7 +4322,7 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   @Override
   public Collection getMatchOffers(){
-    return Collections.unmodifiableCollection(matchOffers.values());
+    return Collections.unmodifiableCollection(new ArrayList<>(matchOffers.values()));
   }
   
   
@@ -4303,17 +4415,16 @@ public class JinChessclubConnection extends ChessclubConnection implements Datag
   
   /**
    * Overrides ChessclubConnection.execRunnable(Runnable) to execute the
-   * runnable on the AWT thread using SwingUtilities.invokeLater(Runnable), 
-   * since this class is meant to be used by Jin, a graphical interface using 
-   * Swing.
+   * runnable on a dedicated message handling thread, so that parsing datagrams
+   * doesn't block Swing. The listener manager delivers the resulting events to
+   * the listeners in the AWT thread.
    *
    * @see ChessclubConnection#execRunnable(Runnable)
-   * @see SwingUtilities.invokeLater(Runnable)
    */
 
   @Override
   public void execRunnable(Runnable runnable){
-    SwingUtilities.invokeLater(runnable);
+    messageExecutor.execute(runnable);
   }
   
   
@@ -36,7 +36,10 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Vector;
+import java.util.WeakHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -89,6 +92,8 @@ import free.jin.event.PlainTextEvent;
 import free.jin.ui.SdiUiProvider;
 import free.util.BrowserControl;
 import free.util.PlatformUtils;
+import free.util.metrics.Gauge;
+import free.util.metrics.MetricsRegistry;
 import free.util.swing.MultiButton;
 
 
@@ -103,6 +108,44 @@ public class Console extends JPanel implements KeyListener{
   
   
   
+  /**
+   * The consoles which haven't been garbage collected yet, mapped to
+   * <code>null</code>. Their total document length is exposed in the
+   * {@link MetricsRegistry} as <code>console.documentLength</code>.
+   */
+  
+  private static final Map CONSOLES = new WeakHashMap();
+  
+  
+  
+  static{
+    MetricsRegistry.getInstance().registerGauge("console.documentLength", new Gauge(){
+      @Override
+      public long getValue(){
+        long length = 0;
+        synchronized(CONSOLES){
+          for (Iterator i = CONSOLES.keySet().iterator(); i.hasNext();){
+            Console console = (Console)i.next();
+            if (console != null)
+              length += console.documentLength;
+          }
+        }
+        return length;
+      }
+    });
+  }
+  
+  
+  
+  /**
+   * The length of our output document, updated whenever we add to it or clear
+   * it, so that it can be read outside the AWT event dispatching thread.
+   */
+  
+  private volatile int documentLength = 0;
+  
+  
+  
   /**
    * The <code>ConsoleManager</code> we're a part of.
    */
@@ -285,6 +328,10 @@ public class Console extends JPanel implements KeyListener{
     this.consoleManager = consoleManager;
     this.designation = designation;
     
+    synchronized(CONSOLES){
+      CONSOLES.put(this, null);
+    }
+    
     this.prefs = consoleManager.getPrefs();
 
     this.outputComponent = createOutputComponent();
@@ -949,6 +996,7 @@ public class Console extends JPanel implements KeyListener{
     outputComponent.setEditable(wasEditable);
 
     assureScrolling(shouldScroll);
+    updateDocumentLength();
   }
 
 
@@ -970,6 +1018,18 @@ public class Console extends JPanel implements KeyListener{
     } catch (BadLocationException e){
         e.printStackTrace(); // Why the heck is this checked?
       }
+    updateDocumentLength();
+  }
+  
+  
+  
+  /**
+   * Updates <code>documentLength</code> to the current length of the output
+   * document.
+   */
+  
+  private void updateDocumentLength(){
+    documentLength = outputComponent.getDocument().getLength();
   }
   
   
@@ -1189,6 +1249,7 @@ public class Console extends JPanel implements KeyListener{
     outputComponent.setText("");
     outputComponent.removeAll();
     outputComponent.removeLinks();
+    updateDocumentLength();
   }
 
 
@@ -21,6 +21,13 @@
 
 package free.jin.event;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.SwingUtilities;
+
 import free.jin.Connection;
 import free.jin.FriendsConnection;
 import free.jin.GameListConnection;
@@ -28,12 +35,30 @@ import free.jin.MatchOfferConnection;
 import free.jin.SeekConnection;
 import free.util.EventListenerList;
 import free.util.UnsupportedOperationException;
+import free.util.metrics.Gauge;
+import free.util.metrics.Histogram;
+import free.util.metrics.MetricsRegistry;
+import free.util.swing.EventThreadQueue;
 
 
 /**
  * A basic implementation of the <code>ListenerManager</code> interface which
  * uses an <code>EventListenerList</code> to hold the listeners. It also
- * provides convenient event firing methods.
+ * provides convenient event firing methods. Listeners are always notified in
+ * the AWT event dispatching thread - events fired from any other thread (such
+ * as the thread parsing the messages arriving from the server) are queued in an
+ * <code>EventThreadQueue</code> and delivered later, in batches, in the order
+ * they were fired. The queue can be configured via the
+ * <code>free.jin.event.queueCapacity</code>,
+ * <code>free.jin.event.maxBatchSize</code> and
+ * <code>free.jin.event.batchTimeBudget</code> (in milliseconds) system
+ * properties.
+ * <p>The time each listener takes to handle an event is recorded in the
+ * {@link MetricsRegistry}, under <code>listener.&lt;class name&gt;</code>, where
+ * the class name is that of the top level class declaring the listener, so
+ * that the anonymous and inner listeners of a plugin are all attributed to it.
+ * The total depth of the event queues of all the listener managers which
+ * haven't been disposed of is exposed as <code>edt.queueDepth</code>.
  */
 
 public class BasicListenerManager implements ListenerManager, SeekListenerManager,
@@ -57,6 +82,58 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
   
   
   
+  /**
+   * The queue via which we deliver events fired outside the AWT event
+   * dispatching thread.
+   */
+  
+  private final EventThreadQueue eventQueue = new EventThreadQueue(
+    Integer.getInteger("free.jin.event.queueCapacity", 4096).intValue(),
+    Integer.getInteger("free.jin.event.maxBatchSize", 256).intValue(),
+    Integer.getInteger("free.jin.event.batchTimeBudget", 8).intValue());
+  
+  
+  
+  /**
+   * Maps listener classes to the histograms of the time their invocations
+   * take. Only accessed in the AWT event dispatching thread.
+   */
+  
+  private static final Map<Class<?>, Histogram> LISTENER_TIMES = new HashMap<>();
+  
+  
+  
+  /**
+   * The event queues of the listener managers which haven't been disposed of
+   * (or garbage collected) yet, mapped to <code>null</code>.
+   */
+  
+  private static final Map<EventThreadQueue, Object> LIVE_QUEUES = new WeakHashMap<>();
+  
+  
+  
+  /**
+   * The gauge of the total depth of the queues in {@link #LIVE_QUEUES},
+   * registered as <code>edt.queueDepth</code> while there are any.
+   */
+  
+  private static final Gauge QUEUE_DEPTH_GAUGE = new Gauge(){
+    @Override
+    public long getValue(){
+      long depth = 0;
+      synchronized(LIVE_QUEUES){
+        for (Iterator<EventThreadQueue> i = LIVE_QUEUES.keySet().iterator(); i.hasNext();){
+          EventThreadQueue queue = i.next();
+          if (queue != null)
+            depth += queue.getQueueDepth();
+        }
+      }
+      return depth;
+    }
+  };
+  
+  
+  
   /**
    * Creates a new <code>BasicListenerManager</code> with the specified source
    * <code>Connection</code>.
@@ -64,6 +141,84 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
   
   public BasicListenerManager(Connection source){
     this.source = source;
+    
+    synchronized(LIVE_QUEUES){
+      if (LIVE_QUEUES.isEmpty())
+        MetricsRegistry.getInstance().registerGauge("edt.queueDepth", QUEUE_DEPTH_GAUGE);
+      LIVE_QUEUES.put(eventQueue, null);
+    }
+  }
+  
+  
+  
+  /**
+   * Disposes of this listener manager, removing its event queue from the
+   * <code>edt.queueDepth</code> gauge, which is unregistered once no queues
+   * are left. Connections invoke this once they're done firing events - when
+   * disconnected or when connecting fails. Events already queued are still
+   * delivered.
+   */
+  
+  public void dispose(){
+    synchronized(LIVE_QUEUES){
+      if (!LIVE_QUEUES.containsKey(eventQueue))
+        return;
+      
+      LIVE_QUEUES.remove(eventQueue);
+      if (LIVE_QUEUES.isEmpty())
+        MetricsRegistry.getInstance().unregisterGauge("edt.queueDepth", QUEUE_DEPTH_GAUGE);
+    }
+  }
+  
+  
+  
+  /**
+   * Records, in the {@link MetricsRegistry}, the time elapsed since the
+   * specified time (as returned by <code>System.nanoTime</code>) as time
+   * spent by the specified listener. Must be invoked in the AWT event
+   * dispatching thread.
+   */
+  
+  protected static void recordListenerTime(Object listener, long startTime){
+    Class<?> listenerClass = listener.getClass();
+    Histogram histogram = LISTENER_TIMES.get(listenerClass);
+    if (histogram == null){
+      String className = listenerClass.getName();
+      int nameStart = className.lastIndexOf('.') + 1;
+      int nameEnd = className.indexOf('$', nameStart);
+      String name = className.substring(nameStart, nameEnd == -1 ? className.length() : nameEnd);
+      
+      histogram = MetricsRegistry.getInstance().getHistogram("listener." + name);
+      LISTENER_TIMES.put(listenerClass, histogram);
+    }
+    
+    histogram.recordSince(startTime);
+  }
+  
+  
+  
+  /**
+   * Executes the specified <code>Runnable</code> in the AWT event dispatching
+   * thread, after all the events fired so far from other threads have been
+   * delivered. Connections use this to apply changes to objects shared with
+   * the listeners (such as <code>Game</code>s) in order with the events
+   * describing them.
+   */
+  
+  public void invokeInEventThread(Runnable runnable){
+    eventQueue.invokeLater(runnable);
+  }
+  
+  
+  
+  /**
+   * Returns the queue via which we deliver events fired outside the AWT event
+   * dispatching thread. Its depth and batch sizes show how close the event
+   * dispatching thread is to being saturated by server traffic.
+   */
+  
+  public EventThreadQueue getEventQueue(){
+    return eventQueue;
   }
   
   
@@ -97,7 +252,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * to connect is being made.
    */
   
-  public void fireConnectionAttempted(Connection conn, String hostname, int port){
+  public void fireConnectionAttempted(final Connection conn, final String hostname, final int port){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireConnectionAttempted(conn, hostname, port);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ConnectionListener.class){
@@ -118,7 +283,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * to the server has been established. 
    */
   
-  public void fireConnectionEstablished(Connection conn){
+  public void fireConnectionEstablished(final Connection conn){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireConnectionEstablished(conn);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ConnectionListener.class){
@@ -139,7 +314,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * to connect failed.
    */
   
-  public void fireConnectingFailed(Connection conn, String reason){
+  public void fireConnectingFailed(final Connection conn, final String reason){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireConnectingFailed(conn, reason);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ConnectionListener.class){
@@ -160,7 +345,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * succeeded.
    */
   
-  public void fireLoginSucceeded(Connection conn){
+  public void fireLoginSucceeded(final Connection conn){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireLoginSucceeded(conn);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ConnectionListener.class){
@@ -181,7 +376,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * failed.
    */
   
-  public void fireLoginFailed(Connection conn, String reason){
+  public void fireLoginFailed(final Connection conn, final String reason){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireLoginFailed(conn, reason);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ConnectionListener.class){
@@ -202,7 +407,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * connection to the server was lost.
    */
   
-  public void fireConnectionLost(Connection conn){
+  public void fireConnectionLost(final Connection conn){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireConnectionLost(conn);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ConnectionListener.class){
@@ -247,16 +462,28 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * Fires the specified <code>PlainTextEvent</code> to all interested listeners.
    */
   
-  public void firePlainTextEvent(PlainTextEvent evt){
+  public void firePlainTextEvent(final PlainTextEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          firePlainTextEvent(evt);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == PlainTextListener.class){
         PlainTextListener listener = (PlainTextListener)listeners[i+1];
+        long startTime = System.nanoTime();
         try{
           listener.plainTextReceived(evt);
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -293,16 +520,28 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * listeners.
    */
   
-  public void fireChatEvent(ChatEvent evt){
+  public void fireChatEvent(final ChatEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireChatEvent(evt);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == ChatListener.class){
         ChatListener listener = (ChatListener)listeners[i+1];
+        long startTime = System.nanoTime();
         try{
           listener.chatMessageReceived(evt);
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -338,11 +577,22 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * listeners.
    */
   
-  public void fireGameEvent(GameEvent evt){
+  public void fireGameEvent(final GameEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireGameEvent(evt);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == GameListener.class){
         GameListener listener = (GameListener)listeners[i+1];
+        long startTime = System.nanoTime();
         try{
           if (evt instanceof GameStartEvent)
             listener.gameStarted((GameStartEvent)evt);
@@ -367,6 +617,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -408,7 +659,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * <code>SeekListener</code>s.
    */
   
-  public void fireSeekEvent(SeekEvent evt){
+  public void fireSeekEvent(final SeekEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireSeekEvent(evt);
+        }
+      });
+      return;
+    }
+
     if (!(source instanceof SeekConnection))
       throw new UnsupportedOperationException("The source Connection is not an instance of SeekConnection");
     
@@ -416,6 +677,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == SeekListener.class){
         SeekListener listener = (SeekListener)listeners[i+1];
+        long startTime = System.nanoTime();
         try{
           switch(evt.getID()){
             case SeekEvent.SEEK_ADDED:
@@ -430,6 +692,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -471,7 +734,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * <code>GameListListener</code>s.
    */
   
-  public void fireGameListEvent(GameListEvent evt){
+  public void fireGameListEvent(final GameListEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireGameListEvent(evt);
+        }
+      });
+      return;
+    }
+
     if (!(source instanceof GameListConnection))
       throw new UnsupportedOperationException("The source Connection is not an instance of GameListConnection");
     
@@ -479,11 +752,13 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == GameListListener.class){
         GameListListener listener = (GameListListener)listeners[i+1];
+        long startTime = System.nanoTime();
         try{
           listener.gameListArrived(evt);
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -524,7 +799,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * Dispatches the given <code>FriendsEvent</code> to all interested listeners.
    */
   
-  public void fireFriendsEvent(FriendsEvent evt){
+  public void fireFriendsEvent(final FriendsEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireFriendsEvent(evt);
+        }
+      });
+      return;
+    }
+
     if (!(source instanceof FriendsConnection))
       throw new UnsupportedOperationException("The source Connection is not an instance of FriendsConnection");
     
@@ -532,6 +817,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
     for (int i = 0; i < listenerList.length; i += 2){
       if (listenerList[i] == FriendsListener.class){
         FriendsListener listener = (FriendsListener)listenerList[i+1];
+        long startTime = System.nanoTime();
         try{
           switch (evt.getID()){
             case FriendsEvent.FRIEND_CONNECTED:
@@ -553,6 +839,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
@@ -594,7 +881,17 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
    * listeners.
    */
   
-  public void fireMatchOfferEvent(MatchOfferEvent evt){
+  public void fireMatchOfferEvent(final MatchOfferEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireMatchOfferEvent(evt);
+        }
+      });
+      return;
+    }
+
     if (!(source instanceof MatchOfferConnection))
       throw new UnsupportedOperationException("The source Connection is not an instance of MatchOfferConnection");
     
@@ -602,6 +899,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
     for (int i = 0; i < listenerList.length; i += 2){
       if (listenerList[i] == MatchOfferListener.class){
         MatchOfferListener listener = (MatchOfferListener)listenerList[i+1];
+        long startTime = System.nanoTime();
         try{
           switch (evt.getID()){
             case MatchOfferEvent.MATCH_OFFER_MADE:
@@ -614,6 +912,7 @@ public class BasicListenerManager implements ListenerManager, SeekListenerManage
         } catch (RuntimeException e){
             e.printStackTrace();
           }
+        recordListenerTime(listener, startTime);
       }
     }
   }
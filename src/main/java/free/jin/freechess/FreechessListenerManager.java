@@ -21,6 +21,8 @@
 
 package free.jin.freechess;
 
+import javax.swing.SwingUtilities;
+
 import free.freechess.Ivar;
 import free.jin.event.BasicListenerManager;
 import free.jin.event.SeekListener;
@@ -118,7 +120,17 @@ public class FreechessListenerManager extends BasicListenerManager{
    * IvarStateChangeEvent.
    */
    
-  public void fireIvarStateChangeEvent(IvarStateChangeEvent evt){
+  public void fireIvarStateChangeEvent(final IvarStateChangeEvent evt){
+    if (!SwingUtilities.isEventDispatchThread()){
+      invokeInEventThread(new Runnable(){
+        @Override
+        public void run(){
+          fireIvarStateChangeEvent(evt);
+        }
+      });
+      return;
+    }
+
     Object [] listeners = listenerList.getListenerList();
     for (int i = 0; i < listeners.length; i += 2){
       if (listeners[i] == IvarStateChangeListener.class){
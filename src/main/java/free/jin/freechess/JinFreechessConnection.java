@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -32,11 +33,10 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.swing.SwingUtilities;
-
 import free.chess.Chess;
 import free.chess.ChessMove;
 import free.chess.ChessPiece;
@@ -47,6 +47,7 @@ import free.chess.OddsTimeControl;
 import free.chess.Piece;
 import free.chess.Player;
 import free.chess.Position;
+import free.chess.PositionTimeline;
 import free.chess.Square;
 import free.chess.TimeControl;
 import free.chess.WildVariant;
@@ -107,6 +108,14 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
 
 
+  /**
+   * The executor on which we handle the messages arriving from the server.
+   */
+
+  private final Executor messageExecutor = createSerialExecutor("FreechessMessageThread");
+
+
+
   /**
    * Creates a new JinFreechessConnection with the specified hostname, port,
    * requested username and password.
@@ -249,12 +258,13 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
   
   
   /**
-   * Fires a "failed" connection event.
+   * Fires a "failed" connection event and disposes of the listener manager.
    */
   
   @Override
   protected void handleConnectingFailed(IOException e){
     listenerManager.fireConnectingFailed(this, e.getMessage());
+    listenerManager.dispose();
     
     super.handleConnectingFailed(e);
   }
@@ -291,12 +301,14 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
   
   
   /**
-   * Fires a "connection lost" connection event.
+   * Fires a "connection lost" connection event and disposes of the listener
+   * manager.
    */
   
   @Override
   protected void handleDisconnection(IOException e){
     listenerManager.fireConnectionLost(this);
+    listenerManager.dispose();
     
     super.handleDisconnection(e);
   }
@@ -791,7 +803,9 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
   /**
    * A Hashtable mapping Game objects to Vectors of moves which were sent for
    * these games but the server didn't tell us yet whether the move is legal
-   * or not.
+   * or not. A move is added before it's sent, as the server's echo is parsed
+   * in another thread, and each Vector is synchronized on when checking and
+   * removing its first move.
    */
 
   private final Hashtable unechoedMoves = new Hashtable(1);
@@ -853,6 +867,83 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
 
 
+  /**
+   * Applies the changes made to the latest state of the specified game to the
+   * <code>Game</code> object seen by the listeners. The changes are applied in
+   * the AWT thread, after the events fired so far have been delivered. Only
+   * the properties that changed since the last time are published, and
+   * nothing at all if none did, which is the common case for a move.
+   */
+
+  private void publishGameChanges(InternalGameData gameData){
+    final Vector<Pair> changes = gameData.published.getChangedProperties(gameData.latest);
+    if (changes == null)
+      return;
+
+    gameData.published.setProperties(changes);
+
+    final Game game = gameData.game;
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.setProperties(changes);
+      }
+    });
+  }
+
+
+
+
+  /**
+   * Adds the specified move to the timeline of the specified game, in the AWT
+   * thread, so that it's updated by the time the events fired after this are
+   * delivered.
+   */
+
+  private void addMove(final Game game, final Move move){
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.addMove(move);
+      }
+    });
+  }
+
+
+
+  /**
+   * Takes back the specified amount of moves from the timeline of the
+   * specified game, in the AWT thread.
+   */
+
+  private void takebackMoves(final Game game, final int count){
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.takebackMoves(count);
+      }
+    });
+  }
+
+
+
+  /**
+   * Restarts the timeline of the specified game at the specified position, in
+   * the AWT thread.
+   */
+
+  private void resetMoves(final Game game, Position position){
+    final Position initialPosition = new Position(position);
+    listenerManager.invokeInEventThread(new Runnable(){
+      @Override
+      public void run(){
+        game.resetMoves(initialPosition);
+      }
+    });
+  }
+
+
+
   /**
    * Finds the (primary) game played by the user. Throws a
    * <code>NoSuchGameException</code> if there's no such game.
@@ -886,7 +977,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     while (gameNumbers.hasMoreElements()){
       Integer gameNumber = (Integer)gameNumbers.nextElement();
       InternalGameData gameData = (InternalGameData)ongoingGamesData.get(gameNumber);
-      Game game = gameData.game;
+      Game game = gameData.latest;
       Player userPlayer = game.getUserPlayer();
       if (userPlayer == null) // Not our game or not played
         continue;
@@ -934,7 +1025,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
       if (plyDifference < 0)
         tryIssueTakeback(gameData, boardData);
       else if (plyDifference == 0){
-        if (!oldBoardData.getBoardFEN().equals(boardData.getBoardFEN()))
+        if (!oldBoardData.isSamePosition(boardData))
           changePosition(gameData, boardData);
 
         // This happens if you:
@@ -992,16 +1083,14 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     Integer gameNumber = new Integer(data.getGameNumber());
     InternalGameData gameData = (InternalGameData)ongoingGamesData.get(gameNumber);
     
-    Game game = gameData.game;
+    Game game = gameData.latest;
     if (game.getVariant() != Chess.getInstance())
       throw new IllegalStateException("delta-boards should only be sent for regular chess");
     
     Style12Struct lastBoardData = gameData.boardData;
-    Vector moveList = gameData.moveList;
     
-    Position pos = game.getInitialPosition();
-    for (int i = 0; i < moveList.size(); i++)
-      pos.makeMove((Move)moveList.elementAt(i));
+    PositionTimeline timeline = gameData.timeline;
+    Position pos = timeline.getPosition(timeline.getMoveCount());
     
     ChessMove move = (ChessMove)(Move.parseWarrenSmith(data.getMoveSmith(), pos, data.getMoveAlgebraic()));
     
@@ -1018,7 +1107,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     boolean canWhiteCastleKingside =
       lastBoardData.canWhiteCastleKingside() && !kingMoved && !Square.getInstance(7, 0).equals(startSquare);
     boolean canWhiteCastleQueenside =
-      lastBoardData.canBlackCastleQueenside() && !kingMoved && !Square.getInstance(0, 0).equals(startSquare);
+      lastBoardData.canWhiteCastleQueenside() && !kingMoved && !Square.getInstance(0, 0).equals(startSquare);
     boolean canBlackCastleKingside =
       lastBoardData.canBlackCastleKingside() && !kingMoved && !Square.getInstance(7, 7).equals(startSquare);
     boolean canBlackCastleQueenside =
@@ -1149,21 +1238,67 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
 
     /**
-     * A list of Moves done in the game.
+     * A copy of <code>game</code> which is kept up to date with the messages we
+     * have processed. Since <code>game</code> is shared with the listeners, it
+     * is only modified in the event dispatching thread, so it may lag behind
+     * the server - use this one to find out the state of the game while
+     * processing messages.
+     */
+
+    public final Game latest;
+
+
+
+    /**
+     * The state of the game as last published to <code>game</code>, which
+     * <code>game</code> will be in once the published changes are applied.
+     * Compared with <code>latest</code> to find out what to publish.
+     */
+
+    public final Game published;
+
+
+
+    /**
+     * The moves made in the game, as far as we counted, and the positions they
+     * lead to. This is the connection thread's counterpart of the timeline of
+     * <code>game</code>.
      */
 
-    public Vector moveList = new Vector();
+    public final PositionTimeline timeline;
 
 
 
     /**
-     * The last Style12Struct we got for this game.
+     * The last Style12Struct we got for this game. Set via
+     * {@link #setBoardData(Style12Struct)}.
      */
 
     public Style12Struct boardData = null;
 
 
 
+    /**
+     * The board of <code>boardData</code>, with its player to move, but no
+     * castling rights and no en passant file, as if it were set with
+     * <code>setLexigraphic</code>. This position lives as long as the game and
+     * is brought up to date with each new board by setting only the squares
+     * that changed.
+     */
+
+    public final Position board;
+
+
+
+    /**
+     * The pieces of the game's variant, indexed by the characters representing
+     * them in style12 boards. Filled in as the pieces are first encountered.
+     */
+
+    private final Piece [] boardPieces = new Piece[128];
+
+
+
     /**
      * Is this game in bsetup mode?
      */
@@ -1227,6 +1362,57 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     public InternalGameData(Game game){
       this.game = game;
+      this.latest = new Game(game);
+      this.published = new Game(game);
+      this.timeline = new PositionTimeline(game.getInitialPosition());
+      this.board = new Position(game.getVariant());
+    }
+
+
+
+    /**
+     * Sets the last Style12Struct we got for this game, and brings
+     * <code>board</code> up to date with it. The new board is compared with the
+     * previous one character by character, straight from the style12 lines
+     * they were parsed from, and only the squares that differ are set.
+     */
+
+    public void setBoardData(Style12Struct newBoardData){
+      if (boardData == null)
+        board.setLexigraphic(newBoardData.getBoardLexigraphic());
+      else{
+        for (int i = 0; i < 64; i++){
+          char c = newBoardData.getBoardChar(i);
+          if (c != boardData.getBoardChar(i))
+            board.setPieceAt(getBoardPiece(c), Square.getInstance(i % 8, 7 - i / 8));
+        }
+      }
+
+      Player currentPlayer = playerForString(newBoardData.getCurrentPlayer());
+      if (board.getCurrentPlayer() != currentPlayer)
+        board.setCurrentPlayer(currentPlayer);
+
+      boardData = newBoardData;
+    }
+
+
+
+    /**
+     * Returns the piece represented by the specified character in a style12
+     * board, or <code>null</code> for an empty square.
+     */
+
+    private Piece getBoardPiece(char c){
+      if (c == '-')
+        return null;
+      if (c >= boardPieces.length)
+        return game.getVariant().parsePiece(String.valueOf(c));
+
+      Piece piece = boardPieces[c];
+      if (piece == null)
+        piece = boardPieces[c] = game.getVariant().parsePiece(String.valueOf(c));
+
+      return piece;
     }
 
 
@@ -1236,7 +1422,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
      */
 
     public int getMoveCount(){
-      return moveList.size();
+      return timeline.getMoveCount();
     }
 
 
@@ -1246,7 +1432,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
      */
 
     public void addMove(Move move){
-      moveList.addElement(move);
+      timeline.addMove(move);
     }
 
 
@@ -1257,23 +1443,18 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
      */
 
     public void removeLastMoves(int count){
-      if (count > moveList.size())
-        throw new IllegalArgumentException("Can't remove more elements than there are elements");
-
-      int first = moveList.size() - 1;
-      int last = moveList.size() - count;
-      for (int i = first; i >= last; i--)
-        moveList.removeElementAt(i);
+      timeline.removeLastMoves(count);
     }
 
 
 
     /**
-     * Removes all the moves made in the game.
+     * Removes all the moves made in the game, and resets the position to the
+     * (possibly new) initial position of the game.
      */
 
     public void clearMoves(){
-      moveList.removeAllElements();
+      timeline.reset(latest.getInitialPosition());
     }
 
 
@@ -1557,7 +1738,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
    */
 
   private void updateGame(InternalGameData gameData, Style12Struct boardData){
-    Game game = gameData.game;
+    Game game = gameData.latest;
     Style12Struct oldBoardData = gameData.boardData;
 
     updateClocks(gameData, boardData); // Update the clocks
@@ -1568,10 +1749,13 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     game.setWhiteName(boardData.getWhiteName()); // Change white name
     game.setBlackName(boardData.getBlackName()); // Change black name
-    game.setTimeControl(getTimeControl(
-        boardData.getInitialTime(), boardData.getIncrement(), boardData.getInitialTime(), boardData.getIncrement()));
+    if ((oldBoardData == null) || (oldBoardData.getInitialTime() != boardData.getInitialTime()) ||
+        (oldBoardData.getIncrement() != boardData.getIncrement()))
+      game.setTimeControl(getTimeControl(
+          boardData.getInitialTime(), boardData.getIncrement(), boardData.getInitialTime(), boardData.getIncrement()));
+    publishGameChanges(gameData);
 
-    gameData.boardData = boardData;
+    gameData.setBoardData(boardData);
   }
 
 
@@ -1583,16 +1767,13 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
   private void makeMove(InternalGameData gameData, Style12Struct boardData){
     Game game = gameData.game;
-    Style12Struct oldBoardData = gameData.boardData;
 
     String moveVerbose = boardData.getMoveVerbose();
     String moveSAN = boardData.getMoveSAN();
 
     WildVariant variant = game.getVariant();
-    Position position = new Position(variant);
-    position.setLexigraphic(oldBoardData.getBoardLexigraphic());
-    Player currentPlayer = playerForString(oldBoardData.getCurrentPlayer());
-    position.setCurrentPlayer(currentPlayer);
+    Position position = gameData.board; // Still the board before the move
+    Player currentPlayer = position.getCurrentPlayer();
 
     Move move;
     Square fromSquare, toSquare;
@@ -1615,14 +1796,20 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
       move = variant.createMove(position, fromSquare, toSquare, promotionPiece, moveSAN);
     }
 
+    addMove(game, move);
+
     listenerManager.fireGameEvent(new MoveMadeEvent(this, null, game, move, true)); 
       // (isNew == true) because FICS never sends the entire move history
 
     Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
-    if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0)){ // Might be our move.
-      Move madeMove = (Move)unechoedGameMoves.elementAt(0);
-      if (isSameMove(game, move, madeMove))
-        unechoedGameMoves.removeElementAt(0); 
+    if (unechoedGameMoves != null){
+      synchronized(unechoedGameMoves){
+        if (unechoedGameMoves.size() != 0){ // Might be our move.
+          Move madeMove = (Move)unechoedGameMoves.elementAt(0);
+          if (isSameMove(game, move, madeMove))
+            unechoedGameMoves.removeElementAt(0); 
+        }
+      }
     }
 
     gameData.addMove(move);
@@ -1702,7 +1889,8 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
           actor = null; break;
       }
 
-      game.setResult(result, Game.UNKNOWN_REASON, actor);
+      gameData.latest.setResult(result, Game.UNKNOWN_REASON, actor);
+      publishGameChanges(gameData);
       listenerManager.fireGameEvent(new GameEndEvent(this, null, game));
 
       if ((game.getGameType() == Game.MY_GAME) && getIvarState(Ivar.SEEKINFO))
@@ -1737,7 +1925,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
       Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
 
       // Not a move we made (probably the user typed it in)
-      if ((unechoedGameMoves == null) || (unechoedGameMoves.size() == 0)) 
+      if (unechoedGameMoves == null) 
         return;
       
       int reasonCode;
@@ -1752,16 +1940,24 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
           reasonCode = IllegalMoveEvent.OTHER;
       }
 
-      Move move = (Move)unechoedGameMoves.elementAt(0);
+      Move move;
+      synchronized(unechoedGameMoves){
+        // Not a move we made (probably the user typed it in)
+        if (unechoedGameMoves.size() == 0)
+          return;
+
+        move = (Move)unechoedGameMoves.elementAt(0);
       
-      // We have no choice but to allow (moveString == null) because the server
-      // doesn't always send us the move string (for example if it's not our turn).
-      if ((moveString == null) || moveToString(game, move).equals(moveString)){
-        // Our move, probably
+        // We have no choice but to allow (moveString == null) because the server
+        // doesn't always send us the move string (for example if it's not our turn).
+        if ((moveString != null) && !moveToString(game, move).equals(moveString))
+          return;
 
+        // Our move, probably
         unechoedGameMoves.removeAllElements();
-        listenerManager.fireGameEvent(new IllegalMoveEvent(this, null, game, move, reasonCode));
       }
+      
+      listenerManager.fireGameEvent(new IllegalMoveEvent(this, null, game, move, reasonCode));
     } catch (NoSuchGameException e){}
   }
 
@@ -1782,22 +1978,19 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     else if (gameData.isBSetup)
       changePosition(gameData, boardData);
     else{
-      Game game = gameData.game;
-      Vector moveList = gameData.moveList;
+      Game game = gameData.latest;
       // Check whether the positions match, otherwise it could just be someone
       // issuing "bsetup fen ..." after making a few moves which resets the ply
-      // count.
+      // count. Only the pieces and player to move are compared, since the
+      // castling and en passant flags of the FEN come from the server, not
+      // from the moves in the timeline.
 
-      Position oldPos = game.getInitialPosition();
-      for (int i = 0; i < moveList.size() - plyDifference; i++){
-        Move move = (Move)moveList.elementAt(i);
-        oldPos.makeMove(move);
-      }
+      Position oldPos = gameData.timeline.getPosition(gameData.getMoveCount() - plyDifference);
 
       Position newPos = game.getInitialPosition();
       newPos.setFEN(boardData.getBoardFEN());
 
-      if (newPos.equals(oldPos))
+      if (newPos.isSameBoard(oldPos))
         issueTakeback(gameData, boardData);
       else
         changePosition(gameData, boardData);
@@ -1815,6 +2008,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     Style12Struct oldBoardData = gameData.boardData;
     int takebackCount = oldBoardData.getPlayedPlyCount() - newBoardData.getPlayedPlyCount();
 
+    takebackMoves(gameData.game, takebackCount);
     listenerManager.fireGameEvent(new TakebackEvent(this, null, gameData.game, takebackCount));
 
     gameData.removeLastMoves(takebackCount);
@@ -1830,11 +2024,13 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
   private void changePosition(InternalGameData gameData, Style12Struct newBoardData){
     Game game = gameData.game;
 
-    Position newPos = game.getInitialPosition();
+    Position newPos = gameData.latest.getInitialPosition();
     newPos.setFEN(newBoardData.getBoardFEN());
 
-    game.setInitialPosition(newPos);
-    game.setPliesSinceStart(newBoardData.getPlayedPlyCount());
+    gameData.latest.setInitialPosition(newPos);
+    gameData.latest.setPliesSinceStart(newBoardData.getPlayedPlyCount());
+    publishGameChanges(gameData);
+    resetMoves(game, newPos);
 
     listenerManager.fireGameEvent(new PositionChangedEvent(this, null, game, newPos));
 
@@ -1843,8 +2039,12 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     // We do this because moves in bsetup mode cause position change events, not move events
     if (gameData.isBSetup){
       Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
-      if ((unechoedGameMoves != null) && (unechoedGameMoves.size() != 0))
-        unechoedGameMoves.removeElementAt(0); 
+      if (unechoedGameMoves != null){
+        synchronized(unechoedGameMoves){
+          if (unechoedGameMoves.size() != 0)
+            unechoedGameMoves.removeElementAt(0); 
+        }
+      }
     }
   }
 
@@ -1854,7 +2054,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
    * Maps seek IDs to Seek objects currently in the sought list.
    */
 
-  private final Hashtable seeks = new Hashtable();
+  private final Hashtable<Integer, Seek> seeks = new Hashtable<>();
 
 
 
@@ -1951,7 +2151,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
         Integer seekIndex = new Integer(seekInfo.getSeekIndex());
 
-        Seek oldSeek = (Seek)seeks.get(seekIndex);
+        Seek oldSeek = seeks.get(seekIndex);
         if (oldSeek != null)
           listenerManager.fireSeekEvent(new SeekEvent(this, null, SeekEvent.SEEK_REMOVED, oldSeek));
 
@@ -1974,7 +2174,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
   protected boolean processSeeksRemoved(int [] removedSeeks){
     for (int i = 0; i < removedSeeks.length; i++){
       Integer seekIndex = new Integer(removedSeeks[i]);
-      Seek seek = (Seek)seeks.get(seekIndex);
+      Seek seek = seeks.get(seekIndex);
       if (seek == null) // Happens if the seek is one we didn't fire an event for,
         continue;       // for example if we don't support the variant.
 
@@ -2006,10 +2206,10 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
    */
   
   private void clearSeeks(){
-    Set seekIndices = seeks.keySet();
-    for (Iterator i = seekIndices.iterator(); i.hasNext();){
-      Integer seekIndex = (Integer)i.next();
-      Seek seek = (Seek)seeks.get(seekIndex);
+    Set<Integer> seekIndices = seeks.keySet();
+    for (Iterator<Integer> i = seekIndices.iterator(); i.hasNext();){
+      Integer seekIndex = i.next();
+      Seek seek = seeks.get(seekIndex);
       
       i.remove();
       listenerManager.fireSeekEvent(new SeekEvent(this, null, SeekEvent.SEEK_REMOVED, seek));
@@ -2024,7 +2224,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
   
   @Override
   public Collection getSeeks(){
-    return Collections.unmodifiableCollection(seeks.values());
+    return Collections.unmodifiableCollection(new ArrayList<>(seeks.values()));
   }
   
   
@@ -2275,7 +2475,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     try{
       InternalGameData gameData = getGameData(gameNum);
-      Player player = gameData.game.getPlayerNamed(playerName);
+      Player player = gameData.latest.getPlayerNamed(playerName);
 
       updateTakebackOffer(gameData, player.getOpponent(), 0);
       updateTakebackOffer(gameData, player, takebackCount);
@@ -2297,7 +2497,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     try{
       InternalGameData gameData = getGameData(gameNum);
-      Player player = gameData.game.getPlayerNamed(playerName);
+      Player player = gameData.latest.getPlayerNamed(playerName);
       int offerId;
       try{
         offerId = offerIdForOfferName(offerName);
@@ -2320,7 +2520,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     try{
       InternalGameData gameData = getGameData(gameNum);
-      Player player = gameData.game.getPlayerNamed(playerName);
+      Player player = gameData.latest.getPlayerNamed(playerName);
       int offerId;
       try{
         offerId = offerIdForOfferName(offerName);
@@ -2343,7 +2543,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     try{
       InternalGameData gameData = getGameData(gameNum);
-      Player player = gameData.game.getPlayerNamed(playerName);
+      Player player = gameData.latest.getPlayerNamed(playerName);
       int offerId;
       try{
         offerId = offerIdForOfferName(offerName);
@@ -2366,7 +2566,7 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
     try{
       InternalGameData gameData = getGameData(gameNum);
-      Player player = gameData.game.getPlayerNamed(playerName);
+      Player player = gameData.latest.getPlayerNamed(playerName);
 
       updateTakebackOffer(gameData, player, takebackCount);
     } catch (NoSuchGameException e){}
@@ -2546,14 +2746,20 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
     if (!ourGame)
       throw new IllegalArgumentException("The specified Game object was not created by this JinConnection or the game has ended.");
 
-    sendCommand(moveToString(game, move), true, true, false);
-
-    Vector unechoedGameMoves = (Vector)unechoedMoves.get(game);
-    if (unechoedGameMoves == null){
-      unechoedGameMoves = new Vector(2);
-      unechoedMoves.put(game, unechoedGameMoves);
+    // Added before sending, as the echo may be parsed before sendCommand returns
+    Vector unechoedGameMoves;
+    synchronized(unechoedMoves){
+      unechoedGameMoves = (Vector)unechoedMoves.get(game);
+      if (unechoedGameMoves == null){
+        unechoedGameMoves = new Vector(2);
+        unechoedMoves.put(game, unechoedGameMoves);
+      }
+    }
+    synchronized(unechoedGameMoves){
+      unechoedGameMoves.addElement(move);
     }
-    unechoedGameMoves.addElement(move);
+
+    sendCommand(moveToString(game, move), true, true, false, true);
   }
 
 
@@ -2831,18 +3037,17 @@ public class JinFreechessConnection extends FreechessConnection implements Conne
 
 
   /**
-   * Overrides Connection.execRunnable(Runnable) to execute the
-   * runnable on the AWT thread using SwingUtilities.invokeLater(Runnable), 
-   * since this class is meant to be used by Jin, a graphical interface using 
-   * Swing.
+   * Overrides Connection.execRunnable(Runnable) to execute the runnable on a
+   * dedicated message handling thread, so that parsing the messages arriving
+   * from the server doesn't block Swing. The listener manager delivers the
+   * resulting events to the listeners in the AWT thread.
    *
    * @see Connection#execRunnable(Runnable)
-   * @see SwingUtilities.invokeLater(Runnable)
    */
 
   @Override
   public void execRunnable(Runnable runnable){
-    SwingUtilities.invokeLater(runnable);
+    messageExecutor.execute(runnable);
   }
   
   
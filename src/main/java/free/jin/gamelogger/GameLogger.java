@@ -41,12 +41,10 @@ import javax.swing.JFileChooser;
 import bsh.EvalError;
 import bsh.Interpreter;
 import free.chess.Chess;
-import free.chess.ChessMove;
 import free.chess.FischerTimeControl;
-import free.chess.Move;
 import free.chess.OddsTimeControl;
 import free.chess.Player;
-import free.chess.Position;
+import free.chess.PositionTimeline;
 import free.chess.TimeControl;
 import free.jin.Connection;
 import free.jin.Game;
@@ -379,8 +377,6 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
       return new String[]{allGamesLogFile};
     }
     else{
-      GameInfo gameInfo = (GameInfo)gamesToGameInfo.get(game);
-
       Interpreter bsh = new Interpreter();
       boolean isUserWhite = game.getUserPlayer().isWhite();
       TimeControl timeControl = game.getTimeControl();
@@ -407,7 +403,7 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
         bsh.set("rated", game.isRated());
         bsh.set("opponent", (isUserWhite ? game.getBlackName() : game.getWhiteName()));
         bsh.set("title", (isUserWhite ? game.getBlackTitles() : game.getWhiteTitles()));
-        bsh.set("moves", gameInfo.movelist.size());
+        bsh.set("moves", game.getTimeline().getMoveCount());
         
         bsh.set("userWhite", game.getUserPlayer() == Player.WHITE_PLAYER);
         bsh.set("userBlack", game.getUserPlayer() == Player.BLACK_PLAYER);
@@ -557,22 +553,22 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
         writeTag(out, "TimeControl", tc.getInitial()/1000 + "+" + tc.getIncrement()/1000);
       }
       writeTag(out, "Mode", "ICS");
-      if (!gameInfo.initPos.getFEN().equals(Chess.INITIAL_POSITION_FEN)){
+      PositionTimeline timeline = game.getTimeline();
+      String initFEN = timeline.getInitialPosition().getFEN();
+      if (!initFEN.equals(Chess.INITIAL_POSITION_FEN)){
         writeTag(out, "SetUp", "1");
-        writeTag(out, "FEN", gameInfo.initPos.getFEN());
+        writeTag(out, "FEN", initFEN);
       }
 
       out.writeBytes("\n");
 
-      Vector movelist = gameInfo.movelist;
-      int moveCount = movelist.size();
+      int moveCount = timeline.getMoveCount();
       StringBuffer lineBuf = new StringBuffer();
       StringBuffer buf = new StringBuffer();
       for (int i = 0; i < moveCount; i++){
         buf.setLength(0);
-        ChessMove move = (ChessMove)movelist.elementAt(i);
-        Player movingPlayer = move.getPlayer();
-        String san = move.getSAN();
+        Player movingPlayer = timeline.getMovingPlayer(i);
+        String san = timeline.getMoveStringRepresentation(i);
         if ((i == 0) && movingPlayer.isBlack()){
           buf.append("1... ");
           buf.append(san);
@@ -641,9 +637,7 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
   @Override
   public void gameStarted(GameStartEvent evt){
     Game game = evt.getGame();
-    Position initPos = game.getInitialPosition();
-    GameInfo gameInfo = new GameInfo(initPos);
-    gamesToGameInfo.put(game, gameInfo);
+    gamesToGameInfo.put(game, new GameInfo());
     
     game.addPropertyChangeListener(this);
   }
@@ -683,55 +677,16 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
   
 
   /**
-   * Saves the move.
+   * GameListener implementation. The moves and the initial position of the
+   * game are taken from its timeline when it's logged.
    */
 
   @Override
-  public void moveMade(MoveMadeEvent evt){
-    Game game = evt.getGame();
-    Move move = evt.getMove();
-    GameInfo gameInfo = (GameInfo)gamesToGameInfo.get(game);
-    gameInfo.movelist.addElement(move);
-  }
-
-  
-
-
-  /**
-   * Clears the move list.
-   */
-
+  public void moveMade(MoveMadeEvent evt){}
   @Override
-  public void positionChanged(PositionChangedEvent evt){
-    Game game = evt.getGame();
-    GameInfo gameInfo = (GameInfo)gamesToGameInfo.get(game);
-    gameInfo.initPos = evt.getPosition();
-  }
-
-
-
-  /**
-   * Removes the undone moves from the move list.
-   */
-
+  public void positionChanged(PositionChangedEvent evt){}
   @Override
-  public void takebackOccurred(TakebackEvent evt){
-    Game game = evt.getGame();
-    GameInfo gameInfo = (GameInfo)gamesToGameInfo.get(game);
-    Vector movelist = gameInfo.movelist;
-    int start = movelist.size() - 1;
-    int stop = Math.max(0, movelist.size() - evt.getTakebackCount());
-    for (int i = start; i >= stop; i--)
-      movelist.removeElementAt(i);
-  }
-
-
-
-
-  /**
-   * GameListener implementation.
-   */
-
+  public void takebackOccurred(TakebackEvent evt){}
   @Override
   public void illegalMoveAttempted(IllegalMoveEvent evt){}
   @Override
@@ -787,23 +742,6 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
     
     
     
-    /**
-     * The initial position.
-     */
-
-    public Position initPos;
-
-
-
-    /**
-     * The move list.
-     */
-
-    public Vector movelist;
-
-
-
-
     /**
      * A Date object representing the time when the game started.
      */
@@ -813,12 +751,10 @@ public class GameLogger extends Plugin implements GameListener, PropertyChangeLi
 
 
     /**
-     * Creates a new GameInfo with the specified initial position.
+     * Creates a new GameInfo for a game which has just started.
      */
 
-    public GameInfo(Position initPos){
-      this.initPos = initPos;
-      movelist = new Vector();
+    public GameInfo(){
       gameStartDate = new Date();
     }
     
@@ -0,0 +1,365 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+
+
+/**
+ * Writes line-based commands to a server on a dedicated thread, so that the
+ * threads sending commands never block on the network. Commands sent close
+ * together are encoded into a single buffer and written with a single write
+ * and flush - the writer waits up to a short flush window after the first
+ * command of a batch for more commands to arrive.
+ * <p>Urgent commands (moves, for example) skip the line: they are written,
+ * on their own and without waiting out the flush window, before any ordinary
+ * commands still waiting, and ordinary batches are kept short, so an urgent
+ * command is delayed by at most one short write already in progress.
+ * <p>Commands may optionally be logged to a <code>PrintStream</code>; the
+ * logging is done by the writer thread, after the command is written.
+ */
+
+public abstract class CommandWriter{
+
+
+
+  /**
+   * The maximum amount of characters (more or less) we write in a single
+   * batch of ordinary commands.
+   */
+
+  private static final int MAX_BATCH_LENGTH = 4096;
+
+
+
+  /**
+   * The stream we write into.
+   */
+
+  private final OutputStream out;
+
+
+
+  /**
+   * The charset with which commands are encoded.
+   */
+
+  private final Charset charset;
+
+
+
+  /**
+   * The stream we log commands into; <code>null</code> if none.
+   */
+
+  private final PrintStream logStream;
+
+
+
+  /**
+   * The flush window, in milliseconds.
+   */
+
+  private final long flushWindow;
+
+
+
+  /**
+   * The urgent commands waiting to be written.
+   */
+
+  private final LinkedList<Command> urgentCommands = new LinkedList<>();
+
+
+
+  /**
+   * The ordinary commands waiting to be written.
+   */
+
+  private final LinkedList<Command> commands = new LinkedList<>();
+
+
+
+  /**
+   * Whether we've been closed.
+   */
+
+  private boolean isClosed = false;
+
+
+
+  /**
+   * The buffer into which we encode a batch of commands. Only accessed by the
+   * writer thread.
+   */
+
+  private byte [] buf = new byte[MAX_BATCH_LENGTH];
+
+
+
+  /**
+   * The commands of the current batch. Only accessed by the writer thread.
+   */
+
+  private final LinkedList<Command> batch = new LinkedList<>();
+
+
+
+  /**
+   * Creates a new <code>CommandWriter</code> which writes into the specified
+   * stream, encoding commands with the specified charset, and optionally
+   * logging them into the specified <code>PrintStream</code>. Commands are
+   * terminated with <code>'\n'</code>. The writer thread, with the specified
+   * name, is started immediately.
+   *
+   * @param flushWindow The time, in milliseconds, to wait for more commands
+   * after the first ordinary command of a batch arrives; 0 to write whatever is
+   * available immediately.
+   */
+
+  public CommandWriter(OutputStream out, Charset charset, PrintStream logStream, String threadName, int flushWindow){
+    if (out == null)
+      throw new IllegalArgumentException("out may not be null");
+    if (charset == null)
+      throw new IllegalArgumentException("charset may not be null");
+    if (flushWindow < 0)
+      throw new IllegalArgumentException("flushWindow may not be negative: " + flushWindow);
+
+    this.out = out;
+    this.charset = charset;
+    this.logStream = logStream;
+    this.flushWindow = flushWindow;
+
+    Thread writerThread = new Thread(threadName){
+      @Override
+      public void run(){
+        writerLoop();
+      }
+    };
+    writerThread.setDaemon(true);
+    writerThread.setPriority(Thread.MAX_PRIORITY);
+    writerThread.start();
+  }
+
+
+
+  /**
+   * Queues the specified command for writing. This method never blocks on the
+   * network. If the command is urgent, it is written as soon as possible, ahead
+   * of any ordinary commands still waiting. If this writer has already been
+   * closed, either explicitly or because writing failed, the command is
+   * silently dropped and <code>false</code> is returned.
+   *
+   * @param command The command, without the line terminator.
+   * @param isUrgent Whether the command is urgent.
+   * @param log Whether to log the command, if we have a log stream.
+   *
+   * @return Whether the command was queued.
+   */
+
+  public synchronized boolean write(String command, boolean isUrgent, boolean log){
+    if (command == null)
+      throw new IllegalArgumentException("command may not be null");
+    if (isClosed)
+      return false;
+
+    Command cmd = new Command(command, log && (logStream != null));
+    if (isUrgent)
+      urgentCommands.addLast(cmd);
+    else
+      commands.addLast(cmd);
+
+    notifyAll();
+    return true;
+  }
+
+
+
+  /**
+   * Closes this <code>CommandWriter</code>. The writer thread exits, and any
+   * commands not yet written are discarded. Does not close the underlying
+   * stream.
+   */
+
+  public synchronized void close(){
+    isClosed = true;
+    urgentCommands.clear();
+    commands.clear();
+    notifyAll();
+  }
+
+
+
+  /**
+   * Invoked, in the writer thread, when writing fails. The writer thread exits
+   * after invoking this method.
+   */
+
+  protected abstract void writeFailed(IOException e);
+
+
+
+  /**
+   * The loop run by the writer thread.
+   */
+
+  private void writerLoop(){
+    try{
+      while (true){
+        synchronized(this){
+          if (!takeBatch())
+            return;
+        }
+
+        writeBatch();
+      }
+    } catch (IOException e){
+        synchronized(this){
+          if (isClosed)
+            return;
+          isClosed = true;
+        }
+        writeFailed(e);
+      }
+  }
+
+
+
+  /**
+   * Waits for commands to arrive and moves the next batch of them into
+   * <code>batch</code>. Returns <code>false</code> if we've been closed.
+   */
+
+  private boolean takeBatch(){
+    try{
+      while (!isClosed && urgentCommands.isEmpty() && commands.isEmpty())
+        wait();
+
+      // Give other commands a chance to join the batch, unless something urgent comes along
+      if (urgentCommands.isEmpty() && (flushWindow > 0)){
+        long windowEnd = System.currentTimeMillis() + flushWindow;
+        long waitTime = flushWindow;
+        while (!isClosed && urgentCommands.isEmpty() && (waitTime > 0)){
+          wait(waitTime);
+          waitTime = windowEnd - System.currentTimeMillis();
+        }
+      }
+    } catch (InterruptedException e){
+        return false;
+      }
+
+    if (isClosed)
+      return false;
+
+    if (!urgentCommands.isEmpty()){
+      batch.addAll(urgentCommands);
+      urgentCommands.clear();
+    }
+    else{
+      int length = 0;
+      do{
+        Command cmd = commands.removeFirst();
+        batch.addLast(cmd);
+        length += cmd.text.length() + 1;
+      } while (!commands.isEmpty() && (length < MAX_BATCH_LENGTH));
+    }
+
+    return true;
+  }
+
+
+
+  /**
+   * Encodes the commands in <code>batch</code> into the buffer and writes them
+   * with a single write, then logs them.
+   */
+
+  private void writeBatch() throws IOException{
+    int length = 0;
+    for (int i = 0; i < batch.size(); i++){
+      byte [] bytes = batch.get(i).text.getBytes(charset);
+      if (length + bytes.length + 1 > buf.length){
+        byte [] newBuf = new byte[Math.max(buf.length * 2, length + bytes.length + 1)];
+        System.arraycopy(buf, 0, newBuf, 0, length);
+        buf = newBuf;
+      }
+      System.arraycopy(bytes, 0, buf, length, bytes.length);
+      length += bytes.length;
+      buf[length++] = '\n';
+    }
+
+    out.write(buf, 0, length);
+    out.flush();
+
+    while (!batch.isEmpty()){
+      Command cmd = batch.removeFirst();
+      if (cmd.log)
+        logStream.println("SENDING COMMAND: " + cmd.text);
+    }
+  }
+
+
+
+  /**
+   * A command waiting to be written.
+   */
+
+  private static class Command{
+
+
+
+    /**
+     * The text of the command.
+     */
+
+    public final String text;
+
+
+
+    /**
+     * Whether to log the command.
+     */
+
+    public final boolean log;
+
+
+
+    /**
+     * Creates a new <code>Command</code>.
+     */
+
+    public Command(String text, boolean log){
+      this.text = text;
+      this.log = log;
+    }
+
+
+
+  }
+
+
+
+}
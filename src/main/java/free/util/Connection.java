@@ -22,11 +22,22 @@
 package free.util;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -72,6 +83,23 @@ public abstract class Connection{
   
   
   
+  /**
+   * The writer of commands to the server, <code>null</code> when not connected.
+   */
+  
+  private CommandWriter commandWriter;
+  
+  
+  
+  /**
+   * The stream into which we record the data received from the next session;
+   * <code>null</code> if none. Cleared once the session starts.
+   */
+  
+  private OutputStream sessionRecordStream = null;
+  
+  
+  
   /**
    * The username assigned to us by the server. This is <code>null</code> until we are logged in.
    */
@@ -159,8 +187,22 @@ public abstract class Connection{
     try{
       Socket tmpSocket = connectImpl(hostname, port);
       
+      // We coalesce commands ourselves, so Nagle's algorithm only delays them
+      try{
+        tmpSocket.setTcpNoDelay(true);
+      } catch (SocketException e){}
+      
+      OutputStream out = tmpSocket.getOutputStream();
+      
       synchronized(this){
         socket = tmpSocket;
+        commandWriter = new CommandWriter(out, getCommandCharset(), getCommandLogStream(),
+            "CommandWriterThread", Integer.getInteger("free.util.commandFlushWindow", 5).intValue()){
+          @Override
+          protected void writeFailed(IOException e){
+            connectionInterrupted(e);
+          }
+        };
       }
       
       execRunnable(new SafeRunnable(){
@@ -212,6 +254,53 @@ public abstract class Connection{
   
   
   
+  /**
+   * Sends the specified command (without the line terminator) to the server.
+   * The command is written asynchronously, by a dedicated writer thread, so
+   * this method never blocks on the network. Urgent commands, such as moves,
+   * are written immediately, ahead of any ordinary commands not yet written.
+   * Ordinary commands sent close together are coalesced into a single write.
+   * If writing has already failed, but the connection hasn't been torn down
+   * yet, the command is dropped - the connection is about to be reported as
+   * interrupted.
+   * 
+   * @param command The command.
+   * @param isUrgent Whether the command is urgent.
+   * @param log Whether to log the command into the stream returned by
+   * {@link #getCommandLogStream()}.
+   */
+  
+  protected final synchronized void writeCommand(String command, boolean isUrgent, boolean log){
+    if (!isConnected())
+      throw new IllegalStateException("Not connected");
+    
+    commandWriter.write(command, isUrgent, log);
+  }
+  
+  
+  
+  /**
+   * Returns the charset with which commands sent via {@link #writeCommand(String, boolean, boolean)} are encoded.
+   * The default implementation returns ISO-8859-1.
+   */
+  
+  protected Charset getCommandCharset(){
+    return Charset.forName("ISO-8859-1");
+  }
+  
+  
+  
+  /**
+   * Returns the stream into which commands sent via {@link #writeCommand(String, boolean, boolean)} are logged;
+   * <code>null</code> if they shouldn't be logged. The default implementation returns <code>null</code>.
+   */
+  
+  protected PrintStream getCommandLogStream(){
+    return null;
+  }
+  
+  
+  
   /**
    * Returns the host we're connected to.
    */
@@ -243,8 +332,14 @@ public abstract class Connection{
    */
   
   private void readerLoop(){
+    SessionRecorder recorder = null;
     try{
-      InputStream in = createInputStream(socket.getInputStream());
+      InputStream in = socket.getInputStream();
+      recorder = createSessionRecorder(in);
+      if (recorder != null)
+        in = recorder;
+      
+      in = createInputStream(in);
       while (true){
         Object message = readMessage(in);
         
@@ -257,6 +352,95 @@ public abstract class Connection{
     } catch (IOException e){
         connectionInterrupted(e);
       }
+      finally{
+        if (recorder != null)
+          recorder.stopRecording();
+      }
+  }
+  
+  
+  
+  /**
+   * Sets the stream into which the raw data received from the server will be
+   * recorded, in the format written by {@link SessionRecorder}. This must be
+   * called before connecting, and applies to the next session only - the
+   * stream is closed when that session ends, and must be set again to record
+   * another one. Passing <code>null</code> (the default) disables recording.
+   */
+  
+  public synchronized void setSessionRecordStream(OutputStream sessionRecordStream){
+    this.sessionRecordStream = sessionRecordStream;
+  }
+  
+  
+  
+  /**
+   * Creates the <code>SessionRecorder</code> recording the data read from the
+   * specified stream, if the session is to be recorded. The data is recorded
+   * into the stream set with {@link #setSessionRecordStream(OutputStream)} or,
+   * if none was set but the <code>free.util.sessionRecordFile</code> system
+   * property is, into a new file for each session, named by the property (see
+   * {@link #createSessionRecordFile(String)}). Failing to start recording
+   * is reported, but doesn't affect the connection; <code>null</code> is
+   * returned in that case, as well as if the session isn't to be recorded.
+   */
+  
+  private SessionRecorder createSessionRecorder(InputStream in){
+    OutputStream recordOut;
+    synchronized(this){
+      recordOut = sessionRecordStream;
+      sessionRecordStream = null;
+    }
+    
+    try{
+      if (recordOut == null){
+        String filename = null;
+        try{
+          filename = System.getProperty("free.util.sessionRecordFile");
+        } catch (SecurityException e){}
+        if (filename == null)
+          return null;
+        
+        recordOut = new BufferedOutputStream(new FileOutputStream(createSessionRecordFile(filename)));
+      }
+      
+      return new SessionRecorder(in, recordOut);
+    } catch (IOException e){
+        System.err.println("Unable to record the session:");
+        e.printStackTrace();
+        if (recordOut != null){
+          try{
+            recordOut.close();
+          } catch (IOException ex){}
+        }
+        return null;
+      }
+  }
+  
+  
+  
+  /**
+   * Returns the file into which to record a session, given the filename
+   * specified by the user. So that each session has its own recording, the
+   * file itself is used only if it doesn't exist yet; otherwise the first of
+   * <code>name-2.ext</code>, <code>name-3.ext</code>, etc. which doesn't exist.
+   */
+  
+  private static File createSessionRecordFile(String filename){
+    File file = new File(filename);
+    if (!file.exists())
+      return file;
+    
+    String name = file.getName();
+    int extIndex = name.lastIndexOf('.');
+    String base = extIndex > 0 ? name.substring(0, extIndex) : name;
+    String ext = extIndex > 0 ? name.substring(extIndex) : "";
+    
+    for (int i = 2; ; i++){
+      file = new File(file.getParentFile(), base + "-" + i + ext);
+      if (!file.exists())
+        return file;
+    }
   }
   
   
@@ -296,6 +480,8 @@ public abstract class Connection{
       return;           // invoked and closes the connection. Then the reader thread fails and invokes it again.
     
     try{
+      commandWriter.close();
+      commandWriter = null;
       socket.close(); // Closing the socket causes a SocketException to be thrown in the reader thread
       socket = null;
       username = null;
@@ -455,6 +641,30 @@ public abstract class Connection{
   
   
   
+  /**
+   * Creates an <code>Executor</code> which runs the tasks given to it one at a time, in the order they are given, on
+   * a daemon thread with the specified name. The thread is started when needed and exits after it's been idle for a
+   * while. Subclasses which want to handle messages in a thread other than the reader thread (so that reading is not
+   * held up by handling), but still in order, may implement {@link #execRunnable(Runnable)} with such an executor.
+   */
+  
+  protected static Executor createSerialExecutor(final String threadName){
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      new ThreadFactory(){
+        @Override
+        public Thread newThread(Runnable runnable){
+          Thread thread = new Thread(runnable, threadName);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    executor.allowCoreThreadTimeOut(true);
+    
+    return executor;
+  }
+  
+  
+  
   /**
    * Invoked when a connection to the server is established. The default implementation invokes
    * {@link #initiateLogin()}.
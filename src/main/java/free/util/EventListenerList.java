@@ -28,7 +28,9 @@ import java.util.EventListener;
 /**
  * A convenient storage place for Listeners. The listeners are stored in the
  * same manner as in javax.swing.event.EventListenerList.
- * <STRONG>Note:</STRONG> This class is not thread safe.
+ * Listeners may be added and removed from any thread - the array returned by
+ * {@link #getListenerList()} is never modified, so it may be iterated while
+ * other threads modify the list.
  */
 
 public class EventListenerList{
@@ -38,7 +40,7 @@ public class EventListenerList{
    * The array where we keep the listeners and their types.
    */
 
-  private Object [] listenerList = new Object[0];
+  private volatile Object [] listenerList = new Object[0];
 
 
 
@@ -46,7 +48,7 @@ public class EventListenerList{
    * Adds the given listener as a listener of the given type.
    */
 
-  public void add(Class listenerType, EventListener listener){
+  public synchronized void add(Class listenerType, EventListener listener){
     if (listener==null)
       return;
     if (!listenerType.isInstance(listener))
@@ -68,7 +70,7 @@ public class EventListenerList{
    * Removes the given listener as a listener of the specified type.
    */
 
-  public void remove(Class listenerType, EventListener listener){
+  public synchronized void remove(Class listenerType, EventListener listener){
     if (listener == null)
       return;
     if (!listenerType.isInstance(listener))
@@ -103,6 +105,7 @@ public class EventListenerList{
    */
 
   public int getListenerCount(Class listenerType){
+    Object [] listenerList = this.listenerList;
     int count = 0;
     for (int i=0;i<listenerList.length;i+=2){
       if (listenerList[i]==listenerType)
@@ -136,8 +139,15 @@ public class EventListenerList{
    */
 
   public EventListener [] getListeners(Class listenerType){
-    EventListener [] listeners = (EventListener [])Array.newInstance(listenerType,getListenerCount(listenerType));
+    Object [] listenerList = this.listenerList;
     int count = 0;
+    for (int i=0;i<listenerList.length;i+=2){
+      if (listenerType==listenerList[i])
+        count++;
+    }
+
+    EventListener [] listeners = (EventListener [])Array.newInstance(listenerType,count);
+    count = 0;
     for (int i=0;i<listenerList.length;i+=2){
       if (listenerType==listenerList[i])
         listeners[count++] = (EventListener)listenerList[i+1];
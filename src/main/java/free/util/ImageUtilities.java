@@ -21,8 +21,16 @@
 
 package free.util;
 
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 
 
@@ -173,6 +181,68 @@ public class ImageUtilities{
   
   
   
+  /**
+   * Creates a translucent image of the specified size, compatible with the
+   * graphics configuration of the specified component or, if the component is
+   * <code>null</code> or not displayed, of the default screen. Such images are
+   * the quickest to draw onto the screen.
+   */
+  
+  public static BufferedImage createCompatibleImage(int width, int height, Component target){
+    GraphicsConfiguration config = target == null ? null : target.getGraphicsConfiguration();
+    if ((config == null) && !GraphicsEnvironment.isHeadless())
+      config = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+    
+    if (config == null)
+      return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    else
+      return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+  }
+  
+  
+  
+  /**
+   * Returns a version of the specified (fully loaded) image, scaled to the
+   * specified size with bilinear interpolation, as an image compatible with
+   * the graphics configuration of the specified component (see
+   * {@link #createCompatibleImage(int, int, Component)}). When shrinking, the
+   * image is halved repeatedly until the last step is less than half, which
+   * looks about as good as <code>Image.SCALE_SMOOTH</code>, but takes a small
+   * fraction of the time.
+   */
+  
+  public static BufferedImage scaleImage(Image image, int width, int height, Component target){
+    if ((width <= 0) || (height <= 0))
+      throw new IllegalArgumentException("Bad size: " + width + "x" + height);
+    
+    int currentWidth = image.getWidth(null);
+    int currentHeight = image.getHeight(null);
+    if ((currentWidth <= 0) || (currentHeight <= 0))
+      throw new IllegalArgumentException("The image is not loaded");
+    
+    Image current = image;
+    do{
+      currentWidth = currentWidth > width ? Math.max(currentWidth / 2, width) : width;
+      currentHeight = currentHeight > height ? Math.max(currentHeight / 2, height) : height;
+      
+      BufferedImage scaled = createCompatibleImage(currentWidth, currentHeight, target);
+      Graphics2D g = scaled.createGraphics();
+      try{
+        g.setComposite(AlphaComposite.Src);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+      } finally{
+          g.dispose();
+        }
+      
+      current = scaled;
+    } while ((currentWidth != width) || (currentHeight != height));
+    
+    return (BufferedImage)current;
+  }
+  
+  
+  
   /**
    * This class is an implementation of ImageObserver which notifies a given
    * lock when loading of the Image is done. This can be used to wait until a
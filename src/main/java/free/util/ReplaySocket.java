@@ -0,0 +1,156 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+
+/**
+ * A <code>Socket</code> which isn't connected to anything - its input is read
+ * from a given <code>InputStream</code> (normally a {@link SessionPlayer}) and
+ * its output is discarded. Returning it from
+ * {@link Connection#connectImpl(String, int)} lets a <code>Connection</code>
+ * run against a recorded session without a network.
+ */
+
+public class ReplaySocket extends Socket{
+
+
+
+  /**
+   * The stream from which the socket's input is read.
+   */
+
+  private final InputStream in;
+
+
+
+  /**
+   * The stream into which the socket's output is written.
+   */
+
+  private final OutputStream out = new OutputStream(){
+    @Override
+    public void write(int b){}
+    @Override
+    public void write(byte [] buf, int offset, int length){}
+  };
+
+
+
+  /**
+   * Whether the socket has been closed.
+   */
+
+  private boolean isClosed = false;
+
+
+
+  /**
+   * Creates a new <code>ReplaySocket</code> whose input is read from the
+   * specified <code>InputStream</code>.
+   */
+
+  public ReplaySocket(InputStream in){
+    if (in == null)
+      throw new IllegalArgumentException("in may not be null");
+
+    this.in = in;
+  }
+
+
+
+  /**
+   * Returns the stream from which the socket's input is read.
+   */
+
+  @Override
+  public InputStream getInputStream(){
+    return in;
+  }
+
+
+
+  /**
+   * Returns a stream which discards everything written into it.
+   */
+
+  @Override
+  public OutputStream getOutputStream(){
+    return out;
+  }
+
+
+
+  /**
+   * Does nothing, as there is no real connection.
+   */
+
+  @Override
+  public void setTcpNoDelay(boolean on){
+
+  }
+
+
+
+  /**
+   * Returns <code>true</code> until closed.
+   */
+
+  @Override
+  public synchronized boolean isConnected(){
+    return !isClosed;
+  }
+
+
+
+  /**
+   * Returns whether the socket has been closed.
+   */
+
+  @Override
+  public synchronized boolean isClosed(){
+    return isClosed;
+  }
+
+
+
+  /**
+   * Closes the socket and the input stream.
+   */
+
+  @Override
+  public synchronized void close() throws IOException{
+    if (isClosed)
+      return;
+
+    isClosed = true;
+    in.close();
+  }
+
+
+
+}
@@ -0,0 +1,463 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util;
+
+import java.awt.Component;
+import java.awt.Image;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import free.util.metrics.Histogram;
+import free.util.metrics.MetricsRegistry;
+
+
+/**
+ * A cache of scaled versions of images, keyed by the image and the size. The
+ * images are scaled (see {@link ImageUtilities#scaleImage(Image, int, int, Component)})
+ * on a background thread - until the version of the requested size is ready,
+ * the cached version of the closest size is returned instead, to be drawn
+ * scaled, and the components which requested it are repainted once it's
+ * ready. The least recently used images are discarded when their total amount
+ * of pixels exceeds the capacity of the cache.
+ * <p>A single, shared instance, used by the image based board painters, is
+ * available via {@link #getInstance()}. The time it takes to scale an image is
+ * recorded in the {@link MetricsRegistry} as <code>image.scaleTime</code>.
+ */
+
+public class ScaledImageCache{
+
+
+
+  /**
+   * The shared instance.
+   */
+
+  private static final ScaledImageCache INSTANCE = new ScaledImageCache(8 * 1024 * 1024);
+
+
+
+  /**
+   * The histogram of the time it takes to scale an image.
+   */
+
+  private static final Histogram SCALE_TIME = MetricsRegistry.getInstance().getHistogram("image.scaleTime");
+
+
+
+  /**
+   * The maximum amount of keys of images which failed to scale that we
+   * remember.
+   */
+
+  private static final int MAX_FAILED_KEYS = 64;
+
+
+
+  /**
+   * The maximum total amount of pixels in the cached images.
+   */
+
+  private final int capacity;
+
+
+
+  /**
+   * Maps <code>Key</code>s to the scaled <code>Image</code>s, from the least
+   * recently used to the most recently used.
+   */
+
+  private final LinkedHashMap<Key, Image> scaledImages = new LinkedHashMap<>(16, 0.75f, true);
+
+
+
+  /**
+   * The total amount of pixels in the cached images.
+   */
+
+  private int pixelCount = 0;
+
+
+
+  /**
+   * The <code>ScalingRequest</code>s waiting to be handled by the scaling
+   * thread, oldest first.
+   */
+
+  private final LinkedList<ScalingRequest> requests = new LinkedList<>();
+
+
+
+  /**
+   * The request the scaling thread is currently handling; <code>null</code>
+   * if none.
+   */
+
+  private ScalingRequest currentRequest = null;
+
+
+
+  /**
+   * The <code>Key</code>s of the images which failed to scale, oldest first.
+   * These aren't requested again, so that an image which can't be scaled
+   * doesn't get scaled again on every repaint.
+   */
+
+  private final LinkedHashSet<Key> failedKeys = new LinkedHashSet<>();
+
+
+
+  /**
+   * The thread scaling the images; created when an image is requested and
+   * there is no such thread, either because none has been needed yet, or
+   * because the previous one died.
+   */
+
+  private Thread scalingThread = null;
+
+
+
+  /**
+   * Creates a new <code>ScaledImageCache</code> with the specified capacity,
+   * in pixels.
+   */
+
+  public ScaledImageCache(int capacity){
+    if (capacity <= 0)
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+    this.capacity = capacity;
+  }
+
+
+
+  /**
+   * Returns the shared <code>ScaledImageCache</code>.
+   */
+
+  public static ScaledImageCache getInstance(){
+    return INSTANCE;
+  }
+
+
+
+  /**
+   * Returns the specified (fully loaded) image scaled to the specified size,
+   * if it's in the cache. Otherwise, requests it to be scaled and returns the
+   * cached version of the image closest to the specified size, or the image
+   * itself if there is none. The returned image should be drawn scaled to the
+   * specified size. Once the scaled image is ready, the specified component,
+   * unless <code>null</code>, is repainted.
+   */
+
+  public synchronized Image getScaledImage(Image image, int width, int height, Component target){
+    Key key = new Key(image, width, height);
+    Image scaledImage = scaledImages.get(key);
+    if (scaledImage != null)
+      return scaledImage;
+
+    if (!failedKeys.contains(key))
+      requestScaling(key, target);
+
+    Image closestImage = image;
+    int closestDistance = Integer.MAX_VALUE;
+    for (Iterator<Map.Entry<Key, Image>> i = scaledImages.entrySet().iterator(); i.hasNext();){
+      Map.Entry<Key, Image> entry = i.next();
+      Key cachedKey = entry.getKey();
+      if (cachedKey.image != image)
+        continue;
+
+      int distance = Math.abs(cachedKey.width - width) + Math.abs(cachedKey.height - height);
+      if (distance < closestDistance){
+        closestImage = entry.getValue();
+        closestDistance = distance;
+      }
+    }
+
+    return closestImage;
+  }
+
+
+
+  /**
+   * Adds a request to scale an image, as specified by the key, for the
+   * specified component. Since a component only needs the image at its current
+   * size, the component's earlier requests for other sizes of the same image
+   * are withdrawn, so that when a component is resized, only the last size
+   * is actually scaled.
+   */
+
+  private void requestScaling(Key key, Component target){
+    ScalingRequest existingRequest = null;
+    if ((currentRequest != null) && currentRequest.key.equals(key))
+      existingRequest = currentRequest;
+
+    for (Iterator<ScalingRequest> i = requests.iterator(); i.hasNext();){
+      ScalingRequest request = i.next();
+      if (request.key.equals(key))
+        existingRequest = request;
+      else if ((target != null) && (request.key.image == key.image)){
+        request.components.remove(target);
+        if (request.components.isEmpty())
+          i.remove();
+      }
+    }
+
+    if (existingRequest == null){
+      existingRequest = new ScalingRequest(key);
+      requests.addLast(existingRequest);
+      notifyAll();
+    }
+
+    if (target != null)
+      existingRequest.components.add(target);
+
+    if (scalingThread == null){
+      scalingThread = new Thread("ImageScaler"){
+        @Override
+        public void run(){
+          scalingLoop();
+        }
+      };
+      scalingThread.setDaemon(true);
+      scalingThread.start();
+    }
+  }
+
+
+
+  /**
+   * Remembers that the image with the specified key failed to scale,
+   * forgetting the oldest such image if there are too many.
+   */
+
+  private void addFailedKey(Key key){
+    failedKeys.add(key);
+    if (failedKeys.size() > MAX_FAILED_KEYS){
+      Iterator<Key> i = failedKeys.iterator();
+      i.next();
+      i.remove();
+    }
+  }
+
+
+
+  /**
+   * The loop run by the scaling thread. If the thread dies, for example with
+   * an <code>OutOfMemoryError</code>, the image it was scaling is marked as
+   * failed and the next request starts a new thread.
+   */
+
+  private void scalingLoop(){
+    try{
+      runScalingLoop();
+    } finally{
+        synchronized(this){
+          if (currentRequest != null){
+            addFailedKey(currentRequest.key);
+            currentRequest = null;
+          }
+          if (scalingThread == Thread.currentThread())
+            scalingThread = null;
+        }
+      }
+  }
+
+
+
+  /**
+   * Scales the requested images, until interrupted.
+   */
+
+  private void runScalingLoop(){
+    while (true){
+      Key key;
+      Component target;
+      synchronized(this){
+        while (requests.isEmpty()){
+          try{
+            wait();
+          } catch (InterruptedException e){
+              return;
+            }
+        }
+        currentRequest = requests.removeFirst();
+        key = currentRequest.key;
+        target = currentRequest.components.isEmpty() ? null : currentRequest.components.iterator().next();
+      }
+
+      Image scaledImage = null;
+      try{
+        long startTime = System.nanoTime();
+        scaledImage = ImageUtilities.scaleImage(key.image, key.width, key.height, target);
+        SCALE_TIME.recordSince(startTime);
+      } catch (RuntimeException e){
+          e.printStackTrace();
+        }
+
+      Component [] components;
+      synchronized(this){
+        components = currentRequest.components.toArray(new Component[currentRequest.components.size()]);
+        currentRequest = null;
+
+        if (scaledImage == null){
+          addFailedKey(key);
+          continue;
+        }
+
+        if (scaledImages.put(key, scaledImage) == null)
+          pixelCount += key.width * key.height;
+
+        // Evict the least recently used images, but always keep the newest one
+        for (Iterator<Key> i = scaledImages.keySet().iterator(); (pixelCount > capacity) && (scaledImages.size() > 1);){
+          Key evictedKey = i.next();
+          i.remove();
+          pixelCount -= evictedKey.width * evictedKey.height;
+        }
+      }
+
+      for (int i = 0; i < components.length; i++)
+        components[i].repaint();
+    }
+  }
+
+
+
+  /**
+   * The key of a scaled image - the original image (compared by identity) and
+   * the size.
+   */
+
+  private static class Key{
+
+
+
+    /**
+     * The original image.
+     */
+
+    public final Image image;
+
+
+
+    /**
+     * The width of the scaled image.
+     */
+
+    public final int width;
+
+
+
+    /**
+     * The height of the scaled image.
+     */
+
+    public final int height;
+
+
+
+    /**
+     * Creates a new <code>Key</code>.
+     */
+
+    public Key(Image image, int width, int height){
+      this.image = image;
+      this.width = width;
+      this.height = height;
+    }
+
+
+
+    /**
+     * Returns whether the specified object is a <code>Key</code> for the same
+     * image and size.
+     */
+
+    @Override
+    public boolean equals(Object o){
+      if (!(o instanceof Key))
+        return false;
+
+      Key key = (Key)o;
+      return (image == key.image) && (width == key.width) && (height == key.height);
+    }
+
+
+
+    /**
+     * Returns the hash code of this key.
+     */
+
+    @Override
+    public int hashCode(){
+      return System.identityHashCode(image) ^ (width << 16) ^ height;
+    }
+
+
+
+  }
+
+
+
+  /**
+   * A request to scale an image.
+   */
+
+  private static class ScalingRequest{
+
+
+
+    /**
+     * The key of the requested image.
+     */
+
+    public final Key key;
+
+
+
+    /**
+     * The components to repaint once the image is scaled.
+     */
+
+    public final Set<Component> components = new HashSet<>(2);
+
+
+
+    /**
+     * Creates a new <code>ScalingRequest</code> for the specified key.
+     */
+
+    public ScalingRequest(Key key){
+      this.key = key;
+    }
+
+
+
+  }
+
+
+
+}
@@ -0,0 +1,371 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.util;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+
+/**
+ * An <code>InputStream</code> which plays back a session recorded by
+ * {@link SessionRecorder}, returning the recorded data either at the pace it
+ * was originally received, or as fast as it is read.
+ * <p>When playing back at the original pace, each recorded chunk becomes
+ * available at the time (relative to the start of the playback) it was
+ * originally received. If the reader asks for a chunk after that time, it has
+ * fallen behind; the player keeps track of how far behind, which measures how
+ * well the reader keeps up with the load of the recorded session.
+ */
+
+public class SessionPlayer extends InputStream{
+
+
+
+  /**
+   * The recording.
+   */
+
+  private final DataInputStream recording;
+
+
+
+  /**
+   * Whether we play back at the original pace.
+   */
+
+  private final boolean isRealTime;
+
+
+
+  /**
+   * The wall-clock time, in milliseconds, at which the session was recorded.
+   */
+
+  private final long recordingTime;
+
+
+
+  /**
+   * The time, in nanoseconds, at which playback started; 0 if it hasn't yet.
+   */
+
+  private long startTime = 0;
+
+
+
+  /**
+   * The time, relative to the start of the recording, at which the current
+   * chunk was received, in nanoseconds.
+   */
+
+  private long chunkTime = 0;
+
+
+
+  /**
+   * The current chunk.
+   */
+
+  private byte [] chunk = new byte[0];
+
+
+
+  /**
+   * The index of the next byte to read in the current chunk.
+   */
+
+  private int chunkPos = 0;
+
+
+
+  /**
+   * The length of the current chunk.
+   */
+
+  private int chunkLength = 0;
+
+
+
+  /**
+   * Whether we've reached the end of the recording.
+   */
+
+  private boolean isEnd = false;
+
+
+
+  /**
+   * The amount of chunks played back so far.
+   */
+
+  private long chunkCount = 0;
+
+
+
+  /**
+   * The amount of bytes played back so far.
+   */
+
+  private long byteCount = 0;
+
+
+
+  /**
+   * The sum of the times, in nanoseconds, by which the reader was late to
+   * read each chunk.
+   */
+
+  private long totalLag = 0;
+
+
+
+  /**
+   * The largest time, in nanoseconds, by which the reader was late to read a
+   * chunk.
+   */
+
+  private long maxLag = 0;
+
+
+
+  /**
+   * Creates a new <code>SessionPlayer</code> playing back the specified
+   * recording, either at the original pace or as fast as possible.
+   */
+
+  public SessionPlayer(InputStream recording, boolean isRealTime) throws IOException{
+    this.recording = new DataInputStream(recording);
+    this.isRealTime = isRealTime;
+
+    byte [] magic = new byte[SessionRecorder.MAGIC.length()];
+    this.recording.readFully(magic);
+    if (!SessionRecorder.MAGIC.equals(new String(magic, "ISO-8859-1")))
+      throw new IOException("Not a session recording");
+
+    this.recordingTime = this.recording.readLong();
+  }
+
+
+
+  /**
+   * Reads the next chunk, waiting until it's time to return it if playing back
+   * at the original pace. Returns <code>false</code> if the end of the
+   * recording is reached.
+   */
+
+  private boolean nextChunk() throws IOException{
+    if (isEnd)
+      return false;
+
+    long delta;
+    try{
+      delta = readVarLong();
+    } catch (EOFException e){
+        isEnd = true;
+        return false;
+      }
+
+    int length = (int)readVarLong();
+    if (length > chunk.length)
+      chunk = new byte[length];
+    recording.readFully(chunk, 0, length);
+    chunkPos = 0;
+    chunkLength = length;
+    chunkTime += delta;
+
+    long now = System.nanoTime();
+    if (startTime == 0)
+      startTime = now - chunkTime;
+
+    if (isRealTime){
+      long dueTime = startTime + chunkTime;
+      long lag = now - dueTime;
+      if (lag < 0){
+        try{
+          long waitTime = -lag;
+          Thread.sleep(waitTime / 1000000, (int)(waitTime % 1000000));
+        } catch (InterruptedException e){
+            throw new InterruptedIOException();
+          }
+      }
+      else{
+        totalLag += lag;
+        if (lag > maxLag)
+          maxLag = lag;
+      }
+    }
+
+    chunkCount++;
+    byteCount += length;
+
+    return true;
+  }
+
+
+
+  /**
+   * Reads a single byte.
+   */
+
+  @Override
+  public synchronized int read() throws IOException{
+    while (chunkPos == chunkLength)
+      if (!nextChunk())
+        return -1;
+
+    return chunk[chunkPos++] & 0xff;
+  }
+
+
+
+  /**
+   * Reads bytes from the current chunk (moving on to the next one, if it's
+   * exhausted) into the specified array.
+   */
+
+  @Override
+  public synchronized int read(byte [] buf, int offset, int length) throws IOException{
+    if (length == 0)
+      return 0;
+
+    while (chunkPos == chunkLength)
+      if (!nextChunk())
+        return -1;
+
+    int count = Math.min(length, chunkLength - chunkPos);
+    System.arraycopy(chunk, chunkPos, buf, offset, count);
+    chunkPos += count;
+    return count;
+  }
+
+
+
+  /**
+   * Returns the amount of bytes remaining in the current chunk.
+   */
+
+  @Override
+  public synchronized int available(){
+    return chunkLength - chunkPos;
+  }
+
+
+
+  /**
+   * Closes the recording.
+   */
+
+  @Override
+  public void close() throws IOException{
+    recording.close();
+  }
+
+
+
+  /**
+   * Returns the wall-clock time, in milliseconds, at which the session was
+   * recorded.
+   */
+
+  public long getRecordingTime(){
+    return recordingTime;
+  }
+
+
+
+  /**
+   * Returns the length of the recording played back so far, in nanoseconds.
+   */
+
+  public synchronized long getPlayedTime(){
+    return chunkTime;
+  }
+
+
+
+  /**
+   * Returns the amount of chunks played back so far.
+   */
+
+  public synchronized long getChunkCount(){
+    return chunkCount;
+  }
+
+
+
+  /**
+   * Returns the amount of bytes played back so far.
+   */
+
+  public synchronized long getByteCount(){
+    return byteCount;
+  }
+
+
+
+  /**
+   * Returns the average time, in nanoseconds, by which the reader was late to
+   * read a chunk. Always 0 when not playing back at the original pace.
+   */
+
+  public synchronized long getAverageLag(){
+    return chunkCount == 0 ? 0 : totalLag / chunkCount;
+  }
+
+
+
+  /**
+   * Returns the largest time, in nanoseconds, by which the reader was late to
+   * read a chunk. Always 0 when not playing back at the original pace.
+   */
+
+  public synchronized long getMaxLag(){
+    return maxLag;
+  }
+
+
+
+  /**
+   * Reads a variable-length integer written by <code>SessionRecorder</code>.
+   */
+
+  private long readVarLong() throws IOException{
+    long value = 0;
+    int shift = 0;
+    while (true){
+      int b = recording.readUnsignedByte();
+      value |= (long)(b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+      shift += 7;
+      if (shift > 63)
+        throw new IOException("Corrupt session recording");
+    }
+  }
+
+
+
+}
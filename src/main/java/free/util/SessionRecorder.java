@@ -0,0 +1,220 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.util;
+
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * An <code>InputStream</code> which passes through the data read from an
+ * underlying stream (normally a server socket's), recording it, along with the
+ * time at which it was read, into a session recording. The recording can then
+ * be played back with {@link SessionPlayer}.
+ * <p>The format of a recording is the magic string <code>"JSR1"</code>, the
+ * wall-clock time at which recording started (a long, in milliseconds),
+ * followed by one entry per successful read: the time since the previous entry
+ * (or since the start of the recording) in nanoseconds, the amount of bytes
+ * read, and the bytes themselves. The time and the amount of bytes are written
+ * as variable-length integers, 7 bits per byte, least significant first.
+ * <p>Errors writing the recording are reported once and then stop the
+ * recording, without affecting reading.
+ */
+
+public class SessionRecorder extends FilterInputStream{
+
+
+
+  /**
+   * The magic string at the beginning of each recording.
+   */
+
+  static final String MAGIC = "JSR1";
+
+
+
+  /**
+   * The stream we write the recording into; <code>null</code> once we've
+   * stopped recording.
+   */
+
+  private DataOutputStream recordOut;
+
+
+
+  /**
+   * The time, in nanoseconds, of the last recorded entry.
+   */
+
+  private long lastTime;
+
+
+
+  /**
+   * Creates a new <code>SessionRecorder</code> which reads from the specified
+   * <code>InputStream</code> and records into the specified
+   * <code>OutputStream</code>.
+   */
+
+  public SessionRecorder(InputStream in, OutputStream recordOut) throws IOException{
+    super(in);
+
+    if (recordOut == null)
+      throw new IllegalArgumentException("recordOut may not be null");
+
+    this.recordOut = new DataOutputStream(recordOut);
+    this.recordOut.writeBytes(MAGIC);
+    this.recordOut.writeLong(System.currentTimeMillis());
+    this.recordOut.flush();
+    this.lastTime = System.nanoTime();
+  }
+
+
+
+  /**
+   * Reads a single byte and records it.
+   */
+
+  @Override
+  public int read() throws IOException{
+    int b = in.read();
+    if (b >= 0)
+      record(new byte[]{(byte)b}, 0, 1);
+    return b;
+  }
+
+
+
+  /**
+   * Reads into the specified array and records the bytes read.
+   */
+
+  @Override
+  public int read(byte [] buf, int offset, int length) throws IOException{
+    int count = in.read(buf, offset, length);
+    if (count > 0)
+      record(buf, offset, count);
+    return count;
+  }
+
+
+
+  /**
+   * Skipping is not supported, as we'd have to record the skipped bytes; reads
+   * and discards them instead.
+   */
+
+  @Override
+  public long skip(long n) throws IOException{
+    byte [] buf = new byte[(int)Math.min(n, 8192)];
+    int count = read(buf, 0, buf.length);
+    return count < 0 ? 0 : count;
+  }
+
+
+
+  /**
+   * Returns <code>false</code>, as marking is not supported.
+   */
+
+  @Override
+  public boolean markSupported(){
+    return false;
+  }
+
+
+
+  /**
+   * Closes the underlying stream and the recording.
+   */
+
+  @Override
+  public void close() throws IOException{
+    try{
+      super.close();
+    } finally{
+        stopRecording();
+      }
+  }
+
+
+
+  /**
+   * Records the specified bytes as an entry.
+   */
+
+  private synchronized void record(byte [] buf, int offset, int length){
+    if (recordOut == null)
+      return;
+
+    long time = System.nanoTime();
+    try{
+      writeVarLong(recordOut, time - lastTime);
+      writeVarLong(recordOut, length);
+      recordOut.write(buf, offset, length);
+      recordOut.flush();
+      lastTime = time;
+    } catch (IOException e){
+        e.printStackTrace();
+        stopRecording();
+      }
+  }
+
+
+
+  /**
+   * Stops recording and closes the recording stream.
+   */
+
+  public synchronized void stopRecording(){
+    if (recordOut == null)
+      return;
+
+    try{
+      recordOut.close();
+    } catch (IOException e){
+        e.printStackTrace();
+      }
+    recordOut = null;
+  }
+
+
+
+  /**
+   * Writes the specified non-negative long as a variable-length integer.
+   */
+
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException{
+    while ((value & ~0x7fL) != 0){
+      out.write((int)((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int)value);
+  }
+
+
+
+}
@@ -0,0 +1,228 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package free.util;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Date;
+
+
+/**
+ * A driver which plays back a session recorded by {@link SessionRecorder}
+ * through a {@link Connection}, without a network, and reports how quickly the
+ * connection parsed and dispatched the messages. Comparing the reports of two
+ * builds on the same recording shows throughput and latency regressions.
+ * <p>Subclasses create the actual <code>Connection</code>, which must use the
+ * given socket and hand every runnable passed to its
+ * <code>execRunnable</code> method to {@link #execRunnable(Runnable)}, and
+ * invoke {@link #replayFinished()} when disconnected.
+ */
+
+public abstract class SessionReplay{
+
+
+
+  /**
+   * The times, in nanoseconds, it took to handle each message.
+   */
+
+  private long [] handlingTimes = new long[1024];
+
+
+
+  /**
+   * The amount of messages handled.
+   */
+
+  private int messageCount = 0;
+
+
+
+  /**
+   * Whether the replay has finished.
+   */
+
+  private boolean isFinished = false;
+
+
+
+  /**
+   * Creates the connection to play the session back through. The connection's
+   * <code>connectImpl</code> method must return the specified socket.
+   */
+
+  protected abstract Connection createConnection(Socket socket);
+
+
+
+  /**
+   * Runs the specified runnable, timing it. Connections created by
+   * {@link #createConnection(Socket)} must delegate their
+   * <code>execRunnable</code> method to this one.
+   */
+
+  protected void execRunnable(Runnable runnable){
+    long startTime = System.nanoTime();
+    runnable.run();
+    long time = System.nanoTime() - startTime;
+
+    synchronized(this){
+      if (messageCount == handlingTimes.length){
+        long [] newHandlingTimes = new long[handlingTimes.length * 2];
+        System.arraycopy(handlingTimes, 0, newHandlingTimes, 0, messageCount);
+        handlingTimes = newHandlingTimes;
+      }
+      handlingTimes[messageCount++] = time;
+    }
+  }
+
+
+
+  /**
+   * Connections created by {@link #createConnection(Socket)} must invoke this
+   * method when they're disconnected, which happens when the end of the
+   * recording is reached.
+   */
+
+  protected synchronized void replayFinished(){
+    isFinished = true;
+    notifyAll();
+  }
+
+
+
+  /**
+   * Plays back the specified recording, either at the original pace or as fast
+   * as possible, and prints a report to the specified stream.
+   */
+
+  public void replay(String filename, boolean isRealTime, PrintStream out) throws IOException, InterruptedException{
+    SessionPlayer player = new SessionPlayer(new BufferedInputStream(new FileInputStream(filename)), isRealTime);
+    Connection conn = createConnection(new ReplaySocket(player));
+
+    long startTime = System.nanoTime();
+    conn.initiateConnect("replay", 0);
+    synchronized(this){
+      while (!isFinished)
+        wait();
+    }
+    long wallTime = System.nanoTime() - startTime;
+
+    long [] times;
+    synchronized(this){
+      times = new long[messageCount];
+      System.arraycopy(handlingTimes, 0, times, 0, messageCount);
+    }
+    Arrays.sort(times);
+    long totalTime = 0;
+    for (int i = 0; i < times.length; i++)
+      totalTime += times[i];
+
+    out.println("Recording:          " + filename + " (recorded at " + new Date(player.getRecordingTime()) + ")");
+    out.println("Mode:               " + (isRealTime ? "original pace" : "as fast as possible"));
+    out.println("Recorded duration:  " + formatMillis(player.getPlayedTime()) + " ms");
+    out.println("Replay duration:    " + formatMillis(wallTime) + " ms");
+    out.println("Bytes:              " + player.getByteCount() + " in " + player.getChunkCount() + " reads");
+    out.println("Messages:           " + times.length);
+    if (times.length > 0){
+      out.println("Handling time:      " + formatMillis(totalTime) + " ms total, " +
+        (long)(times.length / (totalTime / 1e9)) + " messages/s, " +
+        (long)(player.getByteCount() / (totalTime / 1e9) / 1024) + " KB/s");
+      out.println("Per message (us):   mean " + formatMicros(totalTime / times.length) +
+        ", p50 " + formatMicros(percentile(times, 50)) +
+        ", p99 " + formatMicros(percentile(times, 99)) +
+        ", p99.9 " + formatMicros(percentile(times, 99.9)) +
+        ", max " + formatMicros(times[times.length - 1]));
+    }
+    if (isRealTime)
+      out.println("Reader lag (ms):    mean " + formatMillis(player.getAverageLag()) +
+        ", max " + formatMillis(player.getMaxLag()));
+  }
+
+
+
+  /**
+   * Returns the specified percentile of the specified sorted values.
+   */
+
+  private static long percentile(long [] sortedValues, double percentile){
+    int index = (int)Math.ceil(percentile / 100 * sortedValues.length) - 1;
+    return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+  }
+
+
+
+  /**
+   * Formats the specified amount of nanoseconds as milliseconds.
+   */
+
+  private static String formatMillis(long nanos){
+    return String.valueOf(nanos / 1000000) + "." + String.valueOf(1000 + (nanos / 1000) % 1000).substring(1);
+  }
+
+
+
+  /**
+   * Formats the specified amount of nanoseconds as microseconds.
+   */
+
+  private static String formatMicros(long nanos){
+    return String.valueOf(nanos / 1000) + "." + String.valueOf(1000 + nanos % 1000).substring(1);
+  }
+
+
+
+  /**
+   * Parses the command line arguments common to all replay drivers
+   * (<code>[-realtime] &lt;recording file&gt;</code>) and plays back the
+   * recording, printing the report to the standard output stream.
+   */
+
+  protected void replayMain(String [] args){
+    boolean isRealTime = (args.length == 2) && "-realtime".equals(args[0]);
+    String filename = (args.length == (isRealTime ? 2 : 1)) ? args[args.length - 1] : null;
+
+    if (filename == null){
+      System.err.println("Usage: java " + getClass().getName() + " [-realtime] <recording file>");
+      System.exit(1);
+    }
+
+    try{
+      replay(filename, isRealTime, System.out);
+    } catch (IOException e){
+        e.printStackTrace();
+        System.exit(2);
+      }
+      catch (InterruptedException e){
+        System.exit(3);
+      }
+    System.exit(0);
+  }
+
+
+
+}
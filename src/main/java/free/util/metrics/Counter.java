@@ -0,0 +1,86 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A metric which counts occurrences of something (messages of a certain type
+ * arriving, for example). The {@link MetricsRegistry} it's obtained from keeps
+ * track of the rate at which it grows.
+ */
+
+public final class Counter extends RatedMetric{
+
+
+
+  /**
+   * The count.
+   */
+
+  private final AtomicLong count = new AtomicLong();
+
+
+
+  /**
+   * Creates a new <code>Counter</code> with the specified name.
+   */
+
+  Counter(String name){
+    super(name);
+  }
+
+
+
+  /**
+   * Increments the count by one.
+   */
+
+  public void increment(){
+    count.incrementAndGet();
+  }
+
+
+
+  /**
+   * Adds the specified amount to the count.
+   */
+
+  public void add(long amount){
+    count.addAndGet(amount);
+  }
+
+
+
+  /**
+   * Returns the count.
+   */
+
+  @Override
+  public long getCount(){
+    return count.get();
+  }
+
+
+
+}
@@ -0,0 +1,202 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A metric which records the distribution of durations (of parsing a message,
+ * for example). Durations are kept in buckets of exponentially growing size -
+ * bucket <code>i</code> holds the durations between <code>2<sup>i</sup></code>
+ * and <code>2<sup>i+1</sup></code> nanoseconds - so recording a duration is
+ * just a few atomic increments, and percentiles are accurate to within a
+ * factor of two. The count of recorded durations is rated, like a
+ * {@link Counter}'s.
+ */
+
+public final class Histogram extends RatedMetric{
+
+
+
+  /**
+   * The amount of buckets.
+   */
+
+  private static final int BUCKET_COUNT = 63;
+
+
+
+  /**
+   * The amount of durations recorded in each bucket.
+   */
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+
+
+  /**
+   * The amount of durations recorded.
+   */
+
+  private final AtomicLong count = new AtomicLong();
+
+
+
+  /**
+   * The sum of the durations recorded, in nanoseconds.
+   */
+
+  private final AtomicLong total = new AtomicLong();
+
+
+
+  /**
+   * The longest duration recorded, in nanoseconds.
+   */
+
+  private final AtomicLong max = new AtomicLong();
+
+
+
+  /**
+   * Creates a new <code>Histogram</code> with the specified name.
+   */
+
+  Histogram(String name){
+    super(name);
+  }
+
+
+
+  /**
+   * Records the specified duration, in nanoseconds. Negative durations (which
+   * <code>System.nanoTime</code> shouldn't, but may, produce) are recorded as
+   * 0.
+   */
+
+  public void record(long nanos){
+    if (nanos < 0)
+      nanos = 0;
+
+    int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(nanos));
+    buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+    count.incrementAndGet();
+    total.addAndGet(nanos);
+
+    long curMax;
+    while ((nanos > (curMax = max.get())) && !max.compareAndSet(curMax, nanos));
+  }
+
+
+
+  /**
+   * Records the time elapsed since the specified time (as returned by
+   * <code>System.nanoTime</code>) and returns the current time, so that
+   * consecutive durations can be recorded without querying the time twice.
+   */
+
+  public long recordSince(long startTime){
+    long now = System.nanoTime();
+    record(now - startTime);
+    return now;
+  }
+
+
+
+  /**
+   * Returns the amount of durations recorded.
+   */
+
+  @Override
+  public long getCount(){
+    return count.get();
+  }
+
+
+
+  /**
+   * Returns the sum of the durations recorded, in nanoseconds.
+   */
+
+  public long getTotal(){
+    return total.get();
+  }
+
+
+
+  /**
+   * Returns the mean of the durations recorded, in nanoseconds; 0 if none
+   * have been recorded.
+   */
+
+  public long getMean(){
+    long count = getCount();
+    return count == 0 ? 0 : getTotal() / count;
+  }
+
+
+
+  /**
+   * Returns the longest duration recorded, in nanoseconds.
+   */
+
+  public long getMax(){
+    return max.get();
+  }
+
+
+
+  /**
+   * Returns an estimate of the specified percentile (between 0 and 100) of
+   * the durations recorded, in nanoseconds - the upper bound of the bucket
+   * containing it, but no more than the longest duration recorded. Returns 0
+   * if no durations have been recorded.
+   */
+
+  public long getPercentile(double percentile){
+    if ((percentile < 0) || (percentile > 100))
+      throw new IllegalArgumentException("Bad percentile: " + percentile);
+
+    long [] counts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++)
+      count += (counts[i] = buckets.get(i));
+
+    if (count == 0)
+      return 0;
+
+    long rank = (long)Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++){
+      seen += counts[i];
+      if ((seen >= rank) && (counts[i] != 0))
+        return Math.min((1L << (i + 1)) - 1, getMax());
+    }
+
+    return getMax();
+  }
+
+
+
+}
@@ -0,0 +1,485 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util.metrics;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+
+/**
+ * The registry of the runtime metrics of the application. Metrics are
+ * obtained by name, from anywhere, and are meant to always be on - recording
+ * into them costs a few atomic operations and nothing is allocated. The
+ * registry is exposed via JMX, as a single dynamic MBean named
+ * <code>free.util:type=Metrics</code>, each of whose attributes is a single
+ * value of a metric (<code>&lt;name&gt;.count</code>,
+ * <code>&lt;name&gt;.rate</code>, <code>&lt;name&gt;.p99Micros</code> and so
+ * on). In addition, if the <code>free.util.metricsDumpInterval</code> system
+ * property is set to a positive amount of seconds, all the metrics are printed
+ * to <code>System.out</code> that often.
+ */
+
+public final class MetricsRegistry{
+
+
+
+  /**
+   * The name of the MBean via which we expose the metrics.
+   */
+
+  public static final String MBEAN_NAME = "free.util:type=Metrics";
+
+
+
+  /**
+   * The interval, in milliseconds, at which we update the rates of the
+   * metrics.
+   */
+
+  private static final long RATE_UPDATE_INTERVAL = 1000;
+
+
+
+  /**
+   * The sole instance of this class.
+   */
+
+  private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+
+
+  /**
+   * Maps metric names to the metrics - <code>RatedMetric</code>s and
+   * <code>Gauge</code>s.
+   */
+
+  private final Map<String, Object> metrics = new TreeMap<>();
+
+
+
+  /**
+   * Returns the sole instance of <code>MetricsRegistry</code>.
+   */
+
+  public static MetricsRegistry getInstance(){
+    return INSTANCE;
+  }
+
+
+
+  /**
+   * Creates the <code>MetricsRegistry</code>, starts updating the rates and
+   * dumping (if requested) and registers the MBean.
+   */
+
+  private MetricsRegistry(){
+    Timer timer = new Timer("MetricsRegistry", true);
+    timer.schedule(new TimerTask(){
+      @Override
+      public void run(){
+        updateRates();
+      }
+    }, RATE_UPDATE_INTERVAL, RATE_UPDATE_INTERVAL);
+
+    long dumpInterval = 0;
+    try{
+      dumpInterval = Integer.getInteger("free.util.metricsDumpInterval", 0).intValue() * 1000L;
+    } catch (SecurityException e){}
+    if (dumpInterval > 0){
+      timer.schedule(new TimerTask(){
+        @Override
+        public void run(){
+          dump(System.out);
+        }
+      }, dumpInterval, dumpInterval);
+    }
+
+    try{
+      ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName(MBEAN_NAME));
+    } catch (SecurityException e){} // Applet or webstart sandbox - no JMX for us
+      catch (JMException e){
+        e.printStackTrace();
+      }
+  }
+
+
+
+  /**
+   * Returns the <code>Counter</code> with the specified name, creating it if
+   * necessary.
+   */
+
+  public synchronized Counter getCounter(String name){
+    Object metric = metrics.get(name);
+    if (metric == null)
+      metrics.put(name, metric = new Counter(name));
+    else if (!(metric instanceof Counter))
+      throw new IllegalArgumentException("Metric " + name + " is not a counter");
+
+    return (Counter)metric;
+  }
+
+
+
+  /**
+   * Returns the <code>Histogram</code> with the specified name, creating it if
+   * necessary.
+   */
+
+  public synchronized Histogram getHistogram(String name){
+    Object metric = metrics.get(name);
+    if (metric == null)
+      metrics.put(name, metric = new Histogram(name));
+    else if (!(metric instanceof Histogram))
+      throw new IllegalArgumentException("Metric " + name + " is not a histogram");
+
+    return (Histogram)metric;
+  }
+
+
+
+  /**
+   * Registers the specified <code>Gauge</code> under the specified name,
+   * replacing any gauge previously registered under it.
+   */
+
+  public synchronized void registerGauge(String name, Gauge gauge){
+    if (gauge == null)
+      throw new IllegalArgumentException("gauge may not be null");
+
+    Object metric = metrics.get(name);
+    if ((metric != null) && !(metric instanceof Gauge))
+      throw new IllegalArgumentException("Metric " + name + " is not a gauge");
+
+    metrics.put(name, gauge);
+  }
+
+
+
+  /**
+   * Unregisters the specified <code>Gauge</code>, if it is still the one
+   * registered under the specified name.
+   */
+
+  public synchronized void unregisterGauge(String name, Gauge gauge){
+    if (metrics.get(name) == gauge)
+      metrics.remove(name);
+  }
+
+
+
+  /**
+   * Returns a snapshot of the metrics, sorted by name.
+   */
+
+  private synchronized List<Map.Entry<String, Object>> getMetrics(){
+    return new ArrayList<>(metrics.entrySet());
+  }
+
+
+
+  /**
+   * Returns the metric with the specified name; <code>null</code> if none.
+   */
+
+  private synchronized Object getMetric(String name){
+    return metrics.get(name);
+  }
+
+
+
+  /**
+   * Updates the rates of all the rated metrics.
+   */
+
+  private void updateRates(){
+    List<Map.Entry<String, Object>> entries = getMetrics();
+    long now = System.nanoTime();
+    for (int i = 0; i < entries.size(); i++){
+      Object metric = entries.get(i).getValue();
+      if (metric instanceof RatedMetric)
+        ((RatedMetric)metric).updateRate(now);
+    }
+  }
+
+
+
+  /**
+   * Prints the textual dump of the metrics into the specified stream.
+   */
+
+  public void dump(PrintStream out){
+    out.print(dump());
+    out.flush();
+  }
+
+
+
+  /**
+   * Returns a textual dump of all the metrics, one per line. Counters and
+   * histograms which haven't counted anything yet are omitted.
+   */
+
+  public String dump(){
+    StringWriter buf = new StringWriter();
+    PrintWriter out = new PrintWriter(buf);
+    out.println("Metrics at " + new Date() + ":");
+
+    List<Map.Entry<String, Object>> entries = getMetrics();
+    for (int i = 0; i < entries.size(); i++){
+      String name = entries.get(i).getKey();
+      Object metric = entries.get(i).getValue();
+      if ((metric instanceof RatedMetric) && (((RatedMetric)metric).getCount() == 0))
+        continue;
+
+      if (metric instanceof Histogram){
+        Histogram histogram = (Histogram)metric;
+        out.println(String.format("  %-40s count=%d rate=%.1f/s mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+          new Object[]{name, Long.valueOf(histogram.getCount()), Double.valueOf(histogram.getRate()),
+            micros(histogram.getMean()), micros(histogram.getPercentile(50)),
+            micros(histogram.getPercentile(99)), micros(histogram.getMax())}));
+      }
+      else if (metric instanceof Counter){
+        Counter counter = (Counter)metric;
+        out.println(String.format("  %-40s count=%d rate=%.1f/s",
+          new Object[]{name, Long.valueOf(counter.getCount()), Double.valueOf(counter.getRate())}));
+      }
+      else
+        out.println(String.format("  %-40s value=%d", new Object[]{name, Long.valueOf(((Gauge)metric).getValue())}));
+    }
+
+    out.flush();
+    return buf.toString();
+  }
+
+
+
+  /**
+   * Converts the specified amount of nanoseconds to microseconds.
+   */
+
+  private static Double micros(long nanos){
+    return Double.valueOf(nanos / 1000.0);
+  }
+
+
+
+  /**
+   * The MBean via which we expose the metrics. Its attributes are created and
+   * removed along with the metrics, so it's a <code>DynamicMBean</code>.
+   */
+
+  private class MetricsMBean implements DynamicMBean{
+
+
+
+    /**
+     * The suffixes of the names of the attributes of a histogram.
+     */
+
+    private final String [] histogramAttributes =
+      new String[]{"count", "rate", "meanMicros", "p50Micros", "p99Micros", "maxMicros"};
+
+
+
+    /**
+     * The suffixes of the names of the attributes of a counter.
+     */
+
+    private final String [] counterAttributes = new String[]{"count", "rate"};
+
+
+
+    /**
+     * The suffixes of the names of the attributes of a gauge.
+     */
+
+    private final String [] gaugeAttributes = new String[]{"value"};
+
+
+
+    /**
+     * Returns the suffixes of the names of the attributes of the specified
+     * metric.
+     */
+
+    private String [] getAttributeSuffixes(Object metric){
+      if (metric instanceof Histogram)
+        return histogramAttributes;
+      else if (metric instanceof Counter)
+        return counterAttributes;
+      else
+        return gaugeAttributes;
+    }
+
+
+
+    /**
+     * Returns the value of the specified attribute.
+     */
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException{
+      int dotIndex = attribute.lastIndexOf('.');
+      Object metric = dotIndex == -1 ? null : getMetric(attribute.substring(0, dotIndex));
+      if (metric == null)
+        throw new AttributeNotFoundException(attribute);
+
+      String suffix = attribute.substring(dotIndex + 1);
+      if (metric instanceof RatedMetric){
+        RatedMetric ratedMetric = (RatedMetric)metric;
+        if ("count".equals(suffix))
+          return Long.valueOf(ratedMetric.getCount());
+        else if ("rate".equals(suffix))
+          return Double.valueOf(ratedMetric.getRate());
+      }
+      if (metric instanceof Histogram){
+        Histogram histogram = (Histogram)metric;
+        if ("meanMicros".equals(suffix))
+          return micros(histogram.getMean());
+        else if ("p50Micros".equals(suffix))
+          return micros(histogram.getPercentile(50));
+        else if ("p99Micros".equals(suffix))
+          return micros(histogram.getPercentile(99));
+        else if ("maxMicros".equals(suffix))
+          return micros(histogram.getMax());
+      }
+      if ((metric instanceof Gauge) && "value".equals(suffix))
+        return Long.valueOf(((Gauge)metric).getValue());
+
+      throw new AttributeNotFoundException(attribute);
+    }
+
+
+
+    /**
+     * Returns the values of the specified attributes, skipping the ones which
+     * don't exist.
+     */
+
+    @Override
+    public AttributeList getAttributes(String [] attributes){
+      AttributeList list = new AttributeList();
+      for (int i = 0; i < attributes.length; i++){
+        try{
+          list.add(new Attribute(attributes[i], getAttribute(attributes[i])));
+        } catch (AttributeNotFoundException e){}
+      }
+
+      return list;
+    }
+
+
+
+    /**
+     * Throws an <code>AttributeNotFoundException</code> - all the attributes
+     * are read-only.
+     */
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException{
+      throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+
+
+    /**
+     * Returns an empty list - all the attributes are read-only.
+     */
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes){
+      return new AttributeList();
+    }
+
+
+
+    /**
+     * Invokes the specified operation - the only one is <code>dump</code>,
+     * which returns the textual dump of the metrics.
+     */
+
+    @Override
+    public Object invoke(String actionName, Object [] params, String [] signature) throws ReflectionException{
+      if ("dump".equals(actionName) && ((params == null) || (params.length == 0)))
+        return dump();
+
+      throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+
+
+    /**
+     * Returns the description of the MBean, with an attribute for each value
+     * of each metric currently in the registry.
+     */
+
+    @Override
+    public MBeanInfo getMBeanInfo(){
+      List<MBeanAttributeInfo> attributes = new ArrayList<>();
+      List<Map.Entry<String, Object>> entries = getMetrics();
+      for (int i = 0; i < entries.size(); i++){
+        String name = entries.get(i).getKey();
+        String [] suffixes = getAttributeSuffixes(entries.get(i).getValue());
+        for (int j = 0; j < suffixes.length; j++){
+          String type = (suffixes[j].equals("count") || suffixes[j].equals("value")) ?
+            Long.class.getName() : Double.class.getName();
+          attributes.add(new MBeanAttributeInfo(name + "." + suffixes[j], type, name + " " + suffixes[j],
+            true, false, false));
+        }
+      }
+
+      MBeanOperationInfo dumpInfo = new MBeanOperationInfo("dump", "Returns a textual dump of all the metrics",
+        null, String.class.getName(), MBeanOperationInfo.INFO);
+
+      return new MBeanInfo(MetricsRegistry.class.getName(), "Runtime metrics",
+        attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+        null, new MBeanOperationInfo[]{dumpInfo}, null);
+    }
+
+
+
+  }
+
+
+
+}
@@ -0,0 +1,124 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util.metrics;
+
+
+
+/**
+ * The base class of the metrics which count something and whose rate of
+ * growth is tracked by the {@link MetricsRegistry}.
+ */
+
+public abstract class RatedMetric{
+
+
+
+  /**
+   * The name of the metric.
+   */
+
+  private final String name;
+
+
+
+  /**
+   * The count at the last time the rate was updated. Only accessed by the
+   * registry's timer thread.
+   */
+
+  private long lastCount = 0;
+
+
+
+  /**
+   * The time, in nanoseconds, the rate was last updated. Only accessed by the
+   * registry's timer thread.
+   */
+
+  private long lastUpdateTime = System.nanoTime();
+
+
+
+  /**
+   * The rate, per second, at which the count grew between the last two
+   * updates.
+   */
+
+  private volatile double rate = 0;
+
+
+
+  /**
+   * Creates a new <code>RatedMetric</code> with the specified name.
+   */
+
+  RatedMetric(String name){
+    this.name = name;
+  }
+
+
+
+  /**
+   * Returns the name of the metric.
+   */
+
+  public String getName(){
+    return name;
+  }
+
+
+
+  /**
+   * Returns the amount of occurrences counted so far.
+   */
+
+  public abstract long getCount();
+
+
+
+  /**
+   * Returns the rate, per second, at which the count has recently grown.
+   */
+
+  public double getRate(){
+    return rate;
+  }
+
+
+
+  /**
+   * Updates the rate. Invoked periodically by the registry.
+   */
+
+  void updateRate(long now){
+    long count = getCount();
+    long elapsed = now - lastUpdateTime;
+    if (elapsed > 0)
+      rate = (count - lastCount) * 1000000000.0 / elapsed;
+
+    lastCount = count;
+    lastUpdateTime = now;
+  }
+
+
+
+}
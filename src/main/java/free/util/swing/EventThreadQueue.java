@@ -0,0 +1,457 @@
+/**
+ * The utillib library.
+ * More information is available at http://www.jinchess.com/.
+ * Copyright (C) 2007 Alexander Maryanovsky.
+ * All rights reserved.
+ *
+ * The utillib library is free software; you can redistribute
+ * it and/or modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * The utillib library is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with utillib library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package free.util.swing;
+
+import java.util.LinkedList;
+
+import javax.swing.SwingUtilities;
+
+import free.util.metrics.Counter;
+import free.util.metrics.Histogram;
+import free.util.metrics.MetricsRegistry;
+
+
+/**
+ * A queue of tasks to be run in the AWT event dispatching thread. Unlike
+ * <code>SwingUtilities.invokeLater</code>, which posts a separate AWT event for
+ * each task, tasks added to an <code>EventThreadQueue</code> are collected and
+ * run in batches, each batch by a single AWT event. A batch ends when either
+ * the maximum batch size is reached or the time budget of the batch runs out,
+ * at which point the remaining tasks are left for the next batch, so that
+ * painting and input events get a chance to be processed in between.
+ * <p>The queue is bounded - a thread (other than the event dispatching thread)
+ * adding a task to a full queue waits until there is room for it. The tasks
+ * are always run in the order they were added.
+ * <p>The time batches wait in the AWT event queue before they start running
+ * (<code>edt.queueLag</code>) and the time they take to run
+ * (<code>edt.batchTime</code>) are recorded in the {@link MetricsRegistry},
+ * along with the amount of tasks run (<code>edt.tasks</code>).
+ */
+
+public class EventThreadQueue{
+
+
+
+  /**
+   * The longest time, in milliseconds, a thread adding a task to a full queue
+   * will wait for there to be room before adding it anyway. This guards
+   * against deadlocks where the event dispatching thread is itself waiting for
+   * the adding thread.
+   */
+
+  private static final long MAX_WAIT_TIME = 1000;
+
+
+
+  /**
+   * The histogram of the time between posting a batch to the AWT event queue
+   * and it starting to run.
+   */
+
+  private static final Histogram QUEUE_LAG = MetricsRegistry.getInstance().getHistogram("edt.queueLag");
+
+
+
+  /**
+   * The histogram of the time it takes to run a batch.
+   */
+
+  private static final Histogram BATCH_TIME = MetricsRegistry.getInstance().getHistogram("edt.batchTime");
+
+
+
+  /**
+   * The counter of tasks run.
+   */
+
+  private static final Counter TASKS = MetricsRegistry.getInstance().getCounter("edt.tasks");
+
+
+
+  /**
+   * The maximum amount of tasks waiting in the queue.
+   */
+
+  private final int capacity;
+
+
+
+  /**
+   * The maximum amount of tasks run in a single batch.
+   */
+
+  private final int maxBatchSize;
+
+
+
+  /**
+   * The longest time, in nanoseconds, a single batch may run. A batch always
+   * runs at least one task.
+   */
+
+  private final long batchTimeBudget;
+
+
+
+  /**
+   * The tasks waiting to be run.
+   */
+
+  private final LinkedList<Runnable> queue = new LinkedList<>();
+
+
+
+  /**
+   * Whether the runnable which runs a batch has been posted to the AWT event
+   * queue and hasn't finished yet.
+   */
+
+  private boolean isBatchPending = false;
+
+
+
+  /**
+   * The time, as returned by <code>System.nanoTime</code>, the pending batch
+   * was posted to the AWT event queue.
+   */
+
+  private long batchPostTime;
+
+
+
+  /**
+   * The runnable we post to the AWT event queue to run a batch.
+   */
+
+  private final Runnable batchRunner = new Runnable(){
+    @Override
+    public void run(){
+      runBatch();
+    }
+  };
+
+
+
+  /**
+   * The largest amount of tasks that were waiting in the queue at once.
+   */
+
+  private int peakQueueDepth = 0;
+
+
+
+  /**
+   * The amount of tasks run in the last batch.
+   */
+
+  private int lastBatchSize = 0;
+
+
+
+  /**
+   * The largest amount of tasks run in a single batch.
+   */
+
+  private int peakBatchSize = 0;
+
+
+
+  /**
+   * The amount of batches run so far.
+   */
+
+  private long batchCount = 0;
+
+
+
+  /**
+   * The amount of tasks run so far.
+   */
+
+  private long taskCount = 0;
+
+
+
+  /**
+   * The amount of times a thread had to wait for room in the queue.
+   */
+
+  private long fullQueueWaitCount = 0;
+
+
+
+  /**
+   * Creates a new <code>EventThreadQueue</code> with the specified capacity,
+   * maximum batch size and batch time budget, in milliseconds.
+   */
+
+  public EventThreadQueue(int capacity, int maxBatchSize, int batchTimeBudget){
+    if (capacity <= 0)
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    if (maxBatchSize <= 0)
+      throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+    if (batchTimeBudget <= 0)
+      throw new IllegalArgumentException("batchTimeBudget must be positive: " + batchTimeBudget);
+
+    this.capacity = capacity;
+    this.maxBatchSize = maxBatchSize;
+    this.batchTimeBudget = batchTimeBudget * 1000000L;
+  }
+
+
+
+  /**
+   * Adds the specified task to the queue, to be run in the AWT event
+   * dispatching thread after all the tasks added before it. If the queue is
+   * full and the calling thread is not the event dispatching thread, waits
+   * until there is room in the queue.
+   */
+
+  public void invokeLater(Runnable task){
+    if (task == null)
+      throw new IllegalArgumentException("task may not be null");
+
+    boolean isEventThread = SwingUtilities.isEventDispatchThread();
+    boolean postBatch = false;
+
+    synchronized(this){
+      if (!isEventThread && (queue.size() >= capacity)){
+        fullQueueWaitCount++;
+        long waitEnd = System.currentTimeMillis() + MAX_WAIT_TIME;
+        long waitTime = MAX_WAIT_TIME;
+        while ((queue.size() >= capacity) && (waitTime > 0)){
+          try{
+            wait(waitTime);
+          } catch (InterruptedException e){
+              Thread.currentThread().interrupt();
+              break;
+            }
+          waitTime = waitEnd - System.currentTimeMillis();
+        }
+      }
+
+      queue.addLast(task);
+      if (queue.size() > peakQueueDepth)
+        peakQueueDepth = queue.size();
+
+      if (!isBatchPending){
+        isBatchPending = true;
+        batchPostTime = System.nanoTime();
+        postBatch = true;
+      }
+    }
+
+    if (postBatch)
+      SwingUtilities.invokeLater(batchRunner);
+  }
+
+
+
+  /**
+   * Runs a single batch of tasks, posting another batch if tasks remain. If a
+   * task throws an <code>Error</code>, the next batch is still posted (or the
+   * queue marked as idle) before the error propagates, so that delivery goes
+   * on with the following tasks.
+   */
+
+  private void runBatch(){
+    long startTime = System.nanoTime();
+    synchronized(this){
+      QUEUE_LAG.record(startTime - batchPostTime);
+    }
+
+    long deadline = startTime + batchTimeBudget;
+    int count = 0;
+
+    while (true){
+      Runnable task;
+      synchronized(this){
+        if (queue.isEmpty() || (count == maxBatchSize) || ((count > 0) && (System.nanoTime() - deadline >= 0))){
+          if (endBatch(startTime, count))
+            break;
+          else
+            return;
+        }
+
+        boolean wasFull = queue.size() >= capacity;
+        task = queue.removeFirst();
+        if (wasFull)
+          notifyAll();
+      }
+
+      count++;
+      boolean isTaskDone = false;
+      try{
+        task.run();
+        isTaskDone = true;
+      } catch (RuntimeException e){
+          isTaskDone = true;
+          e.printStackTrace();
+        }
+        finally{
+          if (!isTaskDone){ // An Error is propagating
+            boolean hasMoreTasks;
+            synchronized(this){
+              hasMoreTasks = endBatch(startTime, count);
+            }
+            if (hasMoreTasks)
+              SwingUtilities.invokeLater(batchRunner);
+          }
+        }
+    }
+
+    SwingUtilities.invokeLater(batchRunner);
+  }
+
+
+
+  /**
+   * Records the statistics of a batch which started at the specified time
+   * (as returned by <code>System.nanoTime</code>) and ran the specified amount
+   * of tasks. Returns whether tasks remain in the queue, in which case the
+   * caller must post the next batch; otherwise, no batch is pending anymore.
+   * Must be called with the lock held.
+   */
+
+  private boolean endBatch(long startTime, int count){
+    lastBatchSize = count;
+    if (count > peakBatchSize)
+      peakBatchSize = count;
+    batchCount++;
+    taskCount += count;
+    TASKS.add(count);
+    batchPostTime = BATCH_TIME.recordSince(startTime); // The next batch, if any, is posted right away
+
+    if (queue.isEmpty()){
+      isBatchPending = false;
+      return false;
+    }
+    else
+      return true;
+  }
+
+
+
+  /**
+   * Returns the maximum amount of tasks waiting in the queue, beyond which
+   * adding tasks blocks.
+   */
+
+  public int getCapacity(){
+    return capacity;
+  }
+
+
+
+  /**
+   * Returns the maximum amount of tasks run in a single batch.
+   */
+
+  public int getMaxBatchSize(){
+    return maxBatchSize;
+  }
+
+
+
+  /**
+   * Returns the longest time a single batch may run, in milliseconds.
+   */
+
+  public int getBatchTimeBudget(){
+    return (int)(batchTimeBudget / 1000000L);
+  }
+
+
+
+  /**
+   * Returns the amount of tasks currently waiting in the queue.
+   */
+
+  public synchronized int getQueueDepth(){
+    return queue.size();
+  }
+
+
+
+  /**
+   * Returns the largest amount of tasks that were waiting in the queue at once.
+   */
+
+  public synchronized int getPeakQueueDepth(){
+    return peakQueueDepth;
+  }
+
+
+
+  /**
+   * Returns the amount of tasks run in the last batch.
+   */
+
+  public synchronized int getLastBatchSize(){
+    return lastBatchSize;
+  }
+
+
+
+  /**
+   * Returns the largest amount of tasks run in a single batch.
+   */
+
+  public synchronized int getPeakBatchSize(){
+    return peakBatchSize;
+  }
+
+
+
+  /**
+   * Returns the amount of batches run so far.
+   */
+
+  public synchronized long getBatchCount(){
+    return batchCount;
+  }
+
+
+
+  /**
+   * Returns the amount of tasks run so far.
+   */
+
+  public synchronized long getTaskCount(){
+    return taskCount;
+  }
+
+
+
+  /**
+   * Returns the amount of times a thread adding a task had to wait because
+   * the queue was full. A growing value means the event dispatching thread is
+   * saturated.
+   */
+
+  public synchronized long getFullQueueWaitCount(){
+    return fullQueueWaitCount;
+  }
+
+
+
+}